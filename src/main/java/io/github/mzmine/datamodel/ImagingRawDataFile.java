@@ -25,8 +25,10 @@
 
 package io.github.mzmine.datamodel;
 
+import io.github.mzmine.datamodel.data_access.ImagingMzIndex;
 import java.util.List;
 import io.github.mzmine.modules.io.import_rawdata_imzml.ImagingParameters;
+import org.jetbrains.annotations.Nullable;
 
 
 /**
@@ -54,4 +56,12 @@ public interface ImagingRawDataFile extends RawDataFile {
    */
   List<Scan> getScansInArea(float x, float y, float x2, float y2);
 
+  /**
+   * Inverted m/z index of all raw data points, built on first access.
+   *
+   * @return the index or null if the m/z range of the file requires too many bins
+   */
+  @Nullable
+  ImagingMzIndex getMzIndex();
+
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.datamodel.data_access;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.ImagingRawDataFile;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Inverted index from m/z bins to all raw data points (scan index, m/z, intensity) of an imaging
+ * raw data file. Ion images of any m/z range are extracted in time proportional to the number of
+ * data points in this range instead of iterating all data points of all pixels. Build once per
+ * file via {@link ImagingRawDataFile#getMzIndex()}.
+ * <p></p>
+ * The data points are indexed in blocks of consecutive scans. Each block is sorted by m/z bin and
+ * stored in the {@link MemoryMapStorage} of the raw data file, so only one block is kept on the
+ * heap while the index is built.
+ */
+public class ImagingMzIndex {
+
+  /**
+   * m/z width of a bin. Data points within a bin are sorted by scan index
+   */
+  public static final double DEFAULT_BIN_WIDTH = 0.01;
+  /**
+   * number of data points that are collected on the heap before they are stored as one block
+   */
+  private static final int BLOCK_DATA_POINTS = 1 << 21;
+  private static final int INITIAL_CAPACITY = 1 << 14;
+  /**
+   * maximum number of m/z bins. Every block stores the offsets of all bins
+   */
+  private static final int MAX_BINS = BLOCK_DATA_POINTS;
+  private static final Logger logger = Logger.getLogger(ImagingMzIndex.class.getName());
+
+  private final int numScans;
+  private final int numBins;
+  private final double minMz;
+  private final double binWidth;
+  private final List<Block> blocks;
+  private final long numDataPoints;
+
+  private ImagingMzIndex(int numScans, int numBins, double minMz, double binWidth,
+      List<Block> blocks, long numDataPoints) {
+    this.numScans = numScans;
+    this.numBins = numBins;
+    this.minMz = minMz;
+    this.binWidth = binWidth;
+    this.blocks = blocks;
+    this.numDataPoints = numDataPoints;
+  }
+
+  /**
+   * Indexes all raw data points of all scans in one pass over the data.
+   *
+   * @return the index or null if the m/z range of the file requires too many bins
+   */
+  @Nullable
+  public static ImagingMzIndex build(@NotNull ImagingRawDataFile raw) {
+    return build(raw, DEFAULT_BIN_WIDTH);
+  }
+
+  /**
+   * Indexes all raw data points of all scans in one pass over the data.
+   *
+   * @param binWidth the m/z width of the bins
+   * @return the index or null if the m/z range of the file requires too many bins
+   */
+  @Nullable
+  public static ImagingMzIndex build(@NotNull ImagingRawDataFile raw, double binWidth) {
+    final Range<Double> mzRange = raw.getDataMZRange();
+    final double minMz = mzRange.lowerEndpoint();
+    final long numBinsLong = (long) ((mzRange.upperEndpoint() - minMz) / binWidth) + 1;
+    if (numBinsLong > MAX_BINS) {
+      logger.info(() -> String.format("Too many m/z bins (%d) to index the imaging file %s",
+          numBinsLong, raw.getName()));
+      return null;
+    }
+    final int numBins = (int) numBinsLong;
+
+    final BlockWriter writer = new BlockWriter(raw.getMemoryMapStorage(), numBins, minMz,
+        binWidth);
+    final ScanDataAccess access = EfficientDataAccess.of(raw, ScanDataType.RAW);
+    final int numScans = access.getNumberOfScans();
+    int scanIndex = 0;
+    while (access.hasNextScan()) {
+      access.nextScan();
+      final int n = access.getNumberOfDataPoints();
+      // scans are never split between blocks
+      writer.ensureCapacity(n);
+      for (int i = 0; i < n; i++) {
+        writer.add(scanIndex, access.getMzValue(i), access.getIntensityValue(i));
+      }
+      scanIndex++;
+    }
+    writer.flush();
+
+    final long total = writer.numDataPoints;
+    final int numBlocks = writer.blocks.size();
+    logger.finest(() -> String.format(
+        "Indexed %d data points of %d scans in %d m/z bins and %d blocks for %s", total, numScans,
+        numBins, numBlocks, raw.getName()));
+    return new ImagingMzIndex(numScans, numBins, minMz, binWidth, List.copyOf(writer.blocks),
+        total);
+  }
+
+  private static int toBin(double mz, double minMz, double binWidth, int numBins) {
+    final int bin = (int) ((mz - minMz) / binWidth);
+    return Math.max(0, Math.min(bin, numBins - 1));
+  }
+
+  /**
+   * Sums all intensities within the m/z range for each scan and finds the m/z of the most intense
+   * data point. Only the data points within the range are visited.
+   *
+   * @param mzRange        the closed m/z range
+   * @param sumIntensities (out) summed intensity for each scan index, length of number of scans
+   * @param bestMzs        (out) m/z of the highest data point for each scan index or 0 if there
+   *                       is no data point in range, length of number of scans
+   */
+  public void extractImage(@NotNull Range<Double> mzRange, double[] sumIntensities,
+      double[] bestMzs) {
+    assert sumIntensities.length >= numScans && bestMzs.length >= numScans;
+    Arrays.fill(sumIntensities, 0, numScans, 0d);
+    Arrays.fill(bestMzs, 0, numScans, 0d);
+    final double lower = mzRange.lowerEndpoint();
+    final double upper = mzRange.upperEndpoint();
+    final double[] maxIntensities = new double[numScans];
+
+    final int firstBin = toBin(lower, minMz, binWidth, numBins);
+    final int lastBin = toBin(upper, minMz, binWidth, numBins);
+    for (final Block block : blocks) {
+      final int start = block.binOffsets().get(firstBin);
+      final int end = block.binOffsets().get(lastBin + 1);
+      for (int i = start; i < end; i++) {
+        final double mz = block.mzs().get(i);
+        if (mz < lower || mz > upper) {
+          continue;
+        }
+        final int scan = block.scanIndices().get(i);
+        final double intensity = block.intensities().get(i);
+        sumIntensities[scan] += intensity;
+        if (intensity > maxIntensities[scan]) {
+          maxIntensities[scan] = intensity;
+          bestMzs[scan] = mz;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of indexed scans. Scan indices match the scan list of the raw data file
+   */
+  public int getNumberOfScans() {
+    return numScans;
+  }
+
+  public long getNumberOfDataPoints() {
+    return numDataPoints;
+  }
+
+  /**
+   * Data points of consecutive scans sorted by m/z bin and scan index.
+   *
+   * @param binOffsets start of each bin in the data buffers, last element is the number of data
+   *                   points in this block
+   */
+  private record Block(IntBuffer binOffsets, IntBuffer scanIndices, DoubleBuffer mzs,
+                       DoubleBuffer intensities) {
+
+  }
+
+  /**
+   * Collects data points in scan order and stores them as a sorted block once the buffers are
+   * full.
+   */
+  private static class BlockWriter {
+
+    private final @Nullable MemoryMapStorage storage;
+    private final int numBins;
+    private final double minMz;
+    private final double binWidth;
+    private final List<Block> blocks = new ArrayList<>();
+    private final int[] binCounts;
+    private int[] bins = new int[INITIAL_CAPACITY];
+    private int[] scanIndices = new int[INITIAL_CAPACITY];
+    private double[] mzs = new double[INITIAL_CAPACITY];
+    private double[] intensities = new double[INITIAL_CAPACITY];
+    private int size = 0;
+    private long numDataPoints = 0;
+
+    private BlockWriter(@Nullable MemoryMapStorage storage, int numBins, double minMz,
+        double binWidth) {
+      this.storage = storage;
+      this.numBins = numBins;
+      this.minMz = minMz;
+      this.binWidth = binWidth;
+      binCounts = new int[numBins + 1];
+    }
+
+    /**
+     * Makes room for the next data points. Stores the current block if they do not fit anymore.
+     */
+    private void ensureCapacity(int numNewDataPoints) {
+      final int required = size + numNewDataPoints;
+      if (required <= bins.length) {
+        return;
+      }
+      if (required > BLOCK_DATA_POINTS) {
+        flush();
+        if (numNewDataPoints <= bins.length) {
+          return;
+        }
+      }
+      // grow up to the block size, a single scan may be larger than a block
+      final int capacity = Math.max(size + numNewDataPoints,
+          Math.min(BLOCK_DATA_POINTS, bins.length * 2));
+      bins = Arrays.copyOf(bins, capacity);
+      scanIndices = Arrays.copyOf(scanIndices, capacity);
+      mzs = Arrays.copyOf(mzs, capacity);
+      intensities = Arrays.copyOf(intensities, capacity);
+    }
+
+    private void add(int scanIndex, double mz, double intensity) {
+      bins[size] = toBin(mz, minMz, binWidth, numBins);
+      scanIndices[size] = scanIndex;
+      mzs[size] = mz;
+      intensities[size] = intensity;
+      size++;
+    }
+
+    /**
+     * Sorts the collected data points by bin (stable, keeps the scan order within a bin) and
+     * stores them.
+     */
+    private void flush() {
+      if (size == 0) {
+        return;
+      }
+      Arrays.fill(binCounts, 0);
+      for (int i = 0; i < size; i++) {
+        binCounts[bins[i] + 1]++;
+      }
+      for (int b = 1; b < binCounts.length; b++) {
+        binCounts[b] += binCounts[b - 1];
+      }
+      final int[] binOffsets = Arrays.copyOf(binCounts, binCounts.length);
+
+      final int[] sortedScans = new int[size];
+      final double[] sortedMzs = new double[size];
+      final double[] sortedIntensities = new double[size];
+      for (int i = 0; i < size; i++) {
+        final int pos = binCounts[bins[i]]++;
+        sortedScans[pos] = scanIndices[i];
+        sortedMzs[pos] = mzs[i];
+        sortedIntensities[pos] = intensities[i];
+      }
+
+      blocks.add(new Block(StorageUtils.storeValuesToIntBuffer(storage, binOffsets),
+          StorageUtils.storeValuesToIntBuffer(storage, sortedScans),
+          StorageUtils.storeValuesToDoubleBuffer(storage, sortedMzs),
+          StorageUtils.storeValuesToDoubleBuffer(storage, sortedIntensities)));
+      numDataPoints += size;
+      size = 0;
+    }
+  }
+}
@@ -143,6 +143,56 @@ public record AlignmentScores(float rate, int alignedFeatures, int extraFeatures
         average(mobilityDelta, other.mobilityDelta, total, otherTotal, totalFeatures));
   }
 
+  /**
+   * Merge scores of two disjoint sets of samples, e.g., the existing and the new samples of an
+   * incremental alignment. Deltas and scores are averaged by the number of aligned features.
+   *
+   * @param other        scores of the other samples or null
+   * @param totalSamples the total number of samples in both sets
+   * @return merged score
+   */
+  public AlignmentScores mergeSamples(@Nullable AlignmentScores other, int totalSamples) {
+    if (other == null) {
+      other = new AlignmentScores();
+    }
+    final int aligned = alignedFeatures + other.alignedFeatures;
+    final float mergedRate = totalSamples > 0 ? aligned / (float) totalSamples : 0f;
+    return new AlignmentScores(mergedRate, aligned, extraFeatures + other.extraFeatures,
+        weightedAverage(weightedDistanceScore, alignedFeatures, other.weightedDistanceScore,
+            other.alignedFeatures),
+        weightedAverage(mzPpmDelta, alignedFeatures, other.mzPpmDelta, other.alignedFeatures),
+        weightedAverage(mzDelta, alignedFeatures, other.mzDelta, other.alignedFeatures),
+        weightedAverage(rtDelta, alignedFeatures, other.rtDelta, other.alignedFeatures),
+        weightedAverage(mobilityDelta, alignedFeatures, other.mobilityDelta,
+            other.alignedFeatures));
+  }
+
+  /**
+   * @return the weighted average, ignores values without weight (no aligned features)
+   */
+  private static Double weightedAverage(final Double a, final int weightA, final Double b,
+      final int weightB) {
+    final boolean hasA = a != null && weightA > 0 && !a.isNaN();
+    final boolean hasB = b != null && weightB > 0 && !b.isNaN();
+    if (hasA && hasB) {
+      return (a * weightA + b * weightB) / (weightA + weightB);
+    }
+    return hasA ? a : (hasB ? b : null);
+  }
+
+  /**
+   * @return the weighted average, ignores values without weight (no aligned features)
+   */
+  private static Float weightedAverage(final Float a, final int weightA, final Float b,
+      final int weightB) {
+    final boolean hasA = a != null && weightA > 0 && !a.isNaN();
+    final boolean hasB = b != null && weightB > 0 && !b.isNaN();
+    if (hasA && hasB) {
+      return (a * weightA + b * weightB) / (weightA + weightB);
+    }
+    return hasA ? a : (hasB ? b : null);
+  }
+
   private Double average(final Double a, final Double b, final int total, final int otherTotal,
       final int totalFeatures) {
     if (a == null && b == null) {
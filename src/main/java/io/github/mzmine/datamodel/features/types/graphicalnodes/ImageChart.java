@@ -29,6 +29,7 @@ import com.google.common.util.concurrent.AtomicDouble;
 import io.github.mzmine.datamodel.ImagingRawDataFile;
 import io.github.mzmine.datamodel.ImagingScan;
 import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.ImagePreviewCache.TileKey;
 import io.github.mzmine.datamodel.features.types.modifiers.GraphicalColumType;
 import io.github.mzmine.gui.chartbasics.simplechart.SimpleXYZScatterPlot;
 import io.github.mzmine.gui.chartbasics.simplechart.datasets.ColoredXYZDataset;
@@ -42,6 +43,7 @@ import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.util.logging.Logger;
 import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
 import org.jetbrains.annotations.NotNull;
@@ -57,34 +59,12 @@ public class ImageChart extends StackPane {
   private static Logger logger = Logger.getLogger(ImageChart.class.getName());
 
   public ImageChart(@NotNull ModularFeature f, AtomicDouble progress) {
-    FeatureImageProvider<ImagingScan> prov = new FeatureImageProvider<>(f);
-    ColoredXYZDataset ds = new ColoredXYZDataset(prov, RunOption.THIS_THREAD);
-    // checked in ImagingChart.class
-
-    SimpleXYZScatterPlot<FeatureImageProvider> chart = new SimpleXYZScatterPlot<>();
-    chart.setRangeAxisLabel("µm");
-    chart.setDomainAxisLabel("µm");
     ImagingRawDataFile imagingFile = (ImagingRawDataFile) f.getRawDataFile();
 
     final boolean hideAxes = MZmineCore.getConfiguration()
         .getModuleParameters(FeatureTableFXModule.class).getParameter(
             FeatureTableFXParameters.hideImageAxes).getValue();
 
-    NumberAxis axis = (NumberAxis) chart.getXYPlot().getRangeAxis();
-    chart.setDataset(ds);
-    axis.setInverted(true);
-    axis.setAutoRangeStickyZero(false);
-    axis.setAutoRangeIncludesZero(false);
-    axis.setRange(new Range(0, imagingFile.getImagingParam().getLateralHeight()));
-    axis.setVisible(!hideAxes);
-
-    axis = (NumberAxis) chart.getXYPlot().getDomainAxis();
-    axis.setAutoRangeStickyZero(false);
-    axis.setAutoRangeIncludesZero(false);
-    chart.getXYPlot().setDomainAxisLocation(AxisLocation.TOP_OR_RIGHT);
-    axis.setRange(new Range(0, imagingFile.getImagingParam().getLateralWidth()));
-    axis.setVisible(!hideAxes);
-
     final boolean lockOnAspectRatio = MZmineCore.getConfiguration()
         .getModuleParameters(FeatureTableFXModule.class).getParameter(
             FeatureTableFXParameters.lockImagesToAspectRatio).getValue();
@@ -99,17 +79,63 @@ public class ImageChart extends StackPane {
 
     setPrefHeight(height);
     setPrefWidth(width);
-    chart.getXYPlot().setBackgroundPaint(Color.BLACK);
-
-    BufferedImage img = chart.getChart().createBufferedImage((int) width, (int) height);
 
-    ImageView view = new ImageView(SwingFXUtils.toFXImage(img, null));
-    view.setOnMouseClicked(e -> MZmineCore.runLater(() -> {
-      getChildren().remove(view);
-      getChildren().add(chart);
-    }));
+    // reuse rendered preview tile
+    final TileKey key = TileKey.of(f, width, height, hideAxes);
+    final Image cached = ImagePreviewCache.get(key);
+    final ImageView view;
+    if (cached != null) {
+      view = new ImageView(cached);
+      // only create the interactive chart on demand
+      view.setOnMouseClicked(e -> MZmineCore.runLater(() -> {
+        getChildren().remove(view);
+        getChildren().add(createChart(f, imagingFile, hideAxes, RunOption.NEW_THREAD));
+      }));
+    } else {
+      final SimpleXYZScatterPlot<FeatureImageProvider> chart = createChart(f, imagingFile,
+          hideAxes, RunOption.THIS_THREAD);
+      BufferedImage img = chart.getChart().createBufferedImage((int) width, (int) height);
+      final Image image = SwingFXUtils.toFXImage(img, null);
+      ImagePreviewCache.put(key, image);
+
+      view = new ImageView(image);
+      view.setOnMouseClicked(e -> MZmineCore.runLater(() -> {
+        getChildren().remove(view);
+        getChildren().add(chart);
+      }));
+    }
 
     MZmineCore.runLater(() -> getChildren().add(view));
   }
 
+  private static SimpleXYZScatterPlot<FeatureImageProvider> createChart(
+      @NotNull ModularFeature f, ImagingRawDataFile imagingFile, boolean hideAxes,
+      RunOption runOption) {
+    FeatureImageProvider<ImagingScan> prov = new FeatureImageProvider<>(f);
+    ColoredXYZDataset ds = new ColoredXYZDataset(prov, runOption);
+    // checked in ImagingChart.class
+
+    SimpleXYZScatterPlot<FeatureImageProvider> chart = new SimpleXYZScatterPlot<>();
+    chart.setRangeAxisLabel("µm");
+    chart.setDomainAxisLabel("µm");
+
+    NumberAxis axis = (NumberAxis) chart.getXYPlot().getRangeAxis();
+    chart.setDataset(ds);
+    axis.setInverted(true);
+    axis.setAutoRangeStickyZero(false);
+    axis.setAutoRangeIncludesZero(false);
+    axis.setRange(new Range(0, imagingFile.getImagingParam().getLateralHeight()));
+    axis.setVisible(!hideAxes);
+
+    axis = (NumberAxis) chart.getXYPlot().getDomainAxis();
+    axis.setAutoRangeStickyZero(false);
+    axis.setAutoRangeIncludesZero(false);
+    chart.getXYPlot().setDomainAxisLocation(AxisLocation.TOP_OR_RIGHT);
+    axis.setRange(new Range(0, imagingFile.getImagingParam().getLateralWidth()));
+    axis.setVisible(!hideAxes);
+
+    chart.getXYPlot().setBackgroundPaint(Color.BLACK);
+    return chart;
+  }
+
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.types.graphicalnodes;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.function.Predicate;
+import javafx.scene.image.Image;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded least-recently-used cache of rendered image previews (tiles) in the feature table. The
+ * size is limited by the total number of cached pixels. Previews are bound to the feature data, so
+ * changed feature data will be rendered again. Previews of removed feature lists and raw data files
+ * are released by the project.
+ */
+public class ImagePreviewCache {
+
+  /**
+   * ~100 MB of ARGB pixels
+   */
+  private static final long MAX_CACHED_PIXELS = 25_000_000L;
+
+  private static final LinkedHashMap<TileKey, Image> cache = new LinkedHashMap<>(256, 0.75f,
+      true);
+  private static long cachedPixels = 0;
+
+  private ImagePreviewCache() {
+  }
+
+  @Nullable
+  static synchronized Image get(@NotNull TileKey key) {
+    return cache.get(key);
+  }
+
+  static synchronized void put(@NotNull TileKey key, @NotNull Image image) {
+    final Image old = cache.put(key, image);
+    if (old != null) {
+      cachedPixels -= pixels(old);
+    }
+    cachedPixels += pixels(image);
+
+    // evict least recently used tiles
+    final Iterator<Entry<TileKey, Image>> iterator = cache.entrySet().iterator();
+    while (cachedPixels > MAX_CACHED_PIXELS && iterator.hasNext()) {
+      final Entry<TileKey, Image> eldest = iterator.next();
+      if (eldest.getKey().equals(key)) {
+        continue;
+      }
+      cachedPixels -= pixels(eldest.getValue());
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Releases all previews of features in this feature list
+   */
+  public static synchronized void remove(@NotNull FeatureList flist) {
+    removeIf(key -> key.feature().getFeatureList() == flist);
+  }
+
+  /**
+   * Releases all previews of features of this raw data file
+   */
+  public static synchronized void remove(@NotNull RawDataFile file) {
+    removeIf(key -> key.feature().getRawDataFile() == file);
+  }
+
+  private static void removeIf(Predicate<TileKey> filter) {
+    final Iterator<Entry<TileKey, Image>> iterator = cache.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Entry<TileKey, Image> entry = iterator.next();
+      if (filter.test(entry.getKey())) {
+        cachedPixels -= pixels(entry.getValue());
+        iterator.remove();
+      }
+    }
+  }
+
+  private static long pixels(Image image) {
+    return (long) image.getWidth() * (long) image.getHeight();
+  }
+
+  /**
+   * @param feature     the feature, compared by identity
+   * @param featureData the series of the feature, compared by identity
+   */
+  record TileKey(@NotNull ModularFeature feature, @Nullable Object featureData, int width,
+                 int height, boolean hideAxes) {
+
+    static TileKey of(@NotNull ModularFeature feature, double width, double height,
+        boolean hideAxes) {
+      return new TileKey(feature, feature.getFeatureData(), (int) width, (int) height, hideAxes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof TileKey k && feature == k.feature && featureData == k.featureData
+             && width == k.width && height == k.height && hideAxes == k.hideAxes;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = System.identityHashCode(feature);
+      result = 31 * result + System.identityHashCode(featureData);
+      result = 31 * result + width;
+      result = 31 * result + height;
+      return 31 * result + (hideAxes ? 1 : 0);
+    }
+  }
+}
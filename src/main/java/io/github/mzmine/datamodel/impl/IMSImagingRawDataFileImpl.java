@@ -28,6 +28,7 @@ package io.github.mzmine.datamodel.impl;
 import io.github.mzmine.datamodel.IMSImagingRawDataFile;
 import io.github.mzmine.datamodel.ImagingScan;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.ImagingMzIndex;
 import io.github.mzmine.modules.io.import_rawdata_imzml.Coordinates;
 import io.github.mzmine.modules.io.import_rawdata_imzml.ImagingParameters;
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
@@ -47,6 +48,10 @@ public class IMSImagingRawDataFileImpl extends IMSRawDataFileImpl implements IMS
   // TODO add ms level - one array for each level
   private Scan[][][] xyzScanNumbers;
 
+  // inverted m/z index, built on demand for the current number of scans
+  private ImagingMzIndex mzIndex;
+  private int mzIndexNumScans = -1;
+
 
   public IMSImagingRawDataFileImpl(String dataFileName, @Nullable final String absPath,
       @Nullable MemoryMapStorage storage) throws IOException {
@@ -140,4 +145,14 @@ public class IMSImagingRawDataFileImpl extends IMSRawDataFileImpl implements IMS
     }
     return xyzScanNumbers;
   }
+
+  @Override
+  public synchronized @Nullable ImagingMzIndex getMzIndex() {
+    // rebuild if scans were added
+    if (mzIndexNumScans != getNumOfScans()) {
+      mzIndexNumScans = getNumOfScans();
+      mzIndex = ImagingMzIndex.build(this);
+    }
+    return mzIndex;
+  }
 }
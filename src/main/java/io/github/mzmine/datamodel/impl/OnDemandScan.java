@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.impl;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.msms.MsMsInfo;
+import io.github.mzmine.util.DataPointUtils;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.DoubleBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A scan that only keeps its metadata in memory. The data points remain in the source file and are
+ * loaded on demand by a {@link SpectrumLoader}, which usually caches the recently used spectra. The
+ * m/z range, TIC, and base peak are either calculated once during creation or taken from the
+ * summary values of the source, e.g., the spectrum header in mzML.
+ */
+public class OnDemandScan extends SimpleScan {
+
+  private final @NotNull SpectrumLoader loader;
+  private final int numberOfDataPoints;
+  private final @Nullable Double basePeakMz;
+  private final @Nullable Double basePeakIntensity;
+  // fast access to the last loaded data points, the strong reference is held by the loader cache
+  private volatile WeakReference<double[][]> lastLoaded;
+
+  /**
+   * @param mzValues        the data points of this scan, only used to calculate the summary values
+   * @param intensityValues the data points of this scan, only used to calculate the summary values
+   * @param loader          loads the data points on demand
+   */
+  public OnDemandScan(@NotNull RawDataFile dataFile, int scanNumber, int msLevel,
+      float retentionTime, @Nullable MsMsInfo msMsInfo, double[] mzValues,
+      double[] intensityValues, MassSpectrumType spectrumType, PolarityType polarity,
+      String scanDefinition, Range<Double> scanMZRange, @Nullable Float injectionTime,
+      @NotNull SpectrumLoader loader) {
+    super(dataFile, scanNumber, msLevel, retentionTime, msMsInfo, null, null, spectrumType,
+        polarity, scanDefinition, scanMZRange, injectionTime);
+    this.loader = loader;
+
+    final double[][] data = DataPointUtils.ensureSortingMzAscendingDefault(mzValues,
+        intensityValues);
+    numberOfDataPoints = data[0].length;
+    lastLoaded = new WeakReference<>(data);
+    updateMzRangeAndTICValues();
+    basePeakMz = basePeakIndex == null ? null : data[0][basePeakIndex];
+    basePeakIntensity = basePeakIndex == null ? null : data[1][basePeakIndex];
+  }
+
+  /**
+   * Creates the scan from summary values without decoding the data points. The base peak index is
+   * only resolved when requested.
+   *
+   * @param numberOfDataPoints number of data points in the source
+   * @param dataPointMzRange   m/z range of the data points, null if there are no data points
+   * @param tic                total ion current
+   * @param basePeakMz         m/z of the base peak, null if there are no data points
+   * @param basePeakIntensity  intensity of the base peak, null if there are no data points
+   * @param loader             loads the data points on demand
+   */
+  public OnDemandScan(@NotNull RawDataFile dataFile, int scanNumber, int msLevel,
+      float retentionTime, @Nullable MsMsInfo msMsInfo, int numberOfDataPoints,
+      @Nullable Range<Double> dataPointMzRange, double tic, @Nullable Double basePeakMz,
+      @Nullable Double basePeakIntensity, MassSpectrumType spectrumType, PolarityType polarity,
+      String scanDefinition, Range<Double> scanMZRange, @Nullable Float injectionTime,
+      @NotNull SpectrumLoader loader) {
+    super(dataFile, scanNumber, msLevel, retentionTime, msMsInfo, null, null, spectrumType,
+        polarity, scanDefinition, scanMZRange, injectionTime);
+    this.loader = loader;
+    this.numberOfDataPoints = numberOfDataPoints;
+    this.basePeakMz = basePeakMz;
+    this.basePeakIntensity = basePeakIntensity;
+    lastLoaded = new WeakReference<>(null);
+    mzRange = dataPointMzRange;
+    totalIonCurrent = tic;
+  }
+
+  /**
+   * @return [mzs, intensities] sorted by m/z
+   */
+  private double[][] getDataPoints() {
+    double[][] data = lastLoaded.get();
+    if (data != null) {
+      return data;
+    }
+    try {
+      data = loader.loadDataPoints(this);
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Cannot load data points of scan " + getScanNumber() + " from " + getDataFile().getName(),
+          e);
+    }
+    lastLoaded = new WeakReference<>(data);
+    return data;
+  }
+
+  @Override
+  DoubleBuffer getMzValues() {
+    return DoubleBuffer.wrap(getDataPoints()[0]);
+  }
+
+  @Override
+  DoubleBuffer getIntensityValues() {
+    return DoubleBuffer.wrap(getDataPoints()[1]);
+  }
+
+  @Override
+  public double[] getMzValues(@NotNull double[] dst) {
+    return copyTo(getDataPoints()[0], dst);
+  }
+
+  @Override
+  public double[] getIntensityValues(@NotNull double[] dst) {
+    return copyTo(getDataPoints()[1], dst);
+  }
+
+  private double[] copyTo(double[] values, double[] dst) {
+    if (dst.length < numberOfDataPoints) {
+      dst = new double[numberOfDataPoints];
+    }
+    System.arraycopy(values, 0, dst, 0, numberOfDataPoints);
+    return dst;
+  }
+
+  @Override
+  public double getMzValue(int index) {
+    return getDataPoints()[0][index];
+  }
+
+  @Override
+  public double getIntensityValue(int index) {
+    return getDataPoints()[1][index];
+  }
+
+  @Override
+  public int getNumberOfDataPoints() {
+    return numberOfDataPoints;
+  }
+
+  @Override
+  public synchronized @Nullable Integer getBasePeakIndex() {
+    if (basePeakIndex == null && numberOfDataPoints > 0) {
+      // created from summary values, resolve the index of the highest data point on first access
+      final double[] intensities = getDataPoints()[1];
+      int index = 0;
+      for (int i = 1; i < intensities.length; i++) {
+        if (intensities[i] > intensities[index]) {
+          index = i;
+        }
+      }
+      basePeakIndex = index;
+    }
+    return basePeakIndex;
+  }
+
+  @Override
+  public @Nullable Double getBasePeakMz() {
+    return basePeakMz;
+  }
+
+  @Override
+  public @Nullable Double getBasePeakIntensity() {
+    return basePeakIntensity;
+  }
+
+  /**
+   * Loads the data points of a scan from its source.
+   */
+  @FunctionalInterface
+  public interface SpectrumLoader {
+
+    /**
+     * @return [mzs, intensities] sorted by m/z, see
+     * {@link DataPointUtils#ensureSortingMzAscendingDefault(double[], double[])}
+     */
+    double[][] loadDataPoints(@NotNull OnDemandScan scan) throws IOException;
+  }
+}
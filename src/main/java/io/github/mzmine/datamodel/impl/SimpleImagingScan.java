@@ -31,6 +31,7 @@ import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.io.import_rawdata_imzml.Coordinates;
+import java.nio.DoubleBuffer;
 
 
 public class SimpleImagingScan extends SimpleScan implements ImagingScan {
@@ -52,6 +53,25 @@ public class SimpleImagingScan extends SimpleScan implements ImagingScan {
     this.setCoordinates(coordinates);
   }
 
+  /**
+   * Creates a scan on already stored data, e.g., slices of a buffer that holds multiple scans.
+   *
+   * @param mzValues        stored m/z values, sorted ascending
+   * @param intensityValues stored intensity values
+   */
+  public SimpleImagingScan(RawDataFile dataFile, int scanNumber, int msLevel, float retentionTime,
+      double precursorMZ, int precursorCharge, DoubleBuffer mzValues, DoubleBuffer intensityValues,
+      MassSpectrumType spectrumType, PolarityType polarity, String scanDefinition,
+      Range<Double> scanMZRange, Coordinates coordinates) {
+    this(dataFile, scanNumber, msLevel, retentionTime, precursorMZ, precursorCharge,
+        (double[]) null, (double[]) null, spectrumType, polarity, scanDefinition, scanMZRange,
+        coordinates);
+    assert mzValues.capacity() == intensityValues.capacity();
+    this.mzValues = mzValues;
+    this.intensityValues = intensityValues;
+    updateMzRangeAndTICValues();
+  }
+
   /**
    * @return the xyz coordinates. null if no coordinates were specified
    */
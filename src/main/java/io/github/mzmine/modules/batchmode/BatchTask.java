@@ -34,6 +34,9 @@ import io.github.mzmine.modules.MZmineModuleCategory;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking.IonNetworkLibraryIndex;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidDatabaseIndex;
+import io.github.mzmine.modules.dataprocessing.id_localcsvsearch.LocalCSVDatabaseIndex;
 import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportParameters;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
@@ -120,7 +123,17 @@ public class BatchTask extends AbstractTask {
 
   @Override
   public void run() {
+    try {
+      processBatch();
+    } finally {
+      // cached databases are reused by the steps of a batch only
+      LocalCSVDatabaseIndex.clearCache();
+      LipidDatabaseIndex.clearCache();
+      IonNetworkLibraryIndex.clearCache();
+    }
+  }
 
+  private void processBatch() {
     setStatus(TaskStatus.PROCESSING);
     logger.info("Starting a batch of " + totalSteps + " steps");
 
@@ -36,9 +36,9 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.maths.StatisticalTests;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,10 +48,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import org.apache.commons.math3.distribution.FDistribution;
 import org.apache.commons.math3.exception.MathIllegalArgumentException;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 public class AnovaTask extends AbstractTask {
 
@@ -59,6 +57,8 @@ public class AnovaTask extends AbstractTask {
 
   private static final String P_VALUE_KEY = "ANOVA_P_VALUE";
 
+  private static final String Q_VALUE_KEY = "ANOVA_Q_VALUE";
+
   private Logger logger = Logger.getLogger(this.getClass().getName());
   private double finishedPercentage = 0.0;
 
@@ -120,25 +120,33 @@ public class AnovaTask extends AbstractTask {
     List<Set<RawDataFile>> groups = getGroups(userParameter);
 
     finishedPercentage = 0.0;
-    final double finishedStep = 1.0 / featureListRows.length;
-
-    for (FeatureListRow row : featureListRows) {
 
-      if (isCanceled()) {
-        break;
-      }
+    final double[] pValues = IntStream.range(0, featureListRows.length).parallel()
+        .mapToDouble(i -> {
+          if (isCanceled()) {
+            return Double.NaN;
+          }
+          final FeatureListRow row = featureListRows[i];
+          double[][] intensityGroups = new double[groups.size()][];
+          for (int g = 0; g < groups.size(); ++g) {
+            Set<RawDataFile> groupFiles = groups.get(g);
+            intensityGroups[g] = row.getFeatures().stream()
+                .filter(feature -> groupFiles.contains(feature.getRawDataFile()))
+                .mapToDouble(Feature::getHeight).toArray();
+          }
+          return oneWayAnova(intensityGroups);
+        }).toArray();
 
-      finishedPercentage += finishedStep;
+    if (isCanceled()) {
+      return;
+    }
+    finishedPercentage = 0.9;
 
-      double[][] intensityGroups = new double[groups.size()][];
-      for (int i = 0; i < groups.size(); ++i) {
-        Set<RawDataFile> groupFiles = groups.get(i);
-        intensityGroups[i] =
-            row.getFeatures().stream().filter(feature -> groupFiles.contains(feature.getRawDataFile()))
-                .mapToDouble(Feature::getHeight).toArray();
-      }
+    // false discovery rate over all tested rows
+    final double[] qValues = StatisticalTests.benjaminiHochberg(pValues);
 
-      Double pValue = oneWayAnova(intensityGroups);
+    for (int i = 0; i < featureListRows.length; i++) {
+      final FeatureListRow row = featureListRows[i];
 
       // Save results
       FeatureInformation featureInformation = row.getFeatureInformation();
@@ -146,9 +154,12 @@ public class AnovaTask extends AbstractTask {
         featureInformation = new SimpleFeatureInformation();
       }
       featureInformation.getAllProperties().put(P_VALUE_KEY,
-          pValue == null ? EMPTY_STRING : pValue.toString());
+          Double.isNaN(pValues[i]) ? EMPTY_STRING : String.valueOf(pValues[i]));
+      featureInformation.getAllProperties().put(Q_VALUE_KEY,
+          Double.isNaN(qValues[i]) ? EMPTY_STRING : String.valueOf(qValues[i]));
       row.setFeatureInformation(featureInformation);
     }
+    finishedPercentage = 1.0;
   }
 
   private List<Set<RawDataFile>> getGroups(UserParameter factor) {
@@ -179,50 +190,12 @@ public class AnovaTask extends AbstractTask {
     return groups;
   }
 
-  @Nullable
-  private Double oneWayAnova(@NotNull double[][] intensityGroups) {
-
-    int numGroups = intensityGroups.length;
-    long numIntensities = Arrays.stream(intensityGroups).flatMapToDouble(Arrays::stream).count();
-
-    double[] groupMeans = Arrays.stream(intensityGroups)
-        .mapToDouble(intensities -> Arrays.stream(intensities).average().orElse(0.0)).toArray();
-
-    double overallMean =
-        Arrays.stream(intensityGroups).flatMapToDouble(Arrays::stream).average().orElse(0.0);
-
-    double sumOfSquaresOfError = IntStream.range(0, intensityGroups.length).mapToDouble(
-        i -> Arrays.stream(intensityGroups[i]).map(x -> x - groupMeans[i]).map(x -> x * x).sum())
-        .sum();
-
-    double sumOfSquaresOfTreatment =
-        (numGroups - 1) * Arrays.stream(groupMeans).map(x -> x - overallMean).map(x -> x * x).sum();
-
-    long degreesOfFreedomOfTreatment = numGroups - 1;
-    long degreesOfFreedomOfError = numIntensities - numGroups;
-
-    if (degreesOfFreedomOfTreatment <= 0 || degreesOfFreedomOfError <= 0) {
-      return null;
-    }
-
-    double meanSquareOfTreatment = sumOfSquaresOfTreatment / degreesOfFreedomOfTreatment;
-    double meanSquareOfError = sumOfSquaresOfError / degreesOfFreedomOfError;
-
-    if (meanSquareOfError == 0.0) {
-      return null;
-    }
-
-    double anovaStatistics = meanSquareOfTreatment / meanSquareOfError;
-
-    Double pValue = null;
+  private double oneWayAnova(@NotNull double[][] intensityGroups) {
     try {
-      FDistribution distribution =
-          new FDistribution(degreesOfFreedomOfTreatment, degreesOfFreedomOfError);
-      pValue = 1.0 - distribution.cumulativeProbability(anovaStatistics);
+      return StatisticalTests.oneWayAnova(intensityGroups);
     } catch (MathIllegalArgumentException ex) {
       logger.warning("Error during F-distribution calculation: " + ex.getMessage());
+      return Double.NaN;
     }
-
-    return pValue;
   }
 }
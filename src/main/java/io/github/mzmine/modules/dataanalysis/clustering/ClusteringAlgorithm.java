@@ -27,10 +27,20 @@ package io.github.mzmine.modules.dataanalysis.clustering;
 
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.parameters.ParameterSet;
-import weka.core.Instances;
+import org.jetbrains.annotations.NotNull;
 
 public interface ClusteringAlgorithm extends MZmineModule {
 
-  public ClusteringResult performClustering(Instances dataset, ParameterSet parameters);
+  /**
+   * Clusters the rows of a matrix. Implementations may rescale the columns of the matrix in
+   * place.
+   *
+   * @param engine     runs the clustering and tracks its progress
+   * @param data       the rows to cluster, samples x features or features x samples
+   * @param names      the name of each row
+   * @param parameters the parameters of this algorithm
+   */
+  public ClusteringResult performClustering(@NotNull ClusteringEngine engine,
+      @NotNull double[][] data, @NotNull String[] names, @NotNull ParameterSet parameters);
 
 }
@@ -0,0 +1,613 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataanalysis.clustering;
+
+import io.github.mzmine.util.maths.clustering.Dendrogram;
+import io.github.mzmine.util.maths.clustering.HierarchicalClustering;
+import io.github.mzmine.util.maths.clustering.Linkage;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.ToDoubleBiFunction;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Clustering of the rows of a primitive matrix, either samples x features or features x samples:
+ * k-means with k-means++ seeding, mini-batch k-means, farthest-first traversal, Gaussian mixtures
+ * fitted by expectation maximization and hierarchical clustering. Assignments run in parallel over
+ * rows, center updates in parallel over feature blocks, so no copy of the matrix is needed.
+ * <p>
+ * One engine instance tracks the progress and cancellation of one clustering. A canceled
+ * clustering returns its current state.
+ */
+public class ClusteringEngine {
+
+  private static final int FEATURE_BLOCK = 256;
+  /**
+   * Mini-batch k-means is seeded on a random subset of this many batches.
+   */
+  private static final int SEEDING_BATCHES = 3;
+  /**
+   * Gaussian mixtures with up to this many components are compared.
+   */
+  private static final int MAX_MIXTURE_COMPONENTS = 20;
+  /**
+   * Lower limit of the variance of each mixture component relative to the total variance.
+   */
+  private static final double MIN_RELATIVE_VARIANCE = 1e-6;
+
+  private final long seed;
+  private volatile double progress = 0d;
+  private volatile boolean canceled = false;
+
+  public ClusteringEngine() {
+    this(42L);
+  }
+
+  public ClusteringEngine(long seed) {
+    this.seed = seed;
+  }
+
+  public double getProgress() {
+    return progress;
+  }
+
+  public void cancel() {
+    canceled = true;
+  }
+
+  public boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * Scales each column to the range 0 to 1, like the normalized distances of Weka. Constant columns
+   * are set to zero.
+   */
+  public static void normalizeRanges(@NotNull double[][] data) {
+    final int rows = data.length;
+    if (rows == 0) {
+      return;
+    }
+    IntStream.range(0, data[0].length).parallel().forEach(col -> {
+      double min = Double.POSITIVE_INFINITY;
+      double max = Double.NEGATIVE_INFINITY;
+      for (double[] row : data) {
+        min = Math.min(min, row[col]);
+        max = Math.max(max, row[col]);
+      }
+      final double range = max - min;
+      for (double[] row : data) {
+        row[col] = range > 0d && Double.isFinite(range) ? (row[col] - min) / range : 0d;
+      }
+    });
+  }
+
+  /**
+   * K-means clustering (Lloyd's algorithm) with k-means++ seeding.
+   *
+   * @param data          the rows to cluster
+   * @param k             number of clusters
+   * @param maxIterations maximum number of iterations
+   * @return the cluster of each row
+   */
+  public int[] kMeans(@NotNull double[][] data, int k, int maxIterations) {
+    final int n = data.length;
+    k = Math.min(k, n);
+    if (k <= 1) {
+      return new int[n];
+    }
+    final SplittableRandom random = new SplittableRandom(seed);
+    final double[][] centers = seedKMeansPlusPlus(data, IntStream.range(0, n).toArray(), k,
+        random);
+    final int[] labels = new int[n];
+    Arrays.fill(labels, -1);
+    final double[] distances = new double[n];
+
+    for (int it = 0; it < maxIterations && !canceled; it++) {
+      int changed = assign(data, centers, labels, distances);
+      changed += updateCenters(data, labels, distances, centers);
+      progress = (double) (it + 1) / maxIterations;
+      if (changed == 0) {
+        break;
+      }
+    }
+    progress = 1d;
+    return compactLabels(labels);
+  }
+
+  /**
+   * Mini-batch k-means (Sculley 2010). Each iteration moves the centers towards a random batch of
+   * rows with per-center learning rates. The final clusters are assigned to all rows.
+   *
+   * @param data       the rows to cluster
+   * @param k          number of clusters
+   * @param batchSize  number of rows per batch
+   * @param iterations number of batches
+   * @return the cluster of each row
+   */
+  public int[] miniBatchKMeans(@NotNull double[][] data, int k, int batchSize, int iterations) {
+    final int n = data.length;
+    k = Math.min(k, n);
+    if (k <= 1) {
+      return new int[n];
+    }
+    final int p = data[0].length;
+    final SplittableRandom random = new SplittableRandom(seed);
+    final int[] seedingRows = sampleRows(n, Math.max(k, SEEDING_BATCHES * batchSize), random);
+    final double[][] centers = seedKMeansPlusPlus(data, seedingRows, k, random);
+
+    final int[] counts = new int[k];
+    final int[] batch = new int[Math.min(batchSize, n)];
+    final int[] batchLabels = new int[batch.length];
+    final double[] learningRates = new double[batch.length];
+    for (int it = 0; it < iterations && !canceled; it++) {
+      for (int b = 0; b < batch.length; b++) {
+        batch[b] = random.nextInt(n);
+      }
+      IntStream.range(0, batch.length).parallel()
+          .forEach(b -> batchLabels[b] = nearestCenter(data[batch[b]], centers, null, 0));
+      for (int b = 0; b < batch.length; b++) {
+        learningRates[b] = 1d / ++counts[batchLabels[b]];
+      }
+      // the updates of one batch are applied in batch order, independently per feature block
+      IntStream.range(0, (p + FEATURE_BLOCK - 1) / FEATURE_BLOCK).parallel().forEach(block -> {
+        final int start = block * FEATURE_BLOCK;
+        final int end = Math.min(p, start + FEATURE_BLOCK);
+        for (int b = 0; b < batch.length; b++) {
+          final double[] center = centers[batchLabels[b]];
+          final double[] row = data[batch[b]];
+          final double rate = learningRates[b];
+          for (int j = start; j < end; j++) {
+            center[j] += rate * (row[j] - center[j]);
+          }
+        }
+      });
+      progress = 0.9 * (it + 1) / iterations;
+    }
+
+    final int[] labels = new int[n];
+    assign(data, centers, labels, new double[n]);
+    progress = 1d;
+    return compactLabels(labels);
+  }
+
+  /**
+   * Farthest-first traversal (Hochbaum and Shmoys 1985): starting from a random row, the row
+   * farthest from all previous centers becomes the next center. Each row is assigned to its
+   * nearest center.
+   *
+   * @param data the rows to cluster
+   * @param k    number of clusters
+   * @return the cluster of each row
+   */
+  public int[] farthestFirst(@NotNull double[][] data, int k) {
+    final int n = data.length;
+    k = Math.min(k, n);
+    if (k <= 1) {
+      return new int[n];
+    }
+    final SplittableRandom random = new SplittableRandom(seed);
+    final int[] labels = new int[n];
+    final double[] distances = new double[n];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+
+    int next = random.nextInt(n);
+    for (int c = 0; c < k && !canceled; c++) {
+      final double[] center = data[next];
+      final int label = c;
+      IntStream.range(0, n).parallel().forEach(i -> {
+        final double d = squaredDistance(data[i], center);
+        if (d < distances[i]) {
+          distances[i] = d;
+          labels[i] = label;
+        }
+      });
+      next = argMax(distances);
+      progress = (double) (c + 1) / k;
+    }
+    return compactLabels(labels);
+  }
+
+  /**
+   * Gaussian mixture models with diagonal covariances, fitted by expectation maximization from
+   * k-means starts. The number of components is increased while the Bayesian information criterion
+   * improves. Rows are assigned to the component of highest posterior probability.
+   *
+   * @param data          the rows to cluster
+   * @param maxIterations maximum number of EM iterations per number of components
+   * @return the cluster of each row
+   */
+  public int[] expectationMaximization(@NotNull double[][] data, int maxIterations) {
+    final int n = data.length;
+    if (n < 2) {
+      return new int[n];
+    }
+    final int p = data[0].length;
+    final double[] minVariances = new double[p];
+    IntStream.range(0, p).parallel().forEach(j -> {
+      double mean = 0d;
+      double s = 0d;
+      for (int i = 0; i < n; i++) {
+        final double delta = data[i][j] - mean;
+        mean += delta / (i + 1);
+        s += delta * (data[i][j] - mean);
+      }
+      minVariances[j] = Math.max(MIN_RELATIVE_VARIANCE * s / n, 1e-12);
+    });
+
+    final int maxComponents = Math.min(MAX_MIXTURE_COMPONENTS, n);
+    int[] bestLabels = new int[n];
+    double bestBic = Double.POSITIVE_INFINITY;
+    for (int k = 1; k <= maxComponents && !canceled; k++) {
+      final int[] labels = new int[n];
+      final double logLikelihood = fitMixture(data, k, maxIterations, minVariances, labels);
+      final double parameters = k * 2d * p + k - 1;
+      final double bic = -2d * logLikelihood + parameters * Math.log(n);
+      progress = (double) k / maxComponents;
+      if (bic >= bestBic) {
+        break;
+      }
+      bestBic = bic;
+      bestLabels = labels;
+    }
+    progress = 1d;
+    return compactLabels(bestLabels);
+  }
+
+  /**
+   * Agglomerative hierarchical clustering, see
+   * {@link HierarchicalClustering#cluster(double[], int, Linkage)}. Needs memory for all n(n-1)/2
+   * pairwise distances.
+   *
+   * @param data    the rows to cluster
+   * @param metric  distance of two rows
+   * @param linkage the linkage criterion
+   * @return the dendrogram of the rows
+   */
+  public Dendrogram hierarchical(@NotNull double[][] data,
+      @NotNull ToDoubleBiFunction<double[], double[]> metric, @NotNull Linkage linkage) {
+    final double[] distances = HierarchicalClustering.distances(data, metric);
+    progress = 0.5;
+    final Dendrogram dendrogram = HierarchicalClustering.cluster(distances, data.length, linkage);
+    progress = 1d;
+    return dendrogram;
+  }
+
+  /**
+   * @return the number of clusters of compact labels
+   */
+  public static int getNumberOfClusters(@NotNull int[] labels) {
+    int max = -1;
+    for (int label : labels) {
+      max = Math.max(max, label);
+    }
+    return max + 1;
+  }
+
+  /**
+   * Fits one mixture and stores the most probable component of each row in labels.
+   *
+   * @return the log likelihood
+   */
+  private double fitMixture(double[][] data, int k, int maxIterations, double[] minVariances,
+      int[] labels) {
+    final int n = data.length;
+    final int p = data[0].length;
+    final double[][] responsibilities = new double[n][k];
+    if (k == 1) {
+      for (double[] r : responsibilities) {
+        r[0] = 1d;
+      }
+    } else {
+      final int[] start = kMeans(data, k, 10);
+      for (int i = 0; i < n; i++) {
+        responsibilities[i][start[i]] = 1d;
+      }
+    }
+
+    final double[] weights = new double[k];
+    final double[][] means = new double[k][p];
+    final double[][] variances = new double[k][p];
+    final double[] rowLikelihoods = new double[n];
+    double logLikelihood = Double.NEGATIVE_INFINITY;
+    for (int it = 0; it < Math.max(1, maxIterations) && !canceled; it++) {
+      // M step
+      final double[] sums = new double[k];
+      for (double[] r : responsibilities) {
+        for (int c = 0; c < k; c++) {
+          sums[c] += r[c];
+        }
+      }
+      for (int c = 0; c < k; c++) {
+        weights[c] = Math.max(sums[c], 1e-12) / n;
+      }
+      IntStream.range(0, (p + FEATURE_BLOCK - 1) / FEATURE_BLOCK).parallel().forEach(block -> {
+        final int startColumn = block * FEATURE_BLOCK;
+        final int end = Math.min(p, startColumn + FEATURE_BLOCK);
+        for (int c = 0; c < k; c++) {
+          final double[] mean = means[c];
+          final double[] variance = variances[c];
+          Arrays.fill(mean, startColumn, end, 0d);
+          Arrays.fill(variance, startColumn, end, 0d);
+          for (int i = 0; i < n; i++) {
+            final double r = responsibilities[i][c];
+            for (int j = startColumn; j < end; j++) {
+              mean[j] += r * data[i][j];
+            }
+          }
+          final double sum = Math.max(sums[c], 1e-12);
+          for (int j = startColumn; j < end; j++) {
+            mean[j] /= sum;
+          }
+          for (int i = 0; i < n; i++) {
+            final double r = responsibilities[i][c];
+            for (int j = startColumn; j < end; j++) {
+              final double delta = data[i][j] - mean[j];
+              variance[j] += r * delta * delta;
+            }
+          }
+          for (int j = startColumn; j < end; j++) {
+            variance[j] = Math.max(variance[j] / sum, minVariances[j]);
+          }
+        }
+      });
+
+      // E step
+      final double[] normalization = new double[k];
+      for (int c = 0; c < k; c++) {
+        double logDeterminant = 0d;
+        for (int j = 0; j < p; j++) {
+          logDeterminant += Math.log(2d * Math.PI * variances[c][j]);
+        }
+        normalization[c] = Math.log(weights[c]) - 0.5 * logDeterminant;
+      }
+      IntStream.range(0, n).parallel().forEach(i -> {
+        final double[] row = data[i];
+        final double[] r = responsibilities[i];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+          double sum = 0d;
+          for (int j = 0; j < p; j++) {
+            final double delta = row[j] - means[c][j];
+            sum += delta * delta / variances[c][j];
+          }
+          r[c] = normalization[c] - 0.5 * sum;
+          max = Math.max(max, r[c]);
+        }
+        double total = 0d;
+        for (int c = 0; c < k; c++) {
+          r[c] = Math.exp(r[c] - max);
+          total += r[c];
+        }
+        for (int c = 0; c < k; c++) {
+          r[c] /= total;
+        }
+        rowLikelihoods[i] = max + Math.log(total);
+      });
+
+      final double previous = logLikelihood;
+      logLikelihood = Arrays.stream(rowLikelihoods).sum();
+      if (logLikelihood - previous < 1e-6 * Math.abs(logLikelihood)) {
+        break;
+      }
+    }
+
+    for (int i = 0; i < n; i++) {
+      labels[i] = argMax(responsibilities[i]);
+    }
+    return logLikelihood;
+  }
+
+  /**
+   * Greedy k-means++ seeding (Arthur and Vassilvitskii 2007) from a subset of rows: candidates for
+   * each further center are drawn with probability proportional to the squared distance to the
+   * nearest center, the candidate that reduces the total squared distance most is kept.
+   */
+  private double[][] seedKMeansPlusPlus(double[][] data, int[] rows, int k,
+      SplittableRandom random) {
+    final int candidates = 2 + (int) Math.log(k);
+    final double[][] centers = new double[k][];
+    double[] distances = new double[rows.length];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    int next = rows[random.nextInt(rows.length)];
+    for (int c = 0; c < k; c++) {
+      centers[c] = data[next].clone();
+      if (c == k - 1) {
+        break;
+      }
+      distances = updateDistances(data, rows, distances, centers[c]);
+      final double total = Arrays.stream(distances).sum();
+      if (!(total > 0d) || !Double.isFinite(total)) {
+        next = rows[random.nextInt(rows.length)];
+        continue;
+      }
+
+      double bestPotential = Double.POSITIVE_INFINITY;
+      for (int candidate = 0; candidate < candidates; candidate++) {
+        double target = random.nextDouble() * total;
+        int m = 0;
+        while (m < rows.length - 1 && (target -= distances[m]) > 0d) {
+          m++;
+        }
+        final double potential = Arrays.stream(
+            updateDistances(data, rows, distances, data[rows[m]])).sum();
+        if (potential < bestPotential) {
+          bestPotential = potential;
+          next = rows[m];
+        }
+      }
+    }
+    return centers;
+  }
+
+  /**
+   * @return the squared distances of the rows to the nearest center including a new center
+   */
+  private static double[] updateDistances(double[][] data, int[] rows, double[] distances,
+      double[] center) {
+    final double[] updated = new double[rows.length];
+    IntStream.range(0, rows.length).parallel().forEach(
+        m -> updated[m] = Math.min(distances[m], squaredDistance(data[rows[m]], center)));
+    return updated;
+  }
+
+  /**
+   * Assigns each row to its nearest center in parallel.
+   *
+   * @return the number of changed assignments
+   */
+  private static int assign(double[][] data, double[][] centers, int[] labels,
+      double[] distances) {
+    return IntStream.range(0, data.length).parallel().map(i -> {
+      final int label = nearestCenter(data[i], centers, distances, i);
+      final int changed = labels[i] != label ? 1 : 0;
+      labels[i] = label;
+      return changed;
+    }).sum();
+  }
+
+  /**
+   * Moves each center to the mean of its rows, in parallel over feature blocks. Empty clusters are
+   * restarted at the row farthest from its center.
+   *
+   * @return the number of rows that were moved to restarted clusters
+   */
+  private static int updateCenters(double[][] data, int[] labels, double[] distances,
+      double[][] centers) {
+    final int k = centers.length;
+    final int p = centers[0].length;
+    final int[] counts = new int[k];
+    for (int label : labels) {
+      counts[label]++;
+    }
+    IntStream.range(0, (p + FEATURE_BLOCK - 1) / FEATURE_BLOCK).parallel().forEach(block -> {
+      final int start = block * FEATURE_BLOCK;
+      final int end = Math.min(p, start + FEATURE_BLOCK);
+      for (int c = 0; c < k; c++) {
+        if (counts[c] > 0) {
+          Arrays.fill(centers[c], start, end, 0d);
+        }
+      }
+      for (int i = 0; i < data.length; i++) {
+        final double[] center = centers[labels[i]];
+        final double[] row = data[i];
+        for (int j = start; j < end; j++) {
+          center[j] += row[j];
+        }
+      }
+      for (int c = 0; c < k; c++) {
+        if (counts[c] > 0) {
+          for (int j = start; j < end; j++) {
+            centers[c][j] /= counts[c];
+          }
+        }
+      }
+    });
+
+    int restarted = 0;
+    for (int c = 0; c < k; c++) {
+      if (counts[c] == 0) {
+        final int farthest = argMax(distances);
+        centers[c] = data[farthest].clone();
+        labels[farthest] = c;
+        distances[farthest] = 0d;
+        restarted++;
+      }
+    }
+    return restarted;
+  }
+
+  /**
+   * @param distances stores the squared distance to the nearest center at index if not null
+   */
+  private static int nearestCenter(double[] row, double[][] centers, double[] distances,
+      int index) {
+    int nearest = 0;
+    double min = Double.POSITIVE_INFINITY;
+    for (int c = 0; c < centers.length; c++) {
+      final double d = squaredDistance(row, centers[c]);
+      if (d < min) {
+        min = d;
+        nearest = c;
+      }
+    }
+    if (distances != null) {
+      distances[index] = min;
+    }
+    return nearest;
+  }
+
+  private static int[] sampleRows(int n, int size, SplittableRandom random) {
+    if (size >= n) {
+      return IntStream.range(0, n).toArray();
+    }
+    // partial Fisher-Yates shuffle
+    final int[] rows = IntStream.range(0, n).toArray();
+    for (int i = 0; i < size; i++) {
+      final int j = i + random.nextInt(n - i);
+      final int tmp = rows[i];
+      rows[i] = rows[j];
+      rows[j] = tmp;
+    }
+    return Arrays.copyOf(rows, size);
+  }
+
+  /**
+   * Renumbers the clusters in order of their first row, which removes empty clusters.
+   */
+  private static int[] compactLabels(int[] labels) {
+    final int[] newLabels = new int[getNumberOfClusters(labels)];
+    Arrays.fill(newLabels, -1);
+    int next = 0;
+    for (int i = 0; i < labels.length; i++) {
+      if (newLabels[labels[i]] == -1) {
+        newLabels[labels[i]] = next++;
+      }
+      labels[i] = newLabels[labels[i]];
+    }
+    return labels;
+  }
+
+  private static int argMax(double[] values) {
+    int index = 0;
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] > values[index]) {
+        index = i;
+      }
+    }
+    return index;
+  }
+
+  private static double squaredDistance(double[] a, double[] b) {
+    double sum = 0d;
+    for (int j = 0; j < a.length; j++) {
+      final double delta = a[j] - b[j];
+      sum += delta * delta;
+    }
+    return sum;
+  }
+}
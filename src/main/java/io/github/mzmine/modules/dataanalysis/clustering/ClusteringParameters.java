@@ -29,6 +29,7 @@ import io.github.mzmine.datamodel.AbundanceMeasure;
 import io.github.mzmine.modules.dataanalysis.clustering.em.EMClusterer;
 import io.github.mzmine.modules.dataanalysis.clustering.farthestfirst.FarthestFirstClusterer;
 import io.github.mzmine.modules.dataanalysis.clustering.hierarchical.HierarClusterer;
+import io.github.mzmine.modules.dataanalysis.clustering.minibatchkmeans.MiniBatchKMeansClusterer;
 import io.github.mzmine.modules.dataanalysis.clustering.simplekmeans.SimpleKMeansClusterer;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
@@ -59,7 +60,7 @@ public class ClusteringParameters extends SimpleParameterSet {
       ClusteringDataType.values());
   private static final ClusteringAlgorithm[] algorithms = new ClusteringAlgorithm[]{
       new EMClusterer(), new FarthestFirstClusterer(), new SimpleKMeansClusterer(),
-      new HierarClusterer()};
+      new MiniBatchKMeansClusterer(), new HierarClusterer()};
   public static final ModuleComboParameter<ClusteringAlgorithm> clusteringAlgorithm = new ModuleComboParameter<ClusteringAlgorithm>(
       "Clustering algorithm", "Select the algorithm you want to use for clustering", algorithms,
       algorithms[0]);
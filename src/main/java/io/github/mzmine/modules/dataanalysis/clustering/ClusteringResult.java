@@ -25,7 +25,9 @@
 
 package io.github.mzmine.modules.dataanalysis.clustering;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.util.List;
+import org.jetbrains.annotations.NotNull;
 
 public class ClusteringResult {
 
@@ -42,6 +44,14 @@ public class ClusteringResult {
     this.visualizationType = visualizationType;
   }
 
+  /**
+   * @param clusters the cluster of each element, numbered from 0 without gaps
+   */
+  public ClusteringResult(@NotNull int[] clusters, VisualizationType visualizationType) {
+    this(IntArrayList.wrap(clusters), null, ClusteringEngine.getNumberOfClusters(clusters),
+        visualizationType);
+  }
+
   public List<Integer> getClusters() {
     return clusters;
   }
@@ -34,6 +34,7 @@ import io.github.mzmine.gui.chartbasics.simplechart.datasets.AbstractTaskXYDatas
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.dataanalysis.clustering.hierarchical.HierarClusterer;
+import io.github.mzmine.modules.dataanalysis.projectionplots.ProjectionEngine;
 import io.github.mzmine.modules.dataanalysis.projectionplots.ProjectionPlotDataset;
 import io.github.mzmine.modules.dataanalysis.projectionplots.ProjectionPlotWindow;
 import io.github.mzmine.parameters.ParameterSet;
@@ -41,7 +42,6 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import java.text.DecimalFormat;
 import java.util.List;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import javafx.application.Platform;
 import javafx.embed.swing.SwingNode;
 import javafx.scene.Scene;
@@ -49,15 +49,6 @@ import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 import javax.swing.SwingUtilities;
-import jmprojection.PCA;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
-import jmprojection.Sammons;
-import weka.core.Attribute;
-import weka.core.FastVector;
-import weka.core.Instance;
-import weka.core.Instances;
-import weka.core.SparseInstance;
 import weka.gui.hierarchyvisualizer.HierarchyVisualizer;
 
 public class ClusteringTask extends AbstractTaskXYDataset implements ProjectionPlotDataset {
@@ -78,11 +69,10 @@ public class ClusteringTask extends AbstractTaskXYDataset implements ProjectionP
   private final String datasetTitle;
   private final int xAxisDimension = 1;
   private final int yAxisDimension = 2;
-  private ProjectionStatus projectionStatus;
   private final MZmineProcessingStep<ClusteringAlgorithm> clusteringStep;
   private final ClusteringDataType typeOfData;
-  private Instances dataset;
-  private int progress;
+  private final ClusteringEngine clusteringEngine = new ClusteringEngine();
+  private final ProjectionEngine projectionEngine = new ProjectionEngine();
   private final FeatureList featureList;
 
   public ClusteringTask(ParameterSet parameters) {
@@ -193,54 +183,37 @@ public class ClusteringTask extends AbstractTaskXYDataset implements ProjectionP
 
     logger.info("Clustering");
 
+    // Matrix of samples or metabolites (variables) with the names of its rows
     double[][] rawData;
-
-    // Creating weka dataset using samples or metabolites (variables)
-
+    String[] names;
     if (typeOfData == ClusteringDataType.VARIABLES) {
       rawData = createMatrix(false);
-      dataset = createVariableWekaDataset(rawData);
+      names = createVariableNames();
     } else {
       rawData = createMatrix(true);
-      dataset = createSampleWekaDataset(rawData);
+      names = new String[selectedRawDataFiles.length];
+      for (int i = 0; i < selectedRawDataFiles.length; i++) {
+        names[i] = selectedRawDataFiles[i].getName();
+      }
     }
 
     // Run the clustering algorithm
     ClusteringAlgorithm clusteringAlgorithm = clusteringStep.getModule();
     ParameterSet clusteringParameters = clusteringStep.getParameterSet();
-    ClusteringResult result = clusteringAlgorithm.performClustering(dataset, clusteringParameters);
-
-    String cluster = "";
-    if (clusteringAlgorithm.getName().equals("Hierarchical clusterer")) {
-      progress = 0;
-      // Getting the result of the clustering in Newick format
-      cluster = result.getHiearchicalCluster();
-
-      // Getting the number of clusters counting the number of times the
-      // word "cluster" is in the result
-      Pattern p = Pattern.compile("Cluster", Pattern.LITERAL | Pattern.CASE_INSENSITIVE);
-      int numberOfClusters = p.split(cluster, -1).length - 1;
-      if (numberOfClusters == 0) {
-        numberOfClusters = 1;
-      }
+    ClusteringResult result = clusteringAlgorithm.performClustering(clusteringEngine, rawData,
+        names, clusteringParameters);
+    if (isCanceled()) {
+      return;
+    }
+
+    if (clusteringAlgorithm instanceof HierarClusterer) {
+      // One line with the cluster name and one with its tree in Newick format per cluster
+      String[] lines = result.getHiearchicalCluster().split("\n");
 
       // Visualization window for each cluster
-      for (int i = 0; i < numberOfClusters; i++) {
-        String c = null;
-        String clusterNumber = "Cluster " + i;
-        if (cluster.indexOf(clusterNumber) > 0) {
-          int nextNumber = i + 1;
-          String clusterNumber2 = "Cluster " + nextNumber;
-
-          if (cluster.indexOf(clusterNumber2) < 0) {
-            c = cluster.substring(cluster.indexOf(clusterNumber) + clusterNumber.length());
-          } else {
-            c = cluster.substring(cluster.indexOf(clusterNumber) + clusterNumber.length(),
-                cluster.indexOf(clusterNumber2));
-          }
-        } else {
-          c = cluster;
-        }
+      for (int i = 0; i + 1 < lines.length; i += 2) {
+        String clusterNumber = lines[i];
+        String c = lines[i + 1];
 
         HierarchyVisualizer visualizer = new HierarchyVisualizer(c);
         SwingNode sn = new SwingNode();
@@ -269,7 +242,6 @@ public class ClusteringTask extends AbstractTaskXYDataset implements ProjectionP
         }
 
       }
-      progress = 100;
     } else {
 
       List<Integer> clusteringResult = result.getClusters();
@@ -328,34 +300,26 @@ public class ClusteringTask extends AbstractTaskXYDataset implements ProjectionP
 
       if (result.getVisualizationType() == VisualizationType.PCA) {
         // Scale data and do PCA
-        Preprocess.scaleToUnityVariance(rawData);
-        PCA pcaProj = new PCA(rawData, numComponents);
-        projectionStatus = pcaProj.getProjectionStatus();
-
-        double[][] pcaResult = pcaProj.getState();
+        ProjectionEngine.scaleToUnityVariance(rawData);
+        double[][] pcaResult = projectionEngine.pca(rawData, numComponents);
 
         if (isCanceled()) {
           return;
         }
 
-        component1Coords = pcaResult[xAxisDimension - 1];
-        component2Coords = pcaResult[yAxisDimension - 1];
+        component1Coords = ProjectionEngine.getColumn(pcaResult, xAxisDimension - 1);
+        component2Coords = ProjectionEngine.getColumn(pcaResult, yAxisDimension - 1);
       } else if (result.getVisualizationType() == VisualizationType.SAMMONS) {
         // Scale data and do Sammon's mapping
-        Preprocess.scaleToUnityVariance(rawData);
-        Sammons sammonsProj = new Sammons(rawData);
-        projectionStatus = sammonsProj.getProjectionStatus();
-
-        sammonsProj.iterate(100);
-
-        double[][] sammonsResult = sammonsProj.getState();
+        ProjectionEngine.scaleToUnityVariance(rawData);
+        double[][] sammonsResult = projectionEngine.sammon(rawData, numComponents, 100);
 
         if (isCanceled()) {
           return;
         }
 
-        component1Coords = sammonsResult[xAxisDimension - 1];
-        component2Coords = sammonsResult[yAxisDimension - 1];
+        component1Coords = ProjectionEngine.getColumn(sammonsResult, xAxisDimension - 1);
+        component2Coords = ProjectionEngine.getColumn(sammonsResult, yAxisDimension - 1);
       }
 
       if (!MZmineCore.isHeadLessMode()) {
@@ -426,82 +390,23 @@ public class ClusteringTask extends AbstractTaskXYDataset implements ProjectionP
   }
 
   /**
-   * Creates the weka data set for clustering of samples
-   *
-   * @param rawData Data extracted from selected Raw data files and rows.
-   * @return Weka library data set
+   * Names of the selected rows for the clustering of variables (metabolites)
    */
-  private Instances createSampleWekaDataset(double[][] rawData) {
-    FastVector attributes = new FastVector();
-
-    for (int i = 0; i < rawData[0].length; i++) {
-      String varName = "Var" + i;
-      Attribute var = new Attribute(varName);
-      attributes.addElement(var);
-    }
-
-    if (clusteringStep.getModule().getClass().equals(HierarClusterer.class)) {
-      Attribute name = new Attribute("name", (FastVector) null);
-      attributes.addElement(name);
-    }
-    Instances data = new Instances("Dataset", attributes, 0);
-
-    for (int i = 0; i < rawData.length; i++) {
-      double[] values = new double[data.numAttributes()];
-      System.arraycopy(rawData[i], 0, values, 0, rawData[0].length);
-      if (clusteringStep.getModule().getClass().equals(HierarClusterer.class)) {
-        values[data.numAttributes() - 1] = data.attribute("name")
-            .addStringValue(this.selectedRawDataFiles[i].getName());
-      }
-      Instance inst = new SparseInstance(1.0, values);
-      data.add(inst);
-    }
-    return data;
-  }
-
-  /**
-   * Creates the weka data set for clustering of variables (metabolites)
-   *
-   * @param rawData Data extracted from selected Raw data files and rows.
-   * @return Weka library data set
-   */
-  private Instances createVariableWekaDataset(double[][] rawData) {
-    FastVector attributes = new FastVector();
-
-    for (int i = 0; i < this.selectedRawDataFiles.length; i++) {
-      String varName = "Var" + i;
-      Attribute var = new Attribute(varName);
-      attributes.addElement(var);
-    }
-
-    if (clusteringStep.getModule().getClass().equals(HierarClusterer.class)) {
-      Attribute name = new Attribute("name", (FastVector) null);
-      attributes.addElement(name);
-    }
-    Instances data = new Instances("Dataset", attributes, 0);
-
+  private String[] createVariableNames() {
+    String[] names = new String[selectedRows.length];
+    DecimalFormat twoDForm = new DecimalFormat("#.##");
     for (int i = 0; i < selectedRows.length; i++) {
-      double[] values = new double[data.numAttributes()];
-      System.arraycopy(rawData[i], 0, values, 0, rawData[0].length);
-
-      if (clusteringStep.getModule().getClass().equals(HierarClusterer.class)) {
-        DecimalFormat twoDForm = new DecimalFormat("#.##");
-        double MZ = Double.valueOf(twoDForm.format(selectedRows[i].getAverageMZ()));
-        double RT = Double.valueOf(twoDForm.format(selectedRows[i].getAverageRT()));
-        String rowName = "MZ->" + MZ + "/RT->" + RT;
-        values[data.numAttributes() - 1] = data.attribute("name").addStringValue(rowName);
-      }
-      Instance inst = new SparseInstance(1.0, values);
-      data.add(inst);
+      double MZ = Double.valueOf(twoDForm.format(selectedRows[i].getAverageMZ()));
+      double RT = Double.valueOf(twoDForm.format(selectedRows[i].getAverageRT()));
+      names[i] = "MZ->" + MZ + "/RT->" + RT;
     }
-    return data;
+    return names;
   }
 
   @Override
   public void cancel() {
-    if (projectionStatus != null) {
-      projectionStatus.cancel();
-    }
+    clusteringEngine.cancel();
+    projectionEngine.cancel();
     super.cancel();
   }
 
@@ -512,18 +417,11 @@ public class ClusteringTask extends AbstractTaskXYDataset implements ProjectionP
 
   @Override
   public double getFinishedPercentage() {
-    if (this.projectionStatus != null) {
-      if (projectionStatus.getFinishedPercentage() > 1.0) {
-        return 1.0;
-      }
-      return projectionStatus.getFinishedPercentage();
-    } else {
-      if (progress > 100) {
-        return 1.0;
-      }
-      progress++;
-      return ((double) progress / 100);
+    if (clusteringStep.getModule() instanceof HierarClusterer) {
+      return clusteringEngine.getProgress();
     }
+    // clustering and projection for the visualization
+    return (clusteringEngine.getProgress() + projectionEngine.getProgress()) / 2;
   }
 
 }
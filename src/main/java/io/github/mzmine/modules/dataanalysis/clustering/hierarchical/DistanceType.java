@@ -39,4 +39,32 @@ public enum DistanceType {
     return this.name;
   }
 
+  /**
+   * Minkowski distances use Weka's default order of 2.
+   */
+  public double distance(double[] a, double[] b) {
+    double sum = 0d;
+    return switch (this) {
+      case EUCLIDIAN, MINKOWSKI -> {
+        for (int j = 0; j < a.length; j++) {
+          final double delta = a[j] - b[j];
+          sum += delta * delta;
+        }
+        yield Math.sqrt(sum);
+      }
+      case CHEBYSHEV -> {
+        for (int j = 0; j < a.length; j++) {
+          sum = Math.max(sum, Math.abs(a[j] - b[j]));
+        }
+        yield sum;
+      }
+      case MANHATTAN -> {
+        for (int j = 0; j < a.length; j++) {
+          sum += Math.abs(a[j] - b[j]);
+        }
+        yield sum;
+      }
+    };
+  }
+
 }
@@ -25,22 +25,24 @@
 
 package io.github.mzmine.modules.dataanalysis.clustering.hierarchical;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import org.jetbrains.annotations.NotNull;
-
 import io.github.mzmine.modules.dataanalysis.clustering.ClusteringAlgorithm;
+import io.github.mzmine.modules.dataanalysis.clustering.ClusteringEngine;
 import io.github.mzmine.modules.dataanalysis.clustering.ClusteringResult;
 import io.github.mzmine.parameters.ParameterSet;
-import weka.clusterers.HierarchicalClusterer;
-import weka.core.Instances;
+import io.github.mzmine.util.maths.clustering.Dendrogram;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.util.regex.Pattern;
+import org.jetbrains.annotations.NotNull;
 
+/**
+ * Agglomerative hierarchical clustering on range normalized data. The tree is cut into the given
+ * number of clusters, each cluster is described by one line "Cluster i" followed by one line with
+ * its tree in Newick format.
+ */
 public class HierarClusterer implements ClusteringAlgorithm {
 
-  private Logger logger = Logger.getLogger(this.getClass().getName());
-
   private static final String MODULE_NAME = "Hierarchical clusterer";
+  private static final Pattern NEWICK_DELIMITERS = Pattern.compile("[(),:;\\r\\n]");
 
   @Override
   public @NotNull String getName() {
@@ -48,48 +50,32 @@ public class HierarClusterer implements ClusteringAlgorithm {
   }
 
   @Override
-  public ClusteringResult performClustering(Instances dataset, ParameterSet parameters) {
-    HierarchicalClusterer clusterer = new HierarchicalClusterer();
-    String[] options = new String[5];
-    LinkType link = parameters.getParameter(HierarClustererParameters.linkType).getValue();
-    DistanceType distanceType =
+  public ClusteringResult performClustering(@NotNull ClusteringEngine engine,
+      @NotNull double[][] data, @NotNull String[] names, @NotNull ParameterSet parameters) {
+    final LinkType link = parameters.getParameter(HierarClustererParameters.linkType).getValue();
+    final DistanceType distanceType =
         parameters.getParameter(HierarClustererParameters.distanceType).getValue();
-    options[0] = "-L";
-    options[1] = link.name();
-    options[2] = "-A";
-    switch (distanceType) {
-      case EUCLIDIAN:
-        options[3] = "weka.core.EuclideanDistance";
-        break;
-      case CHEBYSHEV:
-        options[3] = "weka.core.ChebyshevDistance";
-        break;
-      case MANHATTAN:
-        options[3] = "weka.core.ManhattanDistance";
-        break;
-      case MINKOWSKI:
-        options[3] = "weka.core.MinkowskiDistance";
-        break;
-    }
+    final int numberOfGroups =
+        parameters.getParameter(HierarClustererParameters.numberOfGroups).getValue();
+
+    ClusteringEngine.normalizeRanges(data);
+    final Dendrogram dendrogram = engine.hierarchical(data, distanceType::distance,
+        link.getLinkage());
 
-    options[4] = "-P";
-    try {
-      clusterer.setOptions(options);
-      clusterer.setPrintNewick(true);
-      clusterer.buildClusterer(dataset);
-      // clusterer.graph() gives only the first cluster and in the case
-      // there
-      // are more than one cluster the variables in the second cluster are
-      // missing.
-      // I'm using clusterer.toString() which contains all the clusters in
-      // Newick format.
-      ClusteringResult result =
-          new ClusteringResult(null, clusterer.toString(), clusterer.getNumClusters(), null);
-      return result;
-    } catch (Exception ex) {
-      logger.log(Level.SEVERE, null, ex);
-      return null;
+    final String[] newickNames = new String[names.length];
+    for (int i = 0; i < names.length; i++) {
+      newickNames[i] = NEWICK_DELIMITERS.matcher(names[i]).replaceAll("_");
     }
+    final int[] roots = dendrogram.getClusterRoots(numberOfGroups);
+    final StringBuilder trees = new StringBuilder();
+    for (int i = 0; i < roots.length; i++) {
+      trees.append("Cluster ").append(i).append('\n');
+      trees.append(dendrogram.toNewick(roots[i], newickNames)).append('\n');
+    }
+
+    final int[] clusters = dendrogram.cut(numberOfGroups);
+    return new ClusteringResult(IntArrayList.wrap(clusters), trees.toString(), roots.length,
+        null);
   }
 
   @Override
@@ -28,6 +28,7 @@ package io.github.mzmine.modules.dataanalysis.clustering.hierarchical;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 
 public class HierarClustererParameters extends SimpleParameterSet {
 
@@ -37,7 +38,12 @@ public class HierarClustererParameters extends SimpleParameterSet {
   public static final ComboParameter<DistanceType> distanceType =
       new ComboParameter<DistanceType>("Distances", "Distances", DistanceType.values());
 
+  public static final IntegerParameter numberOfGroups = new IntegerParameter(
+      "Number of clusters to generate",
+      "Specify the number of clusters to cut the tree into. Each cluster is shown separately.", 2,
+      1, null);
+
   public HierarClustererParameters() {
-    super(new Parameter[] {linkType, distanceType});
+    super(new Parameter[] {linkType, distanceType, numberOfGroups});
   }
 }
@@ -25,20 +25,29 @@
 
 package io.github.mzmine.modules.dataanalysis.clustering.hierarchical;
 
+import io.github.mzmine.util.maths.clustering.Linkage;
+
 public enum LinkType {
 
-  SINGLE("Single"), COMPLETE("Complete"), AVERAGE("Average"), MEAN("Mean"), CENTROID(
-      "Centroid"), WARD(
-          "Ward"), ADJUSTEDCOMPLETE("Adjusted complete"), NEIGHBOT("Neighbor Joining");
+  SINGLE("Single", Linkage.SINGLE), COMPLETE("Complete", Linkage.COMPLETE), AVERAGE("Average",
+      Linkage.AVERAGE), MEAN("Mean", Linkage.MEAN), CENTROID("Centroid", Linkage.CENTROID), WARD(
+      "Ward", Linkage.WARD), ADJUSTEDCOMPLETE("Adjusted complete",
+      Linkage.ADJUSTED_COMPLETE), NEIGHBOT("Neighbor Joining", Linkage.NEIGHBOR_JOINING);
 
   private final String name;
+  private final Linkage linkage;
 
-  LinkType(String name) {
+  LinkType(String name, Linkage linkage) {
     this.name = name;
+    this.linkage = linkage;
   }
 
   public String getName() {
     return this.name;
   }
 
+  public Linkage getLinkage() {
+    return linkage;
+  }
+
 }
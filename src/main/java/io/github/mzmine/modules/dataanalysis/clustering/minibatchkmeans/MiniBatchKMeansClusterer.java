@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataanalysis.clustering.minibatchkmeans;
+
+import io.github.mzmine.modules.dataanalysis.clustering.ClusteringAlgorithm;
+import io.github.mzmine.modules.dataanalysis.clustering.ClusteringEngine;
+import io.github.mzmine.modules.dataanalysis.clustering.ClusteringResult;
+import io.github.mzmine.parameters.ParameterSet;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Mini-batch k-means on range normalized data. Each iteration only visits one batch of rows, which
+ * scales to large numbers of samples or features.
+ */
+public class MiniBatchKMeansClusterer implements ClusteringAlgorithm {
+
+  private static final String MODULE_NAME = "Mini-batch KMeans";
+
+  @Override
+  public @NotNull String getName() {
+    return MODULE_NAME;
+  }
+
+  @Override
+  public ClusteringResult performClustering(@NotNull ClusteringEngine engine,
+      @NotNull double[][] data, @NotNull String[] names, @NotNull ParameterSet parameters) {
+    final int numberOfGroups =
+        parameters.getParameter(MiniBatchKMeansClustererParameters.numberOfGroups).getValue();
+    final int batchSize =
+        parameters.getParameter(MiniBatchKMeansClustererParameters.batchSize).getValue();
+    final int iterations =
+        parameters.getParameter(MiniBatchKMeansClustererParameters.iterations).getValue();
+
+    ClusteringEngine.normalizeRanges(data);
+    final int[] clusters = engine.miniBatchKMeans(data, numberOfGroups, batchSize, iterations);
+    return new ClusteringResult(clusters,
+        parameters.getParameter(MiniBatchKMeansClustererParameters.visualization).getValue());
+  }
+
+  @Override
+  public @NotNull Class<? extends ParameterSet> getParameterSetClass() {
+    return MiniBatchKMeansClustererParameters.class;
+  }
+}
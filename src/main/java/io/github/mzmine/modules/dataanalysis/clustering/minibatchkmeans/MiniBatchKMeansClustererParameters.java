@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataanalysis.clustering.minibatchkmeans;
+
+import io.github.mzmine.modules.dataanalysis.clustering.VisualizationType;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.ComboParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+
+public class MiniBatchKMeansClustererParameters extends SimpleParameterSet {
+
+  public static final ComboParameter<VisualizationType> visualization =
+      new ComboParameter<VisualizationType>("Visualization type",
+          "Select the kind of visualization for the clustering result", VisualizationType.values());
+
+  public static final IntegerParameter numberOfGroups = new IntegerParameter(
+      "Number of clusters to generate", "Specify the number of clusters to generate.", 3, 1, null);
+
+  public static final IntegerParameter batchSize = new IntegerParameter("Batch size",
+      "Number of randomly drawn rows that update the cluster centers in each iteration.", 1000, 1,
+      null);
+
+  public static final IntegerParameter iterations = new IntegerParameter("Number of iterations",
+      "Number of batches that update the cluster centers.", 100, 1, null);
+
+  public MiniBatchKMeansClustererParameters() {
+    super(new Parameter[] {visualization, numberOfGroups, batchSize, iterations});
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataanalysis.heatmaps;
+
+import io.github.mzmine.util.maths.clustering.Dendrogram;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import javax.swing.JComponent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Draws a clustered heat map with row and column dendrograms and a color key, following the
+ * layout of gplots heatmap.2. Values below zero are colored from blue to white, values above zero
+ * from white to red and missing values grey.
+ */
+class HeatMapRenderer extends JComponent {
+
+  private static final Color MISSING_COLOR = Color.GRAY;
+  private static final double DENDROGRAM_FRACTION = 0.15;
+
+  private final double[][] values;
+  private final String[] rowNames;
+  private final String[] columnNames;
+  private final @Nullable String[][] notes;
+  private final Dendrogram rowTree;
+  private final int[] rowOrder;
+  private final Dendrogram columnTree;
+  private final int[] columnOrder;
+  private final int rowMargin;
+  private final int columnMargin;
+  private final int noteSize;
+  private final double min;
+  private final double max;
+
+  /**
+   * @param values       values[row][column]
+   * @param notes        text printed into each cell or null
+   * @param rowMargin    space for the row names in lines of text
+   * @param columnMargin space for the column names in lines of text
+   * @param noteSize     relative size of the cell notes
+   */
+  HeatMapRenderer(@NotNull double[][] values, @NotNull String[] rowNames,
+      @NotNull String[] columnNames, @Nullable String[][] notes, @NotNull Dendrogram rowTree,
+      @NotNull int[] rowOrder, @NotNull Dendrogram columnTree, @NotNull int[] columnOrder,
+      int rowMargin, int columnMargin, int noteSize, int width, int height) {
+    this.values = values;
+    this.rowNames = rowNames;
+    this.columnNames = columnNames;
+    this.notes = notes;
+    this.rowTree = rowTree;
+    this.rowOrder = rowOrder;
+    this.columnTree = columnTree;
+    this.columnOrder = columnOrder;
+    this.rowMargin = rowMargin;
+    this.columnMargin = columnMargin;
+    this.noteSize = noteSize;
+
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    for (double[] row : values) {
+      for (double v : row) {
+        if (Double.isFinite(v)) {
+          min = Math.min(min, v);
+          max = Math.max(max, v);
+        }
+      }
+    }
+    this.min = min;
+    this.max = max;
+    setSize(width, height);
+  }
+
+  @Override
+  protected void paintComponent(Graphics graphics) {
+    final Graphics2D g = (Graphics2D) graphics.create();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+        RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    g.setColor(Color.WHITE);
+    g.fill(new Rectangle2D.Double(0, 0, getWidth(), getHeight()));
+
+    final double lineHeight = Math.max(6d, Math.min(getWidth(), getHeight()) / 80d);
+    final double treeWidth = getWidth() * DENDROGRAM_FRACTION;
+    final double treeHeight = getHeight() * DENDROGRAM_FRACTION;
+    final double x0 = treeWidth;
+    final double y0 = treeHeight;
+    final double mapWidth = Math.max(1d, getWidth() - treeWidth - rowMargin * lineHeight);
+    final double mapHeight = Math.max(1d, getHeight() - treeHeight - columnMargin * lineHeight);
+    final double cellWidth = mapWidth / columnOrder.length;
+    final double cellHeight = mapHeight / rowOrder.length;
+
+    drawCells(g, x0, y0, cellWidth, cellHeight);
+    drawLabels(g, x0, y0, mapWidth, mapHeight, cellWidth, cellHeight);
+
+    g.setColor(Color.BLACK);
+    g.setStroke(new BasicStroke(1f));
+    drawDendrogram(g, columnTree, columnOrder, true, x0, y0, cellWidth, treeHeight * 0.9);
+    drawDendrogram(g, rowTree, rowOrder, false, x0, y0, cellHeight, treeWidth * 0.9);
+    drawColorKey(g, treeWidth, treeHeight);
+    g.dispose();
+  }
+
+  private void drawCells(Graphics2D g, double x0, double y0, double cellWidth,
+      double cellHeight) {
+    final Rectangle2D.Double cell = new Rectangle2D.Double();
+    for (int r = 0; r < rowOrder.length; r++) {
+      for (int c = 0; c < columnOrder.length; c++) {
+        g.setColor(getColor(values[rowOrder[r]][columnOrder[c]]));
+        // overlap by a fraction of a pixel to avoid gaps in vector formats
+        cell.setRect(x0 + c * cellWidth, y0 + r * cellHeight, cellWidth + 0.5, cellHeight + 0.5);
+        g.fill(cell);
+      }
+    }
+
+    if (notes == null) {
+      return;
+    }
+    final float noteFontSize = (float) Math.min(cellHeight * 0.9, 2.5 * noteSize);
+    if (noteFontSize < 2f) {
+      return;
+    }
+    g.setColor(Color.BLACK);
+    g.setFont(getFont(noteFontSize));
+    final FontMetrics metrics = g.getFontMetrics();
+    for (int r = 0; r < rowOrder.length; r++) {
+      for (int c = 0; c < columnOrder.length; c++) {
+        final String note = notes[rowOrder[r]][columnOrder[c]];
+        if (note == null || note.isEmpty()) {
+          continue;
+        }
+        final double x = x0 + (c + 0.5) * cellWidth - metrics.stringWidth(note) / 2d;
+        final double y = y0 + (r + 0.5) * cellHeight + metrics.getAscent() / 2d;
+        g.drawString(note, (float) x, (float) y);
+      }
+    }
+  }
+
+  private void drawLabels(Graphics2D g, double x0, double y0, double mapWidth, double mapHeight,
+      double cellWidth, double cellHeight) {
+    g.setColor(Color.BLACK);
+
+    final float rowFontSize = (float) Math.min(12d, cellHeight * 0.8);
+    if (rowFontSize >= 2f) {
+      g.setFont(getFont(rowFontSize));
+      final FontMetrics metrics = g.getFontMetrics();
+      for (int r = 0; r < rowOrder.length; r++) {
+        final double y = y0 + (r + 0.5) * cellHeight + metrics.getAscent() / 2d;
+        g.drawString(rowNames[rowOrder[r]], (float) (x0 + mapWidth + 3), (float) y);
+      }
+    }
+
+    final float columnFontSize = (float) Math.min(12d, cellWidth * 0.8);
+    if (columnFontSize >= 2f) {
+      g.setFont(getFont(columnFontSize));
+      final FontMetrics metrics = g.getFontMetrics();
+      final AffineTransform transform = g.getTransform();
+      for (int c = 0; c < columnOrder.length; c++) {
+        final double x = x0 + (c + 0.5) * cellWidth + metrics.getAscent() / 2d;
+        g.setTransform(transform);
+        g.translate(x, y0 + mapHeight + 3);
+        g.rotate(Math.PI / 2);
+        g.drawString(columnNames[columnOrder[c]], 0f, 0f);
+      }
+      g.setTransform(transform);
+    }
+  }
+
+  /**
+   * Draws a dendrogram with the leaves at the border of the heat map and the root towards the
+   * outside.
+   *
+   * @param horizontal true for the column dendrogram above the heat map
+   * @param leafStep   distance of two leaves
+   * @param depth      space for the dendrogram height
+   */
+  private void drawDendrogram(Graphics2D g, Dendrogram tree, int[] leafOrder, boolean horizontal,
+      double x0, double y0, double leafStep, double depth) {
+    final int n = tree.getNumberOfElements();
+    if (n < 2) {
+      return;
+    }
+    final double[] heights = tree.heights();
+    final double maxHeight = heights[heights.length - 1] > 0 ? heights[heights.length - 1] : 1d;
+
+    // leaf positions along the heat map and merge positions as mean of both branches
+    final double[] position = new double[2 * n - 1];
+    for (int i = 0; i < leafOrder.length; i++) {
+      position[leafOrder[i]] = (i + 0.5) * leafStep;
+    }
+    final Line2D.Double line = new Line2D.Double();
+    for (int i = 0; i < n - 1; i++) {
+      final int left = tree.left()[i];
+      final int right = tree.right()[i];
+      position[n + i] = (position[left] + position[right]) / 2d;
+
+      final double level = depth * heights[i] / maxHeight;
+      final double levelLeft = left < n ? 0d : depth * heights[left - n] / maxHeight;
+      final double levelRight = right < n ? 0d : depth * heights[right - n] / maxHeight;
+      if (horizontal) {
+        line.setLine(x0 + position[left], y0 - levelLeft, x0 + position[left], y0 - level);
+        g.draw(line);
+        line.setLine(x0 + position[right], y0 - levelRight, x0 + position[right], y0 - level);
+        g.draw(line);
+        line.setLine(x0 + position[left], y0 - level, x0 + position[right], y0 - level);
+        g.draw(line);
+      } else {
+        line.setLine(x0 - levelLeft, y0 + position[left], x0 - level, y0 + position[left]);
+        g.draw(line);
+        line.setLine(x0 - levelRight, y0 + position[right], x0 - level, y0 + position[right]);
+        g.draw(line);
+        line.setLine(x0 - level, y0 + position[left], x0 - level, y0 + position[right]);
+        g.draw(line);
+      }
+    }
+  }
+
+  private void drawColorKey(Graphics2D g, double width, double height) {
+    if (!Double.isFinite(min)) {
+      return;
+    }
+    final double x = width * 0.1;
+    final double y = height * 0.1;
+    final double keyWidth = width * 0.8;
+    final double keyHeight = height * 0.25;
+    final int steps = 100;
+    final Rectangle2D.Double rect = new Rectangle2D.Double();
+    for (int i = 0; i < steps; i++) {
+      g.setColor(getColor(min + (max - min) * (i + 0.5) / steps));
+      rect.setRect(x + keyWidth * i / steps, y, keyWidth / steps + 0.5, keyHeight);
+      g.fill(rect);
+    }
+    g.setColor(Color.BLACK);
+    g.setFont(getFont((float) Math.max(4d, Math.min(10d, keyHeight * 0.6))));
+    final FontMetrics metrics = g.getFontMetrics();
+    final String minLabel = String.format("%.2g", min);
+    final String maxLabel = String.format("%.2g", max);
+    final float labelY = (float) (y + keyHeight + metrics.getAscent() + 2);
+    g.drawString(minLabel, (float) x, labelY);
+    g.drawString(maxLabel, (float) (x + keyWidth - metrics.stringWidth(maxLabel)), labelY);
+  }
+
+  private Font getFont(float size) {
+    return new Font(Font.SANS_SERIF, Font.PLAIN, 1).deriveFont(size);
+  }
+
+  /**
+   * Blue to white for values from the minimum to zero, white to red from zero to the maximum.
+   */
+  private Color getColor(double value) {
+    if (!Double.isFinite(value)) {
+      return MISSING_COLOR;
+    }
+    if (value <= 0d) {
+      final float t = min < 0d ? (float) (value / min) : 0f;
+      // t = 1 at the minimum (blue), 0 at zero (white)
+      return new Color(1f - t, 1f - t, 1f);
+    }
+    final float t = max > 0d ? (float) (value / max) : 0f;
+    return new Color(1f, 1f - t, 1f - t);
+  }
+}
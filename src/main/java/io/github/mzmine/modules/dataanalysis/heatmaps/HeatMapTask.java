@@ -25,6 +25,7 @@
 
 package io.github.mzmine.modules.dataanalysis.heatmaps;
 
+import com.itextpdf.text.DocumentException;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.Feature;
@@ -34,30 +35,30 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.R.REngineType;
-import io.github.mzmine.util.R.RSessionWrapper;
-import io.github.mzmine.util.R.RSessionWrapperException;
-import io.github.mzmine.util.R.Rsession.Rsession;
+import io.github.mzmine.util.maths.StatisticalTests;
+import io.github.mzmine.util.maths.clustering.Dendrogram;
+import io.github.mzmine.util.maths.clustering.HierarchicalClustering;
+import io.github.mzmine.util.maths.clustering.Linkage;
+import io.github.mzmine.util.swing.SwingExportUtil;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.math.MathException;
+import javax.imageio.ImageIO;
 import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
-import org.apache.commons.math.stat.inference.TTestImpl;
 import org.jetbrains.annotations.NotNull;
 
 public class HeatMapTask extends AbstractTask {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
-  private RSessionWrapper rSession;
-  private String errorMsg;
-
   private final MZmineProject project;
-  private final REngineType rEngineType;
   private final String outputType;
   private final boolean log, rcontrol, scale, plegend, area, onlyIdentified;
   private final int height, width, columnMargin, rowMargin, starSize;
@@ -77,7 +78,6 @@ public class HeatMapTask extends AbstractTask {
     this.featureList = featureList;
 
     // Parameters
-    rEngineType = parameters.getParameter(HeatMapParameters.RENGINE_TYPE).getValue();
     outputFile = parameters.getParameter(HeatMapParameters.fileName).getValue();
     outputType = parameters.getParameter(HeatMapParameters.fileTypeSelection).getValue();
     selectedParameter = parameters.getParameter(HeatMapParameters.selectionData).getValue();
@@ -106,23 +106,7 @@ public class HeatMapTask extends AbstractTask {
     return finishedPercentage;
   }
 
-  @Override
-  public void cancel() {
-
-    super.cancel();
-
-    // Turn off R instance, if already existing.
-    try {
-      if (rSession != null)
-        rSession.close(true);
-    } catch (RSessionWrapperException e) {
-      // Silent, always...
-    }
-  }
-
   public void run() {
-    errorMsg = null;
-
     setStatus(TaskStatus.PROCESSING);
 
     logger.info("Heat map plot");
@@ -139,170 +123,171 @@ public class HeatMapTask extends AbstractTask {
       return;
     }
 
-    try {
-
-      // Load gplots library
-      String[] reqPackages = {"gplots"};
-      rSession =
-          new RSessionWrapper(this.rEngineType, "HeatMap analysis module", reqPackages, null);
-      rSession.open();
+    if (outputType.contains("png")) {
+      if (height < 500 || width < 500) {
 
-      finishedPercentage = 0.3f;
-
-      if (outputType.contains("png")) {
-        if (height < 500 || width < 500) {
-
-          setStatus(TaskStatus.ERROR);
-          setErrorMessage(
-              "Figure height or width is too small. " + "Minimun height and width is 500.");
-          return;
-        }
+        setStatus(TaskStatus.ERROR);
+        setErrorMessage(
+            "Figure height or width is too small. " + "Minimun height and width is 500.");
+        return;
       }
+    }
 
-      rSession.eval("dataset<- matrix(\"\",nrow =" + newFeatureList[0].length + ",ncol="
-          + newFeatureList.length + ")");
+    finishedPercentage = 0.3f;
 
-      if (plegend) {
-        rSession.eval("stars<- matrix(\"\",nrow =" + newFeatureList[0].length + ",ncol="
-            + newFeatureList.length + ")");
+    final int numColumns = newFeatureList.length;
+    final int numAllRows = newFeatureList[0].length;
+    final double[][] allRows = new double[numAllRows][numColumns];
+    for (int row = 0; row < numAllRows; row++) {
+      for (int column = 0; column < numColumns; column++) {
+        allRows[row][column] = newFeatureList[column][row];
       }
+    }
 
-      // assing the values to the matrix
-      for (int row = 0; row < newFeatureList[0].length; row++) {
-
-        for (int column = 0; column < newFeatureList.length; column++) {
-
-          int r = row + 1;
-          int c = column + 1;
-
-          double value = newFeatureList[column][row];
-
-          if (plegend) {
-            String pValue = pValueMatrix[column][row];
-            rSession.eval("stars[" + r + "," + c + "] = \"" + pValue + "\"");
-          }
-
-          if (!Double.isInfinite(value) && !Double.isNaN(value)) {
-
-            rSession.eval("dataset[" + r + "," + c + "] = " + value);
-          } else {
+    // Remove the rows with too many missing values. The distances between
+    // rows can't be calculated if the rows don't have
+    // at least one sample in common.
+    final double[] allDistances = HierarchicalClustering.euclideanDistances(allRows);
+    final List<Integer> keptRows = new ArrayList<>();
+    for (int row = 0; row < numAllRows; row++) {
+      boolean complete = true;
+      for (int other = 0; other < row && complete; other++) {
+        complete = !Double.isNaN(allDistances[HierarchicalClustering.index(other, row, numAllRows)]);
+      }
+      if (complete) {
+        keptRows.add(row);
+      }
+    }
 
-            rSession.eval("dataset[" + r + "," + c + "] = NA");
-          }
+    final int numRows = keptRows.size();
+    if (numRows == 0) {
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("The data for heat map is empty.");
+      return;
+    }
+    final double[][] values = new double[numRows][];
+    final String[] names = new String[numRows];
+    final String[][] notes = plegend ? new String[numRows][numColumns] : null;
+    final double[] rowDistances = new double[numRows * (numRows - 1) / 2];
+    for (int i = 0; i < numRows; i++) {
+      final int row = keptRows.get(i);
+      values[i] = allRows[row];
+      names[i] = rowNames[row];
+      if (notes != null) {
+        for (int column = 0; column < numColumns; column++) {
+          notes[i][column] = pValueMatrix[column][row];
         }
       }
-      finishedPercentage = 0.4f;
-
-      rSession.eval("dataset <- apply(dataset, 2, as.numeric)");
+      for (int j = i + 1; j < numRows; j++) {
+        rowDistances[HierarchicalClustering.index(i, j, numRows)] =
+            allDistances[HierarchicalClustering.index(row, keptRows.get(j), numAllRows)];
+      }
+    }
 
-      // Assign row names to the data set
-      rSession.assign("rowNames", rowNames);
-      rSession.eval("rownames(dataset)<-rowNames");
+    finishedPercentage = 0.5f;
 
-      // Assign column names to the data set
-      rSession.assign("colNames", colNames);
-      rSession.eval("colnames(dataset)<-colNames");
+    if (isCanceled()) {
+      return;
+    }
 
-      finishedPercentage = 0.5f;
+    // Cluster rows and columns like heatmap.2: complete linkage of euclidean distances, branches
+    // ordered by the row and column means
+    final Dendrogram rowTree = HierarchicalClustering.cluster(rowDistances, numRows,
+        Linkage.COMPLETE);
+    final int[] rowOrder = rowTree.getLeafOrder(means(values, false));
 
-      // Remove the rows with too many NA's. The distances between
-      // rows can't be calculated if the rows don't have
-      // at least one sample in common.
-      rSession.eval("d <- as.matrix(dist(dataset))");
-      rSession.eval("d[upper.tri(d)] <- 0");
-      rSession.eval("naindices <- na.action(na.omit(d))");
-      rSession.eval("if (! is.null(naindices)) dataset <- dataset[-naindices,]");
+    final double[] columnDistances = HierarchicalClustering.euclideanDistances(
+        transpose(values, numColumns));
+    replaceMissingDistances(columnDistances);
+    final Dendrogram columnTree = HierarchicalClustering.cluster(columnDistances, numColumns,
+        Linkage.COMPLETE);
+    final int[] columnOrder = columnTree.getLeafOrder(means(values, true));
 
-      finishedPercentage = 0.8f;
+    finishedPercentage = 0.8f;
 
-      String marginParameter = "margins = c(" + columnMargin + "," + rowMargin + ")";
-      rSession.eval("br<-c(seq(from=min(dataset,na.rm=T),to=0,length.out=256),"
-          + "seq(from=0.00001,to=max(dataset,na.rm=T),length.out=256))", false);
+    if (isCanceled()) {
+      return;
+    }
 
-      // Convert the path to R-compatible string
-      final String escapedOutputFileName = Rsession.toRpath(outputFile);
+    try {
+      // pdf and svg sizes are given in inches, png sizes in pixels
+      final boolean isPng = outputType.contains("png");
+      final int pixelWidth = isPng ? width : width * 72;
+      final int pixelHeight = isPng ? height : height * 72;
+      final HeatMapRenderer renderer = new HeatMapRenderer(values, names, colNames, notes,
+          rowTree, rowOrder, columnTree, columnOrder, rowMargin, columnMargin, starSize,
+          pixelWidth, pixelHeight);
 
-      // Possible output file types
       if (outputType.contains("pdf")) {
-
-        rSession.eval(
-            "pdf(\"" + escapedOutputFileName + "\", height=" + height + ", width=" + width + ")");
-      } else if (outputType.contains("fig")) {
-
-        rSession.eval("xfig(\"" + escapedOutputFileName + "\", height=" + height + ", width="
-            + width + ", horizontal = FALSE, pointsize = 12)");
+        SwingExportUtil.writeToPDF(renderer, outputFile);
       } else if (outputType.contains("svg")) {
-
-        // Load RSvgDevice library
-        rSession.loadPackage("RSvgDevice");
-
-        rSession.eval("devSVG(\"" + escapedOutputFileName + "\", height=" + height + ", width="
-            + width + ")");
-      } else if (outputType.contains("png")) {
-
-        rSession.eval(
-            "png(\"" + escapedOutputFileName + "\", height=" + height + ", width=" + width + ")");
-      }
-
-      if (plegend) {
-
-        rSession.eval(
-            "heatmap.2(dataset," + marginParameter + ", trace=\"none\", col=bluered(length(br)-1),"
-                + " breaks=br, cellnote=stars, notecol=\"black\"" + ", notecex=" + starSize
-                + ", na.color=\"grey\")",
-            false);
-      } else {
-
-        rSession.eval("heatmap.2(dataset," + marginParameter
-            + ", trace=\"none\", col=bluered(length(br)-1)," + " breaks=br, na.color=\"grey\")",
-            false);
+        SwingExportUtil.writeToSVG(renderer, outputFile);
+      } else if (isPng) {
+        final BufferedImage image = new BufferedImage(pixelWidth, pixelHeight,
+            BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        renderer.print(g);
+        g.dispose();
+        ImageIO.write(image, "png", outputFile);
       }
+    } catch (IOException | DocumentException e) {
+      logger.log(Level.WARNING, "Error while writing heat map " + e.getMessage(), e);
+      setErrorMessage("Error while writing heat map to " + outputFile + ": " + e.getMessage());
+      setStatus(TaskStatus.ERROR);
+      return;
+    }
 
-      rSession.eval("dev.off()", false);
-
-      // Stands for a (void) collect!
-      this.rSession.runOnlyOnline();
-      // Done: Refresh R code stack
-      this.rSession.clearCode();
-
-      finishedPercentage = 1.0;
-
-      // Turn off R instance, once task ended gracefully.
-      if (!isCanceled())
-        rSession.close(false);
+    finishedPercentage = 1.0;
+    setStatus(TaskStatus.FINISHED);
+  }
 
-    } catch (RSessionWrapperException e) {
-      if (!isCanceled()) {
-        errorMsg = "'R computing error' during heatmap generation. \n" + e.getMessage();
-      }
-    } catch (Exception e) {
-      if (!isCanceled()) {
-        errorMsg = "'Unknown error' during heatmap generation. \n" + e.getMessage();
+  private static double[][] transpose(double[][] values, int numColumns) {
+    final double[][] transposed = new double[numColumns][values.length];
+    for (int row = 0; row < values.length; row++) {
+      for (int column = 0; column < numColumns; column++) {
+        transposed[column][row] = values[row][column];
       }
     }
+    return transposed;
+  }
 
-    // Turn off R instance, once task ended UNgracefully.
-    try {
-      if (!isCanceled())
-        if (rSession != null)
-          rSession.close(isCanceled());
-    } catch (RSessionWrapperException e) {
-      if (!isCanceled()) {
-        // Do not override potential previous error message.
-        if (errorMsg == null) {
-          errorMsg = e.getMessage();
+  /**
+   * Mean of each row or column without missing values.
+   */
+  private static double[] means(double[][] values, boolean columns) {
+    final int size = columns ? values[0].length : values.length;
+    final double[] sums = new double[size];
+    final int[] counts = new int[size];
+    for (int row = 0; row < values.length; row++) {
+      for (int column = 0; column < values[row].length; column++) {
+        final double v = values[row][column];
+        if (Double.isFinite(v)) {
+          final int index = columns ? column : row;
+          sums[index] += v;
+          counts[index]++;
         }
-      } else {
-        // User canceled: Silent.
       }
     }
+    for (int i = 0; i < size; i++) {
+      sums[i] = counts[i] > 0 ? sums[i] / counts[i] : 0d;
+    }
+    return sums;
+  }
 
-    // Report error.
-    if (errorMsg != null) {
-      setErrorMessage(errorMsg);
-      setStatus(TaskStatus.ERROR);
-    } else {
-      setStatus(TaskStatus.FINISHED);
+  /**
+   * Columns without a common row have no distance, they are put at the maximum distance.
+   */
+  private static void replaceMissingDistances(double[] distances) {
+    double max = 0d;
+    for (double d : distances) {
+      if (!Double.isNaN(d)) {
+        max = Math.max(max, d);
+      }
+    }
+    for (int i = 0; i < distances.length; i++) {
+      if (Double.isNaN(distances[i])) {
+        distances[i] = max;
+      }
     }
   }
 
@@ -618,25 +603,19 @@ public class HeatMapTask extends AbstractTask {
   }
 
   private String getPvalue(DescriptiveStatistics group1, DescriptiveStatistics group2) {
-    TTestImpl ttest = new TTestImpl();
+    final double pValue = StatisticalTests.welchTTest(group1.getValues(), group2.getValues());
+    if (Double.isNaN(pValue)) {
+      return "-";
+    }
     String sig = "";
-    try {
-      double pValue = ttest.tTest(group1, group2);
-      if (pValue < 0.05) {
-        sig = "*";
-      }
-      if (pValue < 0.01) {
-        sig = "**";
-      }
-      if (pValue < 0.001) {
-        sig = "***";
-      }
-
-    } catch (IllegalArgumentException ex) {
-      sig = "-";
-
-    } catch (MathException ex) {
-      sig = "-";
+    if (pValue < 0.05) {
+      sig = "*";
+    }
+    if (pValue < 0.01) {
+      sig = "**";
+    }
+    if (pValue < 0.001) {
+      sig = "***";
     }
     return sig;
   }
@@ -32,15 +32,15 @@ import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.gui.chartbasics.simplechart.datasets.AbstractTaskXYDataset;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.IOException;
 import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import jmprojection.CDA;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
 
 public class CDADataset extends AbstractTaskXYDataset implements ProjectionPlotDataset {
 
@@ -67,7 +67,7 @@ public class CDADataset extends AbstractTaskXYDataset implements ProjectionPlotD
   private final int xAxisDimension;
   private final int yAxisDimension;
 
-  private ProjectionStatus projectionStatus;
+  private final ProjectionEngine engine = new ProjectionEngine();
 
   public CDADataset(MZmineProject project, ParameterSet parameters) {
 
@@ -264,25 +264,29 @@ public class CDADataset extends AbstractTaskXYDataset implements ProjectionPlotD
     }
 
     // Scale data and do CDA
-    Preprocess.scaleToUnityVariance(rawData);
-    CDA cdaProj = new CDA(rawData);
-    cdaProj.iterate(100);
+    ProjectionEngine.scaleToUnityVariance(rawData);
+    double[][] result = engine.cda(rawData, numComponents, 100);
 
     if (isCanceled()) {
       return;
     }
 
-    double[][] result = cdaProj.getState();
+    component1Coords = ProjectionEngine.getColumn(result, xAxisDimension - 1);
+    component2Coords = ProjectionEngine.getColumn(result, yAxisDimension - 1);
 
-    if (isCanceled()) {
+    try {
+      ProjectionEngine.exportScores(parameters, selectedRawDataFiles, result, "Dimension");
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot export projection scores " + e.getMessage(), e);
+      setStatus(TaskStatus.ERROR);
+      errorMessage = "Cannot export projection scores: " + e.getMessage();
       return;
     }
 
-    component1Coords = result[xAxisDimension - 1];
-    component2Coords = result[yAxisDimension - 1];
-
-    ProjectionPlotWindow newFrame = new ProjectionPlotWindow(featureList, this, parameters);
-    newFrame.show();
+    if (!MZmineCore.isHeadLessMode()) {
+      ProjectionPlotWindow newFrame = new ProjectionPlotWindow(featureList, this, parameters);
+      newFrame.show();
+    }
 
     setStatus(TaskStatus.FINISHED);
     logger.info("Finished computing projection plot.");
@@ -291,9 +295,7 @@ public class CDADataset extends AbstractTaskXYDataset implements ProjectionPlotD
 
   @Override
   public void cancel() {
-    if (projectionStatus != null) {
-      projectionStatus.cancel();
-    }
+    engine.cancel();
     super.cancel();
   }
 
@@ -304,10 +306,7 @@ public class CDADataset extends AbstractTaskXYDataset implements ProjectionPlotD
 
   @Override
   public double getFinishedPercentage() {
-    if (projectionStatus == null) {
-      return 0;
-    }
-    return projectionStatus.getFinishedPercentage();
+    return engine.getProgress();
   }
 
 }
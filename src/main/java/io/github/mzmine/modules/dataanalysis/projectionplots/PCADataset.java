@@ -32,15 +32,15 @@ import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.gui.chartbasics.simplechart.datasets.AbstractTaskXYDataset;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.IOException;
 import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import jmprojection.PCA;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
 
 public class PCADataset extends AbstractTaskXYDataset implements ProjectionPlotDataset {
 
@@ -67,7 +67,7 @@ public class PCADataset extends AbstractTaskXYDataset implements ProjectionPlotD
   private final int xAxisPC;
   private final int yAxisPC;
 
-  private ProjectionStatus projectionStatus;
+  private final ProjectionEngine engine = new ProjectionEngine();
 
   public PCADataset(MZmineProject project, ParameterSet parameters) {
 
@@ -262,33 +262,30 @@ public class PCADataset extends AbstractTaskXYDataset implements ProjectionPlotD
       numComponents = yAxisPC;
     }
 
-    // Scale data and do PCA
-    Preprocess.scaleToUnityVariance(rawData);
+    // Scale data and do PCA, constant features are set to 0.0
+    ProjectionEngine.scaleToUnityVariance(rawData);
+    double[][] result = engine.pca(rawData, numComponents);
 
-    // Replace NaN values with 0.0
-    for (int i = 0; i < rawData.length; i++) {
-      for (int j = 0; j < rawData[i].length; j++) {
-        if (Double.isNaN(rawData[i][j])) {
-          rawData[i][j] = 0.0;
-        }
-      }
+    if (isCanceled()) {
+      return;
     }
 
-    PCA pcaProj = new PCA(rawData, numComponents);
-
-    projectionStatus = pcaProj.getProjectionStatus();
-
-    double[][] result = pcaProj.getState();
+    component1Coords = ProjectionEngine.getColumn(result, xAxisPC - 1);
+    component2Coords = ProjectionEngine.getColumn(result, yAxisPC - 1);
 
-    if (isCanceled()) {
+    try {
+      ProjectionEngine.exportScores(parameters, selectedRawDataFiles, result, "PC");
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot export projection scores " + e.getMessage(), e);
+      setStatus(TaskStatus.ERROR);
+      errorMessage = "Cannot export projection scores: " + e.getMessage();
       return;
     }
 
-    component1Coords = result[xAxisPC - 1];
-    component2Coords = result[yAxisPC - 1];
-
-    ProjectionPlotWindow newFrame = new ProjectionPlotWindow(featureList, this, parameters);
-    newFrame.show();
+    if (!MZmineCore.isHeadLessMode()) {
+      ProjectionPlotWindow newFrame = new ProjectionPlotWindow(featureList, this, parameters);
+      newFrame.show();
+    }
 
     setStatus(TaskStatus.FINISHED);
     logger.info("Finished computing projection plot.");
@@ -297,9 +294,7 @@ public class PCADataset extends AbstractTaskXYDataset implements ProjectionPlotD
 
   @Override
   public void cancel() {
-    if (projectionStatus != null) {
-      projectionStatus.cancel();
-    }
+    engine.cancel();
     super.cancel();
   }
 
@@ -310,10 +305,7 @@ public class PCADataset extends AbstractTaskXYDataset implements ProjectionPlotD
 
   @Override
   public double getFinishedPercentage() {
-    if (projectionStatus == null) {
-      return 0;
-    }
-    return projectionStatus.getFinishedPercentage();
+    return engine.getProgress();
   }
 
 }
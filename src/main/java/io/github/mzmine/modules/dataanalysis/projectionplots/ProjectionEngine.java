@@ -0,0 +1,754 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataanalysis.projectionplots;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.util.io.CSVUtils;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Projections of a sample x feature matrix to a few dimensions: PCA by randomized truncated SVD,
+ * Sammon's mapping and curvilinear distance analysis (CDA). Matrix products run in parallel over
+ * rows or feature blocks. Sammon's mapping and CDA work on the leading principal components and
+ * sample their point pairs for large sample numbers, so their cost per iteration grows linearly
+ * with the number of samples.
+ * <p>
+ * The engine does not depend on the GUI and can be used headless, e.g., with
+ * {@link #writeScores(File, String[], double[][], String)}. One engine instance tracks the
+ * progress and cancellation of one projection.
+ */
+public class ProjectionEngine {
+
+  /**
+   * Additional random vectors of the randomized SVD and number of power iterations.
+   */
+  private static final int OVERSAMPLING = 10;
+  private static final int POWER_ITERATIONS = 2;
+  /**
+   * Sammon's mapping and CDA use this many principal components as input.
+   */
+  private static final int REDUCED_DIMENSIONS = 50;
+  /**
+   * Up to this number of samples all pairs are used, above only sampled partners.
+   */
+  private static final int ALL_PAIRS_LIMIT = 1000;
+  private static final int SAMPLED_PARTNERS = 200;
+  private static final int FEATURE_BLOCK = 256;
+  private static final int CDA_NEIGHBOURS = 6;
+
+  private final long seed;
+  private volatile double progress = 0d;
+  private volatile boolean canceled = false;
+
+  public ProjectionEngine() {
+    this(42L);
+  }
+
+  public ProjectionEngine(long seed) {
+    this.seed = seed;
+  }
+
+  public double getProgress() {
+    return progress;
+  }
+
+  public void cancel() {
+    canceled = true;
+  }
+
+  public boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * Centers each feature (column) and scales it to unit variance. Constant features are set to
+   * zero.
+   */
+  public static void scaleToUnityVariance(@NotNull double[][] data) {
+    final int rows = data.length;
+    if (rows == 0) {
+      return;
+    }
+    IntStream.range(0, data[0].length).parallel().forEach(col -> {
+      double mean = 0d;
+      double s = 0d;
+      for (int row = 0; row < rows; row++) {
+        final double value = data[row][col];
+        final double delta = value - mean;
+        mean += delta / (row + 1);
+        s += delta * (value - mean);
+      }
+      final double sd = rows > 1 ? Math.sqrt(s / (rows - 1)) : 0d;
+      for (int row = 0; row < rows; row++) {
+        data[row][col] = sd > 0d && Double.isFinite(sd) ? (data[row][col] - mean) / sd : 0d;
+      }
+    });
+  }
+
+  /**
+   * Principal component scores by randomized truncated SVD (Halko, Martinsson, Tropp 2011). The
+   * result is exact if the number of components plus oversampling reaches the number of samples.
+   *
+   * @param data       sample x feature matrix with centered columns
+   * @param components number of principal components
+   * @return scores[sample][component], components sorted by decreasing variance
+   */
+  public double[][] pca(@NotNull double[][] data, int components) {
+    final int n = data.length;
+    final int p = n == 0 ? 0 : data[0].length;
+    final int rank = Math.min(n, p);
+    final int l = Math.min(components + OVERSAMPLING, rank);
+    final double[][] scores = new double[n][components];
+    if (l == 0) {
+      return scores;
+    }
+
+    // range finder with power iterations: Y = (X X^T)^q X Omega
+    final double[][] omega = new double[p][l];
+    final Random random = new Random(seed);
+    for (double[] row : omega) {
+      for (int c = 0; c < l; c++) {
+        row[c] = random.nextGaussian();
+      }
+    }
+    double[][] q = multiply(data, omega, l);
+    orthonormalizeColumns(q);
+    for (int i = 0; i < POWER_ITERATIONS && !canceled; i++) {
+      final double[][] z = multiplyTransposed(data, q, l);
+      orthonormalizeColumns(z);
+      q = multiply(data, z, l);
+      orthonormalizeColumns(q);
+      progress = 0.1 + 0.6 * (i + 1) / POWER_ITERATIONS;
+    }
+    if (canceled) {
+      return scores;
+    }
+
+    // B = Q^T X is small: B B^T = Z^T Z with Z = X^T Q, its eigen vectors are the left singular
+    // vectors of B and the scores are Q U S
+    final double[][] basis = q;
+    final double[][] z = multiplyTransposed(data, basis, l);
+    final double[][] gram = gram(z, l);
+    final double[] eigenValues = new double[l];
+    final double[][] eigenVectors = symmetricEigen(gram, eigenValues);
+    progress = 0.9;
+
+    final int numComponents = Math.min(components, l);
+    IntStream.range(0, n).parallel().forEach(i -> {
+      for (int c = 0; c < numComponents; c++) {
+        final double singularValue = Math.sqrt(Math.max(0d, eigenValues[c]));
+        double sum = 0d;
+        for (int k = 0; k < l; k++) {
+          sum += basis[i][k] * eigenVectors[k][c];
+        }
+        scores[i][c] = sum * singularValue;
+      }
+    });
+    progress = 1d;
+    return scores;
+  }
+
+  /**
+   * Sammon's nonlinear mapping with Sammon's pseudo-Newton steps, started from the principal
+   * components. The step is halved until the stress decreases. Distances are measured in the space
+   * of the leading principal components. For many samples, the stress only includes a fixed random
+   * subset of partners of each sample.
+   *
+   * @param data       sample x feature matrix with centered columns
+   * @param dimensions number of output dimensions
+   * @param iterations maximum number of iterations
+   * @return coordinates[sample][dimension]
+   */
+  public double[][] sammon(@NotNull double[][] data, int dimensions, int iterations) {
+    final double[][] reduced = reduce(data, dimensions);
+    final int n = reduced.length;
+    double[][] y = initialLayout(reduced, dimensions);
+    if (n < 3 || canceled) {
+      return y;
+    }
+
+    final int[][] partners = selectPartners(n);
+    final double[][] originalDistances = new double[n][];
+    IntStream.range(0, n).parallel().forEach(i -> {
+      originalDistances[i] = new double[partners[i].length];
+      for (int m = 0; m < partners[i].length; m++) {
+        originalDistances[i][m] = distance(reduced[i], reduced[partners[i][m]]);
+      }
+    });
+
+    double stress = sammonStress(y, partners, originalDistances);
+    for (int it = 0; it < iterations && !canceled; it++) {
+      final double[][] current = y;
+      final double[][] steps = new double[n][dimensions];
+      IntStream.range(0, n).parallel().forEach(i -> {
+        final double[] gradient = new double[dimensions];
+        final double[] hessian = new double[dimensions];
+        for (int m = 0; m < partners[i].length; m++) {
+          final int j = partners[i][m];
+          final double original = originalDistances[i][m];
+          if (original < 1e-12) {
+            continue;
+          }
+          final double projected = Math.max(distance(current[i], current[j]), 1e-12);
+          final double difference = original - projected;
+          final double product = original * projected;
+          for (int d = 0; d < dimensions; d++) {
+            final double delta = current[i][d] - current[j][d];
+            gradient[d] += difference / product * delta;
+            hessian[d] += (difference - delta * delta / projected * (1d + difference / projected))
+                / product;
+          }
+        }
+        for (int d = 0; d < dimensions; d++) {
+          steps[i][d] = hessian[d] != 0d ? gradient[d] / Math.abs(hessian[d]) : 0d;
+        }
+      });
+
+      // step halving
+      double stepSize = 1d;
+      double[][] next = null;
+      double nextStress = stress;
+      for (int halving = 0; halving < 20; halving++) {
+        final double factor = stepSize;
+        final double[][] candidate = new double[n][dimensions];
+        for (int i = 0; i < n; i++) {
+          for (int d = 0; d < dimensions; d++) {
+            candidate[i][d] = current[i][d] + factor * steps[i][d];
+          }
+        }
+        final double candidateStress = sammonStress(candidate, partners, originalDistances);
+        if (candidateStress < stress) {
+          next = candidate;
+          nextStress = candidateStress;
+          break;
+        }
+        stepSize /= 2d;
+      }
+      progress = 0.5 + 0.5 * (it + 1) / iterations;
+      if (next == null || stress - nextStress < 1e-9 * stress) {
+        if (next != null) {
+          y = next;
+        }
+        break;
+      }
+      y = next;
+      stress = nextStress;
+    }
+    return y;
+  }
+
+  /**
+   * @return Sammon's stress of the partner pairs without the normalization constant
+   */
+  private static double sammonStress(double[][] y, int[][] partners,
+      double[][] originalDistances) {
+    return IntStream.range(0, y.length).parallel().mapToDouble(i -> {
+      double sum = 0d;
+      for (int m = 0; m < partners[i].length; m++) {
+        final double original = originalDistances[i][m];
+        if (original < 1e-12) {
+          continue;
+        }
+        final double difference = original - distance(y[i], y[partners[i][m]]);
+        sum += difference * difference / original;
+      }
+      return sum;
+    }).sum();
+  }
+
+  /**
+   * All other samples for small sample numbers, otherwise a fixed random subset.
+   */
+  private int[][] selectPartners(int n) {
+    final int[][] partners = new int[n][];
+    final boolean allPairs = n <= ALL_PAIRS_LIMIT;
+    for (int i = 0; i < n; i++) {
+      if (allPairs) {
+        final int self = i;
+        partners[i] = IntStream.range(0, n).filter(j -> j != self).toArray();
+      } else {
+        final SplittableRandom random = new SplittableRandom(seed * 31 + i);
+        partners[i] = new int[SAMPLED_PARTNERS];
+        for (int m = 0; m < SAMPLED_PARTNERS; m++) {
+          int j = random.nextInt(n - 1);
+          partners[i][m] = j >= i ? j + 1 : j;
+        }
+      }
+    }
+    return partners;
+  }
+
+  /**
+   * Curvilinear distance analysis: curvilinear component analysis of graph distances in a
+   * k-nearest-neighbor graph, started from the principal components. The graph distances are
+   * computed from landmark samples, which also serve as partners of the stochastic updates.
+   *
+   * @param data       sample x feature matrix with centered columns
+   * @param dimensions number of output dimensions
+   * @param iterations number of iterations
+   * @return coordinates[sample][dimension]
+   */
+  public double[][] cda(@NotNull double[][] data, int dimensions, int iterations) {
+    final double[][] reduced = reduce(data, dimensions);
+    final int n = reduced.length;
+    double[][] y = initialLayout(reduced, dimensions);
+    if (n < 3 || canceled) {
+      return y;
+    }
+
+    final int[] landmarks = selectLandmarks(n);
+    final double[][] curvilinear = graphDistances(reduced, landmarks);
+    if (canceled) {
+      return y;
+    }
+    progress = 0.7;
+
+    double maxDistance = 0d;
+    for (double[] row : curvilinear) {
+      for (double d : row) {
+        maxDistance = Math.max(maxDistance, d);
+      }
+    }
+    final double startLambda = Math.max(maxDistance, 1e-12);
+    final double endLambda = startLambda * 0.01;
+
+    for (int it = 0; it < iterations && !canceled; it++) {
+      final double fraction = iterations > 1 ? (double) it / (iterations - 1) : 1d;
+      final double alpha = 0.5 * Math.pow(0.01 / 0.5, fraction);
+      final double lambda = startLambda * Math.pow(endLambda / startLambda, fraction);
+      final double[][] current = y;
+      final double[][] next = new double[n][];
+      IntStream.range(0, n).parallel().forEach(j -> {
+        final double[] moved = current[j].clone();
+        int used = 0;
+        final double[] shift = new double[dimensions];
+        for (int l = 0; l < landmarks.length; l++) {
+          final int i = landmarks[l];
+          if (i == j) {
+            continue;
+          }
+          final double projected = Math.max(distance(current[i], current[j]), 1e-12);
+          if (projected > lambda) {
+            continue;
+          }
+          final double factor = (curvilinear[l][j] - projected) / projected;
+          for (int d = 0; d < dimensions; d++) {
+            shift[d] += factor * (current[j][d] - current[i][d]);
+          }
+          used++;
+        }
+        if (used > 0) {
+          for (int d = 0; d < dimensions; d++) {
+            moved[d] += alpha * shift[d] / used;
+          }
+        }
+        next[j] = moved;
+      });
+      y = next;
+      progress = 0.7 + 0.3 * (it + 1) / iterations;
+    }
+    return y;
+  }
+
+  /**
+   * Writes one row per sample with its name and coordinates.
+   *
+   * @param header prefix of the column headers, e.g., "PC"
+   */
+  public static void writeScores(@NotNull File file, @NotNull String[] sampleNames,
+      @NotNull double[][] scores, @NotNull String header) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      writer.write("sample");
+      final int dimensions = scores.length > 0 ? scores[0].length : 0;
+      for (int d = 0; d < dimensions; d++) {
+        writer.write("," + header + (d + 1));
+      }
+      writer.newLine();
+      for (int i = 0; i < scores.length; i++) {
+        writer.write(CSVUtils.escape(sampleNames[i], ","));
+        for (double v : scores[i]) {
+          writer.write("," + v);
+        }
+        writer.newLine();
+      }
+    }
+  }
+
+  /**
+   * Writes the scores to the selected file if the export is enabled in the
+   * {@link ProjectionPlotParameters}.
+   *
+   * @param files  the samples in the order of the scores
+   * @param header prefix of the column headers, e.g., "PC"
+   */
+  static void exportScores(@NotNull ParameterSet parameters, @NotNull RawDataFile[] files,
+      @NotNull double[][] scores, @NotNull String header) throws IOException {
+    if (!parameters.getParameter(ProjectionPlotParameters.exportScores).getValue()) {
+      return;
+    }
+    final String[] names = Arrays.stream(files).map(RawDataFile::getName).toArray(String[]::new);
+    writeScores(
+        parameters.getParameter(ProjectionPlotParameters.exportScores).getEmbeddedParameter()
+            .getValue(), names, scores, header);
+  }
+
+  /**
+   * @return one dimension of the scores of all samples
+   */
+  public static double[] getColumn(@NotNull double[][] scores, int dimension) {
+    final double[] column = new double[scores.length];
+    for (int i = 0; i < scores.length; i++) {
+      column[i] = scores[i][dimension];
+    }
+    return column;
+  }
+
+  private double[][] reduce(double[][] data, int dimensions) {
+    final int p = data.length == 0 ? 0 : data[0].length;
+    if (p <= REDUCED_DIMENSIONS) {
+      progress = 0.5;
+      return data;
+    }
+    final double[][] reduced = pca(data, Math.max(REDUCED_DIMENSIONS, dimensions));
+    progress = 0.5;
+    return reduced;
+  }
+
+  /**
+   * The first principal components as start of the iterative mappings.
+   */
+  private double[][] initialLayout(double[][] reduced, int dimensions) {
+    final double[][] initial = new ProjectionEngine(seed).pca(reduced, dimensions);
+    // break ties of identical samples, which would have no gradient
+    final Random random = new Random(seed);
+    for (double[] row : initial) {
+      for (int d = 0; d < dimensions; d++) {
+        row[d] += random.nextGaussian() * 1e-6;
+      }
+    }
+    return initial;
+  }
+
+  private int[] selectLandmarks(int n) {
+    if (n <= ALL_PAIRS_LIMIT) {
+      return IntStream.range(0, n).toArray();
+    }
+    // partial Fisher-Yates shuffle
+    final int[] indices = IntStream.range(0, n).toArray();
+    final Random random = new Random(seed);
+    for (int i = 0; i < SAMPLED_PARTNERS; i++) {
+      final int j = i + random.nextInt(n - i);
+      final int tmp = indices[i];
+      indices[i] = indices[j];
+      indices[j] = tmp;
+    }
+    return Arrays.copyOf(indices, SAMPLED_PARTNERS);
+  }
+
+  /**
+   * Shortest path distances from each landmark to all samples in the symmetric
+   * k-nearest-neighbor graph. Samples that are not connected to a landmark get the euclidean
+   * distance.
+   *
+   * @return distances[landmark][sample]
+   */
+  private double[][] graphDistances(double[][] points, int[] landmarks) {
+    final int n = points.length;
+    final int k = Math.min(CDA_NEIGHBOURS, n - 1);
+    final int[][] neighbours = new int[n][];
+    IntStream.range(0, n).parallel().forEach(i -> {
+      // max heap of the k nearest neighbors found so far
+      final PriorityQueue<double[]> nearest = new PriorityQueue<>(
+          (a, b) -> Double.compare(b[0], a[0]));
+      for (int j = 0; j < n; j++) {
+        if (j == i) {
+          continue;
+        }
+        final double d = distance(points[i], points[j]);
+        if (nearest.size() < k) {
+          nearest.add(new double[]{d, j});
+        } else if (d < nearest.peek()[0]) {
+          nearest.poll();
+          nearest.add(new double[]{d, j});
+        }
+      }
+      neighbours[i] = nearest.stream().mapToInt(e -> (int) e[1]).toArray();
+    });
+
+    // symmetric adjacency
+    final int[] degree = new int[n];
+    for (int i = 0; i < n; i++) {
+      for (int j : neighbours[i]) {
+        degree[i]++;
+        degree[j]++;
+      }
+    }
+    final int[][] adjacency = new int[n][];
+    for (int i = 0; i < n; i++) {
+      adjacency[i] = new int[degree[i]];
+      degree[i] = 0;
+    }
+    for (int i = 0; i < n; i++) {
+      for (int j : neighbours[i]) {
+        adjacency[i][degree[i]++] = j;
+        adjacency[j][degree[j]++] = i;
+      }
+    }
+
+    final double[][] distances = new double[landmarks.length][];
+    IntStream.range(0, landmarks.length).parallel().forEach(l -> {
+      final int source = landmarks[l];
+      final double[] dist = new double[n];
+      Arrays.fill(dist, Double.POSITIVE_INFINITY);
+      dist[source] = 0d;
+      final PriorityQueue<double[]> queue = new PriorityQueue<>(
+          (a, b) -> Double.compare(a[0], b[0]));
+      queue.add(new double[]{0d, source});
+      while (!queue.isEmpty()) {
+        final double[] entry = queue.poll();
+        final int i = (int) entry[1];
+        if (entry[0] > dist[i]) {
+          continue;
+        }
+        for (int j : adjacency[i]) {
+          final double d = dist[i] + distance(points[i], points[j]);
+          if (d < dist[j]) {
+            dist[j] = d;
+            queue.add(new double[]{d, j});
+          }
+        }
+      }
+      for (int j = 0; j < n; j++) {
+        if (Double.isInfinite(dist[j])) {
+          dist[j] = distance(points[source], points[j]);
+        }
+      }
+      distances[l] = dist;
+    });
+    return distances;
+  }
+
+  private static double distance(double[] a, double[] b) {
+    double sum = 0d;
+    for (int i = 0; i < a.length; i++) {
+      final double diff = a[i] - b[i];
+      sum += diff * diff;
+    }
+    return Math.sqrt(sum);
+  }
+
+  /**
+   * @return X M for the n x p matrix X and the p x l matrix M
+   */
+  private static double[][] multiply(double[][] x, double[][] m, int l) {
+    final double[][] result = new double[x.length][l];
+    IntStream.range(0, x.length).parallel().forEach(i -> {
+      final double[] row = x[i];
+      final double[] out = result[i];
+      for (int f = 0; f < row.length; f++) {
+        final double value = row[f];
+        if (value == 0d) {
+          continue;
+        }
+        final double[] mRow = m[f];
+        for (int c = 0; c < l; c++) {
+          out[c] += value * mRow[c];
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @return X^T M for the n x p matrix X and the n x l matrix M, computed in feature blocks
+   */
+  private static double[][] multiplyTransposed(double[][] x, double[][] m, int l) {
+    final int p = x[0].length;
+    final double[][] result = new double[p][l];
+    final int blocks = (p + FEATURE_BLOCK - 1) / FEATURE_BLOCK;
+    IntStream.range(0, blocks).parallel().forEach(block -> {
+      final int start = block * FEATURE_BLOCK;
+      final int end = Math.min(p, start + FEATURE_BLOCK);
+      for (int i = 0; i < x.length; i++) {
+        final double[] row = x[i];
+        final double[] mRow = m[i];
+        for (int f = start; f < end; f++) {
+          final double value = row[f];
+          if (value == 0d) {
+            continue;
+          }
+          final double[] out = result[f];
+          for (int c = 0; c < l; c++) {
+            out[c] += value * mRow[c];
+          }
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @return Z^T Z for the p x l matrix Z
+   */
+  private static double[][] gram(double[][] z, int l) {
+    final int p = z.length;
+    final int blocks = (p + FEATURE_BLOCK - 1) / FEATURE_BLOCK;
+    return IntStream.range(0, blocks).parallel().mapToObj(block -> {
+      final double[][] partial = new double[l][l];
+      final int end = Math.min(p, (block + 1) * FEATURE_BLOCK);
+      for (int f = block * FEATURE_BLOCK; f < end; f++) {
+        final double[] row = z[f];
+        for (int a = 0; a < l; a++) {
+          for (int b = a; b < l; b++) {
+            partial[a][b] += row[a] * row[b];
+          }
+        }
+      }
+      return partial;
+    }).reduce(new double[l][l], (a, b) -> {
+      final double[][] sum = new double[l][l];
+      for (int i = 0; i < l; i++) {
+        for (int j = i; j < l; j++) {
+          sum[i][j] = a[i][j] + b[i][j];
+          sum[j][i] = sum[i][j];
+        }
+      }
+      return sum;
+    });
+  }
+
+  /**
+   * Modified Gram-Schmidt on the columns, applied twice for numerical stability. Columns that are
+   * linearly dependent on the previous ones are set to zero.
+   */
+  private static void orthonormalizeColumns(double[][] m) {
+    final int rows = m.length;
+    final int cols = rows == 0 ? 0 : m[0].length;
+    for (int pass = 0; pass < 2; pass++) {
+      for (int c = 0; c < cols; c++) {
+        for (int prev = 0; prev < c; prev++) {
+          double dot = 0d;
+          for (int r = 0; r < rows; r++) {
+            dot += m[r][c] * m[r][prev];
+          }
+          for (int r = 0; r < rows; r++) {
+            m[r][c] -= dot * m[r][prev];
+          }
+        }
+        double norm = 0d;
+        for (int r = 0; r < rows; r++) {
+          norm += m[r][c] * m[r][c];
+        }
+        norm = Math.sqrt(norm);
+        for (int r = 0; r < rows; r++) {
+          m[r][c] = norm > 1e-10 ? m[r][c] / norm : 0d;
+        }
+      }
+    }
+  }
+
+  /**
+   * Cyclic Jacobi eigen decomposition of a small symmetric matrix.
+   *
+   * @param a           the matrix, overwritten
+   * @param eigenValues receives the eigen values in decreasing order
+   * @return the eigen vectors as columns, in the order of the eigen values
+   */
+  static double[][] symmetricEigen(double[][] a, double[] eigenValues) {
+    final int n = a.length;
+    final double[][] v = new double[n][n];
+    for (int i = 0; i < n; i++) {
+      v[i][i] = 1d;
+    }
+
+    for (int sweep = 0; sweep < 100; sweep++) {
+      double offDiagonal = 0d;
+      for (int i = 0; i < n; i++) {
+        for (int j = i + 1; j < n; j++) {
+          offDiagonal += a[i][j] * a[i][j];
+        }
+      }
+      if (offDiagonal < 1e-30) {
+        break;
+      }
+      for (int p = 0; p < n; p++) {
+        for (int q = p + 1; q < n; q++) {
+          if (Math.abs(a[p][q]) < 1e-300) {
+            continue;
+          }
+          final double theta = (a[q][q] - a[p][p]) / (2d * a[p][q]);
+          final double t = Math.signum(theta == 0d ? 1d : theta) / (Math.abs(theta) + Math.sqrt(
+              theta * theta + 1d));
+          final double c = 1d / Math.sqrt(t * t + 1d);
+          final double s = t * c;
+          for (int k = 0; k < n; k++) {
+            final double akp = a[k][p];
+            final double akq = a[k][q];
+            a[k][p] = c * akp - s * akq;
+            a[k][q] = s * akp + c * akq;
+          }
+          for (int k = 0; k < n; k++) {
+            final double apk = a[p][k];
+            final double aqk = a[q][k];
+            a[p][k] = c * apk - s * aqk;
+            a[q][k] = s * apk + c * aqk;
+          }
+          for (int k = 0; k < n; k++) {
+            final double vkp = v[k][p];
+            final double vkq = v[k][q];
+            v[k][p] = c * vkp - s * vkq;
+            v[k][q] = s * vkp + c * vkq;
+          }
+        }
+      }
+    }
+
+    final Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (i, j) -> Double.compare(a[j][j], a[i][i]));
+    final double[][] sorted = new double[n][n];
+    for (int c = 0; c < n; c++) {
+      eigenValues[c] = a[order[c]][order[c]];
+      for (int r = 0; r < n; r++) {
+        sorted[r][c] = v[r][order[c]];
+      }
+    }
+    return sorted;
+  }
+}
@@ -28,13 +28,22 @@ package io.github.mzmine.modules.dataanalysis.projectionplots;
 import io.github.mzmine.datamodel.AbundanceMeasure;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileSelectionType;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
+import java.util.List;
+import javafx.stage.FileChooser.ExtensionFilter;
 
 public class ProjectionPlotParameters extends SimpleParameterSet {
 
+  private static final List<ExtensionFilter> extensions = List.of( //
+      new ExtensionFilter("comma-separated values", "*.csv") //
+  );
+
   public static final FeatureListsParameter featureLists = new FeatureListsParameter();
 
   public static final RawDataFilesParameter dataFiles = new RawDataFilesParameter(
@@ -54,9 +63,14 @@ public class ProjectionPlotParameters extends SimpleParameterSet {
       "Y-axis component", "Component on the Y-axis", componentPossibleValues,
       componentPossibleValues[1]);
 
+  public static final OptionalParameter<FileNameParameter> exportScores = new OptionalParameter<>(
+      new FileNameParameter("Export scores",
+          "Writes the coordinates of all samples in all computed dimensions to a csv file",
+          extensions, FileSelectionType.SAVE), false);
+
   public ProjectionPlotParameters() {
     super(featureLists, dataFiles, coloringType, featureMeasurementType, xAxisComponent,
-        yAxisComponent);
+        yAxisComponent, exportScores);
   }
 
 }
@@ -32,14 +32,14 @@ import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.gui.chartbasics.simplechart.datasets.AbstractTaskXYDataset;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.IOException;
 import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
-import jmprojection.Sammons;
 
 public class SammonsDataset extends AbstractTaskXYDataset implements ProjectionPlotDataset {
 
@@ -66,7 +66,7 @@ public class SammonsDataset extends AbstractTaskXYDataset implements ProjectionP
   private final int xAxisDimension;
   private final int yAxisDimension;
 
-  private ProjectionStatus projectionStatus;
+  private final ProjectionEngine engine = new ProjectionEngine();
 
   public SammonsDataset(MZmineProject project, ParameterSet parameters) {
 
@@ -257,28 +257,29 @@ public class SammonsDataset extends AbstractTaskXYDataset implements ProjectionP
     }
 
     // Scale data and do Sammon's mapping
-    Preprocess.scaleToUnityVariance(rawData);
-    Sammons sammonsProj = new Sammons(rawData);
-
-    projectionStatus = sammonsProj.getProjectionStatus();
-
-    sammonsProj.iterate(100);
+    ProjectionEngine.scaleToUnityVariance(rawData);
+    double[][] result = engine.sammon(rawData, numComponents, 100);
 
     if (isCanceled()) {
       return;
     }
 
-    double[][] result = sammonsProj.getState();
+    component1Coords = ProjectionEngine.getColumn(result, xAxisDimension - 1);
+    component2Coords = ProjectionEngine.getColumn(result, yAxisDimension - 1);
 
-    if (isCanceled()) {
+    try {
+      ProjectionEngine.exportScores(parameters, selectedRawDataFiles, result, "Dimension");
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot export projection scores " + e.getMessage(), e);
+      setStatus(TaskStatus.ERROR);
+      errorMessage = "Cannot export projection scores: " + e.getMessage();
       return;
     }
 
-    component1Coords = result[xAxisDimension - 1];
-    component2Coords = result[yAxisDimension - 1];
-
-    ProjectionPlotWindow newFrame = new ProjectionPlotWindow(featureList, this, parameters);
-    newFrame.show();
+    if (!MZmineCore.isHeadLessMode()) {
+      ProjectionPlotWindow newFrame = new ProjectionPlotWindow(featureList, this, parameters);
+      newFrame.show();
+    }
 
     setStatus(TaskStatus.FINISHED);
     logger.info("Finished computing projection plot.");
@@ -287,9 +288,7 @@ public class SammonsDataset extends AbstractTaskXYDataset implements ProjectionP
 
   @Override
   public void cancel() {
-    if (projectionStatus != null) {
-      projectionStatus.cancel();
-    }
+    engine.cancel();
     super.cancel();
   }
 
@@ -300,10 +299,7 @@ public class SammonsDataset extends AbstractTaskXYDataset implements ProjectionP
 
   @Override
   public double getFinishedPercentage() {
-    if (projectionStatus == null) {
-      return 0;
-    }
-    return projectionStatus.getFinishedPercentage();
+    return engine.getProgress();
   }
 
 }
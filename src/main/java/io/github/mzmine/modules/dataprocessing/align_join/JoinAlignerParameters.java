@@ -90,6 +90,12 @@ public class JoinAlignerParameters extends SimpleParameterSet {
       new JoinAlignerSpectraSimilarityScoreParameters(), false);
 
 
+  public static final BooleanParameter appendToAligned = new BooleanParameter(
+      "Append to aligned feature list",
+      "If checked, the selected feature list with multiple raw data files is used as existing aligned"
+          + "\nfeature list. Only the rows of the other selected feature lists are aligned against the"
+          + "\nrow averages of a copy of it. Row IDs of the existing alignment are kept.", false);
+
   public static final OriginalFeatureListHandlingParameter handleOriginal = new OriginalFeatureListHandlingParameter(
       "Original feature list",
       "Defines the processing.\nKEEP is to keep the original feature list and create a new"
@@ -98,7 +104,7 @@ public class JoinAlignerParameters extends SimpleParameterSet {
   public JoinAlignerParameters() {
     super(new Parameter[]{peakLists, peakListName, MZTolerance, MZWeight, RTTolerance, RTWeight,
             mobilityTolerance, mobilityWeight, SameChargeRequired, SameIDRequired,
-            compareIsotopePattern, compareSpectraSimilarity, handleOriginal},
+            compareIsotopePattern, compareSpectraSimilarity, appendToAligned, handleOriginal},
         "https://mzmine.github.io/mzmine_documentation/module_docs/join_aligner/join_aligner.html");
   }
 
@@ -89,6 +89,7 @@ public class JoinAlignerTask extends AbstractTask {
   private final Double minIsotopeScore;
   private final Double isotopeNoiseLevel;
   private final MZTolerance isotopeMZTolerance;
+  private final boolean appendToAligned;
   /**
    * All feature lists except the base list
    */
@@ -96,6 +97,8 @@ public class JoinAlignerTask extends AbstractTask {
   private ModularFeatureList alignedFeatureList;
   // Processed rows counter
   private int totalRows;
+  // rows of an existing alignment in append mode
+  private int initialAlignedRows;
   // ID counter for the new peaklist
   private int iteration = 1;
   // fields for spectra similarity
@@ -129,6 +132,7 @@ public class JoinAlignerTask extends AbstractTask {
         .getValue();
 
     sameIDRequired = parameters.getParameter(JoinAlignerParameters.SameIDRequired).getValue();
+    appendToAligned = parameters.getValue(JoinAlignerParameters.appendToAligned);
     compareIsotopePattern = parameters.getParameter(JoinAlignerParameters.compareIsotopePattern)
         .getValue();
     final ParameterSet isoParam = parameters.getParameter(
@@ -169,8 +173,9 @@ public class JoinAlignerTask extends AbstractTask {
     if (totalRows == 0) {
       return 0f;
     }
-    return alignedFeatureList != null ? (alignedFeatureList.getNumberOfRows() + alignedRows.get())
-        / (double) totalRows : 0d;
+    return alignedFeatureList != null ?
+        (alignedFeatureList.getNumberOfRows() - initialAlignedRows + alignedRows.get())
+            / (double) totalRows : 0d;
   }
 
   @Override
@@ -183,12 +188,32 @@ public class JoinAlignerTask extends AbstractTask {
     }
 
     setStatus(TaskStatus.PROCESSING);
+
+    // in append mode, the list with multiple raw data files is the existing aligned list
+    final ModularFeatureList existingAligned;
+    final List<FeatureList> newFeatureLists;
+    if (appendToAligned) {
+      final List<FeatureList> alignedLists = featureLists.stream()
+          .filter(flist -> flist.getNumberOfRawDataFiles() > 1).toList();
+      if (alignedLists.size() != 1) {
+        setStatus(TaskStatus.ERROR);
+        setErrorMessage("Cannot append to aligned feature list. Select exactly one aligned "
+            + "feature list (with multiple raw data files), but found " + alignedLists.size());
+        return;
+      }
+      existingAligned = (ModularFeatureList) alignedLists.get(0);
+      newFeatureLists = featureLists.stream().filter(flist -> flist != existingAligned).toList();
+    } else {
+      existingAligned = null;
+      newFeatureLists = featureLists;
+    }
+
     logger.info(
-        () -> "Running parallel join aligner on " + featureLists.size() + " feature lists.");
+        () -> "Running parallel join aligner on " + newFeatureLists.size() + " feature lists.");
 
     // Remember how many rows we need to process. Each row will be processed
     // twice, first for score calculation, second for actual alignment.
-    for (FeatureList list : featureLists) {
+    for (FeatureList list : newFeatureLists) {
       totalRows += list.getNumberOfRows();
     }
 
@@ -198,20 +223,37 @@ public class JoinAlignerTask extends AbstractTask {
       return;
     }
 
-    // Create a new aligned feature list based on the baseList and renumber IDs
-    alignedFeatureList = new ModularFeatureList(featureListName, getMemoryMapStorage(),
-        allDataFiles);
-    FeatureListUtils.transferRowTypes(alignedFeatureList, featureLists);
-    FeatureListUtils.transferSelectedScans(alignedFeatureList, featureLists);
-    final AtomicInteger newRowID = new AtomicInteger(1);
+    final AtomicInteger newRowID;
+    if (existingAligned == null) {
+      // Create a new aligned feature list based on the baseList and renumber IDs
+      alignedFeatureList = new ModularFeatureList(featureListName, getMemoryMapStorage(),
+          allDataFiles);
+      newRowID = new AtomicInteger(1);
+    } else {
+      // copy the existing alignment with all raw data files and keep its row IDs
+      alignedFeatureList = existingAligned.createCopy(featureListName, getMemoryMapStorage(),
+          allDataFiles, false);
+      newRowID = new AtomicInteger(
+          existingAligned.stream().mapToInt(FeatureListRow::getID).max().orElse(0) + 1);
+    }
+    initialAlignedRows = alignedFeatureList.getNumberOfRows();
+    FeatureListUtils.transferRowTypes(alignedFeatureList, newFeatureLists);
+    FeatureListUtils.transferSelectedScans(alignedFeatureList, newFeatureLists);
 
     // list all rows for each feature list
-    final List<List<FeatureListRow>> allRows = new ArrayList<>(featureLists.size());
+    final List<List<FeatureListRow>> allRows = new ArrayList<>(newFeatureLists.size());
 
-    for (var flist : featureLists) {
+    for (var flist : newFeatureLists) {
       allRows.add(new ArrayList<>(flist.getRows()));
     }
 
+    if (existingAligned != null && !allRows.isEmpty()) {
+      // align only the new rows on the row averages of the existing alignment
+      final List<FeatureListRow> existingRows = new ArrayList<>(alignedFeatureList.getRows());
+      existingRows.sort(MZ_ASCENDING);
+      alignRowsOnBaseRows(allRows, existingRows);
+    }
+
     // still contains rows from unaligned feature lists
     while (!allRows.isEmpty()) {
       // sort remaining unaligned rows by size
@@ -248,22 +290,39 @@ public class JoinAlignerTask extends AbstractTask {
       iteration++;
     }
 
-    // sort by RT and reset IDs
-    FeatureListUtils.sortByDefaultRT(alignedFeatureList, true);
-
-    // update row bindings
-    alignedFeatureList.parallelStream().filter(row -> row.getNumberOfFeatures() > 1)
-        .forEach(FeatureListRow::applyRowBindings);
-
     // score alignment by the number of features that fall within the mz, RT, mobility range
     // do not apply all the advanced filters to keep it simple
     MobilityTolerance mobTol = compareMobility ? mobilityTolerance : null;
-    RowAlignmentScoreCalculator calculator = new RowAlignmentScoreCalculator(featureLists,
+    RowAlignmentScoreCalculator calculator = new RowAlignmentScoreCalculator(newFeatureLists,
         mzTolerance, rtTolerance, mobTol, mzWeight, rtWeight, mobilityWeight);
-    FeatureListUtils.addAlignmentScores(alignedFeatureList, calculator, false);
 
-    // applied methods
-    alignedFeatureList.getAppliedMethods().addAll(featureLists.get(0).getAppliedMethods());
+    if (existingAligned == null) {
+      // sort by RT and reset IDs
+      FeatureListUtils.sortByDefaultRT(alignedFeatureList, true);
+
+      // update row bindings
+      alignedFeatureList.parallelStream().filter(row -> row.getNumberOfFeatures() > 1)
+          .forEach(FeatureListRow::applyRowBindings);
+
+      FeatureListUtils.addAlignmentScores(alignedFeatureList, calculator, false);
+    } else {
+      // keep the IDs of the existing alignment
+      FeatureListUtils.sortByDefaultRT(alignedFeatureList, false);
+
+      // only update the row averages of rows that received new features
+      final List<RawDataFile> newDataFiles = FeatureListUtils.getAllDataFiles(newFeatureLists);
+      alignedFeatureList.parallelStream().filter(
+              row -> row.getNumberOfFeatures() > 1 && newDataFiles.stream().anyMatch(row::hasFeature))
+          .forEach(FeatureListRow::applyRowBindings);
+
+      // merge scores of the new samples into the existing scores
+      FeatureListUtils.addAlignmentScoresIncremental(alignedFeatureList, calculator);
+    }
+
+    // applied methods, already copied from the existing alignment in append mode
+    if (existingAligned == null) {
+      alignedFeatureList.getAppliedMethods().addAll(featureLists.get(0).getAppliedMethods());
+    }
     // Add task description to peakList
     alignedFeatureList.addDescriptionOfAppliedTask(
         new SimpleFeatureListAppliedMethod("Join aligner", JoinAlignerModule.class, parameters,
@@ -30,14 +30,8 @@ import java.awt.Font;
 import java.awt.Shape;
 import java.awt.geom.Ellipse2D;
 import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Vector;
 import org.apache.commons.math.analysis.polynomials.PolynomialFunction;
-import org.apache.commons.math.optimization.fitting.PolynomialFitter;
-import org.apache.commons.math.optimization.general.GaussNewtonOptimizer;
-import org.apache.commons.math.stat.regression.SimpleRegression;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.NumberAxis;
@@ -52,6 +46,7 @@ import org.jfree.chart.title.TextTitle;
 import org.jfree.chart.ui.RectangleInsets;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
+import org.jetbrains.annotations.Nullable;
 import io.github.mzmine.gui.chartbasics.gui.javafx.EChartViewer;
 import io.github.mzmine.gui.chartbasics.listener.ZoomHistory;
 import io.github.mzmine.main.MZmineCore;
@@ -152,16 +147,17 @@ public class AlignmentRansacPlot extends EChartViewer {
    *
    * @param data Vector with the alignments
    * @param title Name of the feature lists in this alignment
+   * @param model the fitted RT correction from the second to the first feature list, or null if
+   *              no model could be fitted
    */
-  public void addSeries(Vector<AlignStructMol> data, String title, boolean linear) {
+  public void addSeries(Vector<AlignStructMol> data, String title,
+      @Nullable PolynomialFunction model) {
     try {
       chart.setTitle(title);
       XYSeries s1 = new XYSeries("Aligned pairs");
       XYSeries s2 = new XYSeries("Non-aligned pairs");
       XYSeries s3 = new XYSeries("Model");
 
-      PolynomialFunction function = getPolynomialFunction(data, linear);
-
       for (AlignStructMol point : data) {
 
         if (point.Aligned) {
@@ -169,10 +165,9 @@ public class AlignmentRansacPlot extends EChartViewer {
         } else {
           s2.add(point.row1.getFeatures().get(0).getRT(), point.row2.getFeatures().get(0).getRT());
         }
-        try {
-          s3.add(function.value(point.row2.getFeatures().get(0).getRT()),
+        if (model != null) {
+          s3.add(model.value(point.row2.getFeatures().get(0).getRT()),
               point.row2.getFeatures().get(0).getRT());
-        } catch (Exception e) {
         }
       }
 
@@ -184,68 +179,6 @@ public class AlignmentRansacPlot extends EChartViewer {
     }
   }
 
-  private PolynomialFunction getPolynomialFunction(Vector<AlignStructMol> list, boolean linear) {
-    List<RTs> data = new ArrayList<RTs>();
-    for (AlignStructMol m : list) {
-      if (m.Aligned) {
-        data.add(new RTs(m.RT2, m.RT));
-      }
-    }
-
-    data = this.smooth(data);
-    Collections.sort(data, new RTs());
-
-    double[] xval = new double[data.size()];
-    double[] yval = new double[data.size()];
-    int i = 0;
-
-    for (RTs rt : data) {
-      xval[i] = rt.RT;
-      yval[i++] = rt.RT2;
-    }
-
-    int degree = 2;
-    if (linear) {
-      degree = 1;
-    }
-
-    PolynomialFitter fitter = new PolynomialFitter(degree, new GaussNewtonOptimizer(true));
-    for (RTs rt : data) {
-      fitter.addObservedPoint(1, rt.RT, rt.RT2);
-    }
-    try {
-      return fitter.fit();
-
-    } catch (Exception ex) {
-      return null;
-    }
-  }
-
-  private List<RTs> smooth(List<RTs> list) {
-    // Add points to the model in between of the real points to smooth the
-    // regression model
-    Collections.sort(list, new RTs());
-
-    for (int i = 0; i < list.size() - 1; i++) {
-      RTs point1 = list.get(i);
-      RTs point2 = list.get(i + 1);
-      if (point1.RT < point2.RT - 2) {
-        SimpleRegression regression = new SimpleRegression();
-        regression.addData(point1.RT, point1.RT2);
-        regression.addData(point2.RT, point2.RT2);
-        double rt = point1.RT + 1;
-        while (rt < point2.RT) {
-          RTs newPoint = new RTs(rt, regression.predict(rt));
-          list.add(newPoint);
-          rt++;
-        }
-
-      }
-    }
-
-    return list;
-  }
-
   public void printAlignmentChart(String axisTitleX, String axisTitleY) {
     try {
       toolTipGenerator = new AlignmentPreviewTooltipGenerator(axisTitleX, axisTitleY);
@@ -75,6 +75,12 @@ public class RansacAlignerParameters extends SimpleParameterSet {
   public static final BooleanParameter SameChargeRequired = new BooleanParameter(
       "Require same charge state", "If checked, only rows having same charge state can be aligned");
 
+  public static final BooleanParameter appendToAligned = new BooleanParameter(
+      "Append to aligned feature list",
+      "If checked, the selected feature list with multiple raw data files is used as existing aligned"
+          + "\nfeature list. Only the other selected feature lists are aligned into a copy of it."
+          + "\nSamples that were aligned before are not re-fitted.", false);
+
   @Override
   public ExitCode showSetupDialog(boolean valueCheckRequired) {
     RansacAlignerSetupDialog dialog = new RansacAlignerSetupDialog(valueCheckRequired, this);
@@ -84,7 +90,7 @@ public class RansacAlignerParameters extends SimpleParameterSet {
 
   public RansacAlignerParameters() {
     super(new Parameter[]{peakLists, peakListName, MZTolerance, RTToleranceBefore, RTToleranceAfter,
-            Iterations, NMinPoints, Margin, Linear, SameChargeRequired},
+            Iterations, NMinPoints, Margin, Linear, SameChargeRequired, appendToAligned},
         "https://mzmine.github.io/mzmine_documentation/module_docs/align_ransac/align_ransac.html");
   }
 
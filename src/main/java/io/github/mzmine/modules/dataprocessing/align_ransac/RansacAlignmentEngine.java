@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_ransac;
+
+import static io.github.mzmine.util.FeatureListRowSorter.MZ_ASCENDING;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.util.FeatureListUtils;
+import io.github.mzmine.util.FeatureUtils;
+import io.github.mzmine.util.RangeUtils;
+import io.github.mzmine.util.collections.BinarySearch;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import org.apache.commons.math.analysis.polynomials.PolynomialFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * RANSAC alignment of many samples against one reference. The retention time models of all
+ * samples are fitted in parallel against the current state of the aligned feature list (the
+ * reference) using primitive {@link RtPairBuffer}s. Afterwards, rows are mapped sample by sample
+ * into the aligned list.
+ * <p>
+ * New samples can be aligned incrementally into an existing aligned feature list by calling
+ * {@link #alignSamples(ModularFeatureList, List, AtomicInteger)} again. Models of earlier samples
+ * are never re-fitted.
+ */
+public class RansacAlignmentEngine {
+
+  private static final Logger logger = Logger.getLogger(RansacAlignmentEngine.class.getName());
+
+  private final MZTolerance mzTolerance;
+  private final RTTolerance rtToleranceBefore;
+  private final RTTolerance rtToleranceAfter;
+  private final boolean sameChargeRequired;
+  private final RansacRtModelFitter fitter;
+  private final BooleanSupplier isCanceled;
+  private final AtomicInteger processedRows = new AtomicInteger(0);
+
+  public RansacAlignmentEngine(@NotNull ParameterSet parameters,
+      @NotNull BooleanSupplier isCanceled) {
+    mzTolerance = parameters.getValue(RansacAlignerParameters.MZTolerance);
+    rtToleranceBefore = parameters.getValue(RansacAlignerParameters.RTToleranceBefore);
+    rtToleranceAfter = parameters.getValue(RansacAlignerParameters.RTToleranceAfter);
+    sameChargeRequired = parameters.getValue(RansacAlignerParameters.SameChargeRequired);
+    fitter = new RansacRtModelFitter(parameters);
+    this.isCanceled = isCanceled;
+  }
+
+  /**
+   * Fits the models of all samples in parallel against the aligned list and maps all rows into
+   * the aligned list. Samples are added in the order of the input list. An empty aligned list is
+   * initialized with the rows of the first sample, which then acts as the reference.
+   *
+   * @param alignedList the target list, existing rows are never re-fitted
+   * @param samples     the feature lists to align
+   * @param nextRowId   the next free row ID in the aligned list
+   */
+  public void alignSamples(@NotNull ModularFeatureList alignedList,
+      @NotNull List<? extends FeatureList> samples, @NotNull AtomicInteger nextRowId) {
+    if (samples.isEmpty()) {
+      return;
+    }
+    List<? extends FeatureList> remaining = samples;
+    if (alignedList.getNumberOfRows() == 0) {
+      alignSample(alignedList, samples.get(0), null, nextRowId);
+      remaining = samples.subList(1, samples.size());
+    }
+
+    final Map<FeatureList, PolynomialFunction> models = fitModels(alignedList, remaining);
+    for (FeatureList sample : remaining) {
+      if (isCanceled.getAsBoolean()) {
+        return;
+      }
+      alignSample(alignedList, sample, models.get(sample), nextRowId);
+    }
+  }
+
+  /**
+   * Fits all retention time models in parallel against the same reference.
+   *
+   * @return map of sample to retention time correction function (sample RT to reference RT). No
+   * entry if no model was found
+   */
+  @NotNull
+  public Map<FeatureList, PolynomialFunction> fitModels(@NotNull FeatureList reference,
+      @NotNull List<? extends FeatureList> samples) {
+    final MzSortedRows referenceRows = MzSortedRows.of(reference.getRows());
+    final Map<FeatureList, PolynomialFunction> models = new HashMap<>();
+    samples.parallelStream().forEach(sample -> {
+      if (isCanceled.getAsBoolean()) {
+        return;
+      }
+      final PolynomialFunction model = fitModel(referenceRows, sample);
+      if (model != null) {
+        synchronized (models) {
+          models.put(sample, model);
+        }
+      }
+    });
+    logger.finest(() -> "Fitted %d RANSAC models for %d samples".formatted(models.size(),
+        samples.size()));
+    return models;
+  }
+
+  /**
+   * Fits the retention time correction of one sample against the reference
+   *
+   * @return the correction function (sample RT to reference RT) or null if no model was found
+   */
+  @Nullable
+  public PolynomialFunction fitModel(@NotNull FeatureList reference, @NotNull FeatureList sample) {
+    return fitModel(MzSortedRows.of(reference.getRows()), sample);
+  }
+
+  @Nullable
+  private PolynomialFunction fitModel(@NotNull MzSortedRows referenceRows,
+      @NotNull FeatureList sample) {
+    final RtPairBuffer pairs = collectRtPairs(referenceRows, MzSortedRows.of(sample.getRows()));
+    if (pairs.isEmpty()) {
+      return null;
+    }
+    return fitter.fitCorrection(pairs);
+  }
+
+  /**
+   * Create all possible pairs of rows within the m/z and RT (before correction) tolerance.
+   */
+  private RtPairBuffer collectRtPairs(MzSortedRows reference, MzSortedRows sample) {
+    final RtPairBuffer pairs = new RtPairBuffer(reference.size());
+    for (int i = 0; i < reference.size(); i++) {
+      final double mz = reference.mzs[i];
+      final float rt = reference.rts[i];
+      final Range<Double> mzRange = mzTolerance.getToleranceRange(mz);
+      final Range<Float> rtRange = rtToleranceBefore.getToleranceRange(rt);
+      final double maxMz = mzRange.upperEndpoint();
+      final float minRt = rtRange.lowerEndpoint();
+      final float maxRt = rtRange.upperEndpoint();
+
+      final int end = BinarySearch.upperBound(sample.mzs, maxMz);
+      for (int s = BinarySearch.lowerBound(sample.mzs, mzRange.lowerEndpoint()); s < end; s++) {
+        final float sampleRt = sample.rts[s];
+        if (sampleRt >= minRt && sampleRt <= maxRt) {
+          // x = reference RT, y = sample RT
+          pairs.add(rt, sampleRt);
+        }
+      }
+    }
+    return pairs;
+  }
+
+  /**
+   * Maps all rows of a sample to rows of the aligned list or adds new rows.
+   *
+   * @param model retention time correction or null to use the original retention times
+   * @return the number of rows that were matched to existing aligned rows
+   */
+  public int alignSample(@NotNull ModularFeatureList alignedList, @NotNull FeatureList sample,
+      @Nullable PolynomialFunction model, @NotNull AtomicInteger nextRowId) {
+    // aligned rows before adding this sample
+    final List<FeatureListRow> alignedByMz = alignedList.getRows().stream().sorted(MZ_ASCENDING)
+        .toList();
+
+    // Create a sorted set of scores matching
+    TreeSet<RowVsRowScore> scoreSet = new TreeSet<>();
+    for (FeatureListRow row : sample.getRows()) {
+      // Calculate limits for a row with which the row can be aligned
+      Range<Double> mzRange = mzTolerance.getToleranceRange(row.getAverageMZ());
+      float rt = correctRT(model, row.getAverageRT());
+      Range<Float> rtRange = rtToleranceAfter.getToleranceRange(rt);
+
+      // Get all rows of the aligned feature list within parameter limits
+      List<FeatureListRow> candidateRows = FeatureListUtils.getCandidatesWithinRanges(mzRange,
+          rtRange, Range.all(), alignedByMz, true);
+
+      for (FeatureListRow candidate : candidateRows) {
+        if (sameChargeRequired && (!FeatureUtils.compareChargeState(row, candidate))) {
+          continue;
+        }
+        try {
+          scoreSet.add(new RowVsRowScore(row, candidate, RangeUtils.rangeLength(mzRange) / 2.0,
+              RangeUtils.rangeLength(rtRange) / 2.0, rt));
+        } catch (Exception e) {
+          throw new IllegalStateException("Cannot score rows during RANSAC alignment", e);
+        }
+      }
+      processedRows.incrementAndGet();
+    }
+
+    // Iterate scores by descending order
+    final Map<FeatureListRow, FeatureListRow> alignmentMapping = new HashMap<>();
+    final Set<FeatureListRow> filledAlignedRows = new HashSet<>();
+    for (RowVsRowScore score : scoreSet) {
+      // Check if the row is already mapped or the aligned row is already filled
+      if (alignmentMapping.containsKey(score.getPeakListRow()) || filledAlignedRows.contains(
+          score.getAlignedRow())) {
+        continue;
+      }
+      alignmentMapping.put(score.getPeakListRow(), score.getAlignedRow());
+      filledAlignedRows.add(score.getAlignedRow());
+    }
+
+    // Align all rows using mapping
+    final List<FeatureListRow> newRows = new ArrayList<>();
+    for (FeatureListRow row : sample.getRows()) {
+      FeatureListRow targetRow = alignmentMapping.get(row);
+      // If we have no mapping for this row, add a new one
+      if (targetRow == null) {
+        targetRow = new ModularFeatureListRow(alignedList, nextRowId.getAndIncrement());
+        newRows.add(targetRow);
+      }
+      // Add all features from the original row to the aligned row
+      for (RawDataFile file : row.getRawDataFiles()) {
+        targetRow.addFeature(file, new ModularFeature(alignedList, row.getFeature(file)));
+      }
+      processedRows.incrementAndGet();
+    }
+    newRows.forEach(alignedList::addRow);
+    return alignmentMapping.size();
+  }
+
+  private static float correctRT(@Nullable PolynomialFunction model, float rt) {
+    if (model == null) {
+      return rt;
+    }
+    final float corrected = (float) model.value(rt);
+    return Float.isNaN(corrected) || corrected == -1 ? rt : corrected;
+  }
+
+  /**
+   * Processed rows. Each row is processed twice, first for score calculation, second for the
+   * actual alignment
+   */
+  public int getProcessedRows() {
+    return processedRows.get();
+  }
+
+  /**
+   * Row values as primitive arrays sorted by m/z
+   */
+  private record MzSortedRows(double[] mzs, float[] rts) {
+
+    private static MzSortedRows of(List<? extends FeatureListRow> rows) {
+      final List<? extends FeatureListRow> sorted = rows.stream().sorted(MZ_ASCENDING).toList();
+      final double[] mzs = new double[sorted.size()];
+      final float[] rts = new float[sorted.size()];
+      for (int i = 0; i < mzs.length; i++) {
+        final FeatureListRow row = sorted.get(i);
+        mzs[i] = row.getAverageMZ();
+        rts[i] = row.getAverageRT();
+      }
+      return new MzSortedRows(mzs, rts);
+    }
+
+    private int size() {
+      return mzs.length;
+    }
+  }
+}
@@ -39,10 +39,12 @@ import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.FeatureListRowSorter;
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.Vector;
+import org.apache.commons.math.analysis.polynomials.PolynomialFunction;
 
 public class RansacPreviewTask extends AbstractTask {
 
@@ -103,15 +105,24 @@ public class RansacPreviewTask extends AbstractTask {
     RawDataFile file2 = featureListY.getRawDataFiles().stream()
         .max(Comparator.comparingInt(raw -> featureListY.getFeatures(raw).size())).get();
 
-    // Ransac Alignment
+    // Ransac Alignment with the same model as the aligner, feature list X is the reference
     list = this.getVectorAlignment(featureListX, featureListY, file, file2);
-    RANSAC ransac = new RANSAC(parameters);
-    ransac.alignment(list);
+    // the pairs are already sorted by x, so the inlier indices match the list
+    list.sort(Comparator.comparingDouble(mol -> mol.RT));
+    final RtPairBuffer pairs = new RtPairBuffer(list.size());
+    for (AlignStructMol mol : list) {
+      pairs.add(mol.RT, mol.RT2);
+    }
+    final RansacRtModelFitter fitter = new RansacRtModelFitter(parameters);
+    final BitSet inliers = fitter.findInliers(pairs, new SplittableRandom());
+    for (int i = 0; i < list.size(); i++) {
+      list.get(i).Aligned = inliers.get(i);
+    }
+    final PolynomialFunction model = fitter.fitCorrection(pairs, inliers);
 
     // Plot the result
     this.plot.removeSeries();
-    this.plot.addSeries(list, featureListX.getName() + " vs " + featureListY.getName(),
-        parameters.getParameter(RansacAlignerParameters.Linear).getValue());
+    this.plot.addSeries(list, featureListX.getName() + " vs " + featureListY.getName(), model);
     this.plot.printAlignmentChart(featureListX.getName() + " RT", featureListY.getName() + " RT");
   }
 
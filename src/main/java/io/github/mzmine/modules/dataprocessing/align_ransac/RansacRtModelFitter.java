@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_ransac;
+
+import io.github.mzmine.parameters.ParameterSet;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.SplittableRandom;
+import org.apache.commons.math.analysis.polynomials.PolynomialFunction;
+import org.apache.commons.math.optimization.fitting.PolynomialFitter;
+import org.apache.commons.math.optimization.general.GaussNewtonOptimizer;
+import org.apache.commons.math.stat.regression.SimpleRegression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * RANSAC on primitive {@link RtPairBuffer}s with the reference retention time as x and the sample
+ * retention time as y. The sample retention time is modeled as a polynomial function of the
+ * reference retention time, initial points are drawn from both halves of the retention time range.
+ * The fitter holds no state between calls and can be used by multiple threads.
+ */
+public class RansacRtModelFitter {
+
+  private final int iterations;
+  private final double minPointsRatio;
+  private final double threshold;
+  private final boolean linear;
+
+  public RansacRtModelFitter(ParameterSet parameters) {
+    this(parameters.getValue(RansacAlignerParameters.Iterations),
+        parameters.getValue(RansacAlignerParameters.NMinPoints),
+        parameters.getValue(RansacAlignerParameters.Margin),
+        parameters.getValue(RansacAlignerParameters.Linear));
+  }
+
+  /**
+   * @param iterations     the number of trials (k), 0 to estimate automatically
+   * @param minPointsRatio ratio of points that need to fit to accept a model (d)
+   * @param threshold      max retention time difference to count a point as inlier (t)
+   * @param linear         linear or polynomial (degree 3) model
+   */
+  public RansacRtModelFitter(int iterations, double minPointsRatio, double threshold,
+      boolean linear) {
+    this.iterations = iterations;
+    this.minPointsRatio = minPointsRatio;
+    this.threshold = threshold;
+    this.linear = linear;
+  }
+
+  /**
+   * Runs RANSAC and fits the retention time correction from the sample to the reference retention
+   * time on all inliers.
+   *
+   * @param pairs all possible pairs (x = reference RT, y = sample RT), will be sorted by x
+   * @return function to correct sample retention times or null if no model was found
+   */
+  @Nullable
+  public PolynomialFunction fitCorrection(@NotNull RtPairBuffer pairs) {
+    return fitCorrection(pairs, findInliers(pairs, new SplittableRandom()));
+  }
+
+  /**
+   * Fits the retention time correction from the sample to the reference retention time on the
+   * given inliers.
+   *
+   * @param pairs   pairs sorted by x (x = reference RT, y = sample RT)
+   * @param inliers indices of the inliers, see {@link #findInliers(RtPairBuffer, SplittableRandom)}
+   * @return function to correct sample retention times or null if no model was found
+   */
+  @Nullable
+  public PolynomialFunction fitCorrection(@NotNull RtPairBuffer pairs, @NotNull BitSet inliers) {
+    if (inliers.isEmpty()) {
+      return null;
+    }
+
+    // correction function maps sample RT (x) to reference RT (y)
+    final RtPairBuffer model = new RtPairBuffer(inliers.cardinality());
+    // slight jitter avoids identical x values in the fit
+    final Random random = new Random();
+    for (int i = inliers.nextSetBit(0); i >= 0; i = inliers.nextSetBit(i + 1)) {
+      model.add(pairs.getY(i) + 0.001 * random.nextDouble(),
+          pairs.getX(i) + 0.001 * random.nextDouble());
+    }
+    final RtPairBuffer smoothed = smooth(model);
+
+    PolynomialFitter fitter = new PolynomialFitter(3, new GaussNewtonOptimizer(true));
+    for (int i = 0; i < smoothed.size(); i++) {
+      fitter.addObservedPoint(1, smoothed.getX(i), smoothed.getY(i));
+    }
+    try {
+      return fitter.fit();
+    } catch (Exception ex) {
+      return null;
+    }
+  }
+
+  /**
+   * RANSAC algorithm
+   *
+   * @param pairs all possible pairs (x = reference RT, y = sample RT), will be sorted by x
+   * @return the inliers of the best model (indices of the sorted pairs)
+   */
+  @NotNull
+  public BitSet findInliers(@NotNull RtPairBuffer pairs, @NotNull SplittableRandom random) {
+    final int size = pairs.size();
+    BitSet best = new BitSet(size);
+
+    // If the model is non linear 4 points are taken to build the model,
+    // if it is linear only 2 points are taken.
+    final int n = linear ? 2 : 4;
+    if (size <= n) {
+      return best;
+    }
+    // Minimum number of points required to assert that a model fits well to data
+    final double d = size < 10 ? 3 : size * minPointsRatio;
+    final int k = iterations == 0 ? (int) estimateIterations(n) : iterations;
+
+    pairs.sortByX();
+    final double min = pairs.getX(0);
+    final double max = pairs.getX(size - 1);
+    final double center = (max - min) / 2 + min;
+    // first index of the second half of the RT range
+    int split = 0;
+    while (split < size && pairs.getX(split) <= center) {
+      split++;
+    }
+
+    final int degree = linear ? 1 : 3;
+    final BitSet maybeInliers = new BitSet(size);
+    int bestCount = 0;
+    for (int iteration = 0; iteration < k; iteration++) {
+      maybeInliers.clear();
+      // n/2 points of each half - or random points if one half has not enough points
+      selectRandom(maybeInliers, 0, split, n / 2, random);
+      selectRandom(maybeInliers, split, size, n - maybeInliers.cardinality(), random);
+      selectRandom(maybeInliers, 0, size, n - maybeInliers.cardinality(), random);
+
+      final PolynomialFunction function = fit(pairs, maybeInliers, degree);
+      if (function == null) {
+        continue;
+      }
+
+      // inliers are all points that fit the model and the initial points
+      int alsoNumber = n;
+      final BitSet current = (BitSet) maybeInliers.clone();
+      for (int i = 0; i < size; i++) {
+        if (Math.abs(pairs.getY(i) - function.value(pairs.getX(i))) < threshold) {
+          current.set(i);
+          alsoNumber++;
+        }
+      }
+
+      // smaller error equals more inliers
+      final int count = current.cardinality();
+      if (alsoNumber >= d && count > bestCount) {
+        bestCount = count;
+        best = current;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Calculate k (number of trials)
+   *
+   * @return number of trials "k" required to select a subset of n good data points.
+   */
+  private double estimateIterations(int n) {
+    double b = Math.pow(minPointsRatio, n);
+    return Math.log10(1 - 0.99) / Math.log10(1 - b) + (Math.sqrt(1 - b) / b);
+  }
+
+  /**
+   * Selects number random indices in range from (inclusive) to (exclusive) that are not selected
+   * yet
+   */
+  private static void selectRandom(BitSet selected, int from, int to, int number,
+      SplittableRandom random) {
+    final int available = to - from - selected.get(from, Math.max(from, to)).cardinality();
+    number = Math.min(number, available);
+    while (number > 0) {
+      final int index = random.nextInt(from, to);
+      if (!selected.get(index)) {
+        selected.set(index);
+        number--;
+      }
+    }
+  }
+
+  @Nullable
+  private static PolynomialFunction fit(RtPairBuffer pairs, BitSet points, int degree) {
+    PolynomialFitter fitter = new PolynomialFitter(degree, new GaussNewtonOptimizer(true));
+    for (int i = points.nextSetBit(0); i >= 0; i = points.nextSetBit(i + 1)) {
+      fitter.addObservedPoint(1, pairs.getX(i), pairs.getY(i));
+    }
+    try {
+      return fitter.fit();
+    } catch (Exception ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Add points to the model in between of the real points to smooth the regression model
+   *
+   * @param pairs the model points
+   * @return a new sorted buffer with additional points
+   */
+  private static RtPairBuffer smooth(RtPairBuffer pairs) {
+    pairs.sortByX();
+    RtPairBuffer smoothed = new RtPairBuffer(pairs.size() * 2);
+    for (int i = 0; i < pairs.size(); i++) {
+      final double x1 = pairs.getX(i);
+      final double y1 = pairs.getY(i);
+      smoothed.add(x1, y1);
+      if (i + 1 < pairs.size() && x1 < pairs.getX(i + 1) - 2) {
+        SimpleRegression regression = new SimpleRegression();
+        regression.addData(x1, y1);
+        regression.addData(pairs.getX(i + 1), pairs.getY(i + 1));
+        for (double rt = x1 + 1; rt < pairs.getX(i + 1); rt++) {
+          smoothed.add(rt, regression.predict(rt));
+        }
+      }
+    }
+    return smoothed;
+  }
+}
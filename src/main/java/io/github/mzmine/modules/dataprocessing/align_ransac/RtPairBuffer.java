@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_ransac;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer of retention time pairs (x, y) as primitive arrays. RANSAC pairs connect a row of
+ * the reference (aligned) feature list (x) with a candidate row of a sample feature list (y). The
+ * retention time correction is fitted on pairs with the sample retention time as x. Replaces lists
+ * of {@link AlignStructMol} in the {@link RansacAlignmentEngine}.
+ */
+public class RtPairBuffer {
+
+  private double[] xs;
+  private double[] ys;
+  private int size;
+
+  public RtPairBuffer() {
+    this(256);
+  }
+
+  public RtPairBuffer(int initialCapacity) {
+    xs = new double[Math.max(initialCapacity, 16)];
+    ys = new double[xs.length];
+  }
+
+  public void add(double x, double y) {
+    if (size == xs.length) {
+      final int newCapacity = xs.length * 2;
+      xs = Arrays.copyOf(xs, newCapacity);
+      ys = Arrays.copyOf(ys, newCapacity);
+    }
+    xs[size] = x;
+    ys[size] = y;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public double getX(int index) {
+    return xs[index];
+  }
+
+  public double getY(int index) {
+    return ys[index];
+  }
+
+  /**
+   * Sorts all pairs by ascending x. Pairs with equal x keep their order.
+   */
+  public void sortByX() {
+    if (size < 2) {
+      return;
+    }
+    // sort indices and reorder both arrays
+    final double[] x = xs;
+    final Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(x[a], x[b]));
+
+    final double[] sortedXs = new double[xs.length];
+    final double[] sortedYs = new double[ys.length];
+    for (int i = 0; i < size; i++) {
+      sortedXs[i] = xs[order[i]];
+      sortedYs[i] = ys[order[i]];
+    }
+    xs = sortedXs;
+    ys = sortedYs;
+  }
+}
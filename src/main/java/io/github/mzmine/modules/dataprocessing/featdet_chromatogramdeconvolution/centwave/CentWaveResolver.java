@@ -26,59 +26,55 @@
 package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave;
 
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.INTEGRATION_METHOD;
+import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.MIN_NUMBER_OF_DATAPOINTS;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PEAK_DURATION;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PEAK_SCALES;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.SN_THRESHOLD;
 
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.DataPoint;
-import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.MZmineProcessingModule;
-import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolver;
-import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.ResolvedPeak;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.AbstractResolver;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PeakIntegrationMethod;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.R.REngineType;
-import io.github.mzmine.util.R.RSessionWrapper;
-import io.github.mzmine.util.R.RSessionWrapperException;
-import io.github.mzmine.util.maths.CenterFunction;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 
 /**
- * Use XCMS findPeaks.centWave to identify peaks.
+ * CentWave peak detection (Tautenhahn et al., BMC Bioinformatics 2008, 9:504) as implemented in
+ * XCMS findPeaks.centWave. Each region of consecutive non-zero intensities is transformed with a
+ * Mexican hat continuous wavelet transform over the scales of the expected peak widths. Ridges of
+ * local maxima across the scales are peak candidates, their best scale defines the peak and its
+ * signal to noise ratio is calculated against the local noise.
  */
-public class CentWaveResolver implements FeatureResolver {
-
-  // Logger.
-  private static final Logger logger = Logger.getLogger(CentWaveResolver.class.getName());
-
-  // Name.
-  private static final String NAME = "Wavelets (XCMS)";
-
-  // Minutes <-> seconds.
-  private static final double SECONDS_PER_MINUTE = 60.0;
-
-  // Required minimum version of XCMS.
-  private static final String XCMS_VERSION = "1.33.2";
-
-  @NotNull
-  @Override
-  public String getName() {
-
-    return NAME;
-  }
-
-  @NotNull
-  @Override
-  public Class<? extends ParameterSet> getParameterSetClass() {
-
-    return CentWaveResolverParameters.class;
+public class CentWaveResolver extends AbstractResolver {
+
+  // Wavelet support in multiples of the scale.
+  private static final int WAVELET_SUPPORT = 5;
+
+  // Minimum window of local maxima and maximum number of skipped scales in a ridge.
+  private static final int MIN_WINDOW_SIZE = 5;
+  private static final int RIDGE_GAP = 3;
+
+  // Trimmed fraction for the noise estimation.
+  private static final double NOISE_TRIM = 0.05;
+
+  private final Range<Double> peakDuration;
+  private final Range<Double> peakScales;
+  private final double snThreshold;
+  private final PeakIntegrationMethod integrationMethod;
+  private final int minDataPoints;
+
+  public CentWaveResolver(ParameterSet parameters, ModularFeatureList flist) {
+    super(parameters, flist);
+    peakDuration = parameters.getParameter(PEAK_DURATION).getValue();
+    peakScales = parameters.getParameter(PEAK_SCALES).getValue();
+    snThreshold = parameters.getParameter(SN_THRESHOLD).getValue();
+    integrationMethod = parameters.getParameter(INTEGRATION_METHOD).getValue();
+    minDataPoints = parameters.getParameter(MIN_NUMBER_OF_DATAPOINTS).getValue();
   }
 
   @Override
@@ -87,189 +83,464 @@ public class CentWaveResolver implements FeatureResolver {
   }
 
   @Override
-  public boolean getRequiresR() {
-    return true;
-  }
+  public @NotNull List<Range<Double>> resolve(double[] x, double[] y) {
+    final int n = Math.min(x.length, y.length);
+    final List<Range<Double>> resolved = new ArrayList<>();
+    if (n < 2) {
+      return resolved;
+    }
 
-  @Override
-  public String[] getRequiredRPackages() {
-    return new String[] {"xcms"};
-  }
+    // wavelet scales in scans
+    final int[] scales = getScales(x, n);
+    if (scales.length == 0) {
+      return resolved;
+    }
+    final int minPeakWidth = scales[0];
+    final int maxScale = scales[scales.length - 1];
+    final int noiseRange = 3 * maxScale;
+    final int minPointsAboveBaseline = Math.max(4, minPeakWidth - 2);
+    final int maxDescOutlier = minPeakWidth / 2;
+    final double[][] wavelets = new double[scales.length][];
+    for (int s = 0; s < scales.length; s++) {
+      wavelets[s] = mexicanHat(scales[s]);
+    }
 
-  @Override
-  public String[] getRequiredRPackagesVersions() {
-    return new String[] {XCMS_VERSION};
-  }
+    // regions of interest: consecutive non-zero intensities
+    for (int start = 0; start < n; start++) {
+      if (y[start] <= 0d) {
+        continue;
+      }
+      int end = start;
+      while (end + 1 < n && y[end + 1] > 0d) {
+        end++;
+      }
 
-  @Override
-  public REngineType getREngineType(final ParameterSet parameters) {
-    return parameters.getParameter(CentWaveResolverParameters.RENGINE_TYPE).getValue();
+      final List<int[]> peaks = detectPeaks(y, n, start, end, scales, wavelets, noiseRange,
+          minPeakWidth, minPointsAboveBaseline, maxDescOutlier);
+      for (int[] peak : peaks) {
+        if (peak[1] - peak[0] + 1 >= minDataPoints && peakDuration.contains(
+            x[peak[1]] - x[peak[0]])) {
+          resolved.add(Range.closed(x[peak[0]], x[peak[1]]));
+        }
+      }
+      start = end;
+    }
+    return resolved;
   }
 
-  @Override
-  public ResolvedPeak[] resolvePeaks(final Feature chromatogram, final ParameterSet parameters,
-      RSessionWrapper rSession, CenterFunction mzCenterFunction, double msmsRange,
-      float rTRangeMSMS) throws RSessionWrapperException {
-
-    List<Scan> scanNumbers = chromatogram.getScanNumbers();
-    final int scanCount = scanNumbers.size();
-    double retentionTimes[] = new double[scanCount];
-    double intensities[] = new double[scanCount];
-    RawDataFile dataFile = chromatogram.getRawDataFile();
-    for (int i = 0; i < scanCount; i++) {
-      final Scan scanNum = scanNumbers.get(i);
-      retentionTimes[i] = scanNum.getRetentionTime();
-      DataPoint dp = chromatogram.getDataPointAtIndex(i);
-      if (dp != null)
-        intensities[i] = dp.getIntensity();
-      else
-        intensities[i] = 0.0;
+  /**
+   * Scales as in XCMS: half the peak widths in scans, in steps of 2
+   */
+  private int[] getScales(double[] x, int n) {
+    final double meanScanTime = (x[n - 1] - x[0]) / (n - 1);
+    if (!(meanScanTime > 0d)) {
+      return new int[0];
     }
+    final int lower = (int) Math.round(peakScales.lowerEndpoint() / meanScanTime / 2d);
+    final int upper = (int) Math.round(peakScales.upperEndpoint() / meanScanTime / 2d);
+    final int from = lower > 0 ? lower : upper;
+    if (from <= 0) {
+      return new int[0];
+    }
+    final int to = Math.max(from, upper);
+    final int[] scales = new int[(to - from) / 2 + 1];
+    for (int i = 0; i < scales.length; i++) {
+      scales[i] = from + 2 * i;
+    }
+    return scales;
+  }
 
-    // Call findPeaks.centWave.
-    double[][] peakMatrix = null;
-
-    peakMatrix = centWave(rSession, retentionTimes, intensities, chromatogram.getMZ(),
-        parameters.getParameter(SN_THRESHOLD).getValue(),
-        parameters.getParameter(PEAK_SCALES).getValue(),
-        parameters.getParameter(INTEGRATION_METHOD).getValue());
-
-    final List<ResolvedPeak> resolvedPeaks;
-    if (peakMatrix == null) {
-
-      resolvedPeaks = new ArrayList<ResolvedPeak>(0);
-
-    } else {
-
-      logger.finest("Processing peak matrix...");
-
-      final Range<Double> peakDuration = parameters.getParameter(PEAK_DURATION).getValue();
-
-      // Process peak matrix.
-      resolvedPeaks = new ArrayList<ResolvedPeak>(peakMatrix.length);
-
-      for (final double[] peakRow : peakMatrix) {
-
-        // Get peak start and end.
-        final int peakLeft = findRTIndex(retentionTimes, peakRow[4]);
-        final int peakRight = findRTIndex(retentionTimes, peakRow[5]);
-
-        // Partition into sections bounded by null data points, creating
-        // a peak for each.
-        for (int start = peakLeft; start < peakRight; start++) {
-
-          if (chromatogram.getDataPointAtIndex(start) != null) {
-
-            int end = start;
+  /**
+   * @return [start, end] indices of the peaks within the region of interest
+   */
+  private List<int[]> detectPeaks(double[] y, int n, int roiStart, int roiEnd, int[] scales,
+      double[][] wavelets, int noiseRange, int minPeakWidth, int minPointsAboveBaseline,
+      int maxDescOutlier) {
+    final List<int[]> peaks = new ArrayList<>();
+
+    // noise of the region of interest and its surrounding
+    final int noiseStart = Math.max(0, roiStart - noiseRange);
+    final int noiseEnd = Math.min(n - 1, roiEnd + noiseRange);
+    final double noise = estimateChromNoise(y, noiseStart, noiseEnd, 3 * minPeakWidth);
+    final double[] localNoise = getLocalNoiseEstimate(y, n, noiseStart, noiseEnd, roiStart, roiEnd,
+        noise, minPeakWidth);
+    final double baseline = Math.max(1d, Math.min(localNoise[0], noise));
+    final double sdNoise = Math.max(1d, localNoise[1]);
+    final double sdThreshold = sdNoise * snThreshold;
+
+    int pointsAboveBaseline = 0;
+    boolean aboveThreshold = false;
+    for (int i = roiStart; i <= roiEnd; i++) {
+      if (y[i] > baseline) {
+        pointsAboveBaseline++;
+      }
+      aboveThreshold |= y[i] - baseline >= sdThreshold;
+    }
+    if (pointsAboveBaseline < minPointsAboveBaseline || !aboveThreshold) {
+      return peaks;
+    }
 
-            while (end < peakRight && chromatogram.getDataPointAtIndex(end + 1) != null) {
+    // wavelet transform of the region, extended by the largest scale
+    final int maxScale = scales[scales.length - 1];
+    final int dStart = Math.max(0, roiStart - maxScale);
+    final int dEnd = Math.min(n - 1, roiEnd + maxScale);
+    final int length = dEnd - dStart + 1;
+    final double[] d = Arrays.copyOfRange(y, dStart, dEnd + 1);
+    final double[][] coefficients = new double[scales.length][];
+    for (int s = 0; s < scales.length; s++) {
+      coefficients[s] = transform(d, wavelets[s]);
+    }
 
-              end++;
-            }
+    final List<int[]> ridges = getRidges(coefficients, scales);
+    final int integrationRange = (int) Math.ceil(scales[0] / 2d);
+    final List<double[]> candidates = new ArrayList<>();
+    for (int[] ridge : ridges) {
+      // ridge[s] is the position at scale s or -1
+      boolean significant = false;
+      int bestScale = -1;
+      double bestIntensity = -1d;
+      for (int s = 0; s < scales.length; s++) {
+        final int pos = ridge[s];
+        if (pos < 0) {
+          continue;
+        }
+        significant |= coefficients[s][pos] - baseline >= sdThreshold;
+        double intensity = 0d;
+        for (int i = Math.max(0, pos - integrationRange);
+            i <= Math.min(length - 1, pos + integrationRange); i++) {
+          intensity += d[i];
+        }
+        if (intensity > bestIntensity || (intensity == bestIntensity
+            && coefficients[s][pos] > coefficients[bestScale][ridge[bestScale]])) {
+          bestIntensity = intensity;
+          bestScale = s;
+        }
+      }
+      if (!significant || bestScale < 0) {
+        continue;
+      }
 
-            if ((end > start)
-                && (peakDuration.contains(retentionTimes[end] - retentionTimes[start]))) {
+      final int center = ridge[bestScale];
+      int left = Math.max(0, center - scales[bestScale]);
+      int right = Math.min(length - 1, center + scales[bestScale]);
+      double maxIntensity = 0d;
+      for (int i = left; i <= right; i++) {
+        maxIntensity = Math.max(maxIntensity, d[i]);
+      }
+      final double sn = (maxIntensity - baseline) / sdNoise;
+      if (sn < snThreshold) {
+        continue;
+      }
 
-              resolvedPeaks.add(new ResolvedPeak(chromatogram, start, end, mzCenterFunction,
-                  msmsRange, rTRangeMSMS));
-            }
+      // peak borders
+      final int[] bounds;
+      if (integrationMethod == PeakIntegrationMethod.UseSmoothedData) {
+        bounds = descendMin(coefficients[bestScale], center);
+      } else {
+        bounds = descendMinTol(d, left, right, maxDescOutlier);
+      }
+      // limit to the region of interest and remove zero intensity edges
+      left = Math.max(bounds[0], roiStart - dStart);
+      right = Math.min(bounds[1], roiEnd - dStart);
+      while (left < right && d[left] <= 0d) {
+        left++;
+      }
+      while (right > left && d[right] <= 0d) {
+        right--;
+      }
+      if (right > left) {
+        candidates.add(new double[]{left + dStart, right + dStart, maxIntensity});
+      }
+    }
 
-            start = end;
-          }
+    // remove overlapping peaks, keep the most intense
+    candidates.sort(Comparator.comparingDouble((double[] c) -> c[2]).reversed());
+    for (double[] candidate : candidates) {
+      final int start = (int) candidate[0];
+      final int end = (int) candidate[1];
+      boolean overlaps = false;
+      for (int[] peak : peaks) {
+        if (start <= peak[1] && end >= peak[0]) {
+          overlaps = true;
+          break;
         }
       }
+      if (!overlaps) {
+        peaks.add(new int[]{start, end});
+      }
     }
-
-    return resolvedPeaks.toArray(new ResolvedPeak[resolvedPeaks.size()]);
+    peaks.sort(Comparator.comparingInt(p -> p[0]));
+    return peaks;
   }
 
-  private static int findRTIndex(final double[] rtMinutes, final double rtSec) {
-
-    final int i = Arrays.binarySearch(rtMinutes, rtSec / SECONDS_PER_MINUTE);
-    return i >= 0 ? i : -i - 2;
+  /**
+   * Mexican hat wavelet sampled at integer offsets for the given scale, normalized by 1/sqrt(scale)
+   */
+  static double[] mexicanHat(int scale) {
+    final int half = WAVELET_SUPPORT * scale;
+    final double[] psi = new double[2 * half + 1];
+    final double norm = 2d / Math.sqrt(3d) / Math.pow(Math.PI, 0.25) / Math.sqrt(scale);
+    for (int i = -half; i <= half; i++) {
+      final double t = (double) i / scale;
+      psi[i + half] = norm * (1d - t * t) * Math.exp(-t * t / 2d);
+    }
+    return psi;
   }
 
   /**
-   * Do peak picking using xcms::findPeaks.centWave.
-   * 
-   * @param scanTime retention times (for each scan).
-   * @param intensity intensity values (for each scan).
-   * @param mz fixed m/z value for EIC.
-   * @param snrThreshold signal:noise ratio threshold.
-   * @param peakWidth peak width range.
-   * @param integrationMethod integration method.
-   * @return a matrix with a row for each detected peak.
-   * @throws RSessionWrapperException
+   * Convolution with the wavelet, the data is reflected at the borders
    */
-  private static double[][] centWave(RSessionWrapper rSession, final double[] scanTime,
-      final double[] intensity, final double mz, final double snrThreshold,
-      final Range<Double> peakWidth, final PeakIntegrationMethod integrationMethod)
-      throws RSessionWrapperException {
-
-    logger.finest("Detecting peaks.");
-
-    final double[][] peaks;
-
-    // Set vectors.
-    rSession.assign("scantime", scanTime);
-    rSession.assign("intensity", intensity);
-
-    // Initialize.
-    rSession.eval("mz <- " + mz);
-    rSession.eval("numPoints <- length(intensity)");
-
-    // Construct xcmsRaw object
-    rSession.eval("xRaw <- new(\"xcmsRaw\")");
-    rSession.eval("xRaw@tic <- intensity");
-    rSession.eval("xRaw@scantime <- scantime * " + SECONDS_PER_MINUTE);
-    rSession.eval("xRaw@scanindex <- 0:(numPoints-1)");
-    rSession.eval("xRaw@env$mz <- rep(mz, numPoints)");
-    rSession.eval("xRaw@env$intensity <- intensity");
+  static double[] transform(double[] d, double[] wavelet) {
+    final int n = d.length;
+    final int half = wavelet.length / 2;
+    final double[] result = new double[n];
+    for (int i = 0; i < n; i++) {
+      double sum = 0d;
+      for (int k = -half; k <= half; k++) {
+        sum += wavelet[k + half] * d[reflect(i + k, n)];
+      }
+      result[i] = sum;
+    }
+    return result;
+  }
 
-    // Construct ROIs.
-    rSession.eval("ROIs <- list()");
-    int roi = 1;
-    for (int start = 0; start < intensity.length; start++) {
+  private static int reflect(int i, int n) {
+    if (n == 1) {
+      return 0;
+    }
+    final int period = 2 * (n - 1);
+    i = Math.floorMod(i, period);
+    return i < n ? i : period - i;
+  }
 
-      // Found non-zero section.
-      if (intensity[start] > 0.0) {
+  /**
+   * Links local maxima of the coefficients from the largest to the smallest scale.
+   *
+   * @return ridges as position per scale, -1 for scales without maximum
+   */
+  static List<int[]> getRidges(double[][] coefficients, int[] scales) {
+    final int numScales = scales.length;
+    final int length = coefficients[0].length;
 
-        // Look for end.
-        int end = start + 1;
-        while (end < intensity.length && intensity[end] > 0.0) {
+    final boolean[][] maxima = new boolean[numScales][];
+    for (int s = 0; s < numScales; s++) {
+      maxima[s] = localMaxima(coefficients[s], Math.max(MIN_WINDOW_SIZE, 2 * scales[s] + 1));
+    }
 
-          end++;
+    final List<int[]> ridges = new ArrayList<>();
+    final List<int[]> open = new ArrayList<>();
+    final List<int[]> gaps = new ArrayList<>();
+    for (int s = numScales - 1; s >= 0; s--) {
+      final boolean[] used = new boolean[length];
+      final int window = Math.max(MIN_WINDOW_SIZE, 2 * scales[s] + 1) / 2;
+
+      // continue the open ridges with the closest maximum
+      for (int r = 0; r < open.size(); r++) {
+        final int[] ridge = open.get(r);
+        final int last = gaps.get(r)[1];
+        int best = -1;
+        for (int i = Math.max(0, last - window); i <= Math.min(length - 1, last + window); i++) {
+          if (maxima[s][i] && !used[i] && (best < 0 || Math.abs(i - last) < Math.abs(
+              best - last))) {
+            best = i;
+          }
         }
+        if (best >= 0) {
+          ridge[s] = best;
+          used[best] = true;
+          gaps.get(r)[0] = 0;
+          gaps.get(r)[1] = best;
+        } else {
+          gaps.get(r)[0]++;
+        }
+      }
 
-        // Add ROI to list.
-        rSession.eval("ROIs[[" + roi + "]] <- list('scmin'=" + (start + 1) + ", 'scmax'=" + end
-            + ", 'mzmin'=mz, 'mzmax'=mz)");
+      // close ridges with too many gaps
+      for (int r = open.size() - 1; r >= 0; r--) {
+        if (gaps.get(r)[0] > RIDGE_GAP) {
+          ridges.add(open.remove(r));
+          gaps.remove(r);
+        }
+      }
 
-        // Next ROI.
-        start = end;
-        roi++;
+      // start new ridges
+      for (int i = 0; i < length; i++) {
+        if (maxima[s][i] && !used[i]) {
+          final int[] ridge = new int[numScales];
+          Arrays.fill(ridge, -1);
+          ridge[s] = i;
+          open.add(ridge);
+          gaps.add(new int[]{0, i});
+        }
+      }
+    }
+    ridges.addAll(open);
+    return ridges;
+  }
 
+  /**
+   * Positive values that are the maximum within the window centered at them
+   */
+  private static boolean[] localMaxima(double[] values, int windowSize) {
+    final int half = windowSize / 2;
+    final boolean[] maxima = new boolean[values.length];
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] <= 0d) {
+        continue;
       }
+      boolean max = true;
+      for (int k = Math.max(0, i - half); k <= Math.min(values.length - 1, i + half) && max; k++) {
+        // the first of equal values is the maximum
+        max = k < i ? values[k] < values[i] : values[k] <= values[i];
+      }
+      maxima[i] = max;
     }
+    return maxima;
+  }
 
-    // Do peak picking.
-    rSession.eval("mtx <- findPeaks.centWave(xRaw, ppm=0, mzdiff=0, verbose=TRUE" + ", peakwidth=c("
-        + peakWidth.lowerEndpoint() * SECONDS_PER_MINUTE + ", "
-        + peakWidth.upperEndpoint() * SECONDS_PER_MINUTE + ')' + ", snthresh=" + snrThreshold
-        + ", integrate=" + integrationMethod.getIndex() + ", ROI.list=ROIs)");
+  /**
+   * Descends from the start on both sides as long as the values decrease
+   */
+  static int[] descendMin(double[] values, int start) {
+    int left = start;
+    while (left > 0 && values[left - 1] < values[left]) {
+      left--;
+    }
+    int right = start;
+    while (right < values.length - 1 && values[right + 1] < values[right]) {
+      right++;
+    }
+    return new int[]{left, right};
+  }
 
-    // Get rid of 'NA' values potentially found in the resulting matrix
-    rSession.eval("mtx[is.na(mtx)] <- " + RSessionWrapper.NA_DOUBLE); // +
-                                                                      // "0");//
+  /**
+   * Descends from the start positions to the lowest values, tolerating up to maxDescOutlier values
+   * that do not decrease. Stops at zero intensities.
+   */
+  static int[] descendMinTol(double[] values, int leftStart, int rightStart, int maxDescOutlier) {
+    int left = leftStart;
+    int outliers = 0;
+    for (int i = leftStart - 1; i >= 0 && values[left] > 0d; i--) {
+      if (values[i] < values[left]) {
+        left = i;
+        outliers = 0;
+      } else if (++outliers > maxDescOutlier) {
+        break;
+      }
+    }
+    int right = rightStart;
+    outliers = 0;
+    for (int i = rightStart + 1; i < values.length && values[right] > 0d; i++) {
+      if (values[i] < values[right]) {
+        right = i;
+        outliers = 0;
+      } else if (++outliers > maxDescOutlier) {
+        break;
+      }
+    }
+    return new int[]{left, right};
+  }
 
-    final Object centWave = roi <= 1 ? null : (double[][]) rSession.collect("mtx", false);
+  /**
+   * Trimmed mean of the positive intensities
+   */
+  static double estimateChromNoise(double[] y, int start, int end, int minPoints) {
+    final double[] positive = new double[end - start + 1];
+    int count = 0;
+    double sum = 0d;
+    for (int i = start; i <= end; i++) {
+      sum += y[i];
+      if (y[i] > 0d) {
+        positive[count++] = y[i];
+      }
+    }
+    if (count < minPoints) {
+      return sum / (end - start + 1);
+    }
+    Arrays.sort(positive, 0, count);
+    final int trim = (int) Math.floor(count * NOISE_TRIM);
+    double trimmedSum = 0d;
+    for (int i = trim; i < count - trim; i++) {
+      trimmedSum += positive[i];
+    }
+    return trimmedSum / (count - 2 * trim);
+  }
 
-    // Done: Refresh R code stack
-    rSession.clearCode();
+  /**
+   * Mean and standard deviation of the values inside and outside of the region of interest,
+   * excluding runs of at least minRun values above the threshold.
+   *
+   * @return the lower mean and lower standard deviation
+   */
+  static double[] getLocalNoiseEstimate(double[] y, int n, int start, int end,
+      int roiStart, int roiEnd, double threshold, int minRun) {
+    if (end - start + 1 >= n) {
+      // no surrounding data, use the 5 % - 95 % values
+      final double[] sorted = Arrays.copyOfRange(y, start, end + 1);
+      Arrays.sort(sorted);
+      final int trim = (int) Math.floor(sorted.length * NOISE_TRIM);
+      return meanAndSd(sorted, trim, sorted.length - trim, null);
+    }
 
-    peaks = (centWave == null) ? null : (double[][]) centWave;
+    final boolean[] aboveThreshold = new boolean[n];
+    markRunsAboveThreshold(y, start, roiStart - 1, threshold, minRun, aboveThreshold);
+    markRunsAboveThreshold(y, roiEnd + 1, end, threshold, minRun, aboveThreshold);
+    markRunsAboveThreshold(y, roiStart, roiEnd, threshold, minRun, aboveThreshold);
+
+    // outside of the region of interest
+    final double[] outside = new double[end - start + 1 - (roiEnd - roiStart + 1)];
+    int count = 0;
+    for (int i = start; i <= end; i++) {
+      if ((i < roiStart || i > roiEnd) && !aboveThreshold[i]) {
+        outside[count++] = y[i];
+      }
+    }
+    final double[] outsideStats = count > 1 ? meanAndSd(outside, 0, count, null)
+        : new double[]{1d, 1d};
+    final double[] insideStats = meanAndSd(y, roiStart, roiEnd + 1, aboveThreshold);
+    return new double[]{Math.min(outsideStats[0], insideStats[0]),
+        Math.min(outsideStats[1], insideStats[1])};
+  }
 
-    return peaks;
+  private static void markRunsAboveThreshold(double[] y, int start, int end, double threshold,
+      int minRun, boolean[] marks) {
+    int runStart = -1;
+    for (int i = start; i <= end + 1; i++) {
+      final boolean above = i <= end && y[i] > threshold;
+      if (above && runStart < 0) {
+        runStart = i;
+      } else if (!above && runStart >= 0) {
+        if (i - runStart >= minRun) {
+          Arrays.fill(marks, runStart, i, true);
+        }
+        runStart = -1;
+      }
+    }
   }
 
+  /**
+   * @param exclude values to exclude or null
+   * @return mean and standard deviation, 1 and 1 for less than two values
+   */
+  private static double[] meanAndSd(double[] values, int from, int to, boolean[] exclude) {
+    int count = 0;
+    double sum = 0d;
+    for (int i = from; i < to; i++) {
+      if (exclude == null || !exclude[i]) {
+        sum += values[i];
+        count++;
+      }
+    }
+    if (count < 2) {
+      return new double[]{1d, 1d};
+    }
+    final double mean = sum / count;
+    double squares = 0d;
+    for (int i = from; i < to; i++) {
+      if (exclude == null || !exclude[i]) {
+        squares += (values[i] - mean) * (values[i] - mean);
+      }
+    }
+    return new double[]{mean, Math.sqrt(squares / (count - 1))};
+  }
 }
@@ -26,19 +26,23 @@
 package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave;
 
 import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolver;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolverSetupDialog;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.GeneralResolverParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.Resolver;
 import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.DoubleParameter;
 import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
 import io.github.mzmine.util.ExitCode;
 import java.text.NumberFormat;
+import org.jetbrains.annotations.Nullable;
 
 /**
- * Parameters used by CentWaveDetector.
+ * Parameters used by CentWaveResolver.
  */
 public class CentWaveResolverParameters extends GeneralResolverParameters {
 
@@ -95,7 +99,7 @@ public class CentWaveResolverParameters extends GeneralResolverParameters {
   public CentWaveResolverParameters() {
 
     super(new Parameter[]{PEAK_LISTS, SUFFIX, handleOriginal, groupMS2Parameters, SN_THRESHOLD,
-        PEAK_SCALES, PEAK_DURATION, INTEGRATION_METHOD, RENGINE_TYPE, MIN_NUMBER_OF_DATAPOINTS},
+        PEAK_SCALES, PEAK_DURATION, INTEGRATION_METHOD, MIN_NUMBER_OF_DATAPOINTS},
         "https://mzmine.github.io/mzmine_documentation/module_docs/featdet_resolver_centwave/centwave-resolver.html");
   }
 
@@ -110,6 +114,12 @@ public class CentWaveResolverParameters extends GeneralResolverParameters {
 
   @Override
   public FeatureResolver getResolver() {
-    return new CentWaveResolver();
+    throw new UnsupportedOperationException("Legacy resolver method. Unsupported in CentWave.");
+  }
+
+  @Nullable
+  @Override
+  public Resolver getResolver(ParameterSet parameters, ModularFeatureList flist) {
+    return new CentWaveResolver(parameters, flist);
   }
 }
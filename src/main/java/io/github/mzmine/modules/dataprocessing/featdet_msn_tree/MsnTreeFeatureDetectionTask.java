@@ -42,6 +42,7 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.scans.FragmentScanIndex;
 import io.github.mzmine.util.scans.ScanUtils;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -115,7 +116,8 @@ public class MsnTreeFeatureDetectionTask extends AbstractTask {
 
     // get trees sorted ascending
     final List<PrecursorIonTree> trees = new ArrayList<>(
-        ScanUtils.getMSnFragmentTrees(dataFile, mzTol));
+        ScanUtils.getMSnFragmentTrees(FragmentScanIndex.of(dataFile).getFragmentScans(), mzTol,
+            null));
     trees.sort(Comparator.comparingDouble(PrecursorIonTree::getPrecursorMz));
     List<Range<Double>> mzRanges = trees.stream().mapToDouble(PrecursorIonTree::getPrecursorMz)
         .mapToObj(mzTol::getToleranceRange).toList();
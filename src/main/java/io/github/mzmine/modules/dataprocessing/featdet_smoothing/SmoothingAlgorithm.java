@@ -38,6 +38,7 @@ import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.util.IonMobilityUtils;
 import io.github.mzmine.util.MemoryMapStorage;
+import java.util.Arrays;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -58,6 +59,19 @@ public interface SmoothingAlgorithm extends MZmineModule {
   public <T extends IntensitySeries & MobilitySeries> double[] smoothMobility(
       @NotNull final T mobilogram);
 
+  /**
+   * Smooths the retention time dimension of a chromatogram given as primitive arrays, so many
+   * features can be smoothed on reusable buffers.
+   *
+   * @param rts         The retention times of the chromatogram.
+   * @param intensities The intensities of the chromatogram, including zeros.
+   * @param numValues   The number of values. The arrays may be longer.
+   * @param dst         The array the smoothed intensities are written to.
+   * @return false if rt shall not be smoothed. dst is not modified in that case.
+   */
+  public boolean smoothRt(@NotNull final double[] rts, @NotNull final double[] intensities,
+      final int numValues, @NotNull final double[] dst);
+
   /**
    * Creates a new smoothed series for the given feature. The intensities are smoothed with the
    * settings of this {@link SmoothingAlgorithm}. Smooths intensity in rt and mobility dimension.
@@ -81,23 +95,54 @@ public interface SmoothingAlgorithm extends MZmineModule {
       newIntensities = originalIntensities;
     } else {
       newIntensities = new double[originalSeries.getNumberOfValues()];
-      int newIntensitiesIndex = 0;
-      for (int i = 0; i < dataAccess.getNumberOfValues() && newIntensitiesIndex < originalSeries
-          .getNumberOfValues(); i++) {
-        // check if we originally did have an intensity at the current index. I know that the data
-        // access contains more zeros and the zeros of different indices will be matched, but the
-        // newIntensitiesIndex will "catch" up, once real intensities are reached.
-        if (Double.compare(dataAccess.getIntensity(i), originalIntensities[newIntensitiesIndex])
-            == 0) {
-          newIntensities[newIntensitiesIndex] = smoothedIntensities[i];
-          newIntensitiesIndex++;
-        }
-        if (newIntensitiesIndex == originalIntensities.length - 1) {
-          break;
-        }
-      }
+      mapToDetectedValues(getOriginalIntensities(dataAccess), dataAccess.getNumberOfValues(),
+          smoothedIntensities, originalIntensities, originalIntensities.length, newIntensities);
     }
 
+    return createSmoothedSeries(storage, originalSeries, newIntensities);
+  }
+
+  /**
+   * Creates a new smoothed series for the given feature series on a chromatogram given as primitive
+   * arrays. The arrays are buffers that can be reused for the next feature. Smooths intensity in rt
+   * and mobility dimension.
+   *
+   * @param storage             The storage of the new series.
+   * @param originalSeries      The feature data.
+   * @param rts                 The retention times of the chromatogram.
+   * @param allIntensities      The intensities of the chromatogram, including zeros.
+   * @param numValues           The number of values in the chromatogram. The arrays may be longer.
+   * @param originalIntensities The intensities of the feature data. The array may be longer.
+   * @param smoothed            Buffer for the smoothed intensities of the chromatogram.
+   * @return The smoothed series.
+   */
+  public default IonTimeSeries<? extends Scan> smoothFeature(
+      @Nullable final MemoryMapStorage storage,
+      @NotNull final IonTimeSeries<? extends Scan> originalSeries, @NotNull final double[] rts,
+      @NotNull final double[] allIntensities, final int numValues,
+      @NotNull final double[] originalIntensities, @NotNull final double[] smoothed) {
+    final int numOriginal = originalSeries.getNumberOfValues();
+    final double[] newIntensities;
+    if (smoothRt(rts, allIntensities, numValues, smoothed)) {
+      newIntensities = new double[numOriginal];
+      mapToDetectedValues(allIntensities, numValues, smoothed, originalIntensities, numOriginal,
+          newIntensities);
+    } else {
+      // rt should not be smoothed, so just copy the old values.
+      newIntensities = Arrays.copyOf(originalIntensities, numOriginal);
+    }
+
+    return createSmoothedSeries(storage, originalSeries, newIntensities);
+  }
+
+  /**
+   * @return A copy of the original series with the new intensities and the smoothed summed
+   * mobilogram for ion mobility data.
+   */
+  private IonTimeSeries<? extends Scan> createSmoothedSeries(
+      @Nullable final MemoryMapStorage storage,
+      @NotNull final IonTimeSeries<? extends Scan> originalSeries,
+      @NotNull final double[] newIntensities) {
     double[] originalMzs = new double[originalSeries.getNumberOfValues()];
     originalSeries.getMzValues(originalMzs);
     if (originalSeries instanceof IonMobilogramTimeSeries imts) {
@@ -135,6 +180,36 @@ public interface SmoothingAlgorithm extends MZmineModule {
     return originalSeries;
   }
 
+  /**
+   * Maps the smoothed intensities of a chromatogram including zeros back to the detected data
+   * points of a feature. Values of dst that cannot be matched remain unchanged.
+   *
+   * @param allIntensities      The intensities of the chromatogram including zeros.
+   * @param numAll              The number of values in the chromatogram.
+   * @param smoothedIntensities The smoothed intensities of the chromatogram.
+   * @param originalIntensities The detected intensities of the feature.
+   * @param numOriginal         The number of detected data points.
+   * @param dst                 The smoothed intensities of the detected data points.
+   */
+  public static void mapToDetectedValues(@NotNull final double[] allIntensities,
+      final int numAll, @NotNull final double[] smoothedIntensities,
+      @NotNull final double[] originalIntensities, final int numOriginal,
+      @NotNull final double[] dst) {
+    int newIntensitiesIndex = 0;
+    for (int i = 0; i < numAll && newIntensitiesIndex < numOriginal; i++) {
+      // check if we originally did have an intensity at the current index. I know that the data
+      // access contains more zeros and the zeros of different indices will be matched, but the
+      // newIntensitiesIndex will "catch" up, once real intensities are reached.
+      if (Double.compare(allIntensities[i], originalIntensities[newIntensitiesIndex]) == 0) {
+        dst[newIntensitiesIndex] = smoothedIntensities[i];
+        newIntensitiesIndex++;
+      }
+      if (newIntensitiesIndex == numOriginal - 1) {
+        break;
+      }
+    }
+  }
+
   private double[] getOriginalIntensities(IntensitySeries series) {
     if (series instanceof FeatureFullDataAccess access) {
       return access.getIntensityValues();
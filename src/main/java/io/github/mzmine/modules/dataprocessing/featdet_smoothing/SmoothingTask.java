@@ -28,11 +28,10 @@ package io.github.mzmine.modules.dataprocessing.featdet_smoothing;
 import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
-import io.github.mzmine.datamodel.data_access.EfficientDataAccess.FeatureDataType;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess.MobilogramAccessType;
-import io.github.mzmine.datamodel.data_access.FeatureDataAccess;
 import io.github.mzmine.datamodel.data_access.MobilogramDataAccess;
 import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
 import io.github.mzmine.datamodel.featuredata.IntensitySeries;
@@ -40,9 +39,13 @@ import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
 import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
 import io.github.mzmine.datamodel.featuredata.impl.SimpleIonMobilitySeries;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
 import io.github.mzmine.taskcontrol.AbstractTask;
@@ -56,6 +59,7 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -122,25 +126,44 @@ public class SmoothingTask extends AbstractTask {
       return;
     }
 
-    // include zeros
-    final FeatureDataAccess dataAccess = EfficientDataAccess
-        .of(smoothedList, FeatureDataType.INCLUDE_ZEROS);
-
-    while (dataAccess.hasNextFeature()) {
-      final ModularFeature feature = (ModularFeature) dataAccess.nextFeature();
-
-      final IonTimeSeries<? extends Scan> smoothedSeries = smoother
-          .smoothFeature(getMemoryMapStorage(), dataAccess, feature, zht);
-      feature.set(io.github.mzmine.datamodel.features.types.FeatureDataType.class, smoothedSeries);
-      FeatureDataUtils.recalculateIonSeriesDependingTypes(feature);
-
-      processedFeatures.getAndIncrement();
+    // all features are smoothed on the chromatogram of all selected scans (including zeros). The
+    // scans and their retention times are shared by all features of the list.
+    final RawDataFile file = smoothedList.getRawDataFile(0);
+    final List<? extends Scan> allScans = smoothedList.getSeletedScans(file);
+    final double[] rts = new double[allScans.size()];
+    for (int i = 0; i < rts.length; i++) {
+      rts[i] = allScans.get(i).getRetentionTime();
     }
 
+    final List<FeatureListRow> rows = smoothedList.getRows();
+    final IonTimeSeries<? extends Scan>[] smoothedSeries = new IonTimeSeries[rows.size()];
+    final int numWorkers = Math.max(1,
+        Math.min(MZmineCore.getConfiguration().getNumOfThreads(), rows.size()));
+    // every worker smooths an interleaved slice of the rows on its own buffers
+    IntStream.range(0, numWorkers).parallel().forEach(worker -> {
+      final SmoothingBuffers buffers = new SmoothingBuffers(rts.length);
+      for (int i = worker; i < rows.size() && !isCanceled(); i += numWorkers) {
+        final Feature feature = rows.get(i).getFeature(file);
+        if (feature != null) {
+          smoothedSeries[i] = smoothFeature(smoother, feature, allScans, rts, buffers);
+        }
+        processedFeatures.getAndIncrement();
+      }
+    });
+
     if (isCanceled()) {
       return;
     }
 
+    // features are only modified on this thread
+    for (int i = 0; i < smoothedSeries.length; i++) {
+      if (smoothedSeries[i] != null) {
+        final ModularFeature feature = (ModularFeature) rows.get(i).getFeature(file);
+        feature.set(FeatureDataType.class, smoothedSeries[i]);
+        FeatureDataUtils.recalculateIonSeriesDependingTypes(feature);
+      }
+    }
+
     smoothedList.getAppliedMethods().add(
         new SimpleFeatureListAppliedMethod(SmoothingModule.class, parameters, getModuleCallDate()));
 
@@ -150,6 +173,36 @@ public class SmoothingTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * Smooths the feature on the chromatogram of all scans. The smoothed series is stored in the
+   * memory map storage of this task.
+   *
+   * @return the smoothed series
+   */
+  private IonTimeSeries<? extends Scan> smoothFeature(@NotNull final SmoothingAlgorithm smoother,
+      @NotNull final Feature feature, @NotNull final List<? extends Scan> allScans,
+      @NotNull final double[] rts, @NotNull final SmoothingBuffers buffers) {
+    final IonTimeSeries<? extends Scan> originalSeries = feature.getFeatureData();
+    final int numDetected = originalSeries.getNumberOfValues();
+    final double[] detectedIntensities = buffers.readIntensityValues(originalSeries);
+    final double[] allIntensities = buffers.allIntensities;
+
+    // add detected data points and zero for missing values
+    final List<? extends Scan> detectedScans = originalSeries.getSpectra();
+    int detectedIndex = 0;
+    for (int i = 0; i < allIntensities.length; i++) {
+      if (detectedIndex < numDetected && allScans.get(i) == detectedScans.get(detectedIndex)) {
+        allIntensities[i] = detectedIntensities[detectedIndex];
+        detectedIndex++;
+      } else {
+        allIntensities[i] = 0d;
+      }
+    }
+
+    return smoother.smoothFeature(getMemoryMapStorage(), originalSeries, rts, allIntensities,
+        allIntensities.length, detectedIntensities, buffers.smoothed);
+  }
+
   @Nullable
   private SmoothingAlgorithm initialiseSmoother() {
     final SmoothingAlgorithm smoother;
@@ -268,6 +321,26 @@ public class SmoothingTask extends AbstractTask {
     return null;
   }
 
+  /**
+   * Reusable buffers of one smoothing worker.
+   */
+  private static class SmoothingBuffers {
+
+    private final double[] allIntensities;
+    private final double[] smoothed;
+    private double[] detectedIntensities = new double[0];
+
+    private SmoothingBuffers(int numScans) {
+      allIntensities = new double[numScans];
+      smoothed = new double[numScans];
+    }
+
+    private double[] readIntensityValues(IntensitySeries series) {
+      detectedIntensities = series.getIntensityValues(detectedIntensities);
+      return detectedIntensities;
+    }
+  }
+
   public enum SmoothingDimension {
     RETENTION_TIME("Retention time"), MOBILITY("Mobility");
     private final String name;
@@ -33,6 +33,7 @@ import io.github.mzmine.datamodel.featuredata.MobilitySeries;
 import io.github.mzmine.modules.dataprocessing.featdet_smoothing.SmoothingAlgorithm;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.util.IonMobilityUtils;
+import java.util.Arrays;
 import org.apache.commons.math3.analysis.interpolation.LoessInterpolator;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -84,31 +85,45 @@ public class LoessSmoothing implements SmoothingAlgorithm {
       return null;
     }
 
-    // bandwidth: fraction of source points, cannot be greater than 1
-    final double rtBandwidth = Math.min((((double) this.rtWidth) / series.getNumberOfValues()), 1);
-    final LoessInterpolator interpolator = new LoessInterpolator(rtBandwidth, 0);
-
+    final int numValues = series.getNumberOfValues();
     double[] intensities;
     if(series instanceof FeatureFullDataAccess access) {
       intensities = access.getIntensityValues();
     } else {
-      intensities = new double[series.getNumberOfValues()];
+      intensities = new double[numValues];
       intensities = series.getIntensityValues(intensities);
     }
-    double[] rts = new double[series.getNumberOfValues()];
+    double[] rts = new double[numValues];
     for (int i = 0; i < rts.length; i++) {
       rts[i] = series.getRetentionTime(i);
     }
 
-    assert intensities.length == rts.length;
+    final double[] smoothed = new double[numValues];
+    smoothRt(rts, intensities, numValues, smoothed);
+    return smoothed;
+  }
 
-    double[] smoothed = interpolator.smooth(rts, intensities);
-    for (int i = 0; i < intensities.length; i++) {
-      if (Double.compare(intensities[i], 0d) <= 0) {
-        smoothed[i] = 0d;
-      }
+  @Override
+  public boolean smoothRt(@NotNull double[] rts, @NotNull double[] intensities, int numValues,
+      @NotNull double[] dst) {
+    if (!smoothRt) {
+      return false;
     }
-    return smoothed;
+
+    // bandwidth: fraction of source points, cannot be greater than 1
+    final double rtBandwidth = Math.min((((double) this.rtWidth) / numValues), 1);
+    final LoessInterpolator interpolator = new LoessInterpolator(rtBandwidth, 0);
+
+    // the interpolator uses the full array length, buffers might be longer
+    final double[] x = rts.length == numValues ? rts : Arrays.copyOf(rts, numValues);
+    final double[] y =
+        intensities.length == numValues ? intensities : Arrays.copyOf(intensities, numValues);
+
+    double[] smoothed = interpolator.smooth(x, y);
+    for (int i = 0; i < numValues; i++) {
+      dst[i] = Double.compare(intensities[i], 0d) <= 0 ? 0d : smoothed[i];
+    }
+    return true;
   }
 
   @Override
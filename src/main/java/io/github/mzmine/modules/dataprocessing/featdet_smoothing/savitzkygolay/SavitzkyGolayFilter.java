@@ -27,6 +27,7 @@ package io.github.mzmine.modules.dataprocessing.featdet_smoothing.savitzkygolay;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utilities for the Savitzky-Golay smoother.
@@ -55,6 +56,9 @@ public class SavitzkyGolayFilter {
     VALUES.put(25, new int[] {467, 462, 447, 422, 387, 343, 287, 222, 147, 62, -33, -138, -253});
   }
 
+  // normalized weights are calculated once per width and shared by all smoothers
+  private static final Map<Integer, double[]> NORMALIZED_WEIGHTS = new ConcurrentHashMap<>();
+
   /**
    * Utility class - no public constructor.
    */
@@ -64,12 +68,18 @@ public class SavitzkyGolayFilter {
   }
 
   /**
-   * Gets the normalized Savitzky-Golay filter weights.
+   * Gets the normalized Savitzky-Golay filter weights. The weights are cached per width, the
+   * returned array is shared and must not be modified.
    *
    * @param width the full width of the filter.
    * @return the filter weights (normalized).
    */
   public static double[] getNormalizedWeights(final int width) {
+    return NORMALIZED_WEIGHTS.computeIfAbsent(width,
+        SavitzkyGolayFilter::calculateNormalizedWeights);
+  }
+
+  private static double[] calculateNormalizedWeights(final int width) {
 
     if (width == 0) {
       return new double[]{1d};
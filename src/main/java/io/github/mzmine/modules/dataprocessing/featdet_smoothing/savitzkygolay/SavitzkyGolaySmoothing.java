@@ -26,6 +26,7 @@
 package io.github.mzmine.modules.dataprocessing.featdet_smoothing.savitzkygolay;
 
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.FeatureFullDataAccess;
 import io.github.mzmine.datamodel.featuredata.IntensitySeries;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
 import io.github.mzmine.datamodel.featuredata.MobilitySeries;
@@ -73,35 +74,50 @@ public class SavitzkyGolaySmoothing implements SmoothingAlgorithm {
    * @return
    */
   public double[] smooth(@NotNull final IntensitySeries access, double[] normWeights) {
+    final int numPoints = access.getNumberOfValues();
+    final double[] intensities;
+    if (access instanceof FeatureFullDataAccess fullAccess) {
+      intensities = fullAccess.getIntensityValues();
+    } else {
+      intensities = access.getIntensityValues(new double[numPoints]);
+    }
+    return smooth(intensities, numPoints, normWeights, new double[numPoints]);
+  }
+
+  /**
+   * @param intensities The intensities to be smoothed.
+   * @param numPoints   The number of intensities. The array may be longer.
+   * @param normWeights The normalized filter weights.
+   * @param dst         The array the smoothed intensities are written to.
+   * @return dst
+   */
+  public double[] smooth(@NotNull final double[] intensities, final int numPoints,
+      double[] normWeights, @NotNull final double[] dst) {
     if (normWeights == null) {
       throw new IllegalArgumentException(
           "No smoothing weights specified. Was the smoother initialised correctly?");
     }
 
     // Initialise.
-    final int numPoints = access.getNumberOfValues();
     final int fullWidth = normWeights.length;
     final int halfWidth = (fullWidth - 1) / 2;
 
-    double[] smoothed = new double[numPoints];
     for (int i = 0; i < numPoints; i++) {
-      final int k = i - halfWidth;
-      for (int j = Math.max(0, -k); j < Math.min(fullWidth, numPoints - k); j++) {
-        smoothed[i] += access.getIntensity(k + j) * normWeights[j];
-      }
-
-      if (smoothed[i] < 0d) {
-        smoothed[i] = 0d;
+      // if values that were previously 0 shall remain 0, we process that here.
+      if (Double.compare(intensities[i], 0d) == 0) {
+        dst[i] = 0;
+        continue;
       }
 
-//      if (/*zht == ZeroHandlingType.KEEP &&*/ Double.compare(access.getIntensity(i), 0d) == 0) {
-      // if values that were previously 0 shall remain 0, we process that here.
-      if (Double.compare(access.getIntensity(i), 0d) == 0) {
-        smoothed[i] = 0;
+      double smoothed = 0d;
+      final int k = i - halfWidth;
+      for (int j = Math.max(0, -k); j < Math.min(fullWidth, numPoints - k); j++) {
+        smoothed += intensities[k + j] * normWeights[j];
       }
+      dst[i] = smoothed < 0d ? 0d : smoothed;
     }
 
-    return smoothed;
+    return dst;
   }
 
   @Override
@@ -110,6 +126,16 @@ public class SavitzkyGolaySmoothing implements SmoothingAlgorithm {
     return smoothRt ? smooth(series, rtWeights) : null;
   }
 
+  @Override
+  public boolean smoothRt(@NotNull double[] rts, @NotNull double[] intensities, int numValues,
+      @NotNull double[] dst) {
+    if (!smoothRt) {
+      return false;
+    }
+    smooth(intensities, numValues, rtWeights, dst);
+    return true;
+  }
+
   @Override
   @Nullable
   public <T extends IntensitySeries & MobilitySeries> double[] smoothMobility(
@@ -77,17 +77,15 @@ public class BaselineCorrectionParameters extends SimpleParameterSet {
    * List of available baseline correctors
    */
   public static final BaselineCorrector[] baselineCorrectors = {new AsymmetryCorrector(),
-      // (Package
-      // R "ptw"
-      // -
+      // (Java, as R "ptw" -
       // http://cran.r-project.org/web/packages/ptw/ptw.pdf)
       new RollingBallCorrector(), // (Package R "baseline" -
       // http://cran.r-project.org/web/packages/baseline/baseline.pdf)
       new PeakDetectionCorrector(), // (Package R "baseline" -
       // http://cran.r-project.org/web/packages/baseline/baseline.pdf)
-      new RubberBandCorrector(), // (Package R "hyperSpec" -
+      new RubberBandCorrector(), // (Java, as R "hyperSpec" -
       // http://cran.r-project.org/web/packages/hyperSpec/vignettes/baseline.pdf)
-      new LocMinLoessCorrector() // (Package R/Bioc. "PROcess" -
+      new LocMinLoessCorrector() // (Java, as R/Bioc. "PROcess" -
       // http://bioconductor.org/packages/release/bioc/manuals/PROcess/man/PROcess.pdf)
   };
 
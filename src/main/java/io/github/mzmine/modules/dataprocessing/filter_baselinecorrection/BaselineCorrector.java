@@ -29,6 +29,7 @@ import io.github.mzmine.util.MemoryMapStorage;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -113,7 +114,7 @@ public abstract class BaselineCorrector implements BaselineProvider, MZmineModul
       final RawDataFile dataFile, final ParameterSet parameters,
       final ParameterSet commonParameters, @Nullable MemoryMapStorage storage) throws IOException, RSessionWrapperException {
 
-    if (isAborted(dataFile) || !rSession.isSessionRunning())
+    if (isAborted(dataFile) || (getRequiresR() && !rSession.isSessionRunning()))
       return null;
     // Get very last information from root module setup
     // this.setGeneralParameters(MZmineCore.getConfiguration().getModuleParameters(BaselineCorrectionModule.class));
@@ -251,11 +252,7 @@ public abstract class BaselineCorrector implements BaselineProvider, MZmineModul
     // Calculate baselines: done in-place, i.e. overwrite chromatograms to
     // save memory.
     logger.finest("Calculating baselines.");
-    for (int binIndex = 0; !isAborted(origDataFile) && binIndex < numBins; binIndex++) {
-      baseChrom[binIndex] =
-          computeBaseline(rSession, origDataFile, baseChrom[binIndex], parameters);
-      progressMap.get(origDataFile)[0]++;
-    }
+    computeBaselines(rSession, origDataFile, baseChrom, parameters, false);
 
     // Subtract baselines.
     logger.finest("Subtracting baselines.");
@@ -302,22 +299,7 @@ public abstract class BaselineCorrector implements BaselineProvider, MZmineModul
     // Calculate baselines: done in-place, i.e. overwrite chromatograms to
     // save memory.
     logger.finest("Calculating baselines.");
-    for (int binIndex = 0; !isAborted(origDataFile) && binIndex < numBins; binIndex++) {
-
-      // Calculate baseline.
-      // final double[] baseline = asymBaseline(baseChrom[binIndex]);
-      final double[] baseline =
-          computeBaseline(rSession, origDataFile, baseChrom[binIndex], parameters);
-
-      // Normalize the baseline w.r.t. chromatogram (TIC).
-      for (int scanIndex = 0; !isAborted(origDataFile) && scanIndex < numScans; scanIndex++) {
-        final double bc = baseChrom[binIndex][scanIndex];
-        if (bc != 0.0) {
-          baseChrom[binIndex][scanIndex] = baseline[scanIndex] / bc;
-        }
-      }
-      progressMap.get(origDataFile)[0]++;
-    }
+    computeBaselines(rSession, origDataFile, baseChrom, parameters, true);
 
     // Subtract baselines.
     logger.finest("Subtracting baselines.");
@@ -339,6 +321,67 @@ public abstract class BaselineCorrector implements BaselineProvider, MZmineModul
 
   }
 
+  /**
+   * Calculate the baselines of all bins: done in-place, i.e. overwrite chromatograms to save
+   * memory. Correctors implemented in Java compute the bins in parallel, correctors using R one
+   * after the other.
+   *
+   * @param origDataFile dataFile of concern.
+   * @param chromatograms the chromatograms as double[number of bins][number of scans].
+   * @param parameters parameters specific to the actual method for baseline computing.
+   * @param normalize normalize the baseline w.r.t. the chromatogram (TIC).
+   * @throws RSessionWrapperException
+   */
+  private void computeBaselines(final RSessionWrapper rSession, final RawDataFile origDataFile,
+      final double[][] chromatograms, final ParameterSet parameters, final boolean normalize)
+      throws RSessionWrapperException {
+
+    if (getRequiresR()) {
+      for (int binIndex = 0; !isAborted(origDataFile) && binIndex < chromatograms.length;
+          binIndex++) {
+        computeBinBaseline(rSession, origDataFile, chromatograms, binIndex, parameters, normalize);
+      }
+      return;
+    }
+
+    IntStream.range(0, chromatograms.length).parallel().forEach(binIndex -> {
+      if (isAborted(origDataFile)) {
+        return;
+      }
+      try {
+        computeBinBaseline(null, origDataFile, chromatograms, binIndex, parameters, normalize);
+      } catch (RSessionWrapperException e) {
+        // not thrown without R
+        throw new IllegalStateException(e);
+      }
+    });
+  }
+
+  private void computeBinBaseline(final RSessionWrapper rSession, final RawDataFile origDataFile,
+      final double[][] chromatograms, final int binIndex, final ParameterSet parameters,
+      final boolean normalize) throws RSessionWrapperException {
+
+    final double[] chromatogram = chromatograms[binIndex];
+    final double[] baseline = computeBaseline(rSession, origDataFile, chromatogram, parameters);
+
+    if (normalize) {
+      // Normalize the baseline w.r.t. chromatogram (TIC).
+      for (int scanIndex = 0; scanIndex < chromatogram.length; scanIndex++) {
+        final double bc = chromatogram[scanIndex];
+        if (bc != 0.0) {
+          chromatogram[scanIndex] = baseline[scanIndex] / bc;
+        }
+      }
+    } else {
+      chromatograms[binIndex] = baseline;
+    }
+
+    final int[] progress = progressMap.get(origDataFile);
+    synchronized (progress) {
+      progress[0]++;
+    }
+  }
+
   /**
    * Constructs base peak (max) chromatograms - one for each m/z bin.
    *
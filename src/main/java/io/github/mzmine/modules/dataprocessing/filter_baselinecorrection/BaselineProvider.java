@@ -42,7 +42,15 @@ public interface BaselineProvider {
   public String[] getRequiredRPackages();
 
   /**
-   * Returns a baseline for correcting the given chromatogram using R
+   * Gets if the corrector requires R. Correctors implemented in Java are computed in parallel and
+   * are called without R session.
+   */
+  public default boolean getRequiresR() {
+    return true;
+  }
+
+  /**
+   * Returns a baseline for correcting the given chromatogram, using R if required
    * 
    * @throws RSessionWrapperException
    */
@@ -31,24 +31,33 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.dataprocessing.filter_baselinecorrection.BaselineCorrector;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.util.R.RSessionWrapper;
-import io.github.mzmine.util.R.RSessionWrapperException;
+import java.util.Arrays;
 
 /**
- * @description Asymmetric baseline corrector. Estimates a trend based on asymmetric least squares.
- *              Uses "asysm" feature from "ptw" R-package
- *              (http://cran.r-project.org/web/packages/ptw/ptw.pdf).
+ * @description Asymmetric baseline corrector. Estimates a trend based on asymmetric least squares,
+ *              as the "asysm" feature from "ptw" R-package
+ *              (http://cran.r-project.org/web/packages/ptw/ptw.pdf): a Whittaker smoother is fitted
+ *              repeatedly with small weights for points above and large weights for points below
+ *              the current trend.
  * 
  */
 public class AsymmetryCorrector extends BaselineCorrector {
 
+  private static final int MAX_ITERATIONS = 25;
+
   @Override
   public String[] getRequiredRPackages() {
-    return new String[] { /* "rJava", "Rserve", */"ptw"};
+    return new String[0];
+  }
+
+  @Override
+  public boolean getRequiresR() {
+    return false;
   }
 
   @Override
   public double[] computeBaseline(final RSessionWrapper rSession, final RawDataFile origDataFile,
-      double[] chromatogram, ParameterSet parameters) throws RSessionWrapperException {
+      double[] chromatogram, ParameterSet parameters) {
 
     // Smoothing and asymmetry parameters.
     final double smoothing =
@@ -56,28 +65,37 @@ public class AsymmetryCorrector extends BaselineCorrector {
     final double asymmetry =
         parameters.getParameter(AsymmetryCorrectorParameters.ASYMMETRY).getValue();
 
-    // Compute baseline.
-    final double[] baseline;
-
-    // try {
-    // Set chromatogram.
-    // rSession.assignDoubleArray("chromatogram", chromatogram);
-    rSession.assign("chromatogram", chromatogram);
-    // Calculate baseline.
-    rSession.eval("baseline <- asysm(chromatogram," + smoothing + ',' + asymmetry + ')');
-    // baseline = rSession.collectDoubleArray("baseline");
-    baseline = (double[]) rSession.collect("baseline");
-    // Done: Refresh R code stack
-    rSession.clearCode();
-
-    // }
-    // catch (Throwable t) {
-    // //t.printStackTrace();
-    // throw new
-    // IllegalStateException("R error during baseline correction (" +
-    // this.getName() + ").", t);
-    // }
+    return asymmetricLeastSquares(chromatogram, smoothing, asymmetry);
+  }
+
+  /**
+   * @param y         chromatogram
+   * @param lambda    smoothing penalty
+   * @param asymmetry weight of points above the baseline
+   * @return the baseline
+   */
+  static double[] asymmetricLeastSquares(final double[] y, final double lambda,
+      final double asymmetry) {
+    final int n = y.length;
+    final double[] baseline = new double[n];
+    final double[] weights = new double[n];
+    Arrays.fill(weights, 1d);
+
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      WhittakerSmoother.smooth(y, weights, lambda, baseline);
 
+      boolean changed = false;
+      for (int i = 0; i < n; i++) {
+        final double w = y[i] > baseline[i] ? asymmetry : 1d - asymmetry;
+        if (w != weights[i]) {
+          weights[i] = w;
+          changed = true;
+        }
+      }
+      if (!changed) {
+        break;
+      }
+    }
     return baseline;
   }
 
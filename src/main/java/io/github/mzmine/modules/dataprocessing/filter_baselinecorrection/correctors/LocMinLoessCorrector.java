@@ -31,12 +31,15 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.dataprocessing.filter_baselinecorrection.BaselineCorrector;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.util.R.RSessionWrapper;
-import io.github.mzmine.util.R.RSessionWrapperException;
+import java.util.Arrays;
 
 /**
- * @description Local Minima + LOESS (smoothed low-percentile intensity) baseline corrector. Uses
+ * @description Local Minima + LOESS (smoothed low-percentile intensity) baseline corrector, as the
  *              "bslnoff" feature from "PROcess" R/Bioconductor package
  *              (http://bioconductor.org/packages/release/ bioc/manuals/PROcess/man/PROcess.pdf).
+ *              The chromatogram is cut into equally wide breaks, the local minimum (or quantile)
+ *              of each break is found and the baseline is a local linear regression (LOESS, degree
+ *              1) or a linear interpolation of these points.
  * 
  */
 public class LocMinLoessCorrector extends BaselineCorrector {
@@ -45,12 +48,17 @@ public class LocMinLoessCorrector extends BaselineCorrector {
 
   @Override
   public String[] getRequiredRPackages() {
-    return new String[] { /* "rJava", "Rserve", */"PROcess"};
+    return new String[0];
+  }
+
+  @Override
+  public boolean getRequiresR() {
+    return false;
   }
 
   @Override
   public double[] computeBaseline(final RSessionWrapper rSession, final RawDataFile origDataFile,
-      double[] chromatogram, ParameterSet parameters) throws RSessionWrapperException {
+      double[] chromatogram, ParameterSet parameters) {
 
     // Local Minima parameters.
     String method = parameters.getParameter(LocMinLoessCorrectorParameters.METHOD).getValue();
@@ -60,29 +68,139 @@ public class LocMinLoessCorrector extends BaselineCorrector {
         parameters.getParameter(LocMinLoessCorrectorParameters.BREAK_WIDTH).getValue();
     double qntl = parameters.getParameter(LocMinLoessCorrectorParameters.QNTL).getValue();
 
-    final double[] baseline;
+    return localMinimaBaseline(chromatogram, method, bw, breaks, breaks_width, qntl);
+  }
 
-    // Set chromatogram.
-    rSession.assign("chromatogram", chromatogram);
-    // Transform chromatogram.
-    int mini = 1;
-    int maxi = chromatogram.length;
-    rSession.eval("mat <- cbind(matrix(seq(" + ((double) mini) + ", " + ((double) maxi)
-        + ", by = 1.0), ncol=1), " + "matrix(chromatogram[" + mini + ":" + maxi + "], ncol=1))");
+  /**
+   * @param chromatogram chromatogram
+   * @param method       "loess" or "approx"
+   * @param bw           loess span
+   * @param breaks       number of breaks, only used if breaksWidth is 0
+   * @param breaksWidth  width of the breaks in scans or 0
+   * @param qntl         quantile of each break, 0 for the local minimum
+   * @return the baseline
+   */
+  static double[] localMinimaBaseline(final double[] chromatogram, final String method,
+      final double bw, final int breaks, final int breaksWidth, final double qntl) {
+    final int n = chromatogram.length;
+    if (n == 0) {
+      return new double[0];
+    }
     // Breaks
-    rSession.eval("breaks <- "
-        + ((breaks_width > 0) ? (int) Math.round((double) (maxi - mini) / (double) breaks_width)
-            : breaks));
+    final int numBreaks = Math.max(1,
+        (breaksWidth > 0) ? (int) Math.round((double) (n - 1) / (double) breaksWidth) : breaks);
+
+    // Local minimum (or quantile) of each break
+    final double[] x = new double[numBreaks];
+    final double[] y = new double[numBreaks];
+    int numPoints = 0;
+    final double breakWidth = (double) n / numBreaks;
+    for (int b = 0; b < numBreaks; b++) {
+      final int start = (int) Math.ceil(b * breakWidth - 1e-9);
+      final int end = Math.min(n, (int) Math.ceil((b + 1) * breakWidth - 1e-9));
+      if (end <= start) {
+        continue;
+      }
+      if (qntl == 0d) {
+        int min = start;
+        for (int i = start + 1; i < end; i++) {
+          if (chromatogram[i] < chromatogram[min]) {
+            min = i;
+          }
+        }
+        x[numPoints] = min;
+        y[numPoints] = chromatogram[min];
+      } else {
+        final double[] values = Arrays.copyOfRange(chromatogram, start, end);
+        Arrays.sort(values);
+        x[numPoints] = (start + end - 1) / 2d;
+        y[numPoints] = quantile(values, qntl);
+      }
+      numPoints++;
+    }
+
     // Calculate baseline.
     // + Seems like "loess" method doesn't support "bw=0.0"
-    rSession.eval("bseoff <- bslnoff(mat, method=\"" + method + "\", bw="
-        + ((method.equals("approx") || bw >= BW_MIN_VAL) ? bw : BW_MIN_VAL)
-        + ", breaks=breaks, qntl=" + qntl + ")");
-    rSession.eval("baseline <- mat[,2] - bseoff[,2]");
-    baseline = (double[]) rSession.collect("baseline");
-    // Done: Refresh R code stack
-    rSession.clearCode();
+    if (method.equals("approx") || numPoints < 2) {
+      return interpolate(x, y, numPoints, n);
+    }
+    return loess(x, y, numPoints, Math.max(bw, BW_MIN_VAL), n);
+  }
+
+  /**
+   * Quantile of sorted values (R type 7)
+   */
+  private static double quantile(final double[] sorted, final double probability) {
+    final double h = (sorted.length - 1) * probability;
+    final int low = (int) Math.floor(h);
+    final int high = Math.min(sorted.length - 1, low + 1);
+    return sorted[low] + (h - low) * (sorted[high] - sorted[low]);
+  }
+
+  /**
+   * Linear interpolation, constant outside of the points
+   */
+  private static double[] interpolate(final double[] x, final double[] y, final int numPoints,
+      final int n) {
+    final double[] baseline = new double[n];
+    int p = 0;
+    for (int i = 0; i < n; i++) {
+      while (p < numPoints - 1 && x[p + 1] <= i) {
+        p++;
+      }
+      if (i <= x[0] || p == numPoints - 1) {
+        baseline[i] = i <= x[0] ? y[0] : y[numPoints - 1];
+      } else {
+        baseline[i] = y[p] + (y[p + 1] - y[p]) * (i - x[p]) / (x[p + 1] - x[p]);
+      }
+    }
+    return baseline;
+  }
+
+  /**
+   * Local linear regression with tricube weights over the nearest span * numPoints points
+   */
+  private static double[] loess(final double[] x, final double[] y, final int numPoints,
+      final double span, final int n) {
+    final int q = Math.min(numPoints, Math.max(2, (int) Math.floor(numPoints * span)));
+    final double[] baseline = new double[n];
+    // window of the q nearest points, slides to the right with i
+    int left = 0;
+    for (int i = 0; i < n; i++) {
+      while (left + q < numPoints && i - x[left] > x[left + q] - i) {
+        left++;
+      }
+      final int right = left + q - 1;
+      double maxDist = Math.max(i - x[left], x[right] - i);
+      if (span > 1d) {
+        maxDist *= span;
+      }
+
+      double sw = 0, swx = 0, swy = 0, swxx = 0, swxy = 0;
+      for (int k = left; k <= right; k++) {
+        final double d = maxDist > 0 ? Math.abs(x[k] - i) / maxDist : 0d;
+        if (d >= 1d) {
+          continue;
+        }
+        final double t = 1d - d * d * d;
+        final double w = t * t * t;
+        sw += w;
+        swx += w * x[k];
+        swy += w * y[k];
+        swxx += w * x[k] * x[k];
+        swxy += w * x[k] * y[k];
+      }
 
+      if (sw == 0d) {
+        baseline[i] = y[left];
+        continue;
+      }
+      final double meanX = swx / sw;
+      final double meanY = swy / sw;
+      final double varX = swxx / sw - meanX * meanX;
+      baseline[i] = varX <= 1e-12 * Math.max(1d, meanX * meanX) ? meanY
+          : meanY + (swxy / sw - meanX * meanY) / varX * (i - meanX);
+    }
     return baseline;
   }
 
@@ -31,25 +31,31 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.dataprocessing.filter_baselinecorrection.BaselineCorrector;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.util.R.RSessionWrapper;
-import io.github.mzmine.util.R.RSessionWrapperException;
 
 /**
  * @description Rubber Band baseline corrector. Estimates a trend based on Rubber Band algorithm
- *              (which determines a convex envelope for the spectra - underneath side). Uses
+ *              (which determines a convex envelope for the spectra - underneath side), as the
  *              "spc.rubberband" feature from "hyperSpec" R-package
- *              (http://cran.r-project.org/web/packages /hyperSpec/vignettes/baseline.pdf).
+ *              (http://cran.r-project.org/web/packages /hyperSpec/vignettes/baseline.pdf). The
+ *              spline option smooths all points within the noise level above the envelope with a
+ *              Whittaker smoother of the given degree of freedom.
  * 
  */
 public class RubberBandCorrector extends BaselineCorrector {
 
   @Override
   public String[] getRequiredRPackages() {
-    return new String[] { /* "rJava", "Rserve", */"hyperSpec"};
+    return new String[0];
+  }
+
+  @Override
+  public boolean getRequiresR() {
+    return false;
   }
 
   @Override
   public double[] computeBaseline(final RSessionWrapper rSession, final RawDataFile origDataFile,
-      double[] chromatogram, ParameterSet parameters) throws RSessionWrapperException {
+      double[] chromatogram, ParameterSet parameters) {
 
     // Rubber Band parameters.
     double noise = parameters.getParameter(RubberBandCorrectorParameters.NOISE).getValue();
@@ -59,31 +65,97 @@ public class RubberBandCorrector extends BaselineCorrector {
     boolean spline = parameters.getParameter(RubberBandCorrectorParameters.SPLINE).getValue();
     double bend = parameters.getParameter(RubberBandCorrectorParameters.BEND_FACTOR).getValue();
 
-    final double[] baseline;
-
-    // Set chromatogram.
-    rSession.assign("chromatogram", chromatogram);
-    // Transform chromatogram.
-    rSession.eval("mat <- matrix(chromatogram, nrow=1)");
-    rSession.eval("spc <- new (\"hyperSpec\", spc = mat, wavelength = as.numeric(seq(" + 1 + ", "
-        + chromatogram.length + ")))");
-    // Auto noise ?
-    rSession.eval("noise <- " + ((autoNoise) ? "min(mat)" : "" + noise));
-    // Bend
-    rSession.eval("bend <- " + bend + " * wl.eval(spc, function(x) x^2, normalize.wl=normalize01)");
-    // Calculate baseline.
-    rSession.eval("baseline <- spc.rubberband(spc + bend, noise = noise, df = " + df + ", spline="
-        + (spline ? "T" : "F") + ") - bend");
-    // 'NA' might appear in 'baseline' array when 'spline' parameter set to
-    // 'FALSE',
-    // So handle them properly if necessary...
-    rSession.eval(
-        "if (is.na(baseline)) { baseline[is.na(baseline)] <- " + RSessionWrapper.NA_DOUBLE + " }");
-    rSession.eval("baseline <- orderwl(baseline)[[1]]");
-    baseline = ((double[][]) rSession.collect("baseline"))[0];
-    // Done: Refresh R code stack
-    rSession.clearCode();
+    return rubberBand(chromatogram, noise, autoNoise, df, spline, bend);
+  }
+
+  /**
+   * @param chromatogram chromatogram
+   * @param noise        points within this distance above the envelope are smoothed
+   * @param autoNoise    true to use the lowest intensity as noise
+   * @param df           degree of freedom of the smoother
+   * @param spline       true to smooth the envelope
+   * @param bend         factor of the parabola added before the envelope is computed
+   * @return the baseline
+   */
+  static double[] rubberBand(final double[] chromatogram, double noise, final boolean autoNoise,
+      final double df, final boolean spline, final double bend) {
+    final int n = chromatogram.length;
+    if (n == 0) {
+      return new double[0];
+    }
+
+    // Auto noise: lowest intensity
+    if (autoNoise) {
+      noise = Double.POSITIVE_INFINITY;
+      for (double v : chromatogram) {
+        noise = Math.min(noise, v);
+      }
+    }
+
+    // Bend: bend * x^2 with x normalized to 0..1
+    final double[] bent = new double[n];
+    final double[] bendValues = new double[n];
+    for (int i = 0; i < n; i++) {
+      final double x = n > 1 ? (double) i / (n - 1) : 0d;
+      bendValues[i] = bend * x * x;
+      bent[i] = chromatogram[i] + bendValues[i];
+    }
+
+    final double[] baseline = lowerHull(bent);
+
+    // Smooth all points close to the envelope
+    if (spline && df > 1d) {
+      final double[] weights = new double[n];
+      int support = 0;
+      for (int i = 0; i < n; i++) {
+        if (bent[i] <= baseline[i] + noise) {
+          weights[i] = 1d;
+          support++;
+        }
+      }
+      if (support > 3) {
+        // the cut-off frequency of the smoother passes about df frequencies
+        final double lambda = Math.pow(n / (Math.PI * Math.min(df, n)), 4);
+        WhittakerSmoother.smooth(bent, weights, lambda, baseline);
+      }
+    }
+
+    for (int i = 0; i < n; i++) {
+      baseline[i] -= bendValues[i];
+    }
+    return baseline;
+  }
+
+  /**
+   * Lower convex hull (monotone chain), linearly interpolated at all points
+   */
+  static double[] lowerHull(final double[] y) {
+    final int n = y.length;
+    final int[] hull = new int[n];
+    int size = 0;
+    for (int i = 0; i < n; i++) {
+      // remove points above the line from the second last hull point to i
+      while (size >= 2) {
+        final int a = hull[size - 2];
+        final int b = hull[size - 1];
+        final double cross = (b - a) * (y[i] - y[a]) - (y[b] - y[a]) * (i - a);
+        if (cross > 0) {
+          break;
+        }
+        size--;
+      }
+      hull[size++] = i;
+    }
 
+    final double[] baseline = new double[n];
+    baseline[0] = y[0];
+    for (int h = 1; h < size; h++) {
+      final int a = hull[h - 1];
+      final int b = hull[h];
+      for (int i = a; i <= b; i++) {
+        baseline[i] = y[a] + (y[b] - y[a]) * (i - a) / (b - a);
+      }
+    }
     return baseline;
   }
 
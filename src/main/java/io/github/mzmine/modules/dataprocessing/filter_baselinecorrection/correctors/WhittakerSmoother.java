@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.filter_baselinecorrection.correctors;
+
+/**
+ * Whittaker smoother: weighted least squares fit with a second order difference penalty. The
+ * normal equations (W + lambda * D'D) z = W y are pentadiagonal and solved by an LDL'
+ * decomposition in linear time.
+ */
+final class WhittakerSmoother {
+
+  private WhittakerSmoother() {
+  }
+
+  /**
+   * @param y      values
+   * @param w      weights of the values, at least two weights must be > 0
+   * @param lambda smoothing penalty
+   * @param z      result array, may be the same as y
+   */
+  static void smooth(final double[] y, final double[] w, final double lambda, final double[] z) {
+    final int n = y.length;
+    if (n < 3 || lambda <= 0d) {
+      System.arraycopy(y, 0, z, 0, n);
+      return;
+    }
+
+    // bands of W + lambda * D'D
+    final double[] a0 = new double[n];
+    final double[] a1 = new double[n];
+    final double[] a2 = new double[n];
+    for (int i = 0; i < n; i++) {
+      a0[i] = w[i];
+    }
+    for (int k = 0; k < n - 2; k++) {
+      a0[k] += lambda;
+      a0[k + 1] += 4 * lambda;
+      a0[k + 2] += lambda;
+      a1[k] -= 2 * lambda;
+      a1[k + 1] -= 2 * lambda;
+      a2[k] += lambda;
+    }
+
+    // LDL' decomposition, l1[i] = L[i+1][i] and l2[i] = L[i+2][i]
+    final double[] d = new double[n];
+    final double[] l1 = new double[n];
+    final double[] l2 = new double[n];
+    for (int i = 0; i < n; i++) {
+      double di = a0[i];
+      double ai1 = a1[i];
+      if (i >= 1) {
+        di -= l1[i - 1] * l1[i - 1] * d[i - 1];
+        ai1 -= l1[i - 1] * l2[i - 1] * d[i - 1];
+      }
+      if (i >= 2) {
+        di -= l2[i - 2] * l2[i - 2] * d[i - 2];
+      }
+      d[i] = di;
+      l1[i] = i + 1 < n ? ai1 / di : 0d;
+      l2[i] = i + 2 < n ? a2[i] / di : 0d;
+    }
+
+    // forward and backward substitution
+    final double[] u = new double[n];
+    for (int i = 0; i < n; i++) {
+      double ui = w[i] * y[i];
+      if (i >= 1) {
+        ui -= l1[i - 1] * u[i - 1];
+      }
+      if (i >= 2) {
+        ui -= l2[i - 2] * u[i - 2];
+      }
+      u[i] = ui;
+    }
+    for (int i = n - 1; i >= 0; i--) {
+      double zi = u[i] / d[i];
+      if (i + 1 < n) {
+        zi -= l1[i] * z[i + 1];
+      }
+      if (i + 2 < n) {
+        zi -= l2[i] * z[i + 2];
+      }
+      z[i] = zi;
+    }
+  }
+}
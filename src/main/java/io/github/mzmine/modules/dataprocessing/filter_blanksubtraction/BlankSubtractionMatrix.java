@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.filter_blanksubtraction;
+
+import io.github.mzmine.datamodel.AbundanceMeasure;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.modules.dataprocessing.filter_blanksubtraction.FeatureListBlankSubtractionTask.RatioType;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The detected features and their abundances of all rows as a row × sample matrix. The blank
+ * columns come first, followed by the sample columns. Features are looked up once, the blank
+ * abundances and the fold change classification are computed for all rows in parallel.
+ */
+final class BlankSubtractionMatrix {
+
+  static final byte NOT_DETECTED = 0;
+  static final byte NOT_BACKGROUND = 1;
+  static final byte BACKGROUND = 2;
+
+  private final int numRows;
+  private final int numBlanks;
+  private final int numColumns;
+  // row major, null and 0 for features that were not detected
+  private final Feature[] features;
+  private final double[] abundances;
+
+  /**
+   * @throws ArithmeticException if the matrix has more cells than an array can hold
+   */
+  BlankSubtractionMatrix(List<FeatureListRow> rows, List<RawDataFile> blankRaws,
+      List<RawDataFile> nonBlankRaws, AbundanceMeasure quantType) {
+    numRows = rows.size();
+    numBlanks = blankRaws.size();
+    numColumns = numBlanks + nonBlankRaws.size();
+    final RawDataFile[] columns = new RawDataFile[numColumns];
+    for (int c = 0; c < numColumns; c++) {
+      columns[c] = c < numBlanks ? blankRaws.get(c) : nonBlankRaws.get(c - numBlanks);
+    }
+
+    // all indices are below the size and do not overflow
+    final int size = Math.multiplyExact(numRows, numColumns);
+    features = new Feature[size];
+    abundances = new double[size];
+    IntStream.range(0, numRows).parallel().forEach(r -> {
+      final FeatureListRow row = rows.get(r);
+      for (int c = 0; c < numColumns; c++) {
+        final int i = r * numColumns + c;
+        final Feature feature = row.getFeature(columns[c]);
+        if (feature != null && feature.getFeatureStatus() != FeatureStatus.UNKNOWN) {
+          features[i] = feature;
+          abundances[i] = getFeatureQuantifier(feature, quantType);
+        }
+      }
+    });
+  }
+
+  static double getFeatureQuantifier(Feature f, AbundanceMeasure quantType) {
+    if (quantType == AbundanceMeasure.Height) {
+      return f.getHeight();
+    } else if (quantType == AbundanceMeasure.Area) {
+      return f.getArea();
+    }
+    throw new RuntimeException("Unknown parameter");
+  }
+
+  /**
+   * @return the number of blank samples with a detected feature for each row
+   */
+  int[] getBlankDetections() {
+    final int[] detections = new int[numRows];
+    IntStream.range(0, numRows).parallel().forEach(r -> {
+      for (int c = 0; c < numBlanks; c++) {
+        if (features[r * numColumns + c] != null) {
+          detections[r]++;
+        }
+      }
+    });
+    return detections;
+  }
+
+  /**
+   * @return the average or maximum abundance of the detected blank features of each row, 0 if
+   * there are none
+   */
+  double[] getBlankAbundances(RatioType ratioType) {
+    final double[] blankAbundances = new double[numRows];
+    IntStream.range(0, numRows).parallel().forEach(r -> {
+      double intensity = 0d;
+      int numDetections = 0;
+      for (int c = 0; c < numBlanks; c++) {
+        if (features[r * numColumns + c] == null) {
+          continue;
+        }
+        final double quant = abundances[r * numColumns + c];
+        if (ratioType == RatioType.AVERAGE) {
+          intensity += quant;
+          numDetections++;
+        } else if (ratioType == RatioType.MAXIMUM) {
+          intensity = Math.max(quant, intensity);
+        }
+      }
+      blankAbundances[r] = ratioType == RatioType.AVERAGE && numDetections != 0 ?
+          intensity / numDetections : intensity;
+    });
+    return blankAbundances;
+  }
+
+  /**
+   * Classifies the detected sample features as background or not background.
+   *
+   * @param blankAbundances the blank abundance of each row, only used if checkFoldChange
+   * @return {@link #NOT_DETECTED}, {@link #NOT_BACKGROUND} or {@link #BACKGROUND} for each sample
+   * column of each row, row major
+   */
+  byte[] classifySamples(double[] blankAbundances, boolean checkFoldChange, double foldChange) {
+    final int numSamples = numColumns - numBlanks;
+    final byte[] classes = new byte[numRows * numSamples];
+    IntStream.range(0, numRows).parallel().forEach(r -> {
+      for (int s = 0; s < numSamples; s++) {
+        final int i = r * numColumns + numBlanks + s;
+        if (features[i] == null) {
+          continue;
+        }
+        final double featureAbundance = abundances[i];
+        // check if feature is more abundant than the blank samples
+        classes[r * numSamples + s] =
+            !checkFoldChange || featureAbundance / blankAbundances[r] >= foldChange
+                ? NOT_BACKGROUND : BACKGROUND;
+      }
+    });
+    return classes;
+  }
+
+  @Nullable
+  Feature getBlankFeature(int row, int blank) {
+    return features[row * numColumns + blank];
+  }
+
+  @Nullable
+  Feature getSampleFeature(int row, int sample) {
+    return features[row * numColumns + numBlanks + sample];
+  }
+}
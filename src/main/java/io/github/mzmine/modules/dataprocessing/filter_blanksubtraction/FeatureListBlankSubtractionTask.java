@@ -27,7 +27,6 @@ package io.github.mzmine.modules.dataprocessing.filter_blanksubtraction;
 
 import io.github.mzmine.datamodel.AbundanceMeasure;
 import io.github.mzmine.datamodel.FeatureInformation;
-import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.Feature;
@@ -47,7 +46,6 @@ import io.github.mzmine.util.FeatureListRowSorter;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -176,45 +174,53 @@ public class FeatureListBlankSubtractionTask extends AbstractTask {
         f -> backgroundAlignedFeaturesList.setSelectedScans(f,
             originalFeatureList.getSeletedScans(f)));
 
+    // extract the abundances once and classify all features in bulk
+    final List<FeatureListRow> originalRows = originalFeatureList.getRows();
+    final BlankSubtractionMatrix matrix;
+    try {
+      matrix = new BlankSubtractionMatrix(originalRows, blankRaws, nonBlankRaws, quantType);
+    } catch (ArithmeticException e) {
+      setErrorMessage("Feature list " + originalFeatureList.getName()
+          + " has too many rows and raw data files for blank subtraction.");
+      setStatus(TaskStatus.ERROR);
+      return;
+    }
+    final int[] blankDetections = matrix.getBlankDetections();
+    final double[] blankAbundances = checkFoldChange ? matrix.getBlankAbundances(ratioType) : null;
+    // check the sample features only if required
+    final boolean checkSamples = minBlankDetections > 0 || checkFoldChange;
+    final byte[] sampleClasses =
+        checkSamples ? matrix.classifySamples(blankAbundances, checkFoldChange, foldChange) : null;
+
     final List<FeatureListRow> notBackgroundAlignedFeaturesListRows = new ArrayList<>();
     final List<FeatureListRow> backgroundAlignedFeaturesListRows = new ArrayList<>();
-    for (FeatureListRow originalRow : originalFeatureList.getRows()) {
+    for (int r = 0; r < originalRows.size(); r++) {
+      final FeatureListRow originalRow = originalRows.get(r);
 
       final List<Feature> notBackgroundFeaturesOfCurrentRow = new ArrayList<>();
       final List<Feature> backgroundFeaturesOfCurrentRow = new ArrayList<>();
 
-      // check the featureRow in the blank samples
-      int foundInNBlanks = 0;
-      for (RawDataFile blankRaw : blankRaws) {
-        if (originalRow.hasFeature(blankRaw)) {
-          // save blank detections to a blank-list
-          final Feature blankFeature = originalRow.getFeature(blankRaw);
+      // save blank detections to a blank-list
+      final int foundInNBlanks = blankDetections[r];
+      for (int b = 0; b < blankRaws.size(); b++) {
+        final Feature blankFeature = matrix.getBlankFeature(r, b);
+        if (blankFeature != null) {
           backgroundFeaturesOfCurrentRow.add(blankFeature);
-          ++foundInNBlanks;
         }
       }
 
       double blankAbundance = -1;
-      int foundInSamplesAsBackground = 0;
-      if (notBackgroundFeaturesOfCurrentRow.size() < minBlankDetections || checkFoldChange) {
-        blankAbundance =
-            checkFoldChange ? getBlankAbundance(originalRow, blankRaws, quantType, ratioType) : 1d;
+      if (checkSamples) {
+        blankAbundance = checkFoldChange ? blankAbundances[r] : 1d;
         // copy features from non-blank files.
-        for (RawDataFile file : nonBlankRaws) {
-          final Feature nonBlankFeature = originalRow.getFeature(file);
-          // check if there's actually a feature
-          if (nonBlankFeature != null
-              && nonBlankFeature.getFeatureStatus() != FeatureStatus.UNKNOWN) {
-            // check if feature is more abundant than the blank samples
-            double featureAbundance = getFeatureQuantifier(nonBlankFeature, quantType);
-            if (!checkFoldChange || featureAbundance / blankAbundance >= foldChange) {
-              // the feature is a true feature and not a background
-              notBackgroundFeaturesOfCurrentRow.add(nonBlankFeature);
-            } else {
-              // the feature is indistinguishable from the blanks
-              backgroundFeaturesOfCurrentRow.add(nonBlankFeature);
-              foundInSamplesAsBackground++;
-            }
+        for (int s = 0; s < nonBlankRaws.size(); s++) {
+          switch (sampleClasses[r * nonBlankRaws.size() + s]) {
+            // the feature is a true feature and not a background
+            case BlankSubtractionMatrix.NOT_BACKGROUND ->
+                notBackgroundFeaturesOfCurrentRow.add(matrix.getSampleFeature(r, s));
+            // the feature is indistinguishable from the blanks
+            case BlankSubtractionMatrix.BACKGROUND ->
+                backgroundFeaturesOfCurrentRow.add(matrix.getSampleFeature(r, s));
           }
         }
       }
@@ -311,38 +317,6 @@ public class FeatureListBlankSubtractionTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
-  private double getFeatureQuantifier(Feature f, AbundanceMeasure quantType) {
-    if (quantType == AbundanceMeasure.Height) {
-      return f.getHeight();
-    } else if (quantType == AbundanceMeasure.Area) {
-      return f.getArea();
-    }
-    throw new RuntimeException("Unknown parameter");
-  }
-
-  private double getBlankAbundance(FeatureListRow row, Collection<RawDataFile> blankRaws,
-      AbundanceMeasure quantType, RatioType ratioType) {
-    double intensity = 0d;
-    int numDetections = 0;
-
-    for (RawDataFile file : blankRaws) {
-      final Feature f = row.getFeature(file);
-      if (f != null && f.getFeatureStatus() != FeatureStatus.UNKNOWN) {
-        double quant = getFeatureQuantifier(f, quantType);
-
-        if (ratioType == RatioType.AVERAGE) {
-          intensity += quant;
-          numDetections++;
-        } else if (ratioType == RatioType.MAXIMUM) {
-          intensity = Math.max(quant, intensity);
-        }
-      }
-    }
-
-    return ratioType == RatioType.AVERAGE && numDetections != 0 ? intensity / numDetections
-        : intensity;
-  }
-
   private boolean checkBlankSelection(FeatureList aligned, List<RawDataFile> blankRaws) {
 
     List<RawDataFile> flRaws = aligned.getRawDataFiles();
@@ -67,6 +67,7 @@ import io.github.mzmine.taskcontrol.impl.FinishedTask;
 import io.github.mzmine.util.ArrayUtils;
 import io.github.mzmine.util.IonMobilityUtils;
 import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.scans.ScanUtils;
 import io.github.mzmine.util.scans.SpectraMerging;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import java.time.Instant;
@@ -201,8 +202,7 @@ public class DiaMs2CorrTask extends AbstractTask {
       // fwhm sometimes does funny stuff, so we restrict it to the overlap of fwhm + rt range
       final Range<Float> rtRange = Range.closed((float) ms1Rts[0],
           (float) ArrayUtils.lastElement(ms1Rts));
-      final List<Scan> ms2sInRtRange = ms2Scans.stream()
-          .filter(scan -> rtRange.contains(scan.getRetentionTime())).toList();
+      final List<Scan> ms2sInRtRange = ScanUtils.getScansInRtRange(ms2Scans, rtRange);
       final Scan closestMs2 = getClosestMs2(feature.getRT(), ms2sInRtRange);
       if (closestMs2 == null || ms2sInRtRange.isEmpty() || ms2sInRtRange.size() < minCorrPoints) {
         logger.fine(() -> "Could not find enough ms2s in rtRange " + rtRange);
@@ -236,8 +236,7 @@ public class DiaMs2CorrTask extends AbstractTask {
       if (bestMobilityScan != null && closestMs2 instanceof Frame) {
         final Range<Float> mobilityRange = IonMobilityUtils.getMobilityFWHM(
             ((IonMobilogramTimeSeries) featureEIC).getSummedMobilogram());
-        final List<MobilityScan> mobilityScans = ms2Scans.stream()
-            .filter(s -> rtRange.contains(s.getRetentionTime()))
+        final List<MobilityScan> mobilityScans = ms2sInRtRange.stream()
             .flatMap(s -> ((Frame) s).getMobilityScans().stream())
             .filter(m -> mobilityRange.contains((float) m.getMobility())).toList();
         if (!mobilityScans.isEmpty()) {
@@ -58,8 +58,14 @@ import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -78,7 +84,7 @@ public class DuplicateFilterTask extends AbstractTask {
   private final ParameterSet parameters;
   private FeatureList filteredPeakList;
   // Counters.
-  private int processedRows;
+  private final AtomicInteger processedRows = new AtomicInteger(0);
   private int totalRows;
 
   public DuplicateFilterTask(final MZmineProject project, final FeatureList list,
@@ -92,7 +98,6 @@ public class DuplicateFilterTask extends AbstractTask {
     peakList = list;
     filteredPeakList = null;
     totalRows = 0;
-    processedRows = 0;
   }
 
   @Override
@@ -104,7 +109,7 @@ public class DuplicateFilterTask extends AbstractTask {
   @Override
   public double getFinishedPercentage() {
 
-    return totalRows == 0 ? 0.0 : (double) processedRows / (double) totalRows;
+    return totalRows == 0 ? 0.0 : (double) processedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -183,9 +188,9 @@ public class DuplicateFilterTask extends AbstractTask {
     final int rowCount = peakListRows.length;
     RawDataFile[] rawFiles = newPeakList.getRawDataFiles().toArray(RawDataFile[]::new);
 
-    // filter by average mz and rt
-    totalRows = rowCount;
-    processedRows = 0;
+    // filter by average mz and rt: candidate search and removal
+    totalRows = 2 * rowCount;
+    processedRows.set(0);
     // sort rows
     final int removedDuplicates = switch (mode) {
       case OLD_AVERAGE ->
@@ -233,43 +238,27 @@ public class DuplicateFilterTask extends AbstractTask {
     Arrays.sort(peakListRows,
         new FeatureListRowSorter(SortingProperty.Area, SortingDirection.Descending));
 
-    // Loop through all feature list rows
-    int removedDuplicates = 0;
-    for (int firstRowIndex = 0; firstRowIndex < rowCount; firstRowIndex++) {
-      if (isCanceled()) {
-        return -1;
-      }
-
-      final ModularFeatureListRow firstRow = peakListRows[firstRowIndex];
-
-      if (firstRow != null) {
-        for (int secondRowIndex = firstRowIndex + 1; secondRowIndex < rowCount; secondRowIndex++) {
-          if (isCanceled()) {
-            return -1;
-          }
-
-          final FeatureListRow secondRow = peakListRows[secondRowIndex];
-          if (secondRow != null) {
-            // Compare identifications
-            final boolean sameID =
-                !requireSameId || FeatureUtils.compareIdentities(firstRow, secondRow);
-
-            final boolean sameMZRT = checkSameAverageRTMZ(firstRow, secondRow, mzTolerance,
-                rtTolerance);
-
-            final boolean sameMobility = checkMobility(firstRow, secondRow, mobilityTolerance);
-
-            // Duplicate peaks?
-            if (sameID && sameMZRT && sameMobility) {
-              // second row deleted
-              removedDuplicates++;
-              peakListRows[secondRowIndex] = null;
-            }
-          }
-        }
-      }
-      processedRows++;
+    final double[] mzs = getAverageMZs(peakListRows);
+    final float[] rts = getAverageRTs(peakListRows);
+    final float[] mobilities = getAverageMobilities(peakListRows);
+
+    // rows are sorted by area, the index finds the rows within the m/z tolerance
+    final RowMzIndex index = new RowMzIndex(mzs);
+    final int[][] duplicates = findDuplicateCandidates(rowCount, first -> {
+      final Range<Double> mzRange = mzTolerance.getToleranceRange(mzs[first]);
+      return index.findInWindow(first, mzRange.lowerEndpoint(), mzRange.upperEndpoint(),
+          second -> rtTolerance.checkWithinTolerance(rts[first], rts[second])
+              && mobilityTolerance.checkWithinTolerance(mobilities[first], mobilities[second]) && (
+              !requireSameId || FeatureUtils.compareIdentities(peakListRows[first],
+                  peakListRows[second])));
+    });
+    if (duplicates == null) {
+      return -1;
     }
+
+    // remove in area order, rows removed before cannot remove other rows
+    final int removedDuplicates = RowMzIndex.removeDuplicates(peakListRows, duplicates);
+    processedRows.addAndGet(rowCount);
     return removedDuplicates;
   }
 
@@ -281,64 +270,35 @@ public class DuplicateFilterTask extends AbstractTask {
     Arrays.sort(peakListRows,
         new FeatureListRowSorter(SortingProperty.MZ, SortingDirection.Ascending));
 
-    // Loop through all feature list rows
-    int n = 0;
-    for (int firstRowIndex = 0; firstRowIndex < rowCount; firstRowIndex++) {
-      if (isCanceled()) {
-        return -1;
-      }
-
-      final ModularFeatureListRow firstRow = peakListRows[firstRowIndex];
-
-      if (firstRow != null) {
-
-        final double averageMZ1 = firstRow.getAverageMZ();
-        final Range<Double> mzRange = mzTolerance.getToleranceRange(averageMZ1);
-        double lowerMZ = mzRange.lowerEndpoint();
-        double upperMZ = mzRange.upperEndpoint();
-
-        for (int secondRowIndex = firstRowIndex + 1; secondRowIndex < rowCount; secondRowIndex++) {
-          if (isCanceled()) {
-            return -1;
-          }
+    final double[] mzs = getAverageMZs(peakListRows);
+    final float[] rts = getAverageRTs(peakListRows);
+    final float[] mobilities = getAverageMobilities(peakListRows);
+
+    // m/z window of each row
+    final double[] lowerMzs = new double[rowCount];
+    final double[] upperMzs = new double[rowCount];
+    for (int i = 0; i < rowCount; i++) {
+      final Range<Double> mzRange = mzTolerance.getToleranceRange(mzs[i]);
+      lowerMzs[i] = mzRange.lowerEndpoint();
+      upperMzs[i] = mzRange.upperEndpoint();
+    }
 
-          final FeatureListRow secondRow = peakListRows[secondRowIndex];
-          if (secondRow != null) {
-            // check mz first to stop loop
-            final double averageMZ2 = secondRow.getAverageMZ();
-            if (averageMZ2 < lowerMZ) {
-              continue;
-            }
-            if (averageMZ2 > upperMZ) {
-              break;
-            }
-
-            // Compare identifications
-            final boolean sameID =
-                !requireSameId || FeatureUtils.compareIdentities(firstRow, secondRow);
-
-            final boolean sameRT = rtTolerance.checkWithinTolerance(firstRow.getAverageRT(),
-                secondRow.getAverageRT());
-
-            final boolean sameMobility = checkMobility(firstRow, secondRow, mobilityTolerance);
-
-            // Duplicate peaks?
-            if (sameID && sameRT && sameMobility) {
-              // create consensus row in new filter
-              // copy all detected features of row2 into row1
-              // to exchange gap-filled against detected
-              // features
-              createConsensusFirstRow(newPeakList, rawFiles, firstRow, secondRow);
-              // second row deleted
-              n++;
-              peakListRows[secondRowIndex] = null;
-            }
-          }
-        }
-      }
-      processedRows++;
+    final RowMzIndex index = new RowMzIndex(mzs);
+    final int[][] candidates = findDuplicateCandidates(rowCount,
+        first -> index.findInWindow(first, lowerMzs[first], upperMzs[first],
+            second -> rtTolerance.checkWithinTolerance(rts[first], rts[second])
+                && mobilityTolerance.checkWithinTolerance(mobilities[first], mobilities[second])
+                && (!requireSameId || FeatureUtils.compareIdentities(peakListRows[first],
+                peakListRows[second]))));
+    if (candidates == null) {
+      return -1;
     }
-    return n;
+
+    return mergeDuplicates(index, newPeakList, rawFiles, peakListRows, lowerMzs, upperMzs,
+        candidates,
+        (firstRow, secondRow) -> (!requireSameId || FeatureUtils.compareIdentities(firstRow,
+            secondRow)) && rtTolerance.checkWithinTolerance(firstRow.getAverageRT(),
+            secondRow.getAverageRT()) && checkMobility(firstRow, secondRow, mobilityTolerance));
   }
 
   /**
@@ -353,77 +313,109 @@ public class DuplicateFilterTask extends AbstractTask {
     Arrays.sort(peakListRows,
         new FeatureListRowSorter(SortingProperty.MZ, SortingDirection.Ascending));
 
-    // Loop through all feature list rows
-    int n = 0;
-    for (int firstRowIndex = 0; firstRowIndex < rowCount; firstRowIndex++) {
-      if (isCanceled()) {
-        return -1;
+    final double[] mzs = getAverageMZs(peakListRows);
+    final float[] mobilities = getAverageMobilities(peakListRows);
+
+    // m/z window of the feature m/z range of each row
+    final double[] lowerMzs = new double[rowCount];
+    final double[] upperMzs = new double[rowCount];
+    for (int i = 0; i < rowCount; i++) {
+      final List<ModularFeature> firstFeatures = peakListRows[i].getFeatures();
+      double minMZ = Double.MAX_VALUE;
+      double maxMZ = Double.NEGATIVE_INFINITY;
+      for (int f = 0; f < firstFeatures.size(); f++) {
+        Double mz = firstFeatures.get(f).getMZ();
+        if (mz == null) {
+          continue;
+        }
+        if (mz < minMZ) {
+          minMZ = mz;
+        }
+        if (mz > maxMZ) {
+          maxMZ = mz;
+        }
       }
+      lowerMzs[i] = mzTolerance.getToleranceRange(minMZ).lowerEndpoint();
+      upperMzs[i] = mzTolerance.getToleranceRange(maxMZ).upperEndpoint();
+    }
 
-      final ModularFeatureListRow firstRow = peakListRows[firstRowIndex];
+    final RowMzIndex index = new RowMzIndex(mzs);
+    final int[][] candidates = findDuplicateCandidates(rowCount,
+        first -> index.findInWindow(first, lowerMzs[first], upperMzs[first],
+            second -> mobilityTolerance.checkWithinTolerance(mobilities[first],
+                mobilities[second]) && checkSameSingleFeatureRTMZ(rawFiles, peakListRows[first],
+                peakListRows[second], mzTolerance, rtTolerance) && (!requireSameId
+                || FeatureUtils.compareIdentities(peakListRows[first], peakListRows[second]))));
+    if (candidates == null) {
+      return -1;
+    }
 
-      if (firstRow != null) {
+    return mergeDuplicates(index, newPeakList, rawFiles, peakListRows, lowerMzs, upperMzs,
+        candidates,
+        (firstRow, secondRow) -> (!requireSameId || FeatureUtils.compareIdentities(firstRow,
+            secondRow)) && checkSameSingleFeatureRTMZ(rawFiles, firstRow, secondRow, mzTolerance,
+            rtTolerance) && checkMobility(firstRow, secondRow, mobilityTolerance));
+  }
 
-        final List<ModularFeature> firstFeatures = firstRow.getFeatures();
-        double minMZ = Double.MAX_VALUE;
-        double maxMZ = Double.NEGATIVE_INFINITY;
-        for (int i = 0; i < firstFeatures.size(); i++) {
-          Double mz = firstFeatures.get(i).getMZ();
-          if (mz == null) {
-            continue;
-          }
-          if (mz < minMZ) {
-            minMZ = mz;
-          }
-          if (mz > maxMZ) {
-            maxMZ = mz;
-          }
-        }
-        double lowerMZ = mzTolerance.getToleranceRange(minMZ).lowerEndpoint();
-        double upperMZ = mzTolerance.getToleranceRange(maxMZ).upperEndpoint();
+  /**
+   * Finds the duplicate candidates of all rows in parallel. The rows are not changed during the
+   * search.
+   *
+   * @param candidateFinder finds the indices of all later rows that match a row
+   * @return the candidates of each row or null if the task was canceled
+   */
+  @Nullable
+  private int[][] findDuplicateCandidates(int rowCount, IntFunction<int[]> candidateFinder) {
+    final int[][] candidates = new int[rowCount][];
+    IntStream.range(0, rowCount).parallel().forEach(i -> {
+      if (!isCanceled()) {
+        candidates[i] = candidateFinder.apply(i);
+        processedRows.incrementAndGet();
+      }
+    });
+    return isCanceled() ? null : candidates;
+  }
 
-        for (int secondRowIndex = firstRowIndex + 1; secondRowIndex < rowCount; secondRowIndex++) {
-          if (isCanceled()) {
-            return -1;
-          }
+  /**
+   * Merges the candidates into consensus rows, see
+   * {@link RowMzIndex#mergeDuplicates(Object[], double[], double[], int[][], BiPredicate,
+   * BiConsumer, BooleanSupplier)}
+   *
+   * @return the number of removed rows or -1 if canceled
+   */
+  private int mergeDuplicates(RowMzIndex index, ModularFeatureList flist, RawDataFile[] rawFiles,
+      ModularFeatureListRow[] peakListRows, double[] lowerMzs, double[] upperMzs,
+      int[][] candidates, BiPredicate<FeatureListRow, FeatureListRow> isDuplicate) {
+    final int removed = index.mergeDuplicates(peakListRows, lowerMzs, upperMzs, candidates,
+        isDuplicate::test,
+        (firstRow, secondRow) -> createConsensusFirstRow(flist, rawFiles, firstRow, secondRow),
+        this::isCanceled);
+    processedRows.addAndGet(peakListRows.length);
+    return removed;
+  }
 
-          final FeatureListRow secondRow = peakListRows[secondRowIndex];
-          if (secondRow != null) {
-            // check mz first to stop loop
-            final double averageMZ2 = secondRow.getAverageMZ();
-            if (averageMZ2 < lowerMZ) {
-              continue;
-            }
-            if (averageMZ2 > upperMZ) {
-              break;
-            }
-
-            // Compare identifications
-            final boolean sameID =
-                !requireSameId || FeatureUtils.compareIdentities(firstRow, secondRow);
-
-            final boolean sameRT = checkSameSingleFeatureRTMZ(rawFiles, firstRow, secondRow,
-                mzTolerance, rtTolerance);
-
-            final boolean sameMobility = checkMobility(firstRow, secondRow, mobilityTolerance);
-
-            // Duplicate peaks?
-            if (sameID && sameRT && sameMobility) {
-              // create consensus row in new filter
-              // copy all detected features of row2 into row1
-              // to exchange gap-filled against detected
-              // features
-              createConsensusFirstRow(newPeakList, rawFiles, firstRow, secondRow);
-              // second row deleted
-              n++;
-              peakListRows[secondRowIndex] = null;
-            }
-          }
-        }
-      }
-      processedRows++;
+  private static double[] getAverageMZs(FeatureListRow[] rows) {
+    final double[] mzs = new double[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      mzs[i] = rows[i].getAverageMZ();
     }
-    return n;
+    return mzs;
+  }
+
+  private static float[] getAverageRTs(FeatureListRow[] rows) {
+    final float[] rts = new float[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      rts[i] = rows[i].getAverageRT();
+    }
+    return rts;
+  }
+
+  private static float[] getAverageMobilities(FeatureListRow[] rows) {
+    final float[] mobilities = new float[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      mobilities[i] = Objects.requireNonNullElse(rows[i].getAverageMobility(), 1f);
+    }
+    return mobilities;
   }
 
   /**
@@ -487,22 +479,6 @@ public class DuplicateFilterTask extends AbstractTask {
     return false;
   }
 
-  /**
-   * Shares the same RT and mz
-   *
-   * @param firstRow
-   * @param secondRow
-   * @param mzTolerance
-   * @param rtTolerance
-   * @return
-   */
-  private boolean checkSameAverageRTMZ(FeatureListRow firstRow, FeatureListRow secondRow,
-      MZTolerance mzTolerance, RTTolerance rtTolerance) {
-    // Compare m/z and RT
-    return mzTolerance.checkWithinTolerance(firstRow.getAverageMZ(), secondRow.getAverageMZ())
-        && rtTolerance.checkWithinTolerance(firstRow.getAverageRT(), secondRow.getAverageRT());
-  }
-
   private boolean checkMobility(@NotNull FeatureListRow rowA, @NotNull FeatureListRow rowB,
       @NotNull MobilityTolerance tol) {
     return tol.checkWithinTolerance(Objects.requireNonNullElse(rowA.getAverageMobility(), 1f),
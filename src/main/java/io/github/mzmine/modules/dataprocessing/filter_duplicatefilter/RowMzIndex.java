@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.filter_duplicatefilter;
+
+import io.github.mzmine.util.collections.BinarySearch;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Index of the average m/z of the rows in filter order. The filter order is not strictly ascending
+ * in m/z, e.g., rows sorted by m/z are ordered by m/z plus a small retention time fraction. The m/z
+ * windows are therefore found in a separate order sorted by plain m/z.
+ */
+final class RowMzIndex {
+
+  // average m/z in row order
+  private final double[] mzs;
+  private final int[] mzOrder;
+  private final double[] sortedMzs;
+
+  RowMzIndex(@NotNull double[] mzs) {
+    this.mzs = mzs;
+    mzOrder = IntStream.range(0, mzs.length).toArray();
+    IntArrays.quickSort(mzOrder, (a, b) -> Double.compare(mzs[a], mzs[b]));
+    sortedMzs = new double[mzs.length];
+    for (int i = 0; i < mzs.length; i++) {
+      sortedMzs[i] = mzs[mzOrder[i]];
+    }
+  }
+
+  /**
+   * @param first   the row index, only later rows are returned
+   * @param lowerMz lower end of the m/z window, inclusive
+   * @param upperMz upper end of the m/z window, inclusive
+   * @param matches tests a later row index within the window
+   * @return the ascending indices of all later rows within the window that match
+   */
+  @NotNull
+  int[] findInWindow(int first, double lowerMz, double upperMz, @NotNull IntPredicate matches) {
+    final IntArrayList result = new IntArrayList();
+    final int end = BinarySearch.upperBound(sortedMzs, upperMz);
+    for (int k = BinarySearch.lowerBound(sortedMzs, lowerMz); k < end; k++) {
+      final int second = mzOrder[k];
+      if (second > first && matches.test(second)) {
+        result.add(second);
+      }
+    }
+    final int[] sorted = result.toIntArray();
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * Removes the duplicates of each remaining row in row order. Rows removed before cannot remove
+   * other rows.
+   *
+   * @param duplicates the duplicates of each row
+   * @return the number of removed rows
+   */
+  static <T> int removeDuplicates(@NotNull T[] rows, @NotNull int[][] duplicates) {
+    int removed = 0;
+    for (int first = 0; first < rows.length; first++) {
+      if (rows[first] == null) {
+        continue;
+      }
+      for (int second : duplicates[first]) {
+        if (rows[second] != null) {
+          removed++;
+          rows[second] = null;
+        }
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Merges duplicates into the first row in row order. The later rows are scanned as long as the
+   * remaining rows are not above the m/z window of the first row, rows below the window are
+   * skipped. Candidates are based on the original rows, so they are only valid until the first row
+   * changes by a merge. All later rows within the m/z window are then checked against the merged
+   * row.
+   *
+   * @param lowerMzs    lower end of the m/z window of each row
+   * @param upperMzs    upper end of the m/z window of each row
+   * @param candidates  the duplicates of each unchanged row, see
+   *                    {@link #findInWindow(int, double, double, IntPredicate)}
+   * @param isDuplicate checks a merged first row against a second row
+   * @param merge       merges the second row into the first row
+   * @param isCanceled  checked for every first row
+   * @return the number of removed rows or -1 if canceled
+   */
+  <T> int mergeDuplicates(@NotNull T[] rows, @NotNull double[] lowerMzs,
+      @NotNull double[] upperMzs, @NotNull int[][] candidates,
+      @NotNull BiPredicate<T, T> isDuplicate, @NotNull BiConsumer<T, T> merge,
+      @NotNull BooleanSupplier isCanceled) {
+    int removed = 0;
+    for (int first = 0; first < rows.length; first++) {
+      if (isCanceled.getAsBoolean()) {
+        return -1;
+      }
+      final T firstRow = rows[first];
+      if (firstRow == null) {
+        continue;
+      }
+
+      final int[] firstCandidates = candidates[first];
+      int nextCandidate = 0;
+      boolean merged = false;
+      for (int second = first + 1; second < rows.length; second++) {
+        final T secondRow = rows[second];
+        if (secondRow == null || mzs[second] < lowerMzs[first]) {
+          continue;
+        }
+        if (mzs[second] > upperMzs[first]) {
+          break;
+        }
+
+        final boolean duplicate;
+        if (merged) {
+          duplicate = isDuplicate.test(firstRow, secondRow);
+        } else {
+          while (nextCandidate < firstCandidates.length
+              && firstCandidates[nextCandidate] < second) {
+            nextCandidate++;
+          }
+          duplicate = nextCandidate < firstCandidates.length
+              && firstCandidates[nextCandidate] == second;
+        }
+        if (duplicate) {
+          merge.accept(firstRow, secondRow);
+          merged = true;
+          removed++;
+          rows[second] = null;
+        }
+      }
+    }
+    return removed;
+  }
+
+}
@@ -27,10 +27,8 @@ package io.github.mzmine.modules.dataprocessing.filter_groupms2;
 
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.Frame;
-import io.github.mzmine.datamodel.MassList;
 import io.github.mzmine.datamodel.MergedMsMsSpectrum;
 import io.github.mzmine.datamodel.MobilityType;
-import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
@@ -39,8 +37,6 @@ import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.MsMsInfoType;
 import io.github.mzmine.datamodel.features.types.numbers.RtMs2ApexDistanceType;
-import io.github.mzmine.datamodel.impl.MSnInfoImpl;
-import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
 import io.github.mzmine.datamodel.msms.MsMsInfo;
 import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2_refine.GroupedMs2RefinementTask;
@@ -51,6 +47,7 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.exceptions.MissingMassListException;
+import io.github.mzmine.util.scans.FragmentScanIndex;
 import io.github.mzmine.util.scans.FragmentScanSelection;
 import io.github.mzmine.util.scans.FragmentScanSelection.IncludeInputSpectra;
 import io.github.mzmine.util.scans.FragmentScanSorter;
@@ -59,10 +56,8 @@ import io.github.mzmine.util.scans.SpectraMerging.IntensityMergingType;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -214,11 +209,11 @@ public class GroupMS2Task extends AbstractTask {
    */
   @NotNull
   private List<Scan> findFragmentScans(final ModularFeature feature) {
-    final List<Scan> scans;
-    RawDataFile raw = feature.getRawDataFile();
-
-    scans = raw.stream().filter(scan -> scan.getMSLevel() > 1)
-        .filter(scan -> filterScan(scan, feature)).sorted(FragmentScanSorter.DEFAULT_TIC).toList();
+    final FragmentScanIndex index = FragmentScanIndex.of(feature.getRawDataFile());
+    final List<Scan> scans = new ArrayList<>(
+        index.getFragmentScans(mzTol.getToleranceRange(feature.getMZ()),
+            rtFilter.getRtRange(feature), 0));
+    scans.sort(FragmentScanSorter.DEFAULT_TIC);
     return scans;
   }
 
@@ -242,37 +237,6 @@ public class GroupMS2Task extends AbstractTask {
     f.set(RtMs2ApexDistanceType.class, apexDistance);
   }
 
-  /**
-   * Filter scans based on rt and mz
-   *
-   * @param scan tested scan
-   * @return true if matches all criteria
-   */
-  private boolean filterScan(Scan scan, ModularFeature feature) {
-    // minimum signals
-    if (minimumSignals > 0) {
-      MassList massList = scan.getMassList();
-      if (massList == null) {
-        throw new MissingMassListException(scan);
-      }
-      if (massList.getNumberOfDataPoints() < minimumSignals) {
-        return false;
-      }
-    }
-    //
-    final double precursorMZ;
-    if (scan.getMsMsInfo() instanceof MSnInfoImpl msn) {
-      precursorMZ = msn.getMS2PrecursorMz();
-    } else if (scan.getMsMsInfo() instanceof DDAMsMsInfo info) {
-      precursorMZ = info.getIsolationMz();
-    } else {
-      precursorMZ = Objects.requireNonNullElse(scan.getPrecursorMz(), 0d);
-    }
-    return rtFilter.accept(feature, scan.getRetentionTime()) && precursorMZ != 0
-        && mzTol.checkWithinTolerance(feature.getMZ(), precursorMZ);
-  }
-
-
   /**
    * Process tims features. Merge within Frames and optionally merge across frames
    *
@@ -285,36 +249,26 @@ public class GroupMS2Task extends AbstractTask {
     double fmz = feature.getMZ();
     Float mobility = feature.getMobility();
 
-    final List<? extends Scan> scans = feature.getRawDataFile().getScanNumbers(2).stream()
-        .filter(scan -> rtFilter.accept(feature, scan.getRetentionTime()))
-        .collect(Collectors.toList());
-
-    if (scans.isEmpty() || !(scans.get(0) instanceof Frame)) {
-      return List.of();
-    }
-
-    final List<Frame> frames = (List<Frame>) scans;
+    final FragmentScanIndex index = FragmentScanIndex.of(feature.getRawDataFile());
     final List<MsMsInfo> eligibleMsMsInfos = new ArrayList<>();
-    for (Frame frame : frames) {
-      frame.getImsMsMsInfos().forEach(imsMsMsInfo -> {
-        if (mzTol.checkWithinTolerance(fmz, imsMsMsInfo.getIsolationMz())) {
-          // if we have a mobility (=processed by IMS workflow), we can check for the correct range during assignment.
-          if (mobility != null) {
-            // todo: maybe revisit this for a more sophisticated range check
-            int mobilityScannumberOffset = frame.getMobilityScan(0).getMobilityScanNumber();
-            float mobility1 = (float) frame.getMobilityForMobilityScanNumber(
-                imsMsMsInfo.getSpectrumNumberRange().lowerEndpoint() - mobilityScannumberOffset);
-            float mobility2 = (float) frame.getMobilityForMobilityScanNumber(
-                imsMsMsInfo.getSpectrumNumberRange().upperEndpoint() - mobilityScannumberOffset);
-            if (Range.singleton(mobility1).span(Range.singleton(mobility2)).contains(mobility)) {
-              eligibleMsMsInfos.add(imsMsMsInfo);
-            }
-          } else {
-            // if we don't have a mobility, we can simply add the msms info.
-            eligibleMsMsInfos.add(imsMsMsInfo);
-          }
+    for (PasefMsMsInfo imsMsMsInfo : index.getPasefMsMsInfos(mzTol.getToleranceRange(fmz),
+        rtFilter.getRtRange(feature))) {
+      // if we have a mobility (=processed by IMS workflow), we can check for the correct range during assignment.
+      if (mobility != null) {
+        // todo: maybe revisit this for a more sophisticated range check
+        final Frame frame = imsMsMsInfo.getMsMsFrame();
+        int mobilityScannumberOffset = frame.getMobilityScan(0).getMobilityScanNumber();
+        float mobility1 = (float) frame.getMobilityForMobilityScanNumber(
+            imsMsMsInfo.getSpectrumNumberRange().lowerEndpoint() - mobilityScannumberOffset);
+        float mobility2 = (float) frame.getMobilityForMobilityScanNumber(
+            imsMsMsInfo.getSpectrumNumberRange().upperEndpoint() - mobilityScannumberOffset);
+        if (Range.singleton(mobility1).span(Range.singleton(mobility2)).contains(mobility)) {
+          eligibleMsMsInfos.add(imsMsMsInfo);
         }
-      });
+      } else {
+        // if we don't have a mobility, we can simply add the msms info.
+        eligibleMsMsInfos.add(imsMsMsInfo);
+      }
     }
 
     if (eligibleMsMsInfos.isEmpty()) {
@@ -29,6 +29,7 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.parameters.ParameterSet;
+import org.jetbrains.annotations.NotNull;
 
 public interface ScanFilter extends MZmineModule {
 
@@ -37,4 +38,13 @@ public interface ScanFilter extends MZmineModule {
    */
   Scan filterScan(RawDataFile newFile, Scan scan, ParameterSet parameters);
 
+  /**
+   * Returns a modified scan after being processed by the filter. Filters may use the buffers to
+   * read the scan data, which are reused for the next scan filtered by the same thread.
+   */
+  default Scan filterScan(RawDataFile newFile, Scan scan, ParameterSet parameters,
+      @NotNull ScanFilterBuffers buffers) {
+    return filterScan(newFile, scan, parameters);
+  }
+
 }
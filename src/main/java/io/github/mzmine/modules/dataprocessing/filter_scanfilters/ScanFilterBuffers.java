@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.filter_scanfilters;
+
+import io.github.mzmine.datamodel.MassSpectrum;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reusable primitive buffers to read the data points of scans. One instance is used by one thread
+ * at a time, so filters do not need to allocate new arrays or data points for every scan. The
+ * buffers only grow and may be larger than the current scan.
+ */
+public class ScanFilterBuffers {
+
+  private double[] mzs = new double[0];
+  private double[] intensities = new double[0];
+
+  /**
+   * @return buffer with the m/z values of the scan in the first
+   * {@link MassSpectrum#getNumberOfDataPoints()} positions
+   */
+  @NotNull
+  public double[] readMzValues(@NotNull MassSpectrum scan) {
+    ensureCapacity(scan.getNumberOfDataPoints());
+    mzs = scan.getMzValues(mzs);
+    return mzs;
+  }
+
+  /**
+   * @return buffer with the intensity values of the scan in the first
+   * {@link MassSpectrum#getNumberOfDataPoints()} positions
+   */
+  @NotNull
+  public double[] readIntensityValues(@NotNull MassSpectrum scan) {
+    ensureCapacity(scan.getNumberOfDataPoints());
+    intensities = scan.getIntensityValues(intensities);
+    return intensities;
+  }
+
+  private void ensureCapacity(int size) {
+    if (mzs.length < size) {
+      mzs = new double[size];
+    }
+    if (intensities.length < size) {
+      intensities = new double[size];
+    }
+  }
+}
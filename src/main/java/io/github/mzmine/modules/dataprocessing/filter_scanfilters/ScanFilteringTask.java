@@ -39,7 +39,9 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import javafx.collections.ObservableList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -48,11 +50,18 @@ class ScanFilteringTask extends AbstractTask {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
+  /**
+   * Scans are filtered in parallel in chunks of this size and added to the new file in their
+   * original order. Limits the number of filtered scans that wait to be added.
+   */
+  private static final int SCAN_CHUNK_SIZE = 1024;
+
   private final MZmineProject project;
   private RawDataFile dataFile, newFile;
 
   // scan counter
-  private int processedScans = 0, totalScans;
+  private final AtomicInteger processedScans = new AtomicInteger(0);
+  private int totalScans;
   private ObservableList<Scan> scanNumbers;
 
   // User parameters
@@ -101,7 +110,7 @@ class ScanFilteringTask extends AbstractTask {
     if (totalScans == 0) {
       return 0;
     } else {
-      return (double) processedScans / totalScans;
+      return (double) processedScans.get() / totalScans;
     }
   }
 
@@ -129,25 +138,35 @@ class ScanFilteringTask extends AbstractTask {
       String newName = dataFile.getName() + " " + suffix;
       newFile = MZmineCore.createNewFile(newName, null, getMemoryMapStorage());
 
-      for (int i = 0; i < totalScans; i++) {
+      // each worker reuses its own buffers for all scans
+      final int numWorkers = Math.max(1, MZmineCore.getConfiguration().getNumOfThreads());
+      final ScanFilterBuffers[] buffers = new ScanFilterBuffers[numWorkers];
+      for (int w = 0; w < numWorkers; w++) {
+        buffers[w] = new ScanFilterBuffers();
+      }
+
+      final Scan[] filteredScans = new Scan[SCAN_CHUNK_SIZE];
+      for (int chunkStart = 0; chunkStart < totalScans; chunkStart += SCAN_CHUNK_SIZE) {
+        final int start = chunkStart;
+        final int end = Math.min(totalScans, chunkStart + SCAN_CHUNK_SIZE);
+
+        IntStream.range(0, numWorkers).parallel().forEach(w -> {
+          for (int i = start + w; i < end && !isCanceled(); i += numWorkers) {
+            filteredScans[i - start] = filterScan(scanNumbers.get(i), buffers[w]);
+            processedScans.incrementAndGet();
+          }
+        });
 
         if (isCanceled()) {
           return;
         }
 
-        Scan scan = scanNumbers.get(i);
-        Scan newScan = null;
-        if (select.matches(scan))
-          newScan =
-              rawDataFilter.getModule().filterScan(newFile, scan, rawDataFilter.getParameterSet());
-        else
-          newScan = scan; // TODO need to create a copy of the scan
-
-        if (newScan != null) {
-          newFile.addScan(newScan);
+        for (int i = 0; i < end - start; i++) {
+          if (filteredScans[i] != null) {
+            newFile.addScan(filteredScans[i]);
+          }
+          filteredScans[i] = null;
         }
-
-        processedScans++;
       }
 
       // Finalize writing
@@ -178,4 +197,14 @@ class ScanFilteringTask extends AbstractTask {
     }
   }
 
+  @Nullable
+  private Scan filterScan(Scan scan, ScanFilterBuffers buffers) {
+    if (select.matches(scan)) {
+      return rawDataFilter.getModule()
+          .filterScan(newFile, scan, rawDataFilter.getParameterSet(), buffers);
+    } else {
+      return scan; // TODO need to create a copy of the scan
+    }
+  }
+
 }
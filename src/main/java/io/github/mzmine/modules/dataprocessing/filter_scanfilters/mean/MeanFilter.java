@@ -25,85 +25,72 @@
 
 package io.github.mzmine.modules.dataprocessing.filter_scanfilters.mean;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.modules.dataprocessing.filter_scanfilters.ScanFilter;
+import io.github.mzmine.modules.dataprocessing.filter_scanfilters.ScanFilterBuffers;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.DataPointUtils;
-import io.github.mzmine.util.scans.ScanUtils;
-import java.util.Vector;
 import org.jetbrains.annotations.NotNull;
 
 public class MeanFilter implements ScanFilter {
 
   @Override
   public Scan filterScan(RawDataFile newFile, Scan sc, ParameterSet parameters) {
+    return filterScan(newFile, sc, parameters, new ScanFilterBuffers());
+  }
+
+  @Override
+  public Scan filterScan(RawDataFile newFile, Scan sc, ParameterSet parameters,
+      @NotNull ScanFilterBuffers buffers) {
 
     double windowLength =
         parameters.getParameter(MeanFilterParameters.oneSidedWindowLength).getValue();
 
     // changed to also allow MS2 if selected in ScanSelection
 
-    Vector<Double> massWindow = new Vector<Double>();
-    Vector<Double> intensityWindow = new Vector<Double>();
-
-    double currentMass;
-    double lowLimit;
-    double hiLimit;
-    double mzVal;
-
-    double elSum;
-
-    DataPoint oldDataPoints[] = ScanUtils.extractDataPoints(sc);
-    DataPoint newDataPoints[] = new DataPoint[oldDataPoints.length];
+    final int numDataPoints = sc.getNumberOfDataPoints();
+    final double[] mzs = buffers.readMzValues(sc);
+    final double[] intensities = buffers.readIntensityValues(sc);
+    final double[] newMzs = new double[numDataPoints];
+    final double[] newIntensities = new double[numDataPoints];
 
+    // the window contains all data points from windowStart (inclusive) to addi (exclusive)
+    int windowStart = 0;
     int addi = 0;
-    for (int i = 0; i < oldDataPoints.length; i++) {
+    for (int i = 0; i < numDataPoints; i++) {
 
-      currentMass = oldDataPoints[i].getMZ();
-      lowLimit = currentMass - windowLength;
-      hiLimit = currentMass + windowLength;
+      final double currentMass = mzs[i];
+      final double lowLimit = currentMass - windowLength;
+      final double hiLimit = currentMass + windowLength;
 
       // Remove all elements from window whose m/z value is less than the
       // low limit
-      if (massWindow.size() > 0) {
-        mzVal = massWindow.get(0).doubleValue();
-        while ((massWindow.size() > 0) && (mzVal < lowLimit)) {
-          massWindow.remove(0);
-          intensityWindow.remove(0);
-          if (massWindow.size() > 0) {
-            mzVal = massWindow.get(0).doubleValue();
-          }
-        }
+      while (windowStart < addi && mzs[windowStart] < lowLimit) {
+        windowStart++;
       }
 
       // Add new elements as long as their m/z values are less than the hi
       // limit
-      while ((addi < oldDataPoints.length) && (oldDataPoints[addi].getMZ() <= hiLimit)) {
-        massWindow.add(oldDataPoints[addi].getMZ());
-        intensityWindow.add(oldDataPoints[addi].getIntensity());
+      while (addi < numDataPoints && mzs[addi] <= hiLimit) {
         addi++;
       }
 
-      elSum = 0;
-      for (int j = 0; j < intensityWindow.size(); j++) {
-        elSum += (intensityWindow.get(j)).doubleValue();
+      double elSum = 0;
+      for (int j = windowStart; j < addi; j++) {
+        elSum += intensities[j];
       }
 
-      newDataPoints[i] = new SimpleDataPoint(currentMass, elSum / intensityWindow.size());
-
+      newMzs[i] = currentMass;
+      newIntensities[i] = elSum / (addi - windowStart);
     }
 
-    double[][] dp = DataPointUtils.getDataPointsAsDoubleArray(newDataPoints);
     // Create filtered scan
-    SimpleScan newScan =
-        new SimpleScan(newFile, sc.getScanNumber(), sc.getMSLevel(), sc.getRetentionTime(),
-           sc.getMsMsInfo() != null ? sc.getMsMsInfo().createCopy() : null, dp[0], dp[1], MassSpectrumType.CENTROIDED,
-            sc.getPolarity(), sc.getScanDefinition(), sc.getScanningMZRange());
+    SimpleScan newScan = new SimpleScan(newFile, sc.getScanNumber(), sc.getMSLevel(),
+        sc.getRetentionTime(), sc.getMsMsInfo() != null ? sc.getMsMsInfo().createCopy() : null,
+        newMzs, newIntensities, MassSpectrumType.CENTROIDED, sc.getPolarity(),
+        sc.getScanDefinition(), sc.getScanningMZRange());
     return newScan;
 
   }
@@ -26,15 +26,12 @@
 package io.github.mzmine.modules.dataprocessing.filter_scanfilters.resample;
 
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.modules.dataprocessing.filter_scanfilters.ScanFilter;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.scans.ScanUtils;
 import org.jetbrains.annotations.NotNull;
 
@@ -57,30 +54,24 @@ public class ResampleFilter implements ScanFilter {
       numberOfBins++;
     }
 
-    // ScanUtils.binValues needs arrays
-    DataPoint dps[] = ScanUtils.extractDataPoints(scan);
-    double[] x = new double[dps.length];
-    double[] y = new double[dps.length];
-    for (int i = 0; i < dps.length; i++) {
-      x[i] = dps[i].getMZ();
-      y[i] = dps[i].getIntensity();
-    }
+    // ScanUtils.binValues needs arrays of the exact size
+    final int numDataPoints = scan.getNumberOfDataPoints();
+    double[] x = scan.getMzValues(new double[numDataPoints]);
+    double[] y = scan.getIntensityValues(new double[numDataPoints]);
     // the new intensity values
     double[] newY = ScanUtils.binValues(x, y, mzRange, numberOfBins,
         scan.getSpectrumType() == MassSpectrumType.PROFILE, ScanUtils.BinningType.AVG);
-    SimpleDataPoint[] newPoints = new SimpleDataPoint[newY.length];
+    double[] newXs = new double[newY.length];
 
     // set the new m/z value in the middle of the bin
     double newX = mzRange.lowerEndpoint() + binSize / 2.0;
-    // creates new DataPoints
     for (int i = 0; i < newY.length; i++) {
-      newPoints[i] = new SimpleDataPoint(newX, newY[i]);
+      newXs[i] = newX;
       newX += binSize;
     }
 
-    double[][] dp = DataPointUtils.getDataPointsAsDoubleArray(newPoints);
     // Create updated scan
-    SimpleScan newScan = new SimpleScan(newFile, scan, dp[0], dp[1]);
+    SimpleScan newScan = new SimpleScan(newFile, scan, newXs, newY);
     newScan.setSpectrumType(MassSpectrumType.CENTROIDED);
 
     return newScan;
@@ -25,7 +25,6 @@
 
 package io.github.mzmine.modules.dataprocessing.filter_scanfilters.roundresample;
 
-import java.util.ArrayList;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 
@@ -47,16 +46,32 @@ public class LocMaxCentroidingAlgorithm {
       intensityBuffer[i] = dataPoints[i].getIntensity();
     }
 
-    final int numOfDataPoints = dataPoints.length;
+    final int newNumOfDataPoints = centroidScan(mzBuffer, intensityBuffer, dataPoints.length);
+
+    // Store the new data points
+    DataPoint[] newDataPoints = new DataPoint[newNumOfDataPoints];
+    for (int i = 0; i < newNumOfDataPoints; ++i) {
+      newDataPoints[i] = new SimpleDataPoint(mzBuffer[i], intensityBuffer[i]);
+    }
+    return newDataPoints;
+  }
+
+  /**
+   * Detects the local maxima in place. The centroids are written to the beginning of the buffers.
+   *
+   * @param mzBuffer        m/z values
+   * @param intensityBuffer intensity values
+   * @param numOfDataPoints number of data points in the buffers
+   * @return the number of centroids
+   */
+  public static int centroidScan(double[] mzBuffer, double[] intensityBuffer,
+      final int numOfDataPoints) {
+
     int newNumOfDataPoints = 0;
 
     // If there are no data points, just return the scan
-    ArrayList<DataPoint> newDataPoints = new ArrayList<DataPoint>();
     if (numOfDataPoints == 0) {
-      for (int i = 0; i < numOfDataPoints; ++i) {
-        newDataPoints.add(new SimpleDataPoint(mzBuffer[i], intensityBuffer[i]));
-      }
-      return newDataPoints.toArray(new SimpleDataPoint[newDataPoints.size()]);
+      return 0;
     }
 
     int localMaximumIndex = 0;
@@ -107,12 +122,7 @@ public class LocMaxCentroidingAlgorithm {
 
     }
 
-    // Store the new data points
-    for (int i = 0; i < newNumOfDataPoints; ++i) {
-      newDataPoints.add(new SimpleDataPoint(mzBuffer[i], intensityBuffer[i]));
-    }
-
-    return newDataPoints.toArray(new DataPoint[newDataPoints.size()]);
+    return newNumOfDataPoints;
 
   }
 
@@ -25,104 +25,101 @@
 
 package io.github.mzmine.modules.dataprocessing.filter_scanfilters.roundresample;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.modules.dataprocessing.filter_scanfilters.ScanFilter;
+import io.github.mzmine.modules.dataprocessing.filter_scanfilters.ScanFilterBuffers;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.scans.ScanUtils;
+import java.util.Arrays;
 import org.jetbrains.annotations.NotNull;
 
 public class RndResampleFilter implements ScanFilter {
 
   @Override
   public Scan filterScan(RawDataFile newFile, Scan scan, ParameterSet parameters) {
+    return filterScan(newFile, scan, parameters, new ScanFilterBuffers());
+  }
+
+  @Override
+  public Scan filterScan(RawDataFile newFile, Scan scan, ParameterSet parameters,
+      @NotNull ScanFilterBuffers buffers) {
 
     boolean sum_duplicates =
         parameters.getParameter(RndResampleFilterParameters.SUM_DUPLICATES).getValue();
     boolean remove_zero_intensity =
         parameters.getParameter(RndResampleFilterParameters.REMOVE_ZERO_INTENSITY).getValue();
 
+    // all steps work in place on the buffers
+    final double[] mzs = buffers.readMzValues(scan);
+    final double[] intensities = buffers.readIntensityValues(scan);
+    int numOfDataPoints = scan.getNumberOfDataPoints();
+
     // If CENTROIDED scan, use it as-is
-    DataPoint dps[];
-    if (scan.getSpectrumType() == MassSpectrumType.CENTROIDED)
-      dps = ScanUtils.extractDataPoints(scan);
     // Otherwise, detect local maxima
-    else
-      dps = LocMaxCentroidingAlgorithm.centroidScan(ScanUtils.extractDataPoints(scan));
+    if (scan.getSpectrumType() != MassSpectrumType.CENTROIDED) {
+      numOfDataPoints = LocMaxCentroidingAlgorithm.centroidScan(mzs, intensities,
+          numOfDataPoints);
+    }
 
     // Cleanup first: Remove zero intensity data points (if requested)
-    // Reuse dps array
+    // Set the new m/z value to nearest integer / unit value (intensity untouched)
     int newNumOfDataPoints = 0;
-    for (int i = 0; i < dps.length; ++i) {
-      if (!remove_zero_intensity || dps[i].getIntensity() > 0.0) {
-        dps[newNumOfDataPoints] = dps[i];
+    for (int i = 0; i < numOfDataPoints; ++i) {
+      if (!remove_zero_intensity || intensities[i] > 0.0) {
+        mzs[newNumOfDataPoints] = (int) Math.round(mzs[i]);
+        intensities[newNumOfDataPoints] = intensities[i];
         ++newNumOfDataPoints;
       }
     }
-
-    // Getting started
-    SimpleDataPoint[] newDps = new SimpleDataPoint[newNumOfDataPoints];
-    for (int i = 0; i < newNumOfDataPoints; ++i) {
-      // Set the new m/z value to nearest integer / unit value
-      int newMz = (int) Math.round(dps[i].getMZ());
-      // Create new DataPoint accordingly (intensity untouched)
-      newDps[i] = new SimpleDataPoint(newMz, dps[i].getIntensity());
-    }
+    numOfDataPoints = newNumOfDataPoints;
 
     // Post-treatments
     // Cleanup: Merge duplicates/overlap
-    // ArrayList<SimpleDataPoint> dpsList = new
-    // ArrayList<SimpleDataPoint>();
     double prevMz = -1.0, curMz = -1.0;
     double newIntensity = 0.0;
     double divider = 1.0;
 
-    // Reuse dps array
+    // Reuse buffers, merged data points are always written before the current index
     newNumOfDataPoints = 0;
-    for (int i = 0; i < newDps.length; ++i) {
+    for (int i = 0; i < numOfDataPoints; ++i) {
 
-      curMz = newDps[i].getMZ();
+      curMz = mzs[i];
+      final double curIntensity = intensities[i];
       if (i > 0) {
         // Handle duplicates
         if (curMz == prevMz) {
           if (sum_duplicates) {
             // Use sum
-            newIntensity += newDps[i].getIntensity();
-            dps[newNumOfDataPoints - 1] = new SimpleDataPoint(prevMz, newIntensity);
+            newIntensity += curIntensity;
+            intensities[newNumOfDataPoints - 1] = newIntensity;
           } else {
             // Use average
-            newIntensity += newDps[i].getIntensity();
-            dps[newNumOfDataPoints - 1] = new SimpleDataPoint(prevMz, newIntensity);
+            newIntensity += curIntensity;
+            intensities[newNumOfDataPoints - 1] = newIntensity;
             divider += 1.0;
           }
         } else {
-          dps[newNumOfDataPoints - 1] = new SimpleDataPoint(prevMz, newIntensity / divider);
+          intensities[newNumOfDataPoints - 1] = newIntensity / divider;
 
-          dps[newNumOfDataPoints] = newDps[i];
+          mzs[newNumOfDataPoints] = curMz;
+          intensities[newNumOfDataPoints] = curIntensity;
           ++newNumOfDataPoints;
-          newIntensity = dps[newNumOfDataPoints - 1].getIntensity();
+          newIntensity = curIntensity;
           divider = 1.0;
         }
       } else {
-        dps[newNumOfDataPoints] = newDps[i];
+        mzs[newNumOfDataPoints] = curMz;
+        intensities[newNumOfDataPoints] = curIntensity;
         ++newNumOfDataPoints;
       }
-      prevMz = newDps[i].getMZ();
+      prevMz = curMz;
     }
 
-    double[][] newDp = new double[2][];
-    newDp[0] = new double[newNumOfDataPoints];
-    newDp[1] = new double[newNumOfDataPoints];
-    for(int i = 0; i < newNumOfDataPoints; i++) {
-      newDp[0][i] = dps[i].getMZ();
-      newDp[1][i] = dps[i].getIntensity();
-    }
     // Create updated scan
-    SimpleScan newScan = new SimpleScan(newFile, scan, newDp[0], newDp[1]);
+    SimpleScan newScan = new SimpleScan(newFile, scan, Arrays.copyOf(mzs, newNumOfDataPoints),
+        Arrays.copyOf(intensities, newNumOfDataPoints));
     newScan.setSpectrumType(MassSpectrumType.CENTROIDED);
 
     return newScan;
@@ -25,15 +25,12 @@
 
 package io.github.mzmine.modules.dataprocessing.filter_scanfilters.savitzkygolay;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.modules.dataprocessing.filter_scanfilters.ScanFilter;
+import io.github.mzmine.modules.dataprocessing.filter_scanfilters.ScanFilterBuffers;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.DataPointUtils;
-import io.github.mzmine.util.scans.ScanUtils;
 import java.util.Hashtable;
 import org.jetbrains.annotations.NotNull;
 
@@ -82,6 +79,12 @@ public class SGFilter implements ScanFilter {
 
   @Override
   public Scan filterScan(RawDataFile newFile, Scan scan, ParameterSet parameters) {
+    return filterScan(newFile, scan, parameters, new ScanFilterBuffers());
+  }
+
+  @Override
+  public Scan filterScan(RawDataFile newFile, Scan scan, ParameterSet parameters,
+      @NotNull ScanFilterBuffers buffers) {
 
     int numOfDataPoints = parameters.getParameter(SGFilterParameters.datapoints).getValue();
 
@@ -96,30 +99,35 @@ public class SGFilter implements ScanFilter {
     int marginSize = (numOfDataPoints + 1) / 2 - 1;
     double sumOfInts;
 
-    DataPoint oldDataPoints[] = ScanUtils.extractDataPoints(scan);
-    int newDataPointsLength = oldDataPoints.length - (marginSize * 2);
+    final int oldDataPointsLength = scan.getNumberOfDataPoints();
+    int newDataPointsLength = oldDataPointsLength - (marginSize * 2);
 
     // only process scans with datapoints
     if (newDataPointsLength < 1) {
       return scan;
     }
 
-    DataPoint newDataPoints[] = new DataPoint[newDataPointsLength];
+    final double[] mzs = buffers.readMzValues(scan);
+    final double[] intensities = buffers.readIntensityValues(scan);
+    final double[] newMzs = new double[newDataPointsLength];
+    final double[] newIntensities = new double[newDataPointsLength];
 
     for (int spectrumInd =
-        marginSize; spectrumInd < (oldDataPoints.length - marginSize); spectrumInd++) {
+        marginSize; spectrumInd < (oldDataPointsLength - marginSize); spectrumInd++) {
+
+      newMzs[spectrumInd - marginSize] = mzs[spectrumInd];
 
       // zero intensity data points must be left unchanged
-      if (oldDataPoints[spectrumInd].getIntensity() == 0) {
-        newDataPoints[spectrumInd - marginSize] = oldDataPoints[spectrumInd];
+      if (intensities[spectrumInd] == 0) {
+        newIntensities[spectrumInd - marginSize] = intensities[spectrumInd];
         continue;
       }
 
-      sumOfInts = aVals[0] * oldDataPoints[spectrumInd].getIntensity();
+      sumOfInts = aVals[0] * intensities[spectrumInd];
 
       for (int windowInd = 1; windowInd <= marginSize; windowInd++) {
-        sumOfInts += aVals[windowInd] * (oldDataPoints[spectrumInd + windowInd].getIntensity()
-            + oldDataPoints[spectrumInd - windowInd].getIntensity());
+        sumOfInts += aVals[windowInd] * (intensities[spectrumInd + windowInd]
+            + intensities[spectrumInd - windowInd]);
       }
 
       sumOfInts = sumOfInts / h;
@@ -127,13 +135,11 @@ public class SGFilter implements ScanFilter {
       if (sumOfInts < 0) {
         sumOfInts = 0;
       }
-      newDataPoints[spectrumInd - marginSize] =
-          new SimpleDataPoint(oldDataPoints[spectrumInd].getMZ(), sumOfInts);
+      newIntensities[spectrumInd - marginSize] = sumOfInts;
 
     }
 
-    double[][] dp = DataPointUtils.getDataPointsAsDoubleArray(newDataPoints);
-    SimpleScan newScan = new SimpleScan(newFile, scan, dp[0], dp[1]);
+    SimpleScan newScan = new SimpleScan(newFile, scan, newMzs, newIntensities);
     return newScan;
 
   }
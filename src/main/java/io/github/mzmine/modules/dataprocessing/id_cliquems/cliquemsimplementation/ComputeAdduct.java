@@ -37,8 +37,10 @@ import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.apache.commons.lang3.mutable.MutableDouble;
 
 /**
@@ -214,19 +216,18 @@ public class ComputeAdduct {
     for (PeakData pd : this.anClique.getPeakDataList()) {
       nodeIDtoPeakMap.put(pd.getNodeID(), pd);
     }
-    int done = 0;
-    for (Integer cliqueID : this.anClique.cliques.keySet()) {
-      //progress update
-      this.progress.setValue(driverTask.EIC_PROGRESS + driverTask.MATRIX_PROGRESS +
-          driverTask.NET_PROGRESS + driverTask.ISO_PROGRESS + (
-          driverTask.ANNOTATE_PROGRESS * ((double) (done++)) / (this.anClique.cliques.keySet()
-              .size())));
+    // cliques are annotated independently, compute them in parallel and keep their order
+    final List<Integer> cliqueIDs = new ArrayList<>(this.anClique.cliques.keySet());
+    final List<List<AdductInfo>> cliqueAdInfos = new ArrayList<>(
+        Collections.nCopies(cliqueIDs.size(), null));
+    final AtomicInteger done = new AtomicInteger(0);
+    IntStream.range(0, cliqueIDs.size()).parallel().forEach(c -> {
       //check if task cancelled
       if (driverTask.isCanceled()) {
-        return addInfos;
+        return;
       }
       List<PeakData> dfClique = new ArrayList<>();
-      for (Integer nodeID : this.anClique.cliques.get(cliqueID)) {
+      for (Integer nodeID : this.anClique.cliques.get(cliqueIDs.get(c))) {
         dfClique.add(nodeIDtoPeakMap.get(nodeID));
       }
       dfClique.removeIf(pd -> !pd.getIsotopeAnnotation().startsWith("M0"));
@@ -238,6 +239,7 @@ public class ComputeAdduct {
           .returnAdductAnnotation(dfClique, orderAdInfo, topMassf, topMassTotal, sizeAnG, tol,
               filter, emptyS, normalizeScore);
 
+      List<AdductInfo> adInfos = new ArrayList<>();
       for (Integer itv : outAn.features) {
         List<String> annotations = new ArrayList<>();
         List<Double> masses = new ArrayList<>();
@@ -247,10 +249,23 @@ public class ComputeAdduct {
           masses.add(outAn.masses.get(x).get(itv));
           scores.add(outAn.scores.get(x).get(itv));
         }
-        AdductInfo adInfo = new AdductInfo(itv, annotations, masses, scores);
-        addInfos.add(adInfo);
+        adInfos.add(new AdductInfo(itv, annotations, masses, scores));
       }
+      cliqueAdInfos.set(c, adInfos);
 
+      //progress update
+      synchronized (progress) {
+        progress.setValue(Math.max(progress.getValue(),
+            driverTask.EIC_PROGRESS + driverTask.MATRIX_PROGRESS + driverTask.NET_PROGRESS
+                + driverTask.ISO_PROGRESS + driverTask.ANNOTATE_PROGRESS * (
+                (double) done.incrementAndGet() / cliqueIDs.size())));
+      }
+    });
+    if (driverTask.isCanceled()) {
+      return addInfos;
+    }
+    for (List<AdductInfo> adInfos : cliqueAdInfos) {
+      addInfos.addAll(adInfos);
     }
 
     // Isotopes of grade > 0 are excluded from annotation This function adds the annotation, in case
@@ -258,30 +273,24 @@ public class ComputeAdduct {
     // isotope of grade 0
     List<IsotopeInfo> isoInfos = this.anClique.getIsoInfos();
     List<Integer> isoFeatures = new ArrayList<>();
+    HashMap<Integer, Integer> featureClusters = new HashMap<>();
+    HashMap<Integer, List<Integer>> clusterFeatures = new HashMap<>();
     for (IsotopeInfo isoInfo : isoInfos) {
       if (isoInfo.grade.equals(0)) {
         isoFeatures.add(isoInfo.feature);
       }
+      featureClusters.put(isoInfo.feature, isoInfo.cluster);
+      clusterFeatures.computeIfAbsent(isoInfo.cluster, k -> new ArrayList<>())
+          .add(isoInfo.feature);
+    }
+    HashMap<Integer, AdductInfo> featureAdInfos = new HashMap<>();
+    for (AdductInfo adInfo : addInfos) {
+      featureAdInfos.put(adInfo.feature, adInfo);
     }
     for (Integer feature : isoFeatures) {
-      Integer cluster = null;
-      for (IsotopeInfo isoInfo : isoInfos) {
-        if (isoInfo.feature.equals(feature)) {
-          cluster = isoInfo.cluster;
-        }
-      }
-      List<Integer> extraF = new ArrayList<>();
-      for (IsotopeInfo isoInfo : isoInfos) {
-        if (isoInfo.cluster.equals(cluster)) {
-          extraF.add(isoInfo.feature);
-        }
-      }
-      AdductInfo mainAdInfo = null;
-      for (AdductInfo adInfo : addInfos) {
-        if (adInfo.feature.equals(feature)) {
-          mainAdInfo = adInfo;
-        }
-      }
+      List<Integer> extraF = clusterFeatures.getOrDefault(featureClusters.get(feature),
+          List.of());
+      AdductInfo mainAdInfo = featureAdInfos.get(feature);
 
       for (Integer f : extraF) {
         // if same feature with grade 0, no need to convert it
@@ -291,7 +300,9 @@ public class ComputeAdduct {
         List<String> annotations = new ArrayList<>(mainAdInfo.annotations);
         List<Double> masses = new ArrayList<>(mainAdInfo.masses);
         List<Double> scores = new ArrayList<>(mainAdInfo.scores);
-        addInfos.add(new AdductInfo(f, annotations, masses, scores));
+        AdductInfo adInfo = new AdductInfo(f, annotations, masses, scores);
+        addInfos.add(adInfo);
+        featureAdInfos.put(f, adInfo);
       }
     }
     //add data to adinfo class.
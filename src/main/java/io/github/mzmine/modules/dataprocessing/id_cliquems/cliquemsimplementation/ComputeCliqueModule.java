@@ -27,15 +27,18 @@ package io.github.mzmine.modules.dataprocessing.id_cliquems.cliquemsimplementati
 
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.apache.commons.lang3.mutable.MutableDouble;
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.FeatureList;
@@ -43,7 +46,9 @@ import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.modules.dataprocessing.id_cliquems.CliqueMSTask;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
-import io.github.mzmine.util.scans.ScanUtils;
+import io.github.mzmine.util.collections.BinarySearch;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import javafx.util.Pair;
 
 /**
@@ -65,8 +70,13 @@ public class ComputeCliqueModule {
   // variables to update progress
   private final MutableDouble progress;
 
-  // cosine correlation matrix calculated over columns of EIC matrix
-  private double[][] cosineCorrelation;
+  // EIC of each feature over its scan range, starting at the scan index in eicStarts
+  private int[] eicStarts;
+  private double[][] eics;
+
+  // cosine similarities of the EICs, for each feature the later features with a similarity > 0
+  private int[][] neighbours;
+  private double[][] similarities;
 
   public ComputeCliqueModule(FeatureList peakList, RawDataFile rdf, MutableDouble progress,
       CliqueMSTask task) {
@@ -115,177 +125,204 @@ public class ComputeCliqueModule {
   }
 
   /**
-   * EIC matrix is a axb (a = #rts or #scans, b = #features) dimension matrix. The ith column
-   * corresponds for the ith feature. For each column, the jth row value is calculated as follows -
-   * 1) If j does not lies in the index of rt range of the ith feature, value is 0 (EIC[j][i] = 0)
-   * 2) Else, the value is the mean intensities for the jth scan's datapoints' intensities (only
-   * those intensities whose corresponding mass in datapoint is in the mzRange of ith feature)
+   * The EIC of each feature is the mean intensity of the data points within the m/z range of the
+   * feature for each scan from its rtmin scan (inclusive) to its rtmax scan (exclusive), and 0
+   * outside of this scan range. Only the scan range of each feature is stored, as the EIC matrix of
+   * all features would mostly contain zeros.
    * <p>
-   * EIC matrix is further used to calculate cosine similarity matrix
+   * The EICs are further used to calculate the cosine similarities.
    *
-   * @param file raw data file
+   * @param file         raw data file
    * @param peakDataList contains peak data
-   * @return double [][] EIC matrix
    */
-  private double[][] getEIC(RawDataFile file, List<PeakData> peakDataList) {
-    List<List<DataPoint>> dataPoints = new ArrayList<>(); // contains m/z and intensity data
-    List<Double> rts = new ArrayList<>(); // holds Retention Time values in seconds
-    for (Scan scan : file.getScans()) {
-      rts.add(scan.getRetentionTime() * 60.0); // conversion for minutes to seconds
-      List<DataPoint> dps =
-          new ArrayList<DataPoint>(Arrays.asList(ScanUtils.extractDataPoints(scan)));
-
-      dataPoints.add(dps);
-    }
-    // nrows = #rts , ncols = # peaks, already transposed as in R code
-    double EIC[][] = new double[file.getScans().size()][peakDataList.size()];
-    for (int i = 0; i < file.getScans().size(); i++) {
-      for (int j = 0; j < peakDataList.size(); j++) {
-        EIC[i][j] = 0.0;
-      }
-    }
-
-    for (int i = 0; i < peakDataList.size(); i++) {
+  private void computeEICs(RawDataFile file, List<PeakData> peakDataList) {
+    final List<Scan> scans = file.getScans();
+    final int numScans = scans.size();
+    final double[] rts = new double[numScans]; // holds Retention Time values in seconds
+    final double[][] mzs = new double[numScans][];
+    final double[][] intensities = new double[numScans][];
+    IntStream.range(0, numScans).parallel().forEach(i -> {
+      final Scan scan = scans.get(i);
+      rts[i] = scan.getRetentionTime() * 60.0; // conversion for minutes to seconds
+      mzs[i] = scan.getMzValues(new double[scan.getNumberOfDataPoints()]);
+      intensities[i] = scan.getIntensityValues(new double[scan.getNumberOfDataPoints()]);
+    });
+
+    final int numPeaks = peakDataList.size();
+    eicStarts = new int[numPeaks];
+    eics = new double[numPeaks][];
+    final AtomicInteger done = new AtomicInteger(0);
+    IntStream.range(0, numPeaks).parallel().forEach(i -> {
       if (drivertask.isCanceled()) {
-        return EIC;
+        return;
       }
       PeakData pd = peakDataList.get(i);
-      int posrtmin = rts.indexOf(pd.getRtmin() * 60.0); // position where peak matches rtmin
-      int posrtmax = rts.indexOf(pd.getRtmax() * 60.0); // position where peak matches rtmax
-
-      for (int j = posrtmin; j < posrtmax; j += 1) {
-        List<Double> intensities = new ArrayList<>();
-        for (DataPoint dp : dataPoints.get(j)) {
-          Double mzMin = pd.getMzmin();
-          Double mzMax = pd.getMzmax();
-          Double dp_mz = dp.getMZ();
-          if (dp_mz <= mzMax && dp_mz >= mzMin) {
-            intensities.add(dp.getIntensity());
-          }
-        }
-        if (intensities.size() == 0) {
-          EIC[j][i] = 0.0; // no effect
-        } else {
-          Double meanInt = 0.0;
-          for (Double d : intensities) {
-            meanInt += d;
-          }
-          meanInt /= intensities.size();
-          EIC[j][i] = meanInt;
+      // positions where the scan matches rtmin and rtmax
+      final int posrtmin = BinarySearch.lowerBound(rts, pd.getRtmin() * 60.0);
+      final int posrtmax = Math.max(posrtmin, BinarySearch.lowerBound(rts, pd.getRtmax() * 60.0));
+      final double[] eic = new double[posrtmax - posrtmin];
+      for (int j = posrtmin; j < posrtmax; j++) {
+        double meanInt = 0.0;
+        int count = 0;
+        final int end = BinarySearch.upperBound(mzs[j], pd.getMzmax());
+        for (int k = BinarySearch.lowerBound(mzs[j], pd.getMzmin()); k < end; k++) {
+          meanInt += intensities[j][k];
+          count++;
         }
-
-
+        eic[j - posrtmin] = count == 0 ? 0.0 : meanInt / count;
       }
+      eicStarts[i] = posrtmin;
+      eics[i] = eic;
       // progress update
-      this.progress.setValue(drivertask.EIC_PROGRESS * ((double) i / (double) peakDataList.size()));
-    }
-
-    return EIC;
-
+      setProgress(drivertask.EIC_PROGRESS * ((double) done.incrementAndGet() / numPeaks));
+    });
   }
 
-  // TODO make use of sparse matrix, make algo time efficient
-
   /**
-   * Computes cosine correlation of data (EIC) matrix over the columns, so for ixj dimension EIC
-   * matrix, the [x,y]th element of cosine correlation matrix contains the cosine similarity between
-   * the xth and the yth column of EIC matrix, so cosine correlation matrix has dimension jxj
-   *
-   * @param data EIC matrix
-   * @return cosine correlation matrix
+   * Computes the cosine similarity between the EICs of all features. Only features with
+   * overlapping scan ranges can have a similarity > 0, so only these pairs are compared. The result
+   * is stored as a sparse upper triangular matrix: for each feature the indices of the later
+   * features with a similarity > 0 in ascending order and the similarities.
    */
-  private double[][] cosCorrbyColumn(double[][] data) {
-    int row = data.length, col = data[0].length;
-    double[][] corr = new double[col][col];
-
-    for (int i = 0; i < col; i++) {
-      for (int j = 0; j < col; j++) {
-        corr[i][j] = 0.0;
+  private void cosineSimilarities() {
+    final int numPeaks = eics.length;
+    final double[] norms = new double[numPeaks];
+    for (int i = 0; i < numPeaks; i++) {
+      double mod = 0.0;
+      for (double v : eics[i]) {
+        mod += v * v;
       }
+      norms[i] = Math.sqrt(mod);
     }
 
-    for (int i = 0; i < col; i++) {
-      for (int j = 0; j < col; j++) {
-        if (drivertask.isCanceled()) {
-          return corr;
+    // sweep over the features sorted by the start of their scan range
+    final int[] order = IntStream.range(0, numPeaks).boxed()
+        .sorted(Comparator.comparingInt(i -> eicStarts[i])).mapToInt(Integer::intValue).toArray();
+    final IntArrayList[] foundNeighbours = new IntArrayList[numPeaks];
+    final DoubleArrayList[] foundSimilarities = new DoubleArrayList[numPeaks];
+    final AtomicInteger done = new AtomicInteger(0);
+    IntStream.range(0, numPeaks).parallel().forEach(p -> {
+      if (drivertask.isCanceled()) {
+        return;
+      }
+      final int i = order[p];
+      final int endI = eicStarts[i] + eics[i].length;
+      final IntArrayList neighbours = new IntArrayList();
+      final DoubleArrayList similarities = new DoubleArrayList();
+      for (int q = p + 1; q < numPeaks && eicStarts[order[q]] < endI; q++) {
+        final int j = order[q];
+        final int from = eicStarts[j];
+        final int to = Math.min(endI, from + eics[j].length);
+        double dot = 0.0;
+        for (int k = from; k < to; k++) {
+          dot += eics[i][k - eicStarts[i]] * eics[j][k - from];
         }
-        double modi = 0.0, modj = 0.0;
-        for (int k = 0; k < row; k++) {
-          corr[i][j] += data[k][i] * data[k][j];
-          modi += data[k][i] * data[k][i];
-          modj += data[k][j] * data[k][j];
+        final double similarity = dot / (norms[i] * norms[j]);
+        if (similarity > 0.0) {
+          neighbours.add(j);
+          similarities.add(similarity);
         }
-        modi = Math.sqrt(modi);
-        modj = Math.sqrt(modj);
-        corr[i][j] = corr[i][j] / (modi * modj);
       }
+      foundNeighbours[i] = neighbours;
+      foundSimilarities[i] = similarities;
       // update progress
-      this.progress.setValue(
-          drivertask.EIC_PROGRESS + drivertask.MATRIX_PROGRESS * ((double) (i + 1) / (double) col));
+      setProgress(drivertask.EIC_PROGRESS + drivertask.MATRIX_PROGRESS * (
+          (double) done.incrementAndGet() / numPeaks));
+    });
+    if (drivertask.isCanceled()) {
+      return;
+    }
+
+    // store each pair at the lower index
+    final int[] counts = new int[numPeaks];
+    for (int i = 0; i < numPeaks; i++) {
+      for (int k = 0; k < foundNeighbours[i].size(); k++) {
+        counts[Math.min(i, foundNeighbours[i].getInt(k))]++;
+      }
+    }
+    neighbours = new int[numPeaks][];
+    similarities = new double[numPeaks][];
+    for (int i = 0; i < numPeaks; i++) {
+      neighbours[i] = new int[counts[i]];
+      similarities[i] = new double[counts[i]];
+    }
+    final int[] filled = new int[numPeaks];
+    for (int i = 0; i < numPeaks; i++) {
+      for (int k = 0; k < foundNeighbours[i].size(); k++) {
+        final int j = foundNeighbours[i].getInt(k);
+        final int lower = Math.min(i, j);
+        neighbours[lower][filled[lower]] = Math.max(i, j);
+        similarities[lower][filled[lower]++] = foundSimilarities[i].getDouble(k);
+      }
+    }
+    for (int i = 0; i < numPeaks; i++) {
+      sortByNeighbour(neighbours[i], similarities[i]);
+    }
+  }
+
+  private static void sortByNeighbour(int[] neighbours, double[] similarities) {
+    final int[] order = IntStream.range(0, neighbours.length).boxed()
+        .sorted(Comparator.comparingInt(k -> neighbours[k])).mapToInt(Integer::intValue).toArray();
+    final int[] sortedNeighbours = new int[order.length];
+    final double[] sortedSimilarities = new double[order.length];
+    for (int k = 0; k < order.length; k++) {
+      sortedNeighbours[k] = neighbours[order[k]];
+      sortedSimilarities[k] = similarities[order[k]];
     }
-    return corr;
+    System.arraycopy(sortedNeighbours, 0, neighbours, 0, order.length);
+    System.arraycopy(sortedSimilarities, 0, similarities, 0, order.length);
   }
 
 
+  private void setProgress(double value) {
+    synchronized (progress) {
+      progress.setValue(Math.max(progress.getValue(), value));
+    }
+  }
+
   /**
    * identify peaks with very similar cosine correlation, m/z, rt and intensity
    *
-   * @param cosineCorr cosine correlation matrix
    * @param peakDataList contains features' information
    * @param mzdiff tolerance value for mz
    * @param intdiff tolerance value for intensity
    * @param rtdiff tolerance value for rt
    * @return node ID of similar features
    */
-  private List<Integer> similarFeatures(double[][] cosineCorr, List<PeakData> peakDataList,
-      MZTolerance mzdiff, RTTolerance rtdiff, double intdiff) {
-    // find all elements in cosineCorr with i<j and value > 0.99
-    List<Integer> edgeX = new ArrayList<>();
-    List<Integer> edgeY = new ArrayList<>();
-    for (int i = 0; i < cosineCorr.length; i++) {
-      for (int j = i + 1; j < cosineCorr[0].length; j++) {
-        if (cosineCorr[i][j] > 0.99) {
-          edgeX.add(i);
-          edgeY.add(j);
-        }
-      }
-    }
+  private List<Integer> similarFeatures(List<PeakData> peakDataList, MZTolerance mzdiff,
+      RTTolerance rtdiff, double intdiff) {
     List<Integer> nodesToDelete = new ArrayList<>();
     List<Integer> identicalNodes = new ArrayList<>();
-    if (edgeX.size() > 0) {
-      for (int i = 0; i < edgeX.size(); i++) {
-        PeakData p1 = peakDataList.get(edgeX.get(i));
-        PeakData p2 = peakDataList.get(edgeY.get(i));
+    // find all pairs with i<j and similarity > 0.99
+    for (int i = 0; i < neighbours.length; i++) {
+      for (int k = 0; k < neighbours[i].length; k++) {
+        if (similarities[i][k] <= 0.99) {
+          continue;
+        }
+        PeakData p1 = peakDataList.get(i);
+        PeakData p2 = peakDataList.get(neighbours[i][k]);
         Range<Double> mz_Range = mzdiff.getToleranceRange(p1.getMz());
         Range<Float> rt_Range = rtdiff.getToleranceRange((float) p1.getRt());
         double error_int = Math.abs(p1.getIntensity() - p2.getIntensity()) / p1.getIntensity();
         if ((mz_Range.contains(p2.getMz())) && (rt_Range.contains((float) p2.getRt()))
             && (error_int < intdiff)) {
-          Integer node = (edgeX.get(i) < edgeY.get(i) ? edgeX.get(i) : edgeY.get(i));
-          identicalNodes.add((edgeX.get(i) >= edgeY.get(i) ? edgeX.get(i) : edgeY.get(i)));
-          nodesToDelete.add(node);
+          identicalNodes.add(neighbours[i][k]);
+          nodesToDelete.add(i);
         }
       }
     }
 
-    HashMap<PeakData, FeatureListRow> peakMap = new HashMap<>(); // map b/w peakData and peakListRow
-    for (PeakData pd : peakDataList) {
-      for (FeatureListRow row : peakList.getRows()) {
-        if (pd.getPeakListRowID() == row.getID()) {
-          peakMap.put(pd, row);
-        }
-      }
+    HashMap<Integer, FeatureListRow> peakMap = new HashMap<>(); // map b/w row ID and peakListRow
+    for (FeatureListRow row : peakList.getRows()) {
+      peakMap.put(row.getID(), row);
     }
 
     // annotate peakList for nodes to be deleted
     for (int i = 0; i < nodesToDelete.size(); i++) {
-      Integer nodeToDeleted = nodesToDelete.get(i);
-      Integer nodeToReplace = identicalNodes.get(i);
-      PeakData pdNodeToDelete = peakDataList.get(nodeToDeleted);
-      PeakData pdNodeToReplace = peakDataList.get(nodeToReplace);
-      FeatureListRow row = peakMap.get(pdNodeToDelete);
+      PeakData pdNodeToDelete = peakDataList.get(nodesToDelete.get(i));
+      PeakData pdNodeToReplace = peakDataList.get(identicalNodes.get(i));
+      FeatureListRow row = peakMap.get(pdNodeToDelete.getPeakListRowID());
       row.setComment("Similar to peak: " + pdNodeToReplace.getPeakListRowID());
-
     }
 
     Collections.sort(nodesToDelete);
@@ -295,59 +332,57 @@ public class ComputeCliqueModule {
   /**
    * Removes nodes that are too similar in rt, mz and intensity values
    *
-   * @param cosinus cosine correlation matrix
    * @param peakDL peak Data list
    * @param mzdiff tolerance values for similarity
    * @param rtdiff tolerance values for similarity
    * @param intdiff tolerance values for similarity
    */
-  private void filterFeatures(double[][] cosinus, List<PeakData> peakDL, MZTolerance mzdiff,
-      RTTolerance rtdiff, double intdiff) {
-    List<PeakData> modifiedPeakDataList = new ArrayList<>();
-    List<Integer> deleteIndices = similarFeatures(cosinus, peakDL, mzdiff, rtdiff, intdiff);
+  private void filterFeatures(List<PeakData> peakDL, MZTolerance mzdiff, RTTolerance rtdiff,
+      double intdiff) {
+    List<Integer> deleteIndices = similarFeatures(peakDL, mzdiff, rtdiff, intdiff);
     if (deleteIndices.size() == 0) {
       logger.log(Level.FINEST, "No feature deleted");
       return;
     }
 
-    // remove the peakdata containing
+    // new index of each feature, -1 for deleted features
+    final int[] newIndices = new int[peakDataList.size()];
+    for (Integer index : deleteIndices) {
+      newIndices[index] = -1;
+    }
+    List<PeakData> modifiedPeakDataList = new ArrayList<>();
     for (int i = 0; i < peakDataList.size(); i++) {
-      PeakData pd = peakDataList.get(i);
-      if (deleteIndices.contains(i)) {
+      if (newIndices[i] == -1) {
         continue;
       }
-      PeakData pdmod = new PeakData(pd);
-      modifiedPeakDataList.add(pdmod);
+      newIndices[i] = modifiedPeakDataList.size();
+      modifiedPeakDataList.add(new PeakData(peakDataList.get(i)));
     }
 
-    double[][] modifiedCosineCorr =
-        new double[cosinus.length - deleteIndices.size()][cosinus[0].length - deleteIndices.size()];
-    // deleting row and columns of indices in deleteIndices
-    int colShift = 0;
-
-    for (int i = 0; i < cosinus.length; i++) {
-      int rowShift = 0;
-      if (colShift < deleteIndices.size() && i == deleteIndices.get(colShift)) {
-        colShift++;
+    // delete the rows and columns of the deleted features
+    final int[][] modifiedNeighbours = new int[modifiedPeakDataList.size()][];
+    final double[][] modifiedSimilarities = new double[modifiedPeakDataList.size()][];
+    for (int i = 0; i < neighbours.length; i++) {
+      if (newIndices[i] == -1) {
         continue;
       }
-      for (int j = 0; j < cosinus[0].length; j++) {
-        if (rowShift < deleteIndices.size() && j == deleteIndices.get(rowShift)) {
-          rowShift++;
-          continue;
+      final IntArrayList keptNeighbours = new IntArrayList();
+      final DoubleArrayList keptSimilarities = new DoubleArrayList();
+      for (int k = 0; k < neighbours[i].length; k++) {
+        if (newIndices[neighbours[i][k]] != -1) {
+          keptNeighbours.add(newIndices[neighbours[i][k]]);
+          keptSimilarities.add(similarities[i][k]);
         }
-        modifiedCosineCorr[i - colShift][j - rowShift] = cosinus[i][j];
       }
-
-
+      modifiedNeighbours[newIndices[i]] = keptNeighbours.toIntArray();
+      modifiedSimilarities[newIndices[i]] = keptSimilarities.toDoubleArray();
     }
 
-    this.cosineCorrelation = modifiedCosineCorr;
+    this.neighbours = modifiedNeighbours;
+    this.similarities = modifiedSimilarities;
     anClique.changePeakDataList(modifiedPeakDataList);
     this.peakDataList = modifiedPeakDataList;
     logger.log(Level.FINEST, deleteIndices.size() + " features deleted.");
-
-
   }
 
   /**
@@ -356,30 +391,20 @@ public class ComputeCliqueModule {
    */
   private void updateCliques() {
     List<Pair<Integer, Integer>> nodeCliqueList = this.anClique.getNetwork().getResultNodeClique();
-    List<PeakData> ungroupedFeatures = new ArrayList<>();
     Integer maxClique = 0;
-    for (Pair nodeClique : nodeCliqueList) {
-      if (maxClique < (Integer) nodeClique.getKey()) {
-        maxClique = (Integer) nodeClique.getKey();
+    Set<Integer> groupedNodes = new HashSet<>();
+    for (Pair<Integer, Integer> nodeClique : nodeCliqueList) {
+      groupedNodes.add(nodeClique.getKey());
+      if (maxClique < nodeClique.getKey()) {
+        maxClique = nodeClique.getKey();
       }
     }
     for (PeakData pd : this.peakDataList) {
-      boolean present = false;
-      for (Pair nodeClique : nodeCliqueList) {
-        if (nodeClique.getKey().equals(pd.getNodeID())) {
-          present = true;
-          break;
-        }
-      }
-      if (!present) {
-        ungroupedFeatures.add(pd);
+      if (!groupedNodes.contains(pd.getNodeID())) {
+        maxClique += 1;
+        nodeCliqueList.add(new Pair<>(pd.getNodeID(), maxClique));
       }
     }
-    for (PeakData pd : ungroupedFeatures) {
-      maxClique += 1;
-      Pair<Integer, Integer> p = new Pair<>(pd.getNodeID(), maxClique);
-      nodeCliqueList.add(p);
-    }
 
     Collections.sort(nodeCliqueList, (o1, o2) -> (o1.getKey() - o2.getKey()));
   }
@@ -400,26 +425,26 @@ public class ComputeCliqueModule {
     if (anClique.cliquesFound) {
       logger.log(Level.WARNING, "cliques have already been computed!");
     }
-    double EIC[][] = getEIC(rawDataFile, peakDataList);
+    computeEICs(rawDataFile, peakDataList);
 
     if (drivertask.isCanceled()) {
       return anClique;
     }
 
-    this.cosineCorrelation = cosCorrbyColumn(EIC);
+    cosineSimilarities();
     if (drivertask.isCanceled()) {
       return anClique;
     }
     if (filter) {
-      filterFeatures(cosineCorrelation, peakDataList, mzdiff, rtdiff, intdiff);
+      filterFeatures(peakDataList, mzdiff, rtdiff, intdiff);
     }
 
     List<Integer> nodeIDList = new ArrayList<>();
     for (PeakData pd : peakDataList) {
       nodeIDList.add(pd.getNodeID());
     }
-    anClique.getNetwork().returnCliques(cosineCorrelation, nodeIDList, tol, false, this.progress,
-        this.drivertask);
+    anClique.getNetwork().returnCliques(neighbours, similarities, nodeIDList, tol, false,
+        this.progress, this.drivertask);
     updateCliques();
     this.anClique.cliquesFound = true;
     this.anClique.computeCliqueFromResult();
@@ -35,8 +35,10 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import javafx.util.Pair;
 import org.apache.commons.lang3.mutable.MutableDouble;
 
@@ -328,18 +330,16 @@ public class ComputeIsotopesModule {
     for (PeakData pd : pdList) {
       pdHash.put(pd.getNodeID(), pd);
     }
-    int done = 0;
-    for (Integer cliqueID : this.anClique.cliques.keySet()) {
-      done++;
-      this.progress.setValue(driverTask.EIC_PROGRESS + driverTask.MATRIX_PROGRESS +
-          driverTask.NET_PROGRESS + driverTask.ISO_PROGRESS * ((double) done
-          / (double) this.anClique.cliques.size()));
-
+    // cliques are independent, compute them in parallel and keep their order
+    final List<Integer> cliqueIDs = new ArrayList<>(this.anClique.cliques.keySet());
+    final IsoTable[] isoTables = new IsoTable[cliqueIDs.size()];
+    final AtomicInteger done = new AtomicInteger(0);
+    IntStream.range(0, cliqueIDs.size()).parallel().forEach(c -> {
       if (driverTask.isCanceled()) {
-        return listIsoTable;
+        return;
       }
       List<Pair<Double, Pair<Double, Integer>>> inData = new ArrayList<>(); // contains following data -> intensity, mz value, nodeID
-      for (Integer cliquenodeID : this.anClique.cliques.get(cliqueID)) {
+      for (Integer cliquenodeID : this.anClique.cliques.get(cliqueIDs.get(c))) {
         PeakData pd = pdHash.get(cliquenodeID);
         Pair<Double, Integer> p = new Pair(pd.getMz(), pd.getNodeID());
         Pair<Double, Pair<Double, Integer>> isoInput = new Pair(pd.getIntensity(), p);
@@ -350,15 +350,23 @@ public class ComputeIsotopesModule {
 
       IsotopeAnCliqueMS an = new IsotopeAnCliqueMS(inData);
       an.getIsotopes(maxCharge, isoMZTolerance, isom);
-      IsoTable iTable = null;
       if (an.getPfeature().size() > 0) {
         // filter the isotope list by charge and other inconsistencies
         filterIso(an.getPfeature(), an.getIfeature(), an.getPcharge(), an.getIcharge());
         if (an.getPfeature().size() > 0) {
-          iTable = isoNetAttributes(an.getPfeature(), an.getIfeature(), an.getPcharge(),
+          isoTables[c] = isoNetAttributes(an.getPfeature(), an.getIfeature(), an.getPcharge(),
               an.getIcharge(), maxGrade);
         }
       }
+
+      synchronized (progress) {
+        progress.setValue(Math.max(progress.getValue(),
+            driverTask.EIC_PROGRESS + driverTask.MATRIX_PROGRESS + driverTask.NET_PROGRESS
+                + driverTask.ISO_PROGRESS * ((double) done.incrementAndGet()
+                / (double) isoTables.length)));
+      }
+    });
+    for (IsoTable iTable : isoTables) {
       if (iTable != null) {
         listIsoTable.add(iTable);
       }
@@ -32,6 +32,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.util.Pair;
@@ -59,9 +60,6 @@ public class NetworkCliqueMS {
   private final HashMap<Pair<Integer, Integer>, Double> logEdges = new HashMap<>();  // log value of weigth powered to some exponent
   private final HashMap<Pair<Integer, Integer>, Double> minusLogEdges = new HashMap<>();  // 1 - log value of weight powered to some exponent
 
-  //For recording progress;
-  private MutableDouble progress;
-
   private CliqueMSTask driverTask;
 
   //Result of Kernighan and aggregate algorithm
@@ -71,17 +69,19 @@ public class NetworkCliqueMS {
     return edges;
   }
 
-  private void createEdges(double[][] adjacencyMatrix, List<Integer> nodeIDList) {
-    for (int i = 0; i < adjacencyMatrix.length; i++) {
-      for (int j = i + 1; j < adjacencyMatrix[0].length; j++) {
-        if (adjacencyMatrix[i][j] > 0.0) {
-          Pair<Integer, Integer> p = new Pair(nodeIDList.get(i), nodeIDList.get(j));
-          if (adjacencyMatrix[i][j] == 1) {
-            // change similarity of 1 to 0.99999999999 to non avoid NaN
-            this.edges.put(p, 0.99999999999);
-          } else {
-            this.edges.put(p, adjacencyMatrix[i][j]);
-          }
+  /**
+   * @param neighbours   for each feature the indices of the later features with a similarity > 0
+   * @param similarities the similarities to the neighbours
+   */
+  private void createEdges(int[][] neighbours, double[][] similarities, List<Integer> nodeIDList) {
+    for (int i = 0; i < neighbours.length; i++) {
+      for (int k = 0; k < neighbours[i].length; k++) {
+        Pair<Integer, Integer> p = new Pair<>(nodeIDList.get(i), nodeIDList.get(neighbours[i][k]));
+        if (similarities[i][k] == 1) {
+          // change similarity of 1 to 0.99999999999 to non avoid NaN
+          this.edges.put(p, 0.99999999999);
+        } else {
+          this.edges.put(p, similarities[i][k]);
         }
       }
     }
@@ -146,11 +146,9 @@ public class NetworkCliqueMS {
     }
   }
 
-  //initializeNetwork
-  private void createNetwork(double[][] adjacencyMatrix, List<Integer> nodeIDList) {
-    //import edges
+  //initializeNetwork from the imported edges
+  private void createNetwork() {
     double exp = 2.0;
-    createEdges(adjacencyMatrix, nodeIDList);
     createNodesFromEdges();
     createNeighboursFromEdges();
     createCliques();
@@ -448,9 +446,9 @@ public class NetworkCliqueMS {
         tcount++;
       }
 
-      //update progress
-      this.progress.setValue(driverTask.EIC_PROGRESS + driverTask.MATRIX_PROGRESS +
-          driverTask.NET_PROGRESS * ((double) (randpos + 1) / (double) randallNodes.size()));
+      if (driverTask.isCanceled()) {
+        return loglResult;
+      }
     }
     Double firstlogl = loglResult.get(0);
     Double diff = 1.0 - Math.abs(currentLogL
@@ -465,6 +463,9 @@ public class NetworkCliqueMS {
       Double lastlogl = loglResult.get(loglResult.size() - 1);
       Collections.shuffle(randallNodes);
       for (int randposw = 0; randposw < randallNodes.size(); randposw++) {
+        if (driverTask.isCanceled()) {
+          return loglResult;
+        }
         Integer nodevw = randallNodes.get(randposw);
         Integer cliquecw = this.nodes.get(nodevw); // clique that will be joined to another clique
         if (scount == step) {
@@ -496,28 +497,101 @@ public class NetworkCliqueMS {
     return loglResult;
   }
 
-  public void returnCliques(double[][] adjacencyMatrix, List<Integer> nodeIDList, double tolerance,
-      boolean silent, MutableDouble progress, CliqueMSTask task) {
+  /**
+   * Finds the cliques of each connected component of the network in parallel. The log likelihood is
+   * a sum over the edges, so the cliques of different components are independent of each other.
+   *
+   * @param neighbours   for each feature the indices of the later features with a similarity > 0
+   * @param similarities the similarities to the neighbours
+   * @param nodeIDList   the node ID of each feature
+   */
+  public void returnCliques(int[][] neighbours, double[][] similarities, List<Integer> nodeIDList,
+      double tolerance, boolean silent, MutableDouble progress, CliqueMSTask task) {
     try {
-      this.progress = progress;
       this.driverTask = task;
-      createNetwork(adjacencyMatrix, nodeIDList);
-      Double logl = loglTotal();
-      logger.log(Level.FINEST, "Beginning value of logl is " + logl);
-      int step = 10;
-      List<Double> loglList = aggregateAndKernighan(tolerance, step, silent);
-      for (Integer v : this.nodes.keySet()) {
-        Pair<Integer, Integer> p = new Pair<>(v, this.nodes.get(v));
-        resultNodeClique.add(p);
+      createEdges(neighbours, similarities, nodeIDList);
+
+      final List<NetworkCliqueMS> components = splitComponents(neighbours, nodeIDList);
+      logger.log(Level.FINEST, "Computing cliques of " + components.size() + " components");
+      final int step = 10;
+      final AtomicInteger done = new AtomicInteger(0);
+      final double[] logl = new double[2];
+      components.parallelStream().forEach(component -> {
+        if (task.isCanceled()) {
+          return;
+        }
+        component.driverTask = task;
+        component.createNetwork();
+        final double before = component.loglTotal();
+        component.aggregateAndKernighan(tolerance, step, true);
+        final double after = component.loglTotal();
+        final List<Pair<Integer, Integer>> nodeCliques = new ArrayList<>();
+        for (Integer v : component.nodes.keySet()) {
+          nodeCliques.add(new Pair<>(v, component.nodes.get(v)));
+        }
+        synchronized (progress) {
+          logl[0] += before;
+          logl[1] += after;
+          resultNodeClique.addAll(nodeCliques);
+          progress.setValue(task.EIC_PROGRESS + task.MATRIX_PROGRESS
+              + task.NET_PROGRESS * (double) done.incrementAndGet() / components.size());
+        }
+      });
+      if (!silent) {
+        logger.log(Level.FINEST, "Beginning value of logl is " + logl[0]);
+        logger.log(Level.FINEST, "Finishing value of logl is " + logl[1]);
       }
-      Double loglfinal = loglTotal();
-      logger.log(Level.FINEST, "Finishing value of logl is " + loglfinal);
-
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
 
+  /**
+   * @return a network with the edges of each connected component
+   */
+  private List<NetworkCliqueMS> splitComponents(int[][] neighbours, List<Integer> nodeIDList) {
+    // union find over the feature indices
+    final int[] parent = new int[neighbours.length];
+    for (int i = 0; i < parent.length; i++) {
+      parent[i] = i;
+    }
+    for (int i = 0; i < neighbours.length; i++) {
+      for (int j : neighbours[i]) {
+        final int rootI = findRoot(parent, i);
+        final int rootJ = findRoot(parent, j);
+        if (rootI != rootJ) {
+          parent[Math.max(rootI, rootJ)] = Math.min(rootI, rootJ);
+        }
+      }
+    }
+
+    final HashMap<Integer, NetworkCliqueMS> components = new HashMap<>();
+    final List<NetworkCliqueMS> componentList = new ArrayList<>();
+    for (int i = 0; i < neighbours.length; i++) {
+      if (neighbours[i].length == 0) {
+        continue;
+      }
+      final NetworkCliqueMS component = components.computeIfAbsent(findRoot(parent, i), root -> {
+        final NetworkCliqueMS network = new NetworkCliqueMS();
+        componentList.add(network);
+        return network;
+      });
+      for (int j : neighbours[i]) {
+        final Pair<Integer, Integer> edge = new Pair<>(nodeIDList.get(i), nodeIDList.get(j));
+        component.edges.put(edge, this.edges.get(edge));
+      }
+    }
+    return componentList;
+  }
+
+  private static int findRoot(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
   public List<Pair<Integer, Integer>> getResultNodeClique() {
     return resultNodeClique;
   }
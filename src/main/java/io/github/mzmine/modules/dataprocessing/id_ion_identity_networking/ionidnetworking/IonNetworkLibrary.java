@@ -64,6 +64,8 @@ public class IonNetworkLibrary {
   private final boolean isPositive;
   private final int maxCharge;
   private final int maxMolecules;
+  // lazy mass difference index
+  private volatile IonNetworkLibraryIndex index;
 
   /**
    * Set mztolerance later
@@ -157,40 +159,43 @@ public class IonNetworkLibrary {
     z1 = Math.abs(z1);
     z2 = Math.abs(z2);
     List<IonIdentity[]> list = new ArrayList<>();
-    // check all combinations of adducts
-    for (IonType adduct : allAdducts) {
-      for (IonType adduct2 : allAdducts) {
-        if (adduct.equals(adduct2)) {
-          continue;
-        }
+    // m/z ranges that are used in the exact check below
+    final double[] mzRange1 = getCheckedMzRange(featureList, row1, mode, minHeight);
+    final double[] mzRange2 = getCheckedMzRange(featureList, row2, mode, minHeight);
+    if (mzRange1 == null || mzRange2 == null) {
+      return list;
+    }
 
-        // do not check if MOL = MOL and MOL>1
-        // only one can be modified
-        // check charge state if absCharge is not -1 or 0 (no charge detected)
-        if (checkMolCount(adduct, adduct2) //
-            && checkMaxMod(adduct, adduct2) //
-            && checkChargeStates(adduct, adduct2, z1, z2) //
-            && checkMultiChargeDifference(adduct, adduct2) //
-            && checkSameAdducts(adduct, adduct2)) {
-          // checks each raw file - only true if all m/z are in range
-          if (checkAdduct(featureList, row1, row2, adduct, adduct2, mode, minHeight)) {
-            // is a2 a modification of a1? (same adducts - different mods
-            if (adduct2.isModificationOf(adduct)) {
-              IonType mod = adduct2.subtractMods(adduct);
-              IonType undefined =
-                  new IonType(IonModification.getUndefinedforCharge(adduct.getCharge()));
-              list.add(IonIdentity.addAdductIdentityToRow(mzTolerance, row1, undefined, row1, mod));
-            } else if (adduct.isModificationOf(adduct2)) {
-              IonType mod = adduct.subtractMods(adduct2);
-              IonType undefined =
-                  new IonType(IonModification.getUndefinedforCharge(adduct2.getCharge()));
-              list.add(IonIdentity.addAdductIdentityToRow(mzTolerance, row1, mod, row2, undefined));
-            } else {
-              // Add adduct identity and notify GUI.
-              // only if not already present
-              list.add(
-                  IonIdentity.addAdductIdentityToRow(mzTolerance, row1, adduct, row2, adduct2));
-            }
+    // only check candidate combinations of adducts (pre-filtered by the mass difference index)
+    // the pair codes are sorted in the same order as a nested loop over all adducts
+    final IonNetworkLibraryIndex index = getIndex();
+    final int[] candidates = index.findCandidatePairs(mzRange1[0], mzRange1[1], mzRange2[0],
+        mzRange2[1], mzTolerance);
+    for (int pairCode : candidates) {
+      final IonType adduct = allAdducts.get(index.getIndexA(pairCode));
+      final IonType adduct2 = allAdducts.get(index.getIndexB(pairCode));
+
+      // the index only contains pairs that passed the mol count, max mod, multi charge and same
+      // adduct checks. check charge state if absCharge is not -1 or 0 (no charge detected)
+      if (checkChargeStates(adduct, adduct2, z1, z2)) {
+        // checks each raw file - only true if all m/z are in range
+        if (checkAdduct(featureList, row1, row2, adduct, adduct2, mode, minHeight)) {
+          // is a2 a modification of a1? (same adducts - different mods
+          if (adduct2.isModificationOf(adduct)) {
+            IonType mod = adduct2.subtractMods(adduct);
+            IonType undefined =
+                new IonType(IonModification.getUndefinedforCharge(adduct.getCharge()));
+            list.add(IonIdentity.addAdductIdentityToRow(mzTolerance, row1, undefined, row1, mod));
+          } else if (adduct.isModificationOf(adduct2)) {
+            IonType mod = adduct.subtractMods(adduct2);
+            IonType undefined =
+                new IonType(IonModification.getUndefinedforCharge(adduct2.getCharge()));
+            list.add(IonIdentity.addAdductIdentityToRow(mzTolerance, row1, mod, row2, undefined));
+          } else {
+            // Add adduct identity and notify GUI.
+            // only if not already present
+            list.add(
+                IonIdentity.addAdductIdentityToRow(mzTolerance, row1, adduct, row2, adduct2));
           }
         }
       }
@@ -200,6 +205,49 @@ public class IonNetworkLibrary {
   }
 
 
+  /**
+   * The mass difference index of all adduct pairs. Cached across runs with the same library
+   * parameters.
+   *
+   * @return the index for all adducts of this library
+   */
+  @NotNull
+  public IonNetworkLibraryIndex getIndex() {
+    if (index == null) {
+      index = IonNetworkLibraryIndex.getOrCreate(allAdducts,
+          (a, b) -> checkMolCount(a, b) && checkMaxMod(a, b) && checkMultiChargeDifference(a, b)
+                    && checkSameAdducts(a, b));
+    }
+    return index;
+  }
+
+  /**
+   * The m/z range of all values that are compared in
+   * {@link #checkAdduct(FeatureList, FeatureListRow, FeatureListRow, IonType, IonType, CheckMode,
+   * double)}
+   *
+   * @return [min, max] or null if no m/z value is checked for this row
+   */
+  @Nullable
+  private double[] getCheckedMzRange(final FeatureList featureList, final FeatureListRow row,
+      final CheckMode mode, final double minHeight) {
+    if (mode.equals(CheckMode.AVGERAGE)) {
+      final Double mz = row.getAverageMZ();
+      return mz == null ? null : new double[]{mz, mz};
+    }
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    for (RawDataFile raw : featureList.getRawDataFiles()) {
+      Feature f = row.getFeature(raw);
+      if (f != null && f.getHeight() >= minHeight) {
+        final double mz = f.getMZ();
+        min = Math.min(min, mz);
+        max = Math.max(max, mz);
+      }
+    }
+    return min <= max ? new double[]{min, max} : null;
+  }
+
   /**
    * Searches for an IonType for row that matches in network
    *
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.github.mzmine.datamodel.identities.iontype.IonType;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.collections.BinarySearch;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Precomputed table of all pairwise mass differences between the {@link IonType}s of an
+ * {@link IonNetworkLibrary}. Two ions a and b of rows 1 and 2 describe the same neutral molecule
+ * if
+ * <pre>
+ * (mz1 * za - dA) / na = (mz2 * zb - dB) / nb
+ * mz1 * za/na - mz2 * zb/nb = dA/na - dB/nb
+ * </pre>
+ * Ion pairs are therefore grouped by their scaling (za/na, zb/nb) and sorted by the right hand
+ * side. All candidate pairs of two rows are found by one binary search per scaling group instead
+ * of enumerating all ion type combinations. Candidates are only a pre-filter and need to be
+ * verified by the exact checks in {@link IonNetworkLibrary}.
+ * <p>
+ * Indices only depend on the ion types and are cached across runs with the same library
+ * parameters, see {@link #getOrCreate(List, BiPredicate)}. The cache is cleared at the end of a
+ * batch and cached indices are released by the garbage collector when memory runs low.
+ */
+public class IonNetworkLibraryIndex {
+
+  private static final Logger logger = Logger.getLogger(IonNetworkLibraryIndex.class.getName());
+
+  /**
+   * Small number of cached indices - usually all tasks in a batch use the same library
+   */
+  private static final int MAX_CACHED_INDICES = 8;
+  private static final Cache<List<IonType>, IonNetworkLibraryIndex> CACHE =
+      CacheBuilder.newBuilder().concurrencyLevel(1).maximumSize(MAX_CACHED_INDICES).softValues()
+          .build();
+
+  /**
+   * Guards against floating point differences between the pre-filter and the exact check
+   */
+  private static final double EPSILON = 1E-9;
+
+  private final int numIons;
+  private final ScalingGroup[] groups;
+  /**
+   * Largest absolute mass difference of all ions, used to estimate the maximum neutral mass
+   */
+  private final double maxAbsMassDifference;
+  private final int maxAbsCharge;
+
+  private IonNetworkLibraryIndex(@NotNull List<IonType> ions,
+      @NotNull BiPredicate<IonType, IonType> pairFilter) {
+    numIons = ions.size();
+
+    double maxMassDiff = 0;
+    int maxCharge = 1;
+    for (IonType ion : ions) {
+      maxMassDiff = Math.max(maxMassDiff, Math.abs(ion.getMassDifference()));
+      maxCharge = Math.max(maxCharge, ion.getAbsCharge());
+    }
+    maxAbsMassDifference = maxMassDiff;
+    maxAbsCharge = maxCharge;
+
+    // collect all valid pairs per scaling group
+    Map<GroupKey, GroupBuilder> builders = new LinkedHashMap<>();
+    for (int a = 0; a < numIons; a++) {
+      final IonType ionA = ions.get(a);
+      for (int b = 0; b < numIons; b++) {
+        final IonType ionB = ions.get(b);
+        if (ionA.equals(ionB) || !pairFilter.test(ionA, ionB)) {
+          continue;
+        }
+        final GroupKey key = new GroupKey(ionA.getAbsCharge(), ionA.getMolecules(),
+            ionB.getAbsCharge(), ionB.getMolecules());
+        final double delta = ionA.getMassDifference() / ionA.getMolecules()
+                             - ionB.getMassDifference() / ionB.getMolecules();
+        builders.computeIfAbsent(key, GroupBuilder::new).add(delta, a * numIons + b);
+      }
+    }
+
+    List<ScalingGroup> list = new ArrayList<>(builders.size());
+    int pairs = 0;
+    for (GroupBuilder builder : builders.values()) {
+      list.add(builder.build());
+      pairs += builder.deltas.size();
+    }
+    groups = list.toArray(ScalingGroup[]::new);
+    final int totalPairs = pairs;
+    logger.fine(() -> "Created ion network index with %d ion pairs in %d scaling groups".formatted(
+        totalPairs, groups.length));
+  }
+
+  /**
+   * Returns a cached index for this list of ion types or creates a new one. The pair filter needs
+   * to be stable for the same ion types (only used on creation).
+   *
+   * @param ions       all ion types of the library
+   * @param pairFilter only pairs that pass this filter are added to the index
+   * @return the index
+   */
+  @NotNull
+  public static IonNetworkLibraryIndex getOrCreate(@NotNull List<IonType> ions,
+      @NotNull BiPredicate<IonType, IonType> pairFilter) {
+    return CACHE.asMap().computeIfAbsent(List.copyOf(ions),
+        key -> new IonNetworkLibraryIndex(key, pairFilter));
+  }
+
+  /**
+   * Clears all cached indices
+   */
+  public static void clearCache() {
+    CACHE.invalidateAll();
+  }
+
+  /**
+   * Finds all candidate ion pairs for two rows. The m/z ranges cover all m/z values that are used
+   * for the exact check later (average m/z or all feature m/z).
+   *
+   * @return sorted pair codes (indexA * numIons + indexB), which equals the order of the nested
+   * loops over all ion types
+   */
+  @NotNull
+  public int[] findCandidatePairs(double mz1Min, double mz1Max, double mz2Min, double mz2Max,
+      @NotNull MZTolerance mzTolerance) {
+    IntArrayList result = new IntArrayList();
+    for (ScalingGroup g : groups) {
+      // the tolerance is applied to the neutral mass of the first ion
+      final double maxNeutralMass = mz1Max * g.scaleA + maxAbsMassDifference;
+      final double tolerance = mzTolerance.getMzToleranceForMass(maxNeutralMass) + EPSILON;
+      final double minX = mz1Min * g.scaleA - mz2Max * g.scaleB - tolerance;
+      final double maxX = mz1Max * g.scaleA - mz2Min * g.scaleB + tolerance;
+
+      final int end = BinarySearch.upperBound(g.deltas, maxX);
+      for (int i = BinarySearch.lowerBound(g.deltas, minX); i < end; i++) {
+        result.add(g.pairCodes[i]);
+      }
+    }
+    final int[] codes = result.toIntArray();
+    Arrays.sort(codes);
+    return codes;
+  }
+
+  public int getIndexA(int pairCode) {
+    return pairCode / numIons;
+  }
+
+  public int getIndexB(int pairCode) {
+    return pairCode % numIons;
+  }
+
+  public int getNumIons() {
+    return numIons;
+  }
+
+  public int getMaxAbsCharge() {
+    return maxAbsCharge;
+  }
+
+
+  private record GroupKey(int chargeA, int moleculesA, int chargeB, int moleculesB) {
+
+  }
+
+  /**
+   * All ion pairs with the same scaling of m/z values, sorted by their mass difference
+   */
+  private record ScalingGroup(double scaleA, double scaleB, double[] deltas, int[] pairCodes) {
+
+  }
+
+  private static class GroupBuilder {
+
+    private final GroupKey key;
+    private final DoubleArrayList deltas = new DoubleArrayList();
+    private final IntArrayList pairCodes = new IntArrayList();
+
+    private GroupBuilder(GroupKey key) {
+      this.key = key;
+    }
+
+    private void add(double delta, int pairCode) {
+      deltas.add(delta);
+      pairCodes.add(pairCode);
+    }
+
+    private ScalingGroup build() {
+      final int n = deltas.size();
+      Integer[] order = new Integer[n];
+      for (int i = 0; i < n; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, Comparator.comparingDouble(deltas::getDouble));
+      double[] sortedDeltas = new double[n];
+      int[] sortedCodes = new int[n];
+      for (int i = 0; i < n; i++) {
+        sortedDeltas[i] = deltas.getDouble(order[i]);
+        sortedCodes[i] = pairCodes.getInt(order[i]);
+      }
+      return new ScalingGroup(key.chargeA() / (double) key.moleculesA(),
+          key.chargeB() / (double) key.moleculesB(), sortedDeltas, sortedCodes);
+    }
+  }
+}
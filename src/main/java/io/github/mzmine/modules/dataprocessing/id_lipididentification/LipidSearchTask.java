@@ -39,7 +39,7 @@ import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidident
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididentificationtools.MSMSLipidTools;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.*;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.customlipidclass.CustomLipidClass;
-import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidFactory;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidDatabaseIndex;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.MatchedLipid;
 import io.github.mzmine.modules.visualization.spectra.simplespectra.datapointprocessing.isotopes.MassListDeisotoper;
 import io.github.mzmine.modules.visualization.spectra.simplespectra.datapointprocessing.isotopes.MassListDeisotoperParameters;
@@ -50,14 +50,12 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 import org.jetbrains.annotations.NotNull;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
-import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 
 /**
  * Task to search and annotate lipids in feature list
@@ -66,8 +64,6 @@ import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
  */
 public class LipidSearchTask extends AbstractTask {
 
-  private static final LipidFactory LIPID_FACTORY = new LipidFactory();
-
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private double finishedSteps;
   private double totalSteps;
@@ -164,13 +160,11 @@ public class LipidSearchTask extends AbstractTask {
     totalSteps = rows.size();
 
     // build lipid species database
-    Set<ILipidAnnotation> lipidDatabase = buildLipidDatabase();
+    LipidDatabaseIndex lipidDatabase = buildLipidDatabase();
 
     // start lipid annotation
     rows.parallelStream().forEach(row -> {
-      for (ILipidAnnotation lipidAnnotation : lipidDatabase) {
-        findPossibleLipid(lipidAnnotation, row);
-      }
+      findPossibleLipids(lipidDatabase, row);
       finishedSteps++;
     });
 
@@ -183,80 +177,63 @@ public class LipidSearchTask extends AbstractTask {
     logger.info("Finished lipid annotation task in " + featureList);
   }
 
-  private Set<ILipidAnnotation> buildLipidDatabase() {
-
-    Set<ILipidAnnotation> lipidDatabase = new LinkedHashSet<>();
-
-    // add selected lipids
-    buildLipidCombinations(lipidDatabase, selectedLipids);
+  /**
+   * The database of the selected and custom lipid classes is cached across feature lists
+   */
+  private LipidDatabaseIndex buildLipidDatabase() {
+    ILipidClass[] lipidClasses = selectedLipids;
 
     // add custom lipids
     if (customLipidClasses != null && customLipidClasses.length > 0) {
-      buildLipidCombinations(lipidDatabase, customLipidClasses);
+      lipidClasses = Stream.concat(Arrays.stream(selectedLipids), Arrays.stream(customLipidClasses))
+          .toArray(ILipidClass[]::new);
     }
 
-    return lipidDatabase;
-  }
-
-  private void buildLipidCombinations(Set<ILipidAnnotation> lipidDatabase,
-      ILipidClass[] lipidClasses) {
-    // Try all combinations of fatty acid lengths and double bonds
-    for (ILipidClass lipidClass : lipidClasses) {
-      for (int chainLength = minChainLength; chainLength <= maxChainLength; chainLength++) {
-        for (int chainDoubleBonds =
-            minDoubleBonds; chainDoubleBonds <= maxDoubleBonds; chainDoubleBonds++) {
-
-          if (chainLength / 2 < chainDoubleBonds || chainLength == 0) {
-            continue;
-          }
-
-          // Prepare a lipid instance
-          ILipidAnnotation lipid = LIPID_FACTORY.buildSpeciesLevelLipid(lipidClass,
-              chainLength, chainDoubleBonds);
-          if (lipid != null) {
-            lipidDatabase.add(lipid);
-          }
-        }
-      }
-    }
+    return LipidDatabaseIndex.getOrCreate(lipidClasses,
+        Range.closed(minChainLength, maxChainLength), Range.closed(minDoubleBonds, maxDoubleBonds));
   }
 
   /**
-   * Check if candidate peak may be a possible adduct of a given main peak
+   * Check all lipid ions of the database within the MS1 tolerance of the row. Ions of the same
+   * lipid are consecutive in the search result.
    */
-  private void findPossibleLipid(ILipidAnnotation lipid, FeatureListRow row) {
+  private void findPossibleLipids(LipidDatabaseIndex lipidDatabase, FeatureListRow row) {
     if (isCanceled()) {
       return;
     }
+    Range<Double> mzTolRange12C = mzTolerance.getToleranceRange(row.getAverageMZ());
+    final int[] entries = lipidDatabase.findEntries(mzTolRange12C);
+
     Set<MatchedLipid> possibleRowAnnotations = new HashSet<>();
-    Set<IonizationType> ionizationTypeList = new HashSet<>();
-    LipidFragmentationRule[] fragmentationRules = lipid.getLipidClass().getFragmentationRules();
-    for (LipidFragmentationRule fragmentationRule : fragmentationRules) {
-      ionizationTypeList.add(fragmentationRule.getIonizationType());
-    }
-    for (IonizationType ionization : ionizationTypeList) {
+    int lastLipidIndex = -1;
+    for (int entry : entries) {
+      if (isCanceled()) {
+        return;
+      }
+      final int lipidIndex = lipidDatabase.getLipidIndex(entry);
+      if (lipidIndex != lastLipidIndex) {
+        addAnnotationsToFeatureList(row, possibleRowAnnotations);
+        possibleRowAnnotations.clear();
+        lastLipidIndex = lipidIndex;
+      }
+
+      final IonizationType ionization = lipidDatabase.getIonization(entry);
       if (!Objects.requireNonNull(row.getBestFeature().getRepresentativeScan()).getPolarity()
           .equals(ionization.getPolarity())) {
         continue;
       }
-      double lipidIonMass = MolecularFormulaManipulator.getMass(lipid.getMolecularFormula(),
-          AtomContainerManipulator.MonoIsotopic) + ionization.getAddedMass();
-      Range<Double> mzTolRange12C = mzTolerance.getToleranceRange(row.getAverageMZ());
-
-      // MS1 check
-      if (mzTolRange12C.contains(lipidIonMass)) {
+      final ILipidAnnotation lipid = lipidDatabase.getLipid(entry);
 
-        // If search for MSMS fragments is selected search for fragments
-        if (searchForMSMSFragments.booleanValue()) {
-          possibleRowAnnotations.addAll(searchMsmsFragments(row, ionization, lipid));
-        } else {
+      // If search for MSMS fragments is selected search for fragments
+      if (searchForMSMSFragments.booleanValue()) {
+        possibleRowAnnotations.addAll(
+            searchMsmsFragments(row, ionization, lipid, lipidDatabase.getLipidMass(entry)));
+      } else {
 
-          // make MS1 annotation
-          possibleRowAnnotations
-              .add(new MatchedLipid(lipid, row.getAverageMZ(), ionization, null, 0.0));
-        }
+        // make MS1 annotation
+        possibleRowAnnotations.add(
+            new MatchedLipid(lipid, row.getAverageMZ(), ionization, null, 0.0));
       }
-
     }
     addAnnotationsToFeatureList(row, possibleRowAnnotations);
   }
@@ -275,7 +252,7 @@ public class LipidSearchTask extends AbstractTask {
    * This method searches for MS/MS fragments. A mass list for MS2 scans will be used if present.
    */
   private Set<MatchedLipid> searchMsmsFragments(FeatureListRow row, IonizationType ionization,
-      ILipidAnnotation lipid) {
+      ILipidAnnotation lipid, double lipidMass) {
 
     Set<MatchedLipid> matchedLipids = new HashSet<>();
 
@@ -299,7 +276,8 @@ public class LipidSearchTask extends AbstractTask {
             Range<Double> mzTolRangeMSMS = mzToleranceMS2.getToleranceRange(dataPoint.getMZ());
             LipidFragment annotatedFragment = msmsLipidTools.checkForClassSpecificFragment(
                 mzTolRangeMSMS, lipid, ionization, rules,
-                new SimpleDataPoint(dataPoint.getMZ(), dataPoint.getIntensity()), msmsScan);
+                new SimpleDataPoint(dataPoint.getMZ(), dataPoint.getIntensity()), msmsScan,
+                lipidMass);
             if (annotatedFragment != null) {
               annotatedFragments.add(annotatedFragment);
             }
@@ -47,7 +47,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
@@ -62,17 +64,47 @@ public class MSMSLipidTools {
   private static final ChainTools CHAIN_TOOLS = new ChainTools();
   private static final LipidFactory LIPID_FACTORY = new LipidFactory();
 
+  /**
+   * Fragment ion tables of all fatty acid and hydrocarbon chains that are tested by the chain rules,
+   * in the order of {@link ChainTools#calculateFattyAcidFormulas()} and
+   * {@link ChainTools#calculateHydroCarbonFormulas()}
+   */
+  private static final ChainTable FATTY_ACIDS = new ChainTable(
+      CHAIN_TOOLS.calculateFattyAcidFormulas());
+  private static final ChainTable HYDROCARBONS = new ChainTable(
+      CHAIN_TOOLS.calculateHydroCarbonFormulas());
+
+  /**
+   * Exact masses and m/z ratios of the formulas of all fragmentation rules
+   */
+  private static final Map<String, Double> FORMULA_MASSES = new ConcurrentHashMap<>();
+  private static final Map<String, Double> FORMULA_MZ_RATIOS = new ConcurrentHashMap<>();
+
 
   public LipidFragment checkForClassSpecificFragment(Range<Double> mzTolRangeMSMS,
       ILipidAnnotation lipidAnnotation, IonizationType ionizationType,
       LipidFragmentationRule[] rules, DataPoint dataPoint, Scan msMsScan) {
+    double lipidMass = MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
+        AtomContainerManipulator.MonoIsotopic);
+    return checkForClassSpecificFragment(mzTolRangeMSMS, lipidAnnotation, ionizationType, rules,
+        dataPoint, msMsScan, lipidMass);
+  }
+
+  /**
+   * @param lipidMass the neutral monoisotopic mass of the lipid annotation, e.g., from a
+   *                  {@link io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidDatabaseIndex}
+   */
+  public LipidFragment checkForClassSpecificFragment(Range<Double> mzTolRangeMSMS,
+      ILipidAnnotation lipidAnnotation, IonizationType ionizationType,
+      LipidFragmentationRule[] rules, DataPoint dataPoint, Scan msMsScan, double lipidMass) {
     for (int i = 0; i < rules.length; i++) {
       if (!ionizationType.equals(rules[i].getIonizationType())
           || rules[i].getLipidFragmentationRuleType() == null) {
         continue;
       }
       LipidFragment detectedFragment =
-          checkForSpecificRuleTpye(rules[i], mzTolRangeMSMS, lipidAnnotation, dataPoint, msMsScan);
+          checkForSpecificRuleTpye(rules[i], mzTolRangeMSMS, lipidAnnotation, dataPoint, msMsScan,
+              lipidMass);
       if (detectedFragment != null) {
         return detectedFragment;
       }
@@ -82,54 +114,54 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForSpecificRuleTpye(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
     LipidFragmentationRuleType ruleType = rule.getLipidFragmentationRuleType();
     switch (ruleType) {
       case HEADGROUP_FRAGMENT:
         return checkForHeadgroupFragment(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
+            msMsScan, lipidMass);
       case HEADGROUP_FRAGMENT_NL:
         return checkForHeadgroupFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
+            msMsScan, lipidMass);
       case ACYLCHAIN_FRAGMENT:
         return checkForAcylChainFragment(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
+            msMsScan, lipidMass);
       case ACYLCHAIN_FRAGMENT_NL:
         return checkForAcylChainFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
+            msMsScan, lipidMass);
       case ACYLCHAIN_MINUS_FORMULA_FRAGMENT:
         return checkForAcylChainMinusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
+            dataPoint, msMsScan, lipidMass);
       case ACYLCHAIN_MINUS_FORMULA_FRAGMENT_NL:
         return checkForAcylChainMinusFormulaFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
+            dataPoint, msMsScan, lipidMass);
       case ACYLCHAIN_PLUS_FORMULA_FRAGMENT:
         return checkForAcylChainPlusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
+            dataPoint, msMsScan, lipidMass);
       case ACYLCHAIN_PLUS_FORMULA_FRAGMENT_NL:
         return checkForAcylChainPlusFormulaFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
+            dataPoint, msMsScan, lipidMass);
       case TWO_ACYLCHAINS_PLUS_FORMULA_FRAGMENT:
         return checkForTwoAcylChainsPlusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
+            dataPoint, msMsScan, lipidMass);
       case ALKYLCHAIN_FRAGMENT:
         return checkForAlkylChainFragment(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
+            msMsScan, lipidMass);
       case ALKYLCHAIN_FRAGMENT_NL:
         return checkForAlkylChainFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
+            msMsScan, lipidMass);
       case ALKYLCHAIN_MINUS_FORMULA_FRAGMENT:
         return checkForAlkylChainMinusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
+            dataPoint, msMsScan, lipidMass);
       case ALKYLCHAIN_MINUS_FORMULA_FRAGMENT_NL:
         return checkForAlkylChainMinusFormulaFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
+            dataPoint, msMsScan, lipidMass);
       case ALKYLCHAIN_PLUS_FORMULA_FRAGMENT:
         return checkForAlkylChainPlusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
+            dataPoint, msMsScan, lipidMass);
       case ALKYLCHAIN_PLUS_FORMULA_FRAGMENT_NL:
         return checkForAlkylChainPlusFormulaFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
+            dataPoint, msMsScan, lipidMass);
       default:
         return null;
     }
@@ -137,9 +169,9 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForHeadgroupFragment(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
     String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateMzRatio(fragmentFormula);
+    double mzFragmentExact = getMzRatio(fragmentFormula);
     if (mzTolRangeMSMS.contains(mzFragmentExact)) {
       return new LipidFragment(rule.getLipidFragmentationRuleType(),
           rule.getLipidFragmentInformationLevelType(), mzFragmentExact, dataPoint,
@@ -151,13 +183,11 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForHeadgroupFragmentNL(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
     String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzExact = mzPrecursorExact - mzFragmentExact;
+    double mzFragmentExact = getExactMass(fragmentFormula);
+    double mzPrecursorExact = lipidMass + rule.getIonizationType().getAddedMass();
+    double mzExact = mzPrecursorExact - mzFragmentExact;
     if (mzTolRangeMSMS.contains(mzExact)) {
       return new LipidFragment(rule.getLipidFragmentationRuleType(),
           rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
@@ -170,16 +200,15 @@ public class MSMSLipidTools {
   // Acly Chains
   private LipidFragment checkForAcylChainFragment(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     if (rule.getPolarityType().equals(PolarityType.NEGATIVE)) {
-      List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-      for (String fattyAcidFormula : fattyAcidFormulas) {
-        Double mzExact = FormulaUtils.calculateExactMass(fattyAcidFormula)
+      for (int i = 0; i < FATTY_ACIDS.masses.length; i++) {
+        double mzExact = FATTY_ACIDS.masses[i]
             + IonizationType.NEGATIVE_HYDROGEN.getAddedMass();
         if (mzTolRangeMSMS.contains(mzExact)) {
-          int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-          int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
+          int chainLength = FATTY_ACIDS.chainLengths[i];
+          int numberOfDoubleBonds = FATTY_ACIDS.doubleBonds[i];
           return new LipidFragment(rule.getLipidFragmentationRuleType(),
               rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
               lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -193,17 +222,14 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAcylChainFragmentNL(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-    List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    for (String fattyAcidFormula : fattyAcidFormulas) {
-      Double mzFattyAcid = FormulaUtils.calculateExactMass(fattyAcidFormula);
-      Double mzExact = mzPrecursorExact - mzFattyAcid;
+      Scan msMsScan, double lipidMass) {
+    double mzPrecursorExact = lipidMass + rule.getIonizationType().getAddedMass();
+    for (int i = 0; i < FATTY_ACIDS.masses.length; i++) {
+      double mzFattyAcid = FATTY_ACIDS.masses[i];
+      double mzExact = mzPrecursorExact - mzFattyAcid;
       if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
+        int chainLength = FATTY_ACIDS.chainLengths[i];
+        int numberOfDoubleBonds = FATTY_ACIDS.doubleBonds[i];
         return new LipidFragment(rule.getLipidFragmentationRuleType(),
             rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
             lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -216,19 +242,18 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAcylChainMinusFormulaFragment(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     if (rule.getPolarityType().equals(PolarityType.NEGATIVE)) {
       String fragmentFormula = rule.getMolecularFormula();
-      Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-      List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-      for (String fattyAcidFormula : fattyAcidFormulas) {
+      double mzFragmentExact = getExactMass(fragmentFormula);
+      for (int i = 0; i < FATTY_ACIDS.masses.length; i++) {
 //        @Ansgar the result is not used and the method itself is buggy as hell - please write a test
 //        FormulaUtils.ionizeFormula(fattyAcidFormula, IonizationType.NEGATIVE_HYDROGEN, 1);
-        Double mzExact = FormulaUtils.calculateExactMass(fattyAcidFormula) - mzFragmentExact;
+        double mzExact = FATTY_ACIDS.masses[i] - mzFragmentExact;
         if (mzTolRangeMSMS.contains(mzExact)) {
-          int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-          int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
+          int chainLength = FATTY_ACIDS.chainLengths[i];
+          int numberOfDoubleBonds = FATTY_ACIDS.doubleBonds[i];
           return new LipidFragment(rule.getLipidFragmentationRuleType(),
               rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
               lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -241,20 +266,16 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAcylChainMinusFormulaFragmentNL(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     String fragmentFormula = rule.getMolecularFormula();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    for (String fattyAcidFormula : fattyAcidFormulas) {
-      Double mzExact =
-          mzPrecursorExact - FormulaUtils.calculateExactMass(fattyAcidFormula) - mzFragmentExact;
+    double mzPrecursorExact = lipidMass + rule.getIonizationType().getAddedMass();
+    double mzFragmentExact = getExactMass(fragmentFormula);
+    for (int i = 0; i < FATTY_ACIDS.masses.length; i++) {
+      double mzExact = mzPrecursorExact - FATTY_ACIDS.masses[i] - mzFragmentExact;
       if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
+        int chainLength = FATTY_ACIDS.chainLengths[i];
+        int numberOfDoubleBonds = FATTY_ACIDS.doubleBonds[i];
         return new LipidFragment(rule.getLipidFragmentationRuleType(),
             rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
             lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -266,17 +287,16 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAcylChainPlusFormulaFragment(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    for (String fattyAcidFormula : fattyAcidFormulas) {
-      Double mzExact = FormulaUtils.calculateExactMass(fattyAcidFormula) + mzFragmentExact;
+    double mzFragmentExact = getExactMass(fragmentFormula);
+    for (int i = 0; i < FATTY_ACIDS.masses.length; i++) {
+      double mzExact = FATTY_ACIDS.masses[i] + mzFragmentExact;
       mzExact = ionizeFragmentBasedOnPolarity(mzExact, rule.getPolarityType());
       if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
+        int chainLength = FATTY_ACIDS.chainLengths[i];
+        int numberOfDoubleBonds = FATTY_ACIDS.doubleBonds[i];
         return new LipidFragment(rule.getLipidFragmentationRuleType(),
             rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
             lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -288,20 +308,16 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAcylChainPlusFormulaFragmentNL(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     String fragmentFormula = rule.getMolecularFormula();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    for (String fattyAcidFormula : fattyAcidFormulas) {
-      Double mzExact =
-          mzPrecursorExact - FormulaUtils.calculateExactMass(fattyAcidFormula) + mzFragmentExact;
+    double mzPrecursorExact = lipidMass + rule.getIonizationType().getAddedMass();
+    double mzFragmentExact = getExactMass(fragmentFormula);
+    for (int i = 0; i < FATTY_ACIDS.masses.length; i++) {
+      double mzExact = mzPrecursorExact - FATTY_ACIDS.masses[i] + mzFragmentExact;
       if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
+        int chainLength = FATTY_ACIDS.chainLengths[i];
+        int numberOfDoubleBonds = FATTY_ACIDS.doubleBonds[i];
         return new LipidFragment(rule.getLipidFragmentationRuleType(),
             rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
             lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -313,17 +329,15 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForTwoAcylChainsPlusFormulaFragment(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> fattyAcidFormulasOne = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    List<String> fattyAcidFormulasTwo = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    for (int i = 0; i < fattyAcidFormulasOne.size(); i++) {
-      Double mzFattyAcidOne = FormulaUtils.calculateExactMass(fattyAcidFormulasOne.get(i));
-      for (int j = 0; j < fattyAcidFormulasTwo.size(); j++) {
-        Double mzFattyAcidTwo = FormulaUtils.calculateExactMass(fattyAcidFormulasTwo.get(j));
-        Double mzExact = mzFattyAcidOne + mzFattyAcidTwo + mzFragmentExact;
+    double mzFragmentExact = getExactMass(fragmentFormula);
+    for (int i = 0; i < FATTY_ACIDS.masses.length; i++) {
+      double mzFattyAcidOne = FATTY_ACIDS.masses[i];
+      for (int j = 0; j < FATTY_ACIDS.masses.length; j++) {
+        double mzFattyAcidTwo = FATTY_ACIDS.masses[j];
+        double mzExact = mzFattyAcidOne + mzFattyAcidTwo + mzFragmentExact;
         mzExact = ionizeFragmentBasedOnPolarity(mzExact, rule.getPolarityType());
         if (mzTolRangeMSMS.contains(mzFattyAcidOne + mzFattyAcidTwo + mzFragmentExact)) {
           return new LipidFragment(rule.getLipidFragmentationRuleType(),
@@ -338,15 +352,13 @@ public class MSMSLipidTools {
   // Alkyl Chains
   private LipidFragment checkForAlkylChainFragment(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    for (String chainFormula : chainFormulas) {
-      Double mzExact = FormulaUtils.calculateExactMass(chainFormula);
+      Scan msMsScan, double lipidMass) {
+    for (int i = 0; i < HYDROCARBONS.masses.length; i++) {
+      double mzExact = HYDROCARBONS.masses[i];
       mzExact = ionizeFragmentBasedOnPolarity(mzExact, rule.getPolarityType());
       if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
+        int chainLength = HYDROCARBONS.chainLengths[i];
+        int numberOfDoubleBonds = HYDROCARBONS.doubleBonds[i];
         return new LipidFragment(rule.getLipidFragmentationRuleType(),
             rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
             lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -358,18 +370,14 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAlkylChainFragmentNL(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    for (String chainFormula : chainFormulas) {
-      Double mzFattyAcid = FormulaUtils.calculateExactMass(chainFormula);
-      Double mzExact = mzPrecursorExact - mzFattyAcid;
+      Scan msMsScan, double lipidMass) {
+    double mzPrecursorExact = lipidMass + rule.getIonizationType().getAddedMass();
+    for (int i = 0; i < HYDROCARBONS.masses.length; i++) {
+      double mzFattyAcid = HYDROCARBONS.masses[i];
+      double mzExact = mzPrecursorExact - mzFattyAcid;
       if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
+        int chainLength = HYDROCARBONS.chainLengths[i];
+        int numberOfDoubleBonds = HYDROCARBONS.doubleBonds[i];
         return new LipidFragment(rule.getLipidFragmentationRuleType(),
             rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
             lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -381,18 +389,17 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAlkylChainMinusFormulaFragment(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     if (rule.getPolarityType().equals(PolarityType.NEGATIVE)) {
       String fragmentFormula = rule.getMolecularFormula();
-      Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-      List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-      for (String chainFormula : chainFormulas) {
-        Double mzExact = FormulaUtils.calculateExactMass(
-            chainFormula + IonizationType.NEGATIVE_HYDROGEN.getAddedMass()) - mzFragmentExact;
+      double mzFragmentExact = getExactMass(fragmentFormula);
+      for (int i = 0; i < HYDROCARBONS.masses.length; i++) {
+        // the formula parser ignored the [M-H]- mass that was appended to the chain formula
+        double mzExact = HYDROCARBONS.masses[i] - mzFragmentExact;
         if (mzTolRangeMSMS.contains(mzExact)) {
-          int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-          int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
+          int chainLength = HYDROCARBONS.chainLengths[i];
+          int numberOfDoubleBonds = HYDROCARBONS.doubleBonds[i];
           return new LipidFragment(rule.getLipidFragmentationRuleType(),
               rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
               lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -405,20 +412,16 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAlkylChainMinusFormulaFragmentNL(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     String fragmentFormula = rule.getMolecularFormula();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    for (String chainFormula : chainFormulas) {
-      Double mzExact =
-          mzPrecursorExact - FormulaUtils.calculateExactMass(chainFormula) - mzFragmentExact;
+    double mzPrecursorExact = lipidMass + rule.getIonizationType().getAddedMass();
+    double mzFragmentExact = getExactMass(fragmentFormula);
+    for (int i = 0; i < HYDROCARBONS.masses.length; i++) {
+      double mzExact = mzPrecursorExact - HYDROCARBONS.masses[i] - mzFragmentExact;
       if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
+        int chainLength = HYDROCARBONS.chainLengths[i];
+        int numberOfDoubleBonds = HYDROCARBONS.doubleBonds[i];
         return new LipidFragment(rule.getLipidFragmentationRuleType(),
             rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
             lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -430,17 +433,16 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAlkylChainPlusFormulaFragment(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    for (String chainFormula : chainFormulas) {
-      Double mzExact = FormulaUtils.calculateExactMass(chainFormula) + mzFragmentExact;
+    double mzFragmentExact = getExactMass(fragmentFormula);
+    for (int i = 0; i < HYDROCARBONS.masses.length; i++) {
+      double mzExact = HYDROCARBONS.masses[i] + mzFragmentExact;
       mzExact = ionizeFragmentBasedOnPolarity(mzExact, rule.getPolarityType());
       if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
+        int chainLength = HYDROCARBONS.chainLengths[i];
+        int numberOfDoubleBonds = HYDROCARBONS.doubleBonds[i];
         return new LipidFragment(rule.getLipidFragmentationRuleType(),
             rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
             lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -452,20 +454,16 @@ public class MSMSLipidTools {
 
   private LipidFragment checkForAlkylChainPlusFormulaFragmentNL(LipidFragmentationRule rule,
       Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
+      Scan msMsScan, double lipidMass) {
 
     String fragmentFormula = rule.getMolecularFormula();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    for (String chainFormula : chainFormulas) {
-      Double mzExact =
-          mzPrecursorExact - FormulaUtils.calculateExactMass(chainFormula) + mzFragmentExact;
+    double mzPrecursorExact = lipidMass + rule.getIonizationType().getAddedMass();
+    double mzFragmentExact = getExactMass(fragmentFormula);
+    for (int i = 0; i < HYDROCARBONS.masses.length; i++) {
+      double mzExact = mzPrecursorExact - HYDROCARBONS.masses[i] + mzFragmentExact;
       if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
+        int chainLength = HYDROCARBONS.chainLengths[i];
+        int numberOfDoubleBonds = HYDROCARBONS.doubleBonds[i];
         return new LipidFragment(rule.getLipidFragmentationRuleType(),
             rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
             lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
@@ -475,6 +473,14 @@ public class MSMSLipidTools {
     return null;
   }
 
+  private static double getExactMass(String formula) {
+    return FORMULA_MASSES.computeIfAbsent(formula, FormulaUtils::calculateExactMass);
+  }
+
+  private static double getMzRatio(String formula) {
+    return FORMULA_MZ_RATIOS.computeIfAbsent(formula, FormulaUtils::calculateMzRatio);
+  }
+
   private double ionizeFragmentBasedOnPolarity(Double mzExact, PolarityType polarityType) {
     if (polarityType.equals(PolarityType.NEGATIVE)) {
       return mzExact + IonizationType.NEGATIVE.getAddedMass();
@@ -683,4 +689,27 @@ public class MSMSLipidTools {
         .mapToDouble(DataPoint::getIntensity).sum();
     return (intensityMatchedSignals / intensityAllSignals) * 100;
   }
+
+  /**
+   * Exact masses, chain lengths and double bonds of chain formulas
+   */
+  private static class ChainTable {
+
+    private final double[] masses;
+    private final int[] chainLengths;
+    private final int[] doubleBonds;
+
+    private ChainTable(List<String> formulas) {
+      masses = new double[formulas.size()];
+      chainLengths = new int[formulas.size()];
+      doubleBonds = new int[formulas.size()];
+      for (int i = 0; i < formulas.size(); i++) {
+        String formula = formulas.get(i);
+        masses[i] = FormulaUtils.calculateExactMass(formula);
+        chainLengths[i] = CHAIN_TOOLS.getChainLengthFromFormula(formula);
+        doubleBonds[i] = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(formula);
+      }
+    }
+  }
+
 }
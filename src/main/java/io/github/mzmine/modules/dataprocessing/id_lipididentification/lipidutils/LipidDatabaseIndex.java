@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididentificationtools.LipidFragmentationRule;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidAnnotation;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidClass;
+import io.github.mzmine.util.collections.BinarySearch;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+/**
+ * In-silico species level lipid database with all precursor ions sorted by m/z. Each combination
+ * of a lipid and one of the ionization types of its fragmentation rules is an entry. The
+ * monoisotopic masses are calculated once on creation, so the search for a feature list row is a
+ * binary search for its m/z tolerance range instead of a mass calculation for every lipid.
+ * <p>
+ * Entries are numbered in the order of the database (lipid) and the ionization types within each
+ * lipid. Databases only depend on the lipid classes and chain ranges and are cached across feature
+ * lists and batch steps, see {@link #getOrCreate(ILipidClass[], Range, Range)}. The cache is
+ * cleared at the end of a batch and cached databases are released by the garbage collector when
+ * memory runs low.
+ */
+public class LipidDatabaseIndex {
+
+  private static final Logger logger = Logger.getLogger(LipidDatabaseIndex.class.getName());
+
+  private static final LipidFactory LIPID_FACTORY = new LipidFactory();
+
+  /**
+   * Small number of cached databases - usually all tasks in a batch use the same lipid classes
+   */
+  private static final int MAX_CACHED_INDICES = 8;
+  private static final Cache<DatabaseKey, LipidDatabaseIndex> CACHE = CacheBuilder.newBuilder()
+      .concurrencyLevel(1).maximumSize(MAX_CACHED_INDICES).softValues().build();
+
+  private final ILipidAnnotation[] lipids;
+  /**
+   * Neutral monoisotopic mass of each lipid
+   */
+  private final double[] lipidMasses;
+
+  // per entry in database order
+  private final int[] entryLipids;
+  private final IonizationType[] entryIonizations;
+  private final double[] entryMzs;
+
+  // all entries sorted by m/z
+  private final double[] sortedMzs;
+  private final int[] sortedEntries;
+
+  private LipidDatabaseIndex(@NotNull DatabaseKey key) {
+    Set<ILipidAnnotation> database = new LinkedHashSet<>();
+    for (ILipidClass lipidClass : key.lipidClasses()) {
+      buildLipidCombinations(database, lipidClass, key);
+    }
+    lipids = database.toArray(ILipidAnnotation[]::new);
+    lipidMasses = new double[lipids.length];
+
+    IntArrayList lipidIndices = new IntArrayList();
+    List<IonizationType> ionizations = new ArrayList<>();
+    DoubleArrayList mzs = new DoubleArrayList();
+    for (int i = 0; i < lipids.length; i++) {
+      lipidMasses[i] = MolecularFormulaManipulator.getMass(lipids[i].getMolecularFormula(),
+          AtomContainerManipulator.MonoIsotopic);
+
+      // one entry for each ionization type of the fragmentation rules
+      Set<IonizationType> lipidIonizations = new LinkedHashSet<>();
+      for (LipidFragmentationRule rule : lipids[i].getLipidClass().getFragmentationRules()) {
+        lipidIonizations.add(rule.getIonizationType());
+      }
+      for (IonizationType ionization : lipidIonizations) {
+        lipidIndices.add(i);
+        ionizations.add(ionization);
+        mzs.add(lipidMasses[i] + ionization.getAddedMass());
+      }
+    }
+    entryLipids = lipidIndices.toIntArray();
+    entryIonizations = ionizations.toArray(IonizationType[]::new);
+    entryMzs = mzs.toDoubleArray();
+
+    sortedEntries = new int[entryMzs.length];
+    Arrays.setAll(sortedEntries, i -> i);
+    IntArrays.quickSort(sortedEntries, (a, b) -> Double.compare(entryMzs[a], entryMzs[b]));
+    sortedMzs = new double[sortedEntries.length];
+    for (int i = 0; i < sortedEntries.length; i++) {
+      sortedMzs[i] = entryMzs[sortedEntries[i]];
+    }
+
+    logger.fine(() -> "Created lipid database with %d lipids and %d ions".formatted(lipids.length,
+        entryMzs.length));
+  }
+
+  /**
+   * Returns a cached database for these lipid classes and chain ranges or creates a new one.
+   *
+   * @param lipidClasses      all selected lipid classes including custom lipid classes
+   * @param chainLengthRange  range of the total number of carbons in the chains
+   * @param doubleBondRange   range of the total number of double bonds in the chains
+   * @return the database
+   */
+  @NotNull
+  public static LipidDatabaseIndex getOrCreate(@NotNull ILipidClass[] lipidClasses,
+      @NotNull Range<Integer> chainLengthRange, @NotNull Range<Integer> doubleBondRange) {
+    final DatabaseKey key = new DatabaseKey(List.of(lipidClasses),
+        chainLengthRange.lowerEndpoint(), chainLengthRange.upperEndpoint(),
+        doubleBondRange.lowerEndpoint(), doubleBondRange.upperEndpoint());
+    return CACHE.asMap().computeIfAbsent(key, LipidDatabaseIndex::new);
+  }
+
+  /**
+   * Clears all cached databases
+   */
+  public static void clearCache() {
+    CACHE.invalidateAll();
+  }
+
+  private static void buildLipidCombinations(Set<ILipidAnnotation> lipidDatabase,
+      ILipidClass lipidClass, DatabaseKey key) {
+    // Try all combinations of fatty acid lengths and double bonds
+    for (int chainLength = key.minChainLength(); chainLength <= key.maxChainLength();
+        chainLength++) {
+      for (int chainDoubleBonds = key.minDoubleBonds(); chainDoubleBonds <= key.maxDoubleBonds();
+          chainDoubleBonds++) {
+
+        if (chainLength / 2 < chainDoubleBonds || chainLength == 0) {
+          continue;
+        }
+
+        // Prepare a lipid instance
+        ILipidAnnotation lipid = LIPID_FACTORY.buildSpeciesLevelLipid(lipidClass, chainLength,
+            chainDoubleBonds);
+        if (lipid != null) {
+          lipidDatabase.add(lipid);
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds all entries with an ion m/z within the range.
+   *
+   * @return sorted entries, which equals the order of the database and the ionization types
+   */
+  @NotNull
+  public int[] findEntries(@NotNull Range<Double> mzRange) {
+    IntArrayList result = new IntArrayList();
+    final int end = BinarySearch.upperBound(sortedMzs, mzRange.upperEndpoint());
+    for (int i = BinarySearch.lowerBound(sortedMzs, mzRange.lowerEndpoint()); i < end; i++) {
+      if (mzRange.contains(sortedMzs[i])) {
+        result.add(sortedEntries[i]);
+      }
+    }
+    final int[] entries = result.toIntArray();
+    Arrays.sort(entries);
+    return entries;
+  }
+
+  /**
+   * @return index of the lipid of this entry in the database
+   */
+  public int getLipidIndex(int entry) {
+    return entryLipids[entry];
+  }
+
+  @NotNull
+  public ILipidAnnotation getLipid(int entry) {
+    return lipids[entryLipids[entry]];
+  }
+
+  @NotNull
+  public IonizationType getIonization(int entry) {
+    return entryIonizations[entry];
+  }
+
+  /**
+   * @return the ion m/z of this entry
+   */
+  public double getIonMz(int entry) {
+    return entryMzs[entry];
+  }
+
+  /**
+   * @return the neutral monoisotopic mass of the lipid of this entry
+   */
+  public double getLipidMass(int entry) {
+    return lipidMasses[entryLipids[entry]];
+  }
+
+  public int getNumLipids() {
+    return lipids.length;
+  }
+
+  public int getNumEntries() {
+    return entryMzs.length;
+  }
+
+
+  /**
+   * Custom lipid classes do not implement equals and are compared by identity
+   */
+  private record DatabaseKey(List<ILipidClass> lipidClasses, int minChainLength,
+                             int maxChainLength, int minDoubleBonds, int maxDoubleBonds) {
+
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_localcsvsearch;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import io.github.mzmine.datamodel.features.compoundannotations.CompoundDBAnnotation;
+import io.github.mzmine.datamodel.features.types.numbers.NeutralMassType;
+import io.github.mzmine.datamodel.identities.iontype.IonType;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.mobilitytolerance.MobilityTolerance;
+import io.github.mzmine.util.collections.BinarySearch;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Columnar store of all precursor ions of a local compound database. Every compound (line) is
+ * ionized by all adducts of the ion library once and the m/z, RT and mobility of all ions are kept
+ * in primitive arrays sorted by m/z. Feature list rows are matched by a binary search for their
+ * m/z instead of creating and testing annotations for every line. Only ions that pass the same
+ * m/z, RT and mobility pre-check as before are turned into {@link CompoundDBAnnotation}s, see
+ * {@link #getAnnotation(int)}.
+ * <p>
+ * Parsing and ionizing large databases takes longer than the search itself. Indices are therefore
+ * cached across batch steps with the same database content and parsing parameters, see
+ * {@link DatabaseKey}. The cache is cleared at the end of a batch and cached indices are released
+ * by the garbage collector when memory runs low.
+ */
+public class LocalCSVDatabaseIndex {
+
+  private static final Logger logger = Logger.getLogger(LocalCSVDatabaseIndex.class.getName());
+
+  /**
+   * Databases can be large - keep only the most recent ones as soft references
+   */
+  private static final int MAX_CACHED_INDICES = 2;
+  private static final Cache<DatabaseKey, LocalCSVDatabaseIndex> CACHE = CacheBuilder.newBuilder()
+      .concurrencyLevel(1).maximumSize(MAX_CACHED_INDICES).softValues().build();
+
+  // per compound (database line)
+  private final CompoundDBAnnotation[] compounds;
+  @Nullable
+  private final String[] samples;
+  private final IonType[] adducts;
+
+  // per ion sorted by m/z
+  private final double[] mzs;
+  private final float[] rts;
+  private final float[] mobilities;
+  private final int[] compoundIndices;
+  /**
+   * Index in {@link #adducts} or -1 if the compound is used as it is
+   */
+  private final int[] adductIndices;
+
+  /**
+   * @param compounds all compounds of the database
+   * @param samples   the sample name of each compound or null if samples are not filtered
+   * @param adducts   compounds are ionized by all adducts. An empty list uses the precursor m/z of
+   *                  the compounds
+   */
+  LocalCSVDatabaseIndex(@NotNull List<CompoundDBAnnotation> compounds,
+      @Nullable List<String> samples, @NotNull List<IonType> adducts) {
+    this.compounds = compounds.toArray(CompoundDBAnnotation[]::new);
+    this.samples = samples == null ? null : samples.toArray(String[]::new);
+    this.adducts = adducts.stream()
+        .filter(adduct -> !(adduct.isUndefinedAdduct() || adduct.isUndefinedAdductParent()
+                            || adduct.getName().contains("?"))).toArray(IonType[]::new);
+
+    final DoubleArrayList mzList = new DoubleArrayList();
+    final FloatArrayList rtList = new FloatArrayList();
+    final FloatArrayList mobilityList = new FloatArrayList();
+    final IntArrayList compoundList = new IntArrayList();
+    final IntArrayList adductList = new IntArrayList();
+    int missingMass = 0;
+    for (int c = 0; c < this.compounds.length; c++) {
+      final CompoundDBAnnotation compound = this.compounds[c];
+      final float rt = compound.getRT() != null ? compound.getRT() : Float.NaN;
+      final float mobility = compound.getMobility() != null ? compound.getMobility() : Float.NaN;
+
+      if (this.adducts.length == 0) {
+        final Double mz = compound.getPrecursorMZ();
+        if (mz == null) {
+          missingMass++;
+          continue;
+        }
+        mzList.add(mz);
+        rtList.add(rt);
+        mobilityList.add(mobility);
+        compoundList.add(c);
+        adductList.add(-1);
+        continue;
+      }
+
+      // calculate the neutral mass once for all adducts
+      final Double neutralMass = getNeutralMass(compound);
+      if (neutralMass == null) {
+        missingMass++;
+        continue;
+      }
+      for (int a = 0; a < this.adducts.length; a++) {
+        mzList.add(this.adducts[a].getMZ(neutralMass));
+        rtList.add(rt);
+        mobilityList.add(mobility);
+        compoundList.add(c);
+        adductList.add(a);
+      }
+    }
+
+    // sort all columns by m/z
+    final int[] order = new int[mzList.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    IntArrays.quickSort(order, (a, b) -> Double.compare(mzList.getDouble(a), mzList.getDouble(b)));
+    mzs = new double[order.length];
+    rts = new float[order.length];
+    mobilities = new float[order.length];
+    compoundIndices = new int[order.length];
+    adductIndices = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      mzs[i] = mzList.getDouble(order[i]);
+      rts[i] = rtList.getFloat(order[i]);
+      mobilities[i] = mobilityList.getFloat(order[i]);
+      compoundIndices[i] = compoundList.getInt(order[i]);
+      adductIndices[i] = adductList.getInt(order[i]);
+    }
+
+    if (missingMass > 0) {
+      logger.warning(
+          "Cannot determine the m/z of %d compounds in the database (requires precursor m/z, neutral mass, formula or smiles)".formatted(
+              missingMass));
+    }
+    logger.fine(() -> "Created database index with %d compounds and %d ions".formatted(
+        this.compounds.length, mzs.length));
+  }
+
+  /**
+   * The neutral mass is stored in the compound like in
+   * {@link CompoundDBAnnotation#calcMzForAdduct(CompoundDBAnnotation, IonType)} so that the
+   * ionized annotations are equal to the ones created by
+   * {@link CompoundDBAnnotation#ionize(IonType)}.
+   */
+  @Nullable
+  private static Double getNeutralMass(@NotNull CompoundDBAnnotation compound) {
+    Double neutralMass = compound.get(NeutralMassType.class);
+    if (neutralMass != null) {
+      return neutralMass;
+    }
+    try {
+      neutralMass = CompoundDBAnnotation.calcNeutralMass(compound);
+    } catch (Exception e) {
+      logger.log(Level.FINE, "Cannot calculate neutral mass of " + compound.getCompoundName(), e);
+      return null;
+    }
+    if (neutralMass != null) {
+      compound.put(NeutralMassType.class, neutralMass);
+    }
+    return neutralMass;
+  }
+
+  @Nullable
+  static LocalCSVDatabaseIndex getCached(@NotNull DatabaseKey key) {
+    return CACHE.getIfPresent(key);
+  }
+
+  static void putCached(@NotNull DatabaseKey key, @NotNull LocalCSVDatabaseIndex index) {
+    CACHE.put(key, index);
+  }
+
+  /**
+   * Clears all cached indices
+   */
+  public static void clearCache() {
+    CACHE.invalidateAll();
+  }
+
+  /**
+   * Finds all ions that match a row in the pre-check of the local database search. The tolerances
+   * are applied around the ion values (not the row values).
+   *
+   * @param mz       row m/z
+   * @param rt       row RT or null to skip the RT check
+   * @param mobility row mobility or null to skip the mobility check
+   * @return ion indices
+   */
+  @NotNull
+  int[] findCandidates(double mz, @Nullable Float rt, @Nullable Float mobility,
+      @NotNull MZTolerance mzTolerance, @Nullable RTTolerance rtTolerance,
+      @Nullable MobilityTolerance mobTolerance) {
+    // the tolerance of the ion m/z may be slightly larger than the one of the row m/z
+    final double maxTolerance = 2 * mzTolerance.getMzToleranceForMass(mz);
+    final IntArrayList candidates = new IntArrayList();
+    final int end = BinarySearch.upperBound(mzs, mz + maxTolerance);
+    for (int i = BinarySearch.lowerBound(mzs, mz - maxTolerance); i < end; i++) {
+      if (!mzTolerance.getToleranceRange(mzs[i]).contains(mz)) {
+        continue;
+      }
+      if (rt != null && rtTolerance != null && !Float.isNaN(rts[i])
+          && !rtTolerance.getToleranceRange(rts[i]).contains(rt)) {
+        continue;
+      }
+      if (mobility != null && mobTolerance != null && !Float.isNaN(mobilities[i])
+          && !mobTolerance.getToleranceRange(mobilities[i]).contains(mobility)) {
+        continue;
+      }
+      candidates.add(i);
+    }
+    return candidates.toIntArray();
+  }
+
+  /**
+   * @return the compound or a new ionized annotation of the compound
+   */
+  @NotNull
+  CompoundDBAnnotation getAnnotation(int ion) {
+    final CompoundDBAnnotation compound = compounds[compoundIndices[ion]];
+    final int adduct = adductIndices[ion];
+    return adduct < 0 ? compound : compound.ionize(adducts[adduct]);
+  }
+
+  /**
+   * @return the sample name of the compound of this ion or null if samples are not filtered
+   */
+  @Nullable
+  String getSample(int ion) {
+    return samples == null ? null : samples[compoundIndices[ion]];
+  }
+
+  int getNumCompounds() {
+    return compounds.length;
+  }
+
+  int getNumIons() {
+    return mzs.length;
+  }
+
+
+  /**
+   * Identifies a database by the hash of its file content and all parameters that change the parsed
+   * compounds. Hashing reads the file once, which is much faster than parsing and ionizing it.
+   *
+   * @param contentHash SHA-256 hash of the database file
+   * @param settings    all parsing parameters as a string
+   * @param adducts     adducts of the ion library or an empty list
+   */
+  record DatabaseKey(String contentHash, String settings, List<IonType> adducts) {
+
+    DatabaseKey(@NotNull File file, @NotNull String settings, @NotNull List<IonType> adducts)
+        throws IOException {
+      this(Files.asByteSource(file).hash(Hashing.sha256()).toString(), settings,
+          List.copyOf(adducts));
+    }
+  }
+}
@@ -26,7 +26,6 @@
 package io.github.mzmine.modules.dataprocessing.id_localcsvsearch;
 
 import com.Ostermiller.util.CSVParser;
-import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
@@ -49,8 +48,10 @@ import io.github.mzmine.datamodel.features.types.numbers.MobilityType;
 import io.github.mzmine.datamodel.features.types.numbers.NeutralMassType;
 import io.github.mzmine.datamodel.features.types.numbers.PrecursorMZType;
 import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.datamodel.identities.iontype.IonType;
 import io.github.mzmine.datamodel.identities.iontype.IonTypeParser;
 import io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking.IonNetworkLibrary;
+import io.github.mzmine.modules.dataprocessing.id_localcsvsearch.LocalCSVDatabaseIndex.DatabaseKey;
 import io.github.mzmine.modules.dataprocessing.id_onlinecompounddb.OnlineDatabases;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.ImportType;
@@ -61,25 +62,23 @@ import io.github.mzmine.parameters.parametertypes.tolerances.mobilitytolerance.M
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.CSVParsingUtils;
-import io.github.mzmine.util.FeatureListRowSorter;
-import io.github.mzmine.util.FeatureListUtils;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
-import javafx.collections.transformation.SortedList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -123,11 +122,10 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
   private final IonLibraryParameterSet ionLibraryParameterSet;
   private final Boolean filterSamples;
   private final String sampleHeader;
-  private final List<RawDataFile> allRawDataFiles;
   private IonNetworkLibrary ionNetworkLibrary;
 
-  private String[][] databaseValues;
-  private int finishedLines = 0;
+  private final AtomicInteger processedRows = new AtomicInteger(0);
+  private int totalRows;
   private int sampleColIndex = -1;
 
   LocalCSVDatabaseSearchTask(FeatureList[] featureLists, ParameterSet parameters,
@@ -155,18 +153,14 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
     filterSamples = parameters.getValue(LocalCSVDatabaseSearchParameters.filterSamples);
     sampleHeader = parameters.getEmbeddedParameterValueIfSelectedOrElse(
         LocalCSVDatabaseSearchParameters.filterSamples, null);
-
-    // all raw data files for a name check if selected
-    allRawDataFiles = Arrays.stream(featureLists).map(FeatureList::getRawDataFiles)
-        .flatMap(Collection::stream).distinct().toList();
   }
 
   @Override
   public double getFinishedPercentage() {
-    if (databaseValues == null) {
+    if (totalRows == 0) {
       return 0;
     }
-    return ((double) finishedLines) / databaseValues.length;
+    return processedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -178,74 +172,35 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
   public void run() {
     setStatus(TaskStatus.PROCESSING);
 
-    try (BufferedReader dbFileReader = new BufferedReader(new FileReader(dataBaseFile))) {
-      // read database contents in memory
-      databaseValues = CSVParser.parse(dbFileReader,
-          "\\t".equals(fieldSeparator) ? '\t' : fieldSeparator.charAt(0));
-    } catch (Exception e) {
-      logger.log(Level.WARNING, "Could not read file " + dataBaseFile, e);
-      setStatus(TaskStatus.ERROR);
-      setErrorMessage(e.getMessage());
-      return;
-    }
-
     try {
       ionNetworkLibrary =
           ionLibraryParameterSet != null ? new IonNetworkLibrary(ionLibraryParameterSet,
               mzTolerance) : null;
 
-      final StringProperty error = new SimpleStringProperty();
-      final List<ImportType> lineIds = CSVParsingUtils.findLineIds(importTypes, databaseValues[0],
-          error);
-      if (lineIds == null) {
-        setErrorMessage(error.get());
-        setStatus(TaskStatus.ERROR);
-        return;
-      }
-
-      // option to read more fields and append to comment as json
-      List<ImportType> commentFields = extractCommentFields();
-      if (commentFields == null) {
-        setStatus(TaskStatus.ERROR);
+      final LocalCSVDatabaseIndex database = getOrReadDatabase();
+      if (database == null || isCanceled()) {
         return;
       }
 
-      // sample header index
-      if (filterSamples) {
-        sampleColIndex = getHeaderColumnIndex(databaseValues[0], sampleHeader);
-        if (sampleColIndex == -1) {
-          setErrorMessage("Sample header " + sampleHeader + " not found");
-          setStatus(TaskStatus.ERROR);
-          return;
-        }
-      }
-
-      // extract rows and sort by mz for binary search
-      var mzSortedRows = Arrays.stream(featureLists)
-          .map(flist -> flist.getRows().sorted(FeatureListRowSorter.MZ_ASCENDING)).toList();
-
-      // finished header
-      finishedLines++;
-      for (; finishedLines < databaseValues.length; finishedLines++) {
+      // annotate all rows in parallel - each row is only changed by one thread
+      totalRows = Arrays.stream(featureLists).mapToInt(FeatureList::getNumberOfRows).sum();
+      for (final FeatureList flist : featureLists) {
+        // not all feature lists have all samples
+        final List<RawDataFile> rawFiles = flist.getRawDataFiles();
+        final Map<String, Boolean> sampleMatches = new ConcurrentHashMap<>();
+        flist.getRows().parallelStream().forEach(row -> {
+          if (!isCanceled()) {
+            annotateRow(database, row, rawFiles, sampleMatches);
+          }
+          processedRows.incrementAndGet();
+        });
         if (isCanceled()) {
           return;
         }
-        try {
-          String[] currentLine = databaseValues[finishedLines];
-          // check already once for all raw data files
-          if (filterSamples && !matchSample(allRawDataFiles, currentLine[sampleColIndex])) {
-            // sample mismatch for this line
-            continue;
-          }
-
-          processOneLine(mzSortedRows, currentLine, lineIds, commentFields);
-        } catch (Exception e) {
-          logger.log(Level.FINE, "Exception while processing csv line " + finishedLines, e);
-        }
       }
 
-      for (final SortedList<FeatureListRow> flist : mzSortedRows) {
-        for (final FeatureListRow row : flist) {
+      for (final FeatureList flist : featureLists) {
+        for (final FeatureListRow row : flist.getRows()) {
           var matches = row.getCompoundAnnotations().stream().sorted()
               .collect(Collectors.toCollection(ArrayList::new));
           if (matches.isEmpty()) {
@@ -273,12 +228,108 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
 
   }
 
+  /**
+   * Uses the cached index of the same database file and parameters or reads the database.
+   *
+   * @return the database index or null on error
+   */
+  @Nullable
+  private LocalCSVDatabaseIndex getOrReadDatabase() throws IOException {
+    final List<IonType> adducts =
+        ionNetworkLibrary != null ? ionNetworkLibrary.getAllAdducts() : List.of();
+    final String settings = fieldSeparator + ";" + importTypes.stream()
+        .filter(ImportType::isSelected)
+        .map(type -> type.getCsvColumnName() + "=" + type.getDataType().getUniqueID())
+        .collect(Collectors.joining(",")) + ";" + parameters.getValue(
+        LocalCSVDatabaseSearchParameters.commentFields) + ";" + (filterSamples ? sampleHeader : "");
+    final DatabaseKey key = new DatabaseKey(dataBaseFile, settings, adducts);
+
+    final LocalCSVDatabaseIndex cached = LocalCSVDatabaseIndex.getCached(key);
+    if (cached != null) {
+      logger.fine(() -> "Using cached index of database " + dataBaseFile);
+      return cached;
+    }
+
+    final LocalCSVDatabaseIndex database = readDatabase(adducts);
+    if (database != null) {
+      LocalCSVDatabaseIndex.putCached(key, database);
+    }
+    return database;
+  }
+
+  /**
+   * Parses the database line by line into compounds
+   *
+   * @return the database index or null on error
+   */
+  @Nullable
+  private LocalCSVDatabaseIndex readDatabase(@NotNull List<IonType> adducts) throws IOException {
+    try (BufferedReader dbFileReader = new BufferedReader(new FileReader(dataBaseFile))) {
+      final CSVParser parser = new CSVParser(dbFileReader,
+          "\\t".equals(fieldSeparator) ? '\t' : fieldSeparator.charAt(0));
+      final String[] header = parser.getLine();
+      if (header == null) {
+        setErrorMessage("Database file " + dataBaseFile + " is empty");
+        setStatus(TaskStatus.ERROR);
+        return null;
+      }
+
+      final StringProperty error = new SimpleStringProperty();
+      final List<ImportType> lineIds = CSVParsingUtils.findLineIds(importTypes, header, error);
+      if (lineIds == null) {
+        setErrorMessage(error.get());
+        setStatus(TaskStatus.ERROR);
+        return null;
+      }
+
+      // option to read more fields and append to comment as json
+      List<ImportType> commentFields = extractCommentFields(header);
+      if (commentFields == null) {
+        setStatus(TaskStatus.ERROR);
+        return null;
+      }
+
+      // sample header index
+      if (filterSamples) {
+        sampleColIndex = getHeaderColumnIndex(header, sampleHeader);
+        if (sampleColIndex == -1) {
+          setErrorMessage("Sample header " + sampleHeader + " not found");
+          setStatus(TaskStatus.ERROR);
+          return null;
+        }
+      }
+
+      final List<CompoundDBAnnotation> compounds = new ArrayList<>();
+      final List<String> samples = filterSamples ? new ArrayList<>() : null;
+      String[] values;
+      // line 0 is the header
+      int lineNumber = 1;
+      while ((values = parser.getLine()) != null) {
+        if (isCanceled()) {
+          return null;
+        }
+        try {
+          final String sample = filterSamples ? values[sampleColIndex] : null;
+          compounds.add(getCompoundFromLine(values, lineIds, commentFields));
+          if (samples != null) {
+            samples.add(sample);
+          }
+        } catch (Exception e) {
+          logger.log(Level.FINE, "Exception while processing csv line " + lineNumber, e);
+        }
+        lineNumber++;
+      }
+
+      return new LocalCSVDatabaseIndex(compounds, samples, adducts);
+    }
+  }
+
   /**
    * @return The list of comment fields if the fields were found successfully. Empty list if no
    * extra comments were selected. Null on error.
    */
   @Nullable
-  private List<ImportType> extractCommentFields() {
+  private List<ImportType> extractCommentFields(@NotNull String[] header) {
     List<ImportType> commentFields = new ArrayList<>();
     final String appendComments = parameters.getValue(
         LocalCSVDatabaseSearchParameters.commentFields);
@@ -288,7 +339,7 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
           .map(s -> new ImportType(true, s, type)).toList();
       if (!commentFields.isEmpty()) {
         final SimpleStringProperty error = new SimpleStringProperty();
-        commentFields = CSVParsingUtils.findLineIds(commentFields, databaseValues[0], error);
+        commentFields = CSVParsingUtils.findLineIds(commentFields, header, error);
         if (commentFields == null) {
           setErrorMessage(error.get());
         }
@@ -303,77 +354,31 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
   }
 
   /**
-   * @param mzSortedRows     rows per feature list sorted by mz
-   * @param values           csv values to be parsed into annotation
-   * @param linesWithIndices columns
-   * @param commentFields    comment fields that are put together into the comment
+   * Matches all candidate compounds of the database to this row
+   *
+   * @param rawFiles      raw data files of the feature list of this row
+   * @param sampleMatches cached sample name checks of the feature list
    */
-  @SuppressWarnings("ResultOfMethodCallIgnored")
-  private void processOneLine(final List<SortedList<FeatureListRow>> mzSortedRows,
-      @NotNull String[] values, @NotNull List<ImportType> linesWithIndices,
-      @NotNull final List<ImportType> commentFields) {
-
-    final List<CompoundDBAnnotation> annotations = getCompoundDBAnnotations(values,
-        linesWithIndices, commentFields);
+  private void annotateRow(@NotNull LocalCSVDatabaseIndex database, @NotNull FeatureListRow row,
+      @NotNull List<RawDataFile> rawFiles, @NotNull Map<String, Boolean> sampleMatches) {
+    // CCS is still missing here but will be tested later
+    final int[] candidates = database.findCandidates(row.getAverageMZ(), row.getAverageRT(),
+        row.getAverageMobility(), mzTolerance, rtTolerance, mobTolerance);
 
-    IntStream indexStream = IntStream.range(0, featureLists.length);
-    if (featureLists.length > 1000) {
-      indexStream.parallel();
-    }
-    // not all feature lists have all samples
-    indexStream.forEach(i -> {
-      var rawFiles = featureLists[i].getRawDataFiles();
+    for (int ion : candidates) {
       //  if active, check sample name contains id - this time for the feature list
-      if (!filterSamples || matchSample(rawFiles, values[sampleColIndex])) {
-        var sortedRows = mzSortedRows.get(i);
-
-        for (CompoundDBAnnotation annotation : annotations) {
-          List<FeatureListRow> candidates = binarySearchCandidates(sortedRows, annotation);
-
-          for (FeatureListRow row : candidates) {
-            checkMatchAndAnnotate(annotation, row, mzTolerance, rtTolerance, mobTolerance,
-                ccsTolerance);
-          }
-        }
+      final String sample = database.getSample(ion);
+      if (sample != null && !sampleMatches.computeIfAbsent(sample,
+          s -> matchSample(rawFiles, s))) {
+        continue;
+      }
+      try {
+        checkMatchAndAnnotate(database.getAnnotation(ion), row, mzTolerance, rtTolerance,
+            mobTolerance, ccsTolerance);
+      } catch (Exception e) {
+        logger.log(Level.FINE, "Exception while matching database entry to row " + row.getID(), e);
       }
-    });
-  }
-
-  @NotNull
-  private List<FeatureListRow> binarySearchCandidates(final SortedList<FeatureListRow> mzSortedRows,
-      final CompoundDBAnnotation annotation) {
-    // ranges are build with prechecks - so if there is no mobility use Range.all() to deactivate the filter
-    Double mz = annotation.getPrecursorMZ();
-    assert mz != null;
-    final Float rt = annotation.getRT();
-    final Float mobility = annotation.getMobility();
-    var mzRange = mzTolerance.getToleranceRange(mz);
-    Range<Float> rtRange =
-        rtTolerance != null && rt != null ? rtTolerance.getToleranceRange(rt) : Range.all();
-    Range<Float> mobilityRange =
-        mobTolerance != null && mobility != null ? mobTolerance.getToleranceRange(mobility)
-            : Range.all();
-
-    // get all canditates with binary search
-    // CCS is still missing here but will be tested later
-    return FeatureListUtils.getCandidatesWithinRanges(mzRange, rtRange, mobilityRange, mzSortedRows,
-        true);
-  }
-
-  @NotNull
-  private List<CompoundDBAnnotation> getCompoundDBAnnotations(final @NotNull String[] values,
-      final @NotNull List<ImportType> linesWithIndices,
-      final @NotNull List<ImportType> commentFields) {
-    final CompoundDBAnnotation baseAnnotation = getCompoundFromLine(values, linesWithIndices,
-        commentFields);
-    final List<CompoundDBAnnotation> annotations = new ArrayList<>();
-    if (ionNetworkLibrary != null) {
-      annotations.addAll(
-          CompoundDBAnnotation.buildCompoundsWithAdducts(baseAnnotation, ionNetworkLibrary));
-    } else {
-      annotations.add(baseAnnotation);
     }
-    return annotations;
   }
 
   private void checkMatchAndAnnotate(CompoundDBAnnotation annotation, FeatureListRow row,
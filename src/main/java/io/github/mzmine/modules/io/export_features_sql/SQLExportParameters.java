@@ -28,6 +28,8 @@ package io.github.mzmine.modules.io.export_features_sql;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParameter;
 
@@ -49,8 +51,23 @@ public class SQLExportParameters extends SimpleParameterSet {
       "Export empty feature list",
       "If selected, an empty feature list will be exported with null values for all column other than the rawdatafile and any constant values.");
 
+  public static final IntegerParameter batchSize = new IntegerParameter("Batch size",
+      "Number of table records that are sent to the database at once.", 1000, 1, null);
+
+  public static final BooleanParameter usePostgresCopy = new BooleanParameter(
+      "Use PostgreSQL COPY",
+      "If selected, records are streamed with the COPY command when exporting to a PostgreSQL database. "
+          + "Otherwise, batched INSERT statements are used.", true);
+
+  public static final OptionalParameter<StringParameter> longTable = new OptionalParameter<>(
+      new StringParameter("Export features to long table",
+          "Name of an additional table with one record per feature and raw data file "
+              + "(row_id, raw_data_file, mz, rt, rt_start, rt_end, height, area, status). "
+              + "The table is created if it does not exist.", "features_long"), false);
+
   public SQLExportParameters() {
-    super(new Parameter[] {featureList, connectionString, tableName, exportColumns, emptyExport});
+    super(new Parameter[] {featureList, connectionString, tableName, exportColumns, emptyExport,
+        batchSize, usePostgresCopy, longTable});
   }
 
 }
@@ -25,12 +25,6 @@
 
 package io.github.mzmine.modules.io.export_features_sql;
 
-import java.io.ByteArrayInputStream;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Types;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.FeatureIdentity;
 import io.github.mzmine.datamodel.IsotopePattern;
@@ -45,17 +39,49 @@ import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.scans.ScanUtils;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
 import java.time.Instant;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
 
 class SQLExportTask extends AbstractTask {
 
+  private static final Logger logger = Logger.getLogger(SQLExportTask.class.getName());
+
+  /**
+   * Columns of the normalized long table, one record per feature.
+   */
+  private static final String[] LONG_TABLE_COLUMNS = {"row_id", "raw_data_file", "mz", "rt",
+      "rt_start", "rt_end", "height", "area", "status"};
+  private static final int[] LONG_TABLE_TYPES = {Types.INTEGER, Types.VARCHAR, Types.DOUBLE,
+      Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.VARCHAR};
+  private static final String LONG_TABLE_DEFINITION =
+      "row_id INTEGER, raw_data_file VARCHAR(255), mz DOUBLE PRECISION, rt DOUBLE PRECISION, "
+      + "rt_start DOUBLE PRECISION, rt_end DOUBLE PRECISION, height DOUBLE PRECISION, "
+      + "area DOUBLE PRECISION, status VARCHAR(32)";
+
   private final FeatureList featureList;
   private final String connectionString;
   private final String tableName;
   private final SQLColumnSettings exportColumns;
   private final boolean emptyExport;
+  private final int batchSize;
+  private final boolean usePostgresCopy;
+  private final @Nullable String longTableName;
 
   private int processedRows = 0, totalRows = 0;
 
@@ -72,7 +98,11 @@ class SQLExportTask extends AbstractTask {
     this.tableName = parameters.getParameter(SQLExportParameters.tableName).getValue();
     this.exportColumns = parameters.getParameter(SQLExportParameters.exportColumns).getValue();
     this.emptyExport = parameters.getParameter(SQLExportParameters.emptyExport).getValue();
-
+    this.batchSize = parameters.getParameter(SQLExportParameters.batchSize).getValue();
+    this.usePostgresCopy = parameters.getParameter(SQLExportParameters.usePostgresCopy).getValue();
+    this.longTableName = parameters.getParameter(SQLExportParameters.longTable).getValue()
+        ? parameters.getParameter(SQLExportParameters.longTable).getEmbeddedParameter().getValue()
+        : null;
   }
 
   @Override
@@ -105,217 +135,449 @@ class SQLExportTask extends AbstractTask {
 
     FeatureListRow rows[] = featureList.getRows().toArray(FeatureListRow[]::new);
 
+    final int numColumns = exportColumns.getRowCount();
+    final String[] columnNames = new String[numColumns];
+    final int[] columnTypes = new int[numColumns];
+    for (int i = 0; i < numColumns; i++) {
+      columnNames[i] = String.valueOf(exportColumns.getValueAt(i, 0));
+      columnTypes[i] = getSqlType((SQLExportDataType) exportColumns.getValueAt(i, 1));
+    }
+
+    final List<RecordWriter> writers = new ArrayList<>(2);
     try {
       dbConnection.setAutoCommit(false);
 
+      final RecordWriter writer = createWriter(tableName, columnNames, columnTypes);
+      writers.add(writer);
+      RecordWriter longTableWriter = null;
+      if (longTableName != null && !longTableName.isBlank()) {
+        try (Statement statement = dbConnection.createStatement()) {
+          statement.executeUpdate(
+              "CREATE TABLE IF NOT EXISTS " + longTableName + " (" + LONG_TABLE_DEFINITION + ")");
+        }
+        longTableWriter = createWriter(longTableName, LONG_TABLE_COLUMNS, LONG_TABLE_TYPES);
+        writers.add(longTableWriter);
+      }
+
       // If select, an empty row with just the raw data file
       // information will be exported
       if (rows.length < 1 && emptyExport) {
-        exportFeatureListRow(null);
+        for (Object[] record : createRecords(null)) {
+          writer.write(record);
+        }
       } else {
         for (FeatureListRow row : rows) {
-          if (getStatus() != TaskStatus.PROCESSING)
+          if (getStatus() != TaskStatus.PROCESSING) {
             break;
-          exportFeatureListRow(row);
+          }
+          for (Object[] record : createRecords(row)) {
+            writer.write(record);
+          }
+          if (longTableWriter != null) {
+            for (Feature feature : row.getFeatures()) {
+              longTableWriter.write(createLongTableRecord(row, feature));
+            }
+          }
           processedRows++;
         }
       }
+
+      for (RecordWriter w : writers) {
+        w.finish();
+      }
       dbConnection.commit();
       dbConnection.close();
     } catch (SQLException e) {
+      for (RecordWriter w : writers) {
+        w.abort();
+      }
+      closeAfterError();
       setStatus(TaskStatus.ERROR);
       setErrorMessage("Error running SQL query: " + e.toString());
       return;
     }
 
-    if (getStatus() == TaskStatus.PROCESSING)
+    if (getStatus() == TaskStatus.PROCESSING) {
       setStatus(TaskStatus.FINISHED);
+    }
 
   }
 
-  private void exportFeatureListRow(FeatureListRow row) throws SQLException {
-
-    // Cancel?
-    if (isCanceled()) {
-      return;
+  /**
+   * Uses the streaming COPY protocol for PostgreSQL connections and batched inserts otherwise.
+   */
+  private RecordWriter createWriter(String table, String[] columnNames, int[] columnTypes)
+      throws SQLException {
+    final String columns = String.join(",", columnNames);
+    if (usePostgresCopy && dbConnection.isWrapperFor(PGConnection.class)) {
+      logger.finest(() -> "Exporting to table " + table + " via PostgreSQL COPY");
+      final CopyManager copyManager = dbConnection.unwrap(PGConnection.class).getCopyAPI();
+      return new CopyRecordWriter(copyManager, "COPY " + table + " (" + columns + ") FROM STDIN",
+          batchSize);
     }
 
-    // Value for looping through raw data files
-    boolean loopDataFiles = false;
+    final String sql = "INSERT INTO " + table + " (" + columns + " ) VALUES ("
+        + String.join(",", Collections.nCopies(columnNames.length, "?")) + ")";
+    return new BatchRecordWriter(dbConnection.prepareStatement(sql), columnTypes, batchSize);
+  }
 
-    StringBuilder sql = new StringBuilder();
-    sql.append("INSERT INTO ");
-    sql.append(tableName);
-    sql.append(" (");
-    for (int i = 0; i < exportColumns.getRowCount(); i++) {
-      sql.append(exportColumns.getValueAt(i, 0));
-      if (i < exportColumns.getRowCount() - 1)
-        sql.append(",");
-    }
-    sql.append(" ) VALUES (");
-    for (int i = 0; i < exportColumns.getRowCount(); i++) {
-      sql.append("?");
-      if (i < exportColumns.getRowCount() - 1)
-        sql.append(",");
+  private void closeAfterError() {
+    try {
+      dbConnection.rollback();
+      dbConnection.close();
+    } catch (SQLException e) {
+      logger.log(Level.WARNING, "Cannot close the SQL connection " + e.getMessage(), e);
     }
-    sql.append(")");
+  }
 
-    PreparedStatement statement = dbConnection.prepareStatement(sql.toString());
+  /**
+   * Creates the values of all table records of one feature list row. Row elements are exported
+   * once, data file elements once per raw data file of the row.
+   *
+   * @param row the row or null to export an empty feature list
+   * @return the records, each with one value per export column
+   */
+  private List<Object[]> createRecords(@Nullable FeatureListRow row) {
+    final int numColumns = exportColumns.getRowCount();
+    final List<Object[]> records = new ArrayList<>(1);
 
     if (row == null) {
-      for (int i = 0; i < exportColumns.getRowCount(); i++) {
+      final Object[] values = new Object[numColumns];
+      for (int i = 0; i < numColumns; i++) {
+        SQLExportDataType dataType = (SQLExportDataType) exportColumns.getValueAt(i, 1);
+        String dataValue = (String) exportColumns.getValueAt(i, 2);
+        switch (dataType) {
+          case CONSTANT -> values[i] = dataValue;
+          case RAWFILE -> {
+            RawDataFile rawdatafiles[] = featureList.getRawDataFiles().toArray(RawDataFile[]::new);
+            values[i] = rawdatafiles[0].getName();
+          }
+          default -> values[i] = null;
+        }
+      }
+      records.add(values);
+      return records;
+    }
+
+    // Value for looping through raw data files
+    boolean loopDataFiles = false;
+
+    for (RawDataFile rawDataFile : row.getRawDataFiles()) {
+      Feature feature = row.getFeature(rawDataFile);
+      final Object[] values = new Object[numColumns];
+
+      for (int i = 0; i < numColumns; i++) {
         SQLExportDataType dataType = (SQLExportDataType) exportColumns.getValueAt(i, 1);
         String dataValue = (String) exportColumns.getValueAt(i, 2);
         switch (dataType) {
           case CONSTANT:
-            statement.setString(i + 1, dataValue);
+            values[i] = dataValue;
+            break;
+          case MZ:
+            values[i] = row.getAverageMZ();
+            break;
+          case RT:
+            values[i] = toDouble(row.getAverageRT());
+            break;
+          case ID:
+            values[i] = row.getID();
+            break;
+          case FEATURECHARGE:
+            values[i] = feature.getCharge();
+            loopDataFiles = true;
+            break;
+          case FEATUREDURATION:
+            values[i] = (double) RangeUtils.rangeLength(feature.getRawDataPointsRTRange());
+            loopDataFiles = true;
+            break;
+          case FEATURESTATUS:
+            values[i] = feature.getFeatureStatus().name();
+            loopDataFiles = true;
+            break;
+          case FEATUREMZ:
+            values[i] = feature.getMZ();
+            loopDataFiles = true;
+            break;
+          case FEATURERT:
+            values[i] = toDouble(feature.getRT());
+            loopDataFiles = true;
+            break;
+          case FEATURERT_START:
+            values[i] = toDouble(feature.getRawDataPointsRTRange().lowerEndpoint());
+            loopDataFiles = true;
+            break;
+          case FEATURERT_END:
+            values[i] = toDouble(feature.getRawDataPointsRTRange().upperEndpoint());
+            loopDataFiles = true;
+            break;
+          case FEATUREHEIGHT:
+            values[i] = toDouble(feature.getHeight());
+            loopDataFiles = true;
+            break;
+          case FEATUREAREA:
+            values[i] = toDouble(feature.getArea());
+            loopDataFiles = true;
+            break;
+          case DATAPOINTS:
+            values[i] = feature.getScanNumbers().size();
+            loopDataFiles = true;
+            break;
+          case FWHM:
+            values[i] = toDouble(feature.getFWHM());
+            loopDataFiles = true;
+            break;
+          case TAILINGFACTOR:
+            values[i] = toDouble(feature.getTailingFactor());
+            loopDataFiles = true;
+            break;
+          case ASYMMETRYFACTOR:
+            values[i] = toDouble(feature.getAsymmetryFactor());
+            loopDataFiles = true;
             break;
           case RAWFILE:
-            RawDataFile rawdatafiles[] = featureList.getRawDataFiles().toArray(RawDataFile[]::new);
-            statement.setString(i + 1, rawdatafiles[0].getName());
+            values[i] = rawDataFile.getName();
+            loopDataFiles = true;
+            break;
+          case HEIGHT:
+            values[i] = toDouble(row.getAverageHeight());
+            break;
+          case AREA:
+            values[i] = toDouble(row.getAverageArea());
+            break;
+          case COMMENT:
+            values[i] = row.getComment();
+            break;
+          case IDENTITY:
+            FeatureIdentity id = row.getPreferredFeatureIdentity();
+            values[i] = id != null ? id.getName() : null;
+            break;
+          case ISOTOPEPATTERN:
+            IsotopePattern isotopes = row.getBestIsotopePattern();
+            if (isotopes == null) {
+              break;
+            }
+            DataPoint dataPoints[] = ScanUtils.extractDataPoints(isotopes);
+            values[i] = ScanUtils.encodeDataPointsToBytes(dataPoints);
+            break;
+          case MSMS:
+            Scan msmsScan = row.getBestFeature().getMostIntenseFragmentScan();
+            // Check if there is any MS/MS scan
+            if (msmsScan == null) {
+              break;
+            }
+            MassList msmsMassList = msmsScan.getMassList();
+            // Check if there is a masslist for the scan
+            if (msmsMassList == null) {
+              break;
+            }
+            values[i] = ScanUtils.encodeDataPointsToBytes(msmsMassList.getDataPoints());
             break;
           default:
-            statement.setString(i + 1, null);
             break;
         }
       }
-      statement.executeUpdate();
+      records.add(values);
+
+      // If no data file elements are selected then don't loop through
+      // all
+      // data files in feature list
+      if (!loopDataFiles) {
+        break;
+      }
     }
+    return records;
+  }
 
-    else {
-      for (RawDataFile rawDataFile : row.getRawDataFiles()) {
-        Feature feature = row.getFeature(rawDataFile);
+  private static Object[] createLongTableRecord(FeatureListRow row, Feature feature) {
+    final RawDataFile file = feature.getRawDataFile();
+    return new Object[]{row.getID(), file != null ? file.getName() : null, feature.getMZ(),
+        toDouble(feature.getRT()), toDouble(feature.getRawDataPointsRTRange().lowerEndpoint()),
+        toDouble(feature.getRawDataPointsRTRange().upperEndpoint()),
+        toDouble(feature.getHeight()), toDouble(feature.getArea()),
+        feature.getFeatureStatus().name()};
+  }
 
-        for (int i = 0; i < exportColumns.getRowCount(); i++) {
-          SQLExportDataType dataType = (SQLExportDataType) exportColumns.getValueAt(i, 1);
-          String dataValue = (String) exportColumns.getValueAt(i, 2);
-          switch (dataType) {
-            case CONSTANT:
-              statement.setString(i + 1, dataValue);
-              break;
-            case MZ:
-              statement.setDouble(i + 1, row.getAverageMZ());
-              break;
-            case RT:
-              statement.setDouble(i + 1, row.getAverageRT());
-              break;
-            case ID:
-              statement.setInt(i + 1, row.getID());
-              break;
-            case FEATURECHARGE:
-              statement.setDouble(i + 1, feature.getCharge());
-              loopDataFiles = true;
-              break;
-            case FEATUREDURATION:
-              statement.setDouble(i + 1, RangeUtils.rangeLength(feature.getRawDataPointsRTRange()));
-              loopDataFiles = true;
-              break;
-            case FEATURESTATUS:
-              statement.setString(i + 1, feature.getFeatureStatus().name());
-              loopDataFiles = true;
-              break;
-            case FEATUREMZ:
-              statement.setDouble(i + 1, feature.getMZ());
-              loopDataFiles = true;
-              break;
-            case FEATURERT:
-              statement.setDouble(i + 1, feature.getRT());
-              loopDataFiles = true;
-              break;
-            case FEATURERT_START:
-              statement.setDouble(i + 1, feature.getRawDataPointsRTRange().lowerEndpoint());
-              loopDataFiles = true;
-              break;
-            case FEATURERT_END:
-              statement.setDouble(i + 1, feature.getRawDataPointsRTRange().upperEndpoint());
-              loopDataFiles = true;
-              break;
-            case FEATUREHEIGHT:
-              statement.setDouble(i + 1, feature.getHeight());
-              loopDataFiles = true;
-              break;
-            case FEATUREAREA:
-              statement.setDouble(i + 1, feature.getArea());
-              loopDataFiles = true;
-              break;
-            case DATAPOINTS:
-              statement.setDouble(i + 1, feature.getScanNumbers().size());
-              loopDataFiles = true;
-              break;
-            case FWHM:
-              statement.setDouble(i + 1, feature.getFWHM());
-              loopDataFiles = true;
-              break;
-            case TAILINGFACTOR:
-              statement.setDouble(i + 1, feature.getTailingFactor());
-              loopDataFiles = true;
-              break;
-            case ASYMMETRYFACTOR:
-              statement.setDouble(i + 1, feature.getAsymmetryFactor());
-              loopDataFiles = true;
-              break;
-            case RAWFILE:
-              statement.setString(i + 1, rawDataFile.getName());
-              loopDataFiles = true;
-              break;
-            case HEIGHT:
-              statement.setDouble(i + 1, row.getAverageHeight());
-              break;
-            case AREA:
-              statement.setDouble(i + 1, row.getAverageArea());
-              break;
-            case COMMENT:
-              statement.setString(i + 1, row.getComment());
-              break;
-            case IDENTITY:
-              FeatureIdentity id = row.getPreferredFeatureIdentity();
-              if (id != null) {
-                statement.setString(i + 1, id.getName());
-              } else {
-                statement.setNull(i + 1, Types.VARCHAR);
-              }
-              break;
-            case ISOTOPEPATTERN:
-              IsotopePattern isotopes = row.getBestIsotopePattern();
-              if (isotopes == null) {
-                statement.setNull(i + 1, Types.BLOB);
-                break;
-              }
-              DataPoint dataPoints[] = ScanUtils.extractDataPoints(isotopes);
-              byte bytes[] = ScanUtils.encodeDataPointsToBytes(dataPoints);
-              ByteArrayInputStream is = new ByteArrayInputStream(bytes);
-              statement.setBlob(i + 1, is);
-              break;
-            case MSMS:
-              Scan msmsScan = row.getBestFeature().getMostIntenseFragmentScan();
-              // Check if there is any MS/MS scan
-              if (msmsScan == null) {
-                statement.setNull(i + 1, Types.BLOB);
-                break;
-              }
-              MassList msmsMassList = msmsScan.getMassList();
-              // Check if there is a masslist for the scan
-              if (msmsMassList == null) {
-                statement.setNull(i + 1, Types.BLOB);
-                break;
-              }
-              dataPoints = msmsMassList.getDataPoints();
-              bytes = ScanUtils.encodeDataPointsToBytes(dataPoints);
-              is = new ByteArrayInputStream(bytes);
-              statement.setBlob(i + 1, is);
-              break;
-            default:
-              break;
-          }
+  @Nullable
+  private static Double toDouble(@Nullable Number value) {
+    return value != null ? value.doubleValue() : null;
+  }
+
+  private static int getSqlType(SQLExportDataType dataType) {
+    return switch (dataType.valueType()) {
+      case "INT" -> Types.INTEGER;
+      case "DOUBLE" -> Types.DOUBLE;
+      case "BLOB" -> Types.BLOB;
+      default -> Types.VARCHAR;
+    };
+  }
+
+  /**
+   * Receives the records of one table and sends them to the database in batches.
+   */
+  private interface RecordWriter {
+
+    void write(Object[] values) throws SQLException;
+
+    /**
+     * Sends all pending records.
+     */
+    void finish() throws SQLException;
+
+    /**
+     * Releases the resources after an error. Pending records are discarded.
+     */
+    void abort();
+  }
+
+  /**
+   * Reuses one prepared statement and executes it via JDBC batches.
+   */
+  private static class BatchRecordWriter implements RecordWriter {
+
+    private final PreparedStatement statement;
+    private final int[] types;
+    private final int batchSize;
+    private int pending = 0;
+
+    private BatchRecordWriter(PreparedStatement statement, int[] types, int batchSize) {
+      this.statement = statement;
+      this.types = types;
+      this.batchSize = Math.max(batchSize, 1);
+    }
+
+    @Override
+    public void write(Object[] values) throws SQLException {
+      for (int i = 0; i < values.length; i++) {
+        final Object value = values[i];
+        if (value == null) {
+          statement.setNull(i + 1, types[i]);
+        } else if (value instanceof Double d) {
+          statement.setDouble(i + 1, d);
+        } else if (value instanceof Integer n) {
+          statement.setInt(i + 1, n);
+        } else if (value instanceof byte[] bytes) {
+          statement.setBytes(i + 1, bytes);
+        } else {
+          statement.setString(i + 1, value.toString());
         }
-        statement.executeUpdate();
+      }
+      statement.addBatch();
+      pending++;
+      if (pending >= batchSize) {
+        statement.executeBatch();
+        pending = 0;
+      }
+    }
+
+    @Override
+    public void finish() throws SQLException {
+      if (pending > 0) {
+        statement.executeBatch();
+        pending = 0;
+      }
+      statement.close();
+    }
+
+    @Override
+    public void abort() {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        logger.log(Level.FINE, "Cannot close statement " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Streams the records in the text format of the PostgreSQL COPY command. Each batch is sent by
+   * its own COPY operation, because a connection only allows one active COPY and the long table is
+   * written alongside the main table.
+   */
+  private static class CopyRecordWriter implements RecordWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final CopyManager copyManager;
+    private final String sql;
+    private final int batchSize;
+    private final StringBuilder buffer = new StringBuilder();
+    private int pending = 0;
+    private @Nullable CopyIn copyIn;
+
+    private CopyRecordWriter(CopyManager copyManager, String sql, int batchSize) {
+      this.copyManager = copyManager;
+      this.sql = sql;
+      this.batchSize = Math.max(batchSize, 1);
+    }
+
+    @Override
+    public void write(Object[] values) throws SQLException {
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          buffer.append('\t');
+        }
+        appendValue(values[i]);
+      }
+      buffer.append('\n');
+      pending++;
+      if (pending >= batchSize) {
+        flush();
+      }
+    }
+
+    private void appendValue(@Nullable Object value) {
+      if (value == null) {
+        buffer.append("\\N");
+        return;
+      }
+      if (value instanceof byte[] bytes) {
+        // bytea in hex format, the backslash is escaped for the text format
+        buffer.append("\\\\x");
+        for (byte b : bytes) {
+          buffer.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+        return;
+      }
+      final String str = value.toString();
+      for (int i = 0; i < str.length(); i++) {
+        final char c = str.charAt(i);
+        switch (c) {
+          case '\\' -> buffer.append("\\\\");
+          case '\t' -> buffer.append("\\t");
+          case '\n' -> buffer.append("\\n");
+          case '\r' -> buffer.append("\\r");
+          default -> buffer.append(c);
+        }
+      }
+    }
+
+    private void flush() throws SQLException {
+      if (buffer.isEmpty()) {
+        return;
+      }
+      final byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+      buffer.setLength(0);
+      pending = 0;
+      copyIn = copyManager.copyIn(sql);
+      copyIn.writeToCopy(bytes, 0, bytes.length);
+      copyIn.endCopy();
+      copyIn = null;
+    }
+
+    @Override
+    public void finish() throws SQLException {
+      flush();
+    }
 
-        // If no data file elements are selected then don't loop through
-        // all
-        // data files in feature list
-        if (!loopDataFiles) {
-          break;
+    @Override
+    public void abort() {
+      buffer.setLength(0);
+      try {
+        if (copyIn != null && copyIn.isActive()) {
+          copyIn.cancelCopy();
         }
+      } catch (SQLException e) {
+        logger.log(Level.FINE, "Cannot cancel COPY " + e.getMessage(), e);
       }
     }
   }
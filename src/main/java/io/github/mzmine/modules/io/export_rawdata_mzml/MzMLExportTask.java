@@ -31,11 +31,12 @@ import java.util.Date;
 import java.util.logging.Logger;
 
 import io.github.msdk.MSDKMethod;
-import io.github.msdk.io.mzml.MzMLFileExportMethod;
 import io.github.msdk.io.mzml.data.MzMLCompressionType;
 import io.github.msdk.io.netcdf.NetCDFFileExportMethod;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.impl.MZmineToMSDKRawDataFile;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.MzMLFileExportMethod;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import org.jetbrains.annotations.NotNull;
@@ -90,8 +91,9 @@ public class MzMLExportTask extends AbstractTask {
       MZmineToMSDKRawDataFile msdkDataFile = new MZmineToMSDKRawDataFile(dataFile);
 
       if (outFilename.getName().toLowerCase().endsWith("mzml")) {
+        // binary data arrays are encoded in parallel
         msdkMethod = new MzMLFileExportMethod(msdkDataFile, outFilename, MzMLCompressionType.ZLIB,
-            MzMLCompressionType.ZLIB);
+            MzMLCompressionType.ZLIB, MZmineCore.getConfiguration().getNumOfThreads());
       }
 
       if (outFilename.getName().toLowerCase().endsWith("cdf")) {
@@ -51,8 +51,14 @@ public class AdvancedSpectraImportParameters extends SimpleParameterSet {
       This reduces the intensity differences between spectra acquired with different injection times
       and reverts to "raw" intensities.""", false);
 
+  public static final BooleanParameter loadSpectraOnDemand = new BooleanParameter(
+      "Load spectra on demand (mzML)", """
+      Keeps the data points of mzML spectra in the original file and only loads them when needed.
+      Reduces memory consumption for large files. The mzML file must remain accessible at its location.
+      Does not apply to spectra with mass detection during import or to ion mobility data.""", false);
+
   public AdvancedSpectraImportParameters() {
-    super(msMassDetection, ms2MassDetection, denormalizeMSnScans);
+    super(msMassDetection, ms2MassDetection, denormalizeMSnScans, loadSpectraOnDemand);
   }
 
 }
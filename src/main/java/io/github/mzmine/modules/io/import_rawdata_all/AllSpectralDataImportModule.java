@@ -383,8 +383,11 @@ public class AllSpectralDataImportModule implements MZmineProcessingModule {
               parameters, moduleCallDate);
       case AIRD ->
           new AirdImportTask(project, file, newMZmineFile, module, parameters, moduleCallDate);
+      // imaging
+      case IMZML -> new ImzMLImportTask(project, file, (ImagingRawDataFile) newMZmineFile,
+          advancedParam, module, parameters, moduleCallDate);
       // all unsupported tasks are wrapped to apply import and mass detection separately
-      case MZDATA, THERMO_RAW, WATERS_RAW, NETCDF, MZML_ZIP, MZML_GZIP, ICPMSMS_CSV, IMZML ->
+      case MZDATA, THERMO_RAW, WATERS_RAW, NETCDF, MZML_ZIP, MZML_GZIP, ICPMSMS_CSV ->
           createWrappedAdvancedTask(fileType, project, file, newMZmineFile, advancedParam, module,
               parameters, moduleCallDate, storage);
       default -> throw new IllegalStateException("Unexpected data type: " + fileType);
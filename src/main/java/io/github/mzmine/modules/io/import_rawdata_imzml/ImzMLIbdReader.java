@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_imzml;
+
+import com.alanmrace.jimzmlparser.mzml.BinaryDataArray;
+import com.alanmrace.jimzmlparser.mzml.CVParam;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads binary data arrays directly from the memory-mapped .ibd file of an imzML dataset. The
+ * channel is thread safe, so multiple chunks of spectra can be decoded in parallel. Only
+ * uncompressed arrays are supported (as required by the imzML specification).
+ */
+class ImzMLIbdReader implements Closeable {
+
+  // imzML binary data location
+  private static final String EXTERNAL_OFFSET = "IMS:1000102";
+  private static final String EXTERNAL_ARRAY_LENGTH = "IMS:1000103";
+  private static final String EXTERNAL_ENCODED_LENGTH = "IMS:1000104";
+  private static final String NO_COMPRESSION = "MS:1000576";
+
+  private final FileChannel channel;
+  private final long fileSize;
+
+  ImzMLIbdReader(@NotNull File ibdFile) throws IOException {
+    channel = FileChannel.open(ibdFile.toPath(), StandardOpenOption.READ);
+    fileSize = channel.size();
+  }
+
+  /**
+   * The .ibd file has the same name as the imzML file
+   *
+   * @return the .ibd file or null if it does not exist
+   */
+  @Nullable
+  static File findIbdFile(@NotNull File imzMLFile) {
+    final String name = imzMLFile.getName();
+    final int dot = name.lastIndexOf('.');
+    final String baseName = dot > 0 ? name.substring(0, dot) : name;
+    for (String extension : new String[]{".ibd", ".IBD"}) {
+      final File ibd = new File(imzMLFile.getParentFile(), baseName + extension);
+      if (ibd.exists() && ibd.canRead()) {
+        return ibd;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the location of this data array in the .ibd file or null if the array is compressed,
+   * has an unknown data type, or does not define the external offset
+   */
+  @Nullable
+  static BinaryArrayLocation extractLocation(@Nullable BinaryDataArray array) {
+    if (array == null || array.getCVParam(NO_COMPRESSION) == null) {
+      return null;
+    }
+    final IbdDataType type = IbdDataType.of(array);
+    final CVParam offset = array.getCVParam(EXTERNAL_OFFSET);
+    final CVParam length = array.getCVParam(EXTERNAL_ARRAY_LENGTH);
+    if (type == null || offset == null || length == null) {
+      return null;
+    }
+    final int numValues = length.getValueAsInteger();
+    final CVParam encodedLength = array.getCVParam(EXTERNAL_ENCODED_LENGTH);
+    if (encodedLength != null
+        && (long) encodedLength.getValueAsDouble() != (long) numValues * type.bytes) {
+      return null;
+    }
+    return new BinaryArrayLocation((long) offset.getValueAsDouble(), numValues, type);
+  }
+
+  /**
+   * Maps the region of the .ibd file that contains all given arrays once and decodes them.
+   *
+   * @param locations the arrays to read, null elements are skipped
+   * @return the decoded values in the same order as the locations (null for null locations)
+   */
+  double[][] readAll(@NotNull List<BinaryArrayLocation> locations) throws IOException {
+    long start = Long.MAX_VALUE;
+    long end = 0;
+    for (BinaryArrayLocation loc : locations) {
+      if (loc != null) {
+        start = Math.min(start, loc.offset());
+        end = Math.max(end, loc.end());
+      }
+    }
+
+    final double[][] values = new double[locations.size()][];
+    if (start >= end) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = locations.get(i) == null ? null : new double[0];
+      }
+      return values;
+    }
+    if (end > fileSize) {
+      throw new IOException("Binary data array exceeds the .ibd file size of " + fileSize);
+    }
+
+    if (end - start <= Integer.MAX_VALUE) {
+      // one mapping for the whole chunk
+      final MappedByteBuffer region = channel.map(MapMode.READ_ONLY, start, end - start);
+      region.order(ByteOrder.LITTLE_ENDIAN);
+      for (int i = 0; i < values.length; i++) {
+        final BinaryArrayLocation loc = locations.get(i);
+        if (loc != null) {
+          values[i] = decode(region, (int) (loc.offset() - start), loc);
+        }
+      }
+    } else {
+      // scattered chunk, map arrays individually
+      for (int i = 0; i < values.length; i++) {
+        values[i] = read(locations.get(i));
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return the decoded values or null if location is null
+   */
+  double[] read(@Nullable BinaryArrayLocation loc) throws IOException {
+    if (loc == null) {
+      return null;
+    }
+    if (loc.length() == 0) {
+      return new double[0];
+    }
+    if (loc.end() > fileSize) {
+      throw new IOException("Binary data array exceeds the .ibd file size of " + fileSize);
+    }
+    final MappedByteBuffer region = channel.map(MapMode.READ_ONLY, loc.offset(),
+        loc.end() - loc.offset());
+    region.order(ByteOrder.LITTLE_ENDIAN);
+    return decode(region, 0, loc);
+  }
+
+  private static double[] decode(ByteBuffer region, int position, BinaryArrayLocation loc) {
+    final int n = loc.length();
+    final double[] values = new double[n];
+    switch (loc.type()) {
+      case DOUBLE -> region.slice(position, n * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+          .asDoubleBuffer().get(values);
+      case FLOAT -> {
+        final var floats = region.slice(position, n * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+            .asFloatBuffer();
+        for (int i = 0; i < n; i++) {
+          values[i] = floats.get(i);
+        }
+      }
+      case LONG -> {
+        final var longs = region.slice(position, n * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+            .asLongBuffer();
+        for (int i = 0; i < n; i++) {
+          values[i] = longs.get(i);
+        }
+      }
+      case INT -> {
+        final var ints = region.slice(position, n * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+            .asIntBuffer();
+        for (int i = 0; i < n; i++) {
+          values[i] = ints.get(i);
+        }
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  enum IbdDataType {
+    FLOAT(Float.BYTES, "MS:1000521"), DOUBLE(Double.BYTES, "MS:1000523"), //
+    INT(Integer.BYTES, "MS:1000519", "IMS:1000141"), LONG(Long.BYTES, "MS:1000522", "IMS:1000142");
+
+    private final int bytes;
+    private final String[] accessions;
+
+    IbdDataType(int bytes, String... accessions) {
+      this.bytes = bytes;
+      this.accessions = accessions;
+    }
+
+    @Nullable
+    static IbdDataType of(@NotNull BinaryDataArray array) {
+      for (IbdDataType type : values()) {
+        for (String accession : type.accessions) {
+          if (array.getCVParam(accession) != null) {
+            return type;
+          }
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * @param offset byte offset in the .ibd file
+   * @param length number of values
+   * @param type   encoding of each value
+   */
+  record BinaryArrayLocation(long offset, int length, IbdDataType type) {
+
+    long end() {
+      return offset + (long) length * type.bytes;
+    }
+  }
+}
@@ -42,30 +42,44 @@ import io.github.mzmine.datamodel.ImagingRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.impl.SimpleImagingScan;
-import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.SimpleMassSpectrum;
+import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
+import io.github.mzmine.modules.io.import_rawdata_all.AdvancedSpectraImportParameters;
+import io.github.mzmine.modules.io.import_rawdata_imzml.ImzMLIbdReader.BinaryArrayLocation;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.ExceptionUtils;
+import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.scans.ScanUtils;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.DoubleBuffer;
 import java.time.Instant;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
- * This class reads mzML 1.0 and 1.1.0 files (http://www.psidev.info/index.php?q=node/257) using the
- * jmzml library (http://code.google.com/p/jmzml/).
+ * This class reads imzML files using the jimzMLParser library. Spectrum metadata is parsed
+ * sequentially, the binary data of the pixel spectra is decoded in parallel chunks directly from
+ * the memory-mapped .ibd file.
  */
 public class ImzMLImportTask extends AbstractTask {
 
@@ -77,22 +91,33 @@ public class ImzMLImportTask extends AbstractTask {
   private final ParameterSet parameters;
   private final Class<? extends MZmineModule> module;
   private int totalScans = 0, parsedScans;
+  private final AtomicInteger decodedScans = new AtomicInteger(0);
 
   private int lastScanNumber = 0;
 
   private Map<String, Integer> scanIdTable = new Hashtable<>();
 
-  /*
-   * This stack stores at most 20 consecutive scans. This window serves to find possible fragments
-   * (current scan) that belongs to any of the stored scans in the stack. The reason of the size
-   * follows the concept of neighborhood of scans and all his fragments. These solution is
-   * implemented because exists the possibility to find fragments of one scan after one or more full
-   * scans.
+  /**
+   * Number of pixel spectra that are decoded and stored together
    */
-  private static final int PARENT_STACK_SIZE = 20;
-  private LinkedList<SimpleScan> parentStack = new LinkedList<>();
+  private static final int CHUNK_SIZE = 256;
+
+  // advanced processing will apply mass detection directly to the scans
+  private MZmineProcessingStep<MassDetector> ms1Detector = null;
+  private MZmineProcessingStep<MassDetector> ms2Detector = null;
+
+  public ImzMLImportTask(MZmineProject project, File fileToOpen, ImagingRawDataFile newMZmineFile,
+      @NotNull final Class<? extends MZmineModule> module, @NotNull final ParameterSet parameters,
+      @NotNull Instant moduleCallDate) {
+    this(project, fileToOpen, newMZmineFile, null, module, parameters, moduleCallDate);
+  }
 
+  /**
+   * @param advancedParam if mass detection is selected, only the detected masses are stored and the
+   *                      profile data is skipped
+   */
   public ImzMLImportTask(MZmineProject project, File fileToOpen, ImagingRawDataFile newMZmineFile,
+      @Nullable AdvancedSpectraImportParameters advancedParam,
       @NotNull final Class<? extends MZmineModule> module, @NotNull final ParameterSet parameters,
       @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate); // storage in raw data file
@@ -101,11 +126,23 @@ public class ImzMLImportTask extends AbstractTask {
     this.newMZmineFile = newMZmineFile;
     this.parameters = parameters;
     this.module = module;
+
+    if (advancedParam != null) {
+      if (advancedParam.getParameter(AdvancedSpectraImportParameters.msMassDetection).getValue()) {
+        this.ms1Detector = advancedParam.getParameter(
+            AdvancedSpectraImportParameters.msMassDetection).getEmbeddedParameter().getValue();
+      }
+      if (advancedParam.getParameter(AdvancedSpectraImportParameters.ms2MassDetection).getValue()) {
+        this.ms2Detector = advancedParam.getParameter(
+            AdvancedSpectraImportParameters.ms2MassDetection).getEmbeddedParameter().getValue();
+      }
+    }
   }
 
   @Override
   public double getFinishedPercentage() {
-    return totalScans == 0 ? 0 : (double) parsedScans / totalScans;
+    // parsing of the metadata and decoding of the binary data
+    return totalScans == 0 ? 0 : (parsedScans + decodedScans.get()) / (2d * totalScans);
   }
 
   /**
@@ -123,6 +160,15 @@ public class ImzMLImportTask extends AbstractTask {
 
       SpectrumList spectra = imzml.getRun().getSpectrumList();
       totalScans = spectra.size();
+
+      final File ibdFile = ImzMLIbdReader.findIbdFile(file);
+      if (ibdFile == null) {
+        logger.warning(() -> "Cannot find the .ibd file of " + file
+            + ". Falling back to sequential reading of the binary data.");
+      }
+
+      // parse all metadata and the location of the binary data
+      final List<PixelSpectrum> pixels = new ArrayList<>(totalScans);
       for (int i = 0; i < totalScans; i++) {
 
         if (isCanceled()) {
@@ -148,39 +194,66 @@ public class ImzMLImportTask extends AbstractTask {
         double precursorMz = extractPrecursorMz(spectrum);
         int precursorCharge = extractPrecursorCharge(spectrum);
         String scanDefinition = extractScanDefinition(spectrum);
-        double mzValues[] = extractMzValues(spectrum);
-        double intensityValues[] = extractIntensityValues(spectrum);
 
         // imaging
         Coordinates coord = extractCoordinates(spectrum);
 
-        // Auto-detect whether this scan is centroided
-        MassSpectrumType spectrumType = ScanUtils.detectSpectrumType(mzValues, intensityValues);
-
-        SimpleImagingScan scan = new SimpleImagingScan(newMZmineFile, scanNumber, msLevel,
-            retentionTime, precursorMz, precursorCharge, mzValues, intensityValues, spectrumType,
-            polarity, scanDefinition, null, coord);
-
-
-        /*
-         * Verify the size of parentStack. The actual size of the window to cover possible
-         * candidates is defined by limitSize.
-         */
-        if (parentStack.size() > PARENT_STACK_SIZE) {
-          io.github.mzmine.datamodel.Scan firstScan = parentStack.removeLast();
-          newMZmineFile.addScan(firstScan);
+        // location of the binary data in the .ibd file
+        BinaryDataArrayList dataList = spectrum.getBinaryDataArrayList();
+        BinaryArrayLocation mzLocation = null;
+        BinaryArrayLocation intensityLocation = null;
+        if (ibdFile != null && dataList != null) {
+          mzLocation = ImzMLIbdReader.extractLocation(dataList.getmzArray());
+          intensityLocation = ImzMLIbdReader.extractLocation(dataList.getIntensityArray());
         }
 
-        parentStack.addFirst(scan);
+        if (mzLocation != null && intensityLocation != null) {
+          pixels.add(new PixelSpectrum(scanNumber, msLevel, retentionTime, polarity, precursorMz,
+              precursorCharge, scanDefinition, coord, mzLocation, intensityLocation, null, null));
+        } else {
+          // compressed or unsupported arrays are decoded by the parser
+          pixels.add(new PixelSpectrum(scanNumber, msLevel, retentionTime, polarity, precursorMz,
+              precursorCharge, scanDefinition, coord, null, null, extractMzValues(spectrum),
+              extractIntensityValues(spectrum)));
+        }
 
         parsedScans++;
+      }
+
+      // decode chunks of pixels in parallel, directly from the mapped .ibd file
+      final int numChunks = (pixels.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+      final SimpleImagingScan[][] chunks = new SimpleImagingScan[numChunks][];
+      try (ImzMLIbdReader reader = ibdFile != null ? new ImzMLIbdReader(ibdFile) : null) {
+        IntStream.range(0, numChunks).parallel().forEach(c -> {
+          if (isCanceled()) {
+            return;
+          }
+          final List<PixelSpectrum> chunk = pixels.subList(c * CHUNK_SIZE,
+              Math.min(pixels.size(), (c + 1) * CHUNK_SIZE));
+          try {
+            chunks[c] = decodeChunk(reader, chunk);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          decodedScans.addAndGet(chunk.size());
+        });
+      }
 
+      if (isCanceled()) {
+        return;
       }
 
-      while (!parentStack.isEmpty()) {
-        io.github.mzmine.datamodel.Scan scan = parentStack.removeLast();
-        newMZmineFile.addScan(scan);
+      // add scans in order
+      for (SimpleImagingScan[] chunk : chunks) {
+        for (SimpleImagingScan scan : chunk) {
+          if (getMassDetector(scan.getMSLevel()) != null) {
+            // only the detected masses were stored
+            scan.addMassList(new ScanPointerMassList(scan));
+          }
+          newMZmineFile.addScan(scan);
+        }
       }
+      decodedScans.set(totalScans);
 
       // set settings of image
       newMZmineFile.setImagingParam(new ImagingParameters(imzml));
@@ -205,6 +278,79 @@ public class ImzMLImportTask extends AbstractTask {
 
   }
 
+  /**
+   * Decodes the binary data of all pixels in this chunk and stores all m/z and intensity values in
+   * one buffer each.
+   *
+   * @param reader the .ibd reader, may be null if all data was decoded by the parser
+   * @return the scans in the same order as the chunk
+   */
+  private SimpleImagingScan[] decodeChunk(@Nullable ImzMLIbdReader reader,
+      List<PixelSpectrum> chunk) throws IOException {
+    final List<BinaryArrayLocation> locations = new ArrayList<>(chunk.size() * 2);
+    for (PixelSpectrum pixel : chunk) {
+      locations.add(pixel.mzLocation());
+      locations.add(pixel.intensityLocation());
+    }
+    final double[][] decoded =
+        reader != null ? reader.readAll(locations) : new double[locations.size()][];
+
+    final List<double[][]> data = new ArrayList<>(chunk.size());
+    final MassSpectrumType[] spectrumTypes = new MassSpectrumType[chunk.size()];
+    for (int i = 0; i < chunk.size(); i++) {
+      final PixelSpectrum pixel = chunk.get(i);
+      final double[] mzs = pixel.mzLocation() != null ? decoded[i * 2] : pixel.mzValues();
+      final double[] intensities =
+          pixel.intensityLocation() != null ? decoded[i * 2 + 1] : pixel.intensityValues();
+
+      double[][] mzIntensities = DataPointUtils.ensureSortingMzAscendingDefault(mzs, intensities);
+      final MZmineProcessingStep<MassDetector> detector = getMassDetector(pixel.msLevel());
+      if (detector != null) {
+        // skip the profile data and only store the detected masses
+        mzIntensities = detector.getModule()
+            .getMassValues(new SimpleMassSpectrum(mzIntensities[0], mzIntensities[1]),
+                detector.getParameterSet());
+        mzIntensities = DataPointUtils.ensureSortingMzAscendingDefault(mzIntensities[0],
+            mzIntensities[1]);
+        spectrumTypes[i] = MassSpectrumType.CENTROIDED;
+      } else {
+        // Auto-detect whether this scan is centroided
+        spectrumTypes[i] = ScanUtils.detectSpectrumType(mzIntensities[0], mzIntensities[1]);
+      }
+      data.add(mzIntensities);
+    }
+
+    // store the whole chunk at once
+    final MemoryMapStorage storage = newMZmineFile.getMemoryMapStorage();
+    final int[] offsets = StorageUtils.generateOffsets(data, new AtomicInteger(0));
+    final int numDp = offsets[offsets.length - 1] + data.get(data.size() - 1)[0].length;
+    double[] values = new double[numDp];
+    StorageUtils.putAllValuesIntoOneArray(data, 0, values);
+    final DoubleBuffer mzBuffer = StorageUtils.storeValuesToDoubleBuffer(storage, values);
+    if (storage == null) {
+      // buffer wraps the array
+      values = new double[numDp];
+    }
+    StorageUtils.putAllValuesIntoOneArray(data, 1, values);
+    final DoubleBuffer intensityBuffer = StorageUtils.storeValuesToDoubleBuffer(storage, values);
+
+    final SimpleImagingScan[] scans = new SimpleImagingScan[chunk.size()];
+    for (int i = 0; i < scans.length; i++) {
+      final PixelSpectrum pixel = chunk.get(i);
+      final int numValues = data.get(i)[0].length;
+      scans[i] = new SimpleImagingScan(newMZmineFile, pixel.scanNumber(), pixel.msLevel(),
+          pixel.retentionTime(), pixel.precursorMz(), pixel.precursorCharge(),
+          mzBuffer.slice(offsets[i], numValues), intensityBuffer.slice(offsets[i], numValues),
+          spectrumTypes[i], pixel.polarity(), pixel.scanDefinition(), null, pixel.coordinates());
+    }
+    return scans;
+  }
+
+  @Nullable
+  private MZmineProcessingStep<MassDetector> getMassDetector(int msLevel) {
+    return msLevel == 1 ? ms1Detector : ms2Detector;
+  }
+
   private int convertScanIdToScanNumber(String scanId) {
 
     if (scanIdTable.containsKey(scanId)) {
@@ -432,6 +578,19 @@ public class ImzMLImportTask extends AbstractTask {
     return "Opening file " + file;
   }
 
+  /**
+   * Metadata of one pixel spectrum and either the location of the binary data in the .ibd file or
+   * the values decoded by the parser
+   */
+  private record PixelSpectrum(int scanNumber, int msLevel, float retentionTime,
+                               PolarityType polarity, double precursorMz, int precursorCharge,
+                               String scanDefinition, Coordinates coordinates,
+                               @Nullable BinaryArrayLocation mzLocation,
+                               @Nullable BinaryArrayLocation intensityLocation,
+                               @Nullable double[] mzValues, @Nullable double[] intensityValues) {
+
+  }
+
   boolean isMsSpectrum(Spectrum spectrum) {
     // one thats not MS (code for UV?)
     CVParam cvParams = spectrum.getCVParam("MS:1000804");
@@ -27,6 +27,7 @@ package io.github.mzmine.modules.io.import_rawdata_mzml;
 
 import static java.util.Objects.requireNonNullElse;
 
+import com.google.common.collect.Range;
 import io.github.msdk.datamodel.MsScan;
 import io.github.msdk.datamodel.MsSpectrumType;
 import io.github.mzmine.datamodel.MassSpectrumType;
@@ -36,6 +37,8 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.BuildingMobilityScan;
 import io.github.mzmine.datamodel.impl.DDAMsMsInfoImpl;
 import io.github.mzmine.datamodel.impl.MSnInfoImpl;
+import io.github.mzmine.datamodel.impl.OnDemandScan;
+import io.github.mzmine.datamodel.impl.OnDemandScan.SpectrumLoader;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
 import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
@@ -50,6 +53,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class ConversionUtils {
 
@@ -136,6 +140,58 @@ public class ConversionUtils {
    */
   public static Scan msdkScanToSimpleScan(RawDataFile rawDataFile, MzMLMsScan scan, double[] mzs,
       double[] intensities, MassSpectrumType spectrumType) {
+    float retentionTimeInMinutes = requireNonNullElse(scan.getRetentionTime(), 0f) / 60;
+    final SimpleScan newScan = new SimpleScan(rawDataFile, scan.getScanNumber(), scan.getMsLevel(),
+        retentionTimeInMinutes, extractMsMsInfo(scan), mzs, intensities, spectrumType,
+        ConversionUtils.msdkToMZminePolarityType(scan.getPolarity()), scan.getScanDefinition(),
+        scan.getScanningRange(), extractInjectionTime(scan));
+
+    return newScan;
+  }
+
+  /**
+   * Creates an {@link OnDemandScan} from an MSDK scan from MzML import. The data points remain in
+   * the mzML file and are loaded by the loader. The summary values are taken from the spectrum
+   * header, the data points are only decoded if the header lacks them, see
+   * {@link MzMLSpectrumLoader#hasSummaryValues(MzMLMsScan)}.
+   *
+   * @param scan   the scan, decoded if the header lacks the summary values
+   * @param loader loads the data points on demand
+   * @return an {@link OnDemandScan}
+   */
+  public static Scan msdkScanToOnDemandScan(RawDataFile rawDataFile, MzMLMsScan scan,
+      SpectrumLoader loader) {
+    float retentionTimeInMinutes = requireNonNullElse(scan.getRetentionTime(), 0f) / 60;
+    final MassSpectrumType spectrumType = ConversionUtils.msdkToMZmineSpectrumType(
+        scan.getSpectrumType());
+    final PolarityType polarity = ConversionUtils.msdkToMZminePolarityType(scan.getPolarity());
+
+    if (MzMLSpectrumLoader.hasSummaryValues(scan)) {
+      final int numDataPoints = scan.getNumberOfDataPoints();
+      final boolean empty = numDataPoints == 0;
+      final Range<Double> mzRange = empty ? null
+          : Range.closed(MzMLSpectrumLoader.parseCVDouble(scan, MzMLCV.cvLowestMz),
+              MzMLSpectrumLoader.parseCVDouble(scan, MzMLCV.cvHighestMz));
+      final double tic = empty ? 0d : MzMLSpectrumLoader.parseCVDouble(scan, MzMLCV.cvTIC);
+      final Double basePeakMz =
+          empty ? null : MzMLSpectrumLoader.parseCVDouble(scan, MzMLCV.cvBasePeakMz);
+      final Double basePeakIntensity =
+          empty ? null : MzMLSpectrumLoader.parseCVDouble(scan, MzMLCV.cvBasePeakIntensity);
+      return new OnDemandScan(rawDataFile, scan.getScanNumber(), scan.getMsLevel(),
+          retentionTimeInMinutes, extractMsMsInfo(scan), numDataPoints, mzRange, tic, basePeakMz,
+          basePeakIntensity, spectrumType, polarity, scan.getScanDefinition(),
+          scan.getScanningRange(), extractInjectionTime(scan), loader);
+    }
+
+    double[] mzs = scan.getMzValues();
+    double[] intensities = convertFloatsToDoubles(scan.getIntensityValues());
+    return new OnDemandScan(rawDataFile, scan.getScanNumber(), scan.getMsLevel(),
+        retentionTimeInMinutes, extractMsMsInfo(scan), mzs, intensities, spectrumType, polarity,
+        scan.getScanDefinition(), scan.getScanningRange(), extractInjectionTime(scan), loader);
+  }
+
+  @Nullable
+  private static DDAMsMsInfo extractMsMsInfo(MzMLMsScan scan) {
     DDAMsMsInfo info = null;
     if (scan.getPrecursorList() != null) {
       final var precursorElements = scan.getPrecursorList().getPrecursorElements();
@@ -145,23 +201,20 @@ public class ConversionUtils {
         info = MSnInfoImpl.fromMzML(precursorElements, scan.getMsLevel());
       }
     }
+    return info;
+  }
 
-    Float injTime = null;
+  @Nullable
+  private static Float extractInjectionTime(MzMLMsScan scan) {
     try {
-      injTime = scan.getScanList().getScans().get(0).getCVParamsList().stream()
+      return scan.getScanList().getScans().get(0).getCVParamsList().stream()
           .filter(p -> MzMLCV.cvIonInjectTime.equals(p.getAccession()))
           .map(p -> p.getValue().map(Float::parseFloat)).filter(Optional::isPresent)
           .map(Optional::get).findFirst().orElse(null);
     } catch (Exception e) {
       // float parsing error
+      return null;
     }
-    float retentionTimeInMinutes = requireNonNullElse(scan.getRetentionTime(), 0f) / 60;
-    final SimpleScan newScan = new SimpleScan(rawDataFile, scan.getScanNumber(), scan.getMsLevel(),
-        retentionTimeInMinutes, info, mzs, intensities, spectrumType,
-        ConversionUtils.msdkToMZminePolarityType(scan.getPolarity()), scan.getScanDefinition(),
-        scan.getScanningRange(), injTime);
-
-    return newScan;
   }
 
   public static BuildingMobilityScan msdkScanToMobilityScan(int scannum, MsScan scan) {
@@ -42,6 +42,7 @@ import io.github.mzmine.datamodel.impl.MsdkScanWrapper;
 import io.github.mzmine.datamodel.impl.SimpleFrame;
 import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
 import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
@@ -104,6 +105,7 @@ public class MSDKmzMLImportTask extends AbstractTask {
   private MZmineProcessingStep<MassDetector> ms1Detector = null;
   private MZmineProcessingStep<MassDetector> ms2Detector = null;
   private boolean denormalizeMSnScans;
+  private boolean loadSpectraOnDemand;
 
   public MSDKmzMLImportTask(MZmineProject project, File fileToOpen,
       @NotNull final Class<? extends MZmineModule> module, @NotNull final ParameterSet parameters,
@@ -135,6 +137,9 @@ public class MSDKmzMLImportTask extends AbstractTask {
       }
       denormalizeMSnScans = advancedParam.getValue(
           AdvancedSpectraImportParameters.denormalizeMSnScans);
+      // positions of the binary data are only recorded when parsing from a file
+      loadSpectraOnDemand = fisToOpen == null && advancedParam.getValue(
+          AdvancedSpectraImportParameters.loadSpectraOnDemand);
     }
 
     this.applyMassDetection = ms1Detector != null || ms2Detector != null;
@@ -149,7 +154,7 @@ public class MSDKmzMLImportTask extends AbstractTask {
 
     setStatus(TaskStatus.PROCESSING);
 
-    RawDataFileImpl newMZmineFile;
+    RawDataFileImpl newMZmineFile = null;
     try {
 
       if (fis != null) {
@@ -201,16 +206,22 @@ public class MSDKmzMLImportTask extends AbstractTask {
 
     } catch (Throwable e) {
       e.printStackTrace();
+      if (newMZmineFile != null) {
+        // release the mzML file
+        newMZmineFile.close();
+      }
       setStatus(TaskStatus.ERROR);
       setErrorMessage("Error parsing mzML: " + ExceptionUtils.exceptionToString(e));
       return;
     }
 
     if (isCanceled()) {
+      newMZmineFile.close();
       return;
     }
 
     if (parsedScans == 0) {
+      newMZmineFile.close();
       setStatus(TaskStatus.ERROR);
       setErrorMessage("No scans found");
       return;
@@ -240,52 +251,92 @@ public class MSDKmzMLImportTask extends AbstractTask {
     super.cancel();
   }
 
-  public void buildLCMSFile(io.github.msdk.datamodel.RawDataFile file, RawDataFile newMZmineFile)
-      throws IOException {
-    for (MsScan scan : file.getScans()) {
-      if (isCanceled()) {
-        return;
-      }
-      MzMLMsScan mzMLScan = (MzMLMsScan) scan;
+  public void buildLCMSFile(io.github.msdk.datamodel.RawDataFile file,
+      RawDataFileImpl newMZmineFile) throws IOException {
+    // decode and convert scans in parallel, add them in order
+    // minus this task
+    final int threads = MZmineCore.getConfiguration().getNumOfThreads() - 1;
+    final MzMLSpectrumLoader spectrumLoader =
+        loadSpectraOnDemand ? new MzMLSpectrumLoader(this.file) : null;
+    if (spectrumLoader != null) {
+      // the loader reads from the mzML file until the raw data file is closed
+      newMZmineFile.addOpenResource(spectrumLoader);
+    }
+    try (var pipeline = new MzMLScanDecodingPipeline(threads)) {
+      pipeline.process(file.getScans(), mzMLScan -> needsDecodedValues(mzMLScan, spectrumLoader),
+          mzMLScan -> convertScan(mzMLScan, newMZmineFile, spectrumLoader),
+          converted -> {
+            if (converted.detectedMasses()) {
+              // create mass list and scan. Override data points and spectrum type
+              ScanPointerMassList newMassList = new ScanPointerMassList(converted.scan());
+              converted.scan().addMassList(newMassList);
+            }
+            newMZmineFile.addScan(converted.scan());
+            parsedScans++;
+            description =
+                "Importing " + this.file.getName() + ", parsed " + parsedScans + "/" + totalScans
+                    + " scans";
+          }, this::isCanceled);
+    }
+  }
 
-      Scan newScan = null;
-      if (applyMassDetection) {
-        // wrap scan
-        MsdkScanWrapper wrapper = new MsdkScanWrapper(scan);
-        double[][] mzIntensities = null;
-
-        // apply mass detection
-        if (ms1Detector != null && wrapper.getMSLevel() == 1) {
-          mzIntensities = applyMassDetection(ms1Detector, wrapper);
-        } else if (ms2Detector != null && wrapper.getMSLevel() >= 2) {
-          mzIntensities = applyMassDetection(ms2Detector, wrapper);
-          if (denormalizeMSnScans) {
-            ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzIntensities[1],
-                wrapper.getInjectionTime());
-          }
-        }
+  /**
+   * @return false if the scan is loaded on demand and the summary values are read from the
+   * spectrum header. Mass detection always requires the data points.
+   */
+  private boolean needsDecodedValues(MzMLMsScan mzMLScan,
+      @Nullable MzMLSpectrumLoader spectrumLoader) {
+    if (spectrumLoader == null || !MzMLSpectrumLoader.canLoadOnDemand(mzMLScan)
+        || !MzMLSpectrumLoader.hasSummaryValues(mzMLScan)) {
+      return true;
+    }
+    if (!applyMassDetection) {
+      return false;
+    }
+    final int msLevel = mzMLScan.getMsLevel();
+    return (ms1Detector != null && msLevel == 1) || (ms2Detector != null && msLevel >= 2);
+  }
 
-        if (mzIntensities != null) {
-          // scans sorting is enforced in {@link AbstractStorableSpectrum#setDataPoints}
-          // create mass list and scan. Override data points and spectrum type
-          newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan, mzIntensities[0],
-              mzIntensities[1], MassSpectrumType.CENTROIDED);
-          ScanPointerMassList newMassList = new ScanPointerMassList(newScan);
-          newScan.addMassList(newMassList);
+  /**
+   * Converts a scan and applies mass detection if selected. Called in parallel. The data is decoded
+   * unless {@link #needsDecodedValues(MzMLMsScan, MzMLSpectrumLoader)} returned false.
+   *
+   * @param spectrumLoader if not null, scans without mass detection keep their data points in the
+   *                       mzML file and load them on demand
+   */
+  private ConvertedScan convertScan(MzMLMsScan mzMLScan, RawDataFile newMZmineFile,
+      @Nullable MzMLSpectrumLoader spectrumLoader) {
+    if (applyMassDetection) {
+      // wrap scan
+      MsdkScanWrapper wrapper = new MsdkScanWrapper(mzMLScan);
+      double[][] mzIntensities = null;
+
+      // apply mass detection
+      if (ms1Detector != null && wrapper.getMSLevel() == 1) {
+        mzIntensities = applyMassDetection(ms1Detector, wrapper);
+      } else if (ms2Detector != null && wrapper.getMSLevel() >= 2) {
+        mzIntensities = applyMassDetection(ms2Detector, wrapper);
+        if (denormalizeMSnScans) {
+          ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzIntensities[1],
+              wrapper.getInjectionTime());
         }
       }
 
-      if (newScan == null) {
-        // mz arrays are sorted within this method to ensure order in scans
-        newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan);
+      if (mzIntensities != null) {
+        // scans sorting is enforced in {@link AbstractStorableSpectrum#setDataPoints}
+        return new ConvertedScan(
+            ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan, mzIntensities[0],
+                mzIntensities[1], MassSpectrumType.CENTROIDED), true);
       }
+    }
 
-      newMZmineFile.addScan(newScan);
-      parsedScans++;
-      description =
-          "Importing " + this.file.getName() + ", parsed " + parsedScans + "/" + totalScans
-              + " scans";
+    if (spectrumLoader != null && MzMLSpectrumLoader.canLoadOnDemand(mzMLScan)) {
+      return new ConvertedScan(ConversionUtils.msdkScanToOnDemandScan(newMZmineFile, mzMLScan,
+          spectrumLoader.forScan(mzMLScan)), false);
     }
+
+    // mz arrays are sorted within this method to ensure order in scans
+    return new ConvertedScan(ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan), false);
   }
 
   public void buildIonMobilityFile(io.github.msdk.datamodel.RawDataFile file,
@@ -453,6 +504,13 @@ public class MSDKmzMLImportTask extends AbstractTask {
     return description;
   }
 
+  /**
+   * @param detectedMasses true if the scan only contains the detected masses
+   */
+  private record ConvertedScan(Scan scan, boolean detectedMasses) {
+
+  }
+
   /**
    * @see io.github.mzmine.taskcontrol.Task#getFinishedPercentage()
    */
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_mzml;
+
+import io.github.msdk.datamodel.MsScan;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLMsScan;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.util.ByteBufferInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decodes the binary data arrays of parsed mzML scans in a pool of worker threads and hands the
+ * results to a single committer in the original scan order. The XML parser only locates the
+ * binary data, each worker decodes chunks of scans from its own view of the memory-mapped file.
+ * Only a limited number of chunks is decoded ahead of the committer to bound memory.
+ */
+class MzMLScanDecodingPipeline implements AutoCloseable {
+
+  private static final int CHUNK_SIZE = 32;
+
+  private final ExecutorService executor;
+  private final int maxChunksAhead;
+
+  /**
+   * @param threads number of decoding threads
+   */
+  MzMLScanDecodingPipeline(int threads) {
+    threads = Math.max(1, threads);
+    executor = Executors.newFixedThreadPool(threads, r -> {
+      final Thread thread = new Thread(r, "mzML decoder");
+      thread.setDaemon(true);
+      return thread;
+    });
+    maxChunksAhead = threads * 2;
+  }
+
+  /**
+   * @param scans      the scans in file order
+   * @param decode     tests if the values of a scan are decoded before it is passed to the worker
+   * @param worker     converts a scan, runs in parallel
+   * @param committer  receives the results in scan order on the calling thread
+   * @param isCanceled stops the pipeline
+   */
+  <T> void process(@NotNull List<MsScan> scans, @NotNull Predicate<MzMLMsScan> decode,
+      @NotNull Function<MzMLMsScan, T> worker, @NotNull Committer<T> committer, @NotNull BooleanSupplier isCanceled) throws IOException {
+    final int numChunks = (scans.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    final Deque<CompletableFuture<List<T>>> pending = new ArrayDeque<>(maxChunksAhead);
+    int nextChunk = 0;
+
+    try {
+      while (nextChunk < numChunks || !pending.isEmpty()) {
+        if (isCanceled.getAsBoolean()) {
+          return;
+        }
+        // keep workers busy
+        while (nextChunk < numChunks && pending.size() < maxChunksAhead) {
+          final List<MsScan> chunk = scans.subList(nextChunk * CHUNK_SIZE,
+              Math.min(scans.size(), (nextChunk + 1) * CHUNK_SIZE));
+          pending.add(CompletableFuture.supplyAsync(() -> decodeChunk(chunk, decode, worker), executor));
+          nextChunk++;
+        }
+
+        // commit in order
+        for (T result : pending.removeFirst().join()) {
+          committer.commit(result);
+        }
+      }
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      throw e;
+    } finally {
+      pending.forEach(f -> f.cancel(false));
+    }
+  }
+
+  private static <T> List<T> decodeChunk(List<MsScan> chunk, Predicate<MzMLMsScan> decode,
+      Function<MzMLMsScan, T> worker) {
+    final List<T> results = new ArrayList<>(chunk.size());
+    // one independent view of the mapped file per chunk
+    ByteBufferInputStream stream = null;
+    for (MsScan scan : chunk) {
+      final MzMLMsScan mzMLScan = (MzMLMsScan) scan;
+      // other streams were already decoded during parsing
+      final InputStream scanStream = mzMLScan.getInputStream();
+      // scans that keep their data in the file may skip decoding if the header has all summaries
+      final boolean decoded =
+          scanStream instanceof ByteBufferInputStream && decode.test(mzMLScan);
+      if (decoded) {
+        if (stream == null) {
+          stream = ((ByteBufferInputStream) scanStream).copy();
+        }
+        mzMLScan.decodeValues(stream);
+      }
+      results.add(worker.apply(mzMLScan));
+      if (decoded) {
+        // values are copied into the converted scan, decoded again on demand
+        mzMLScan.clearValues();
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  @FunctionalInterface
+  interface Committer<T> {
+
+    void commit(T result) throws IOException;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_mzml;
+
+import io.github.mzmine.datamodel.impl.OnDemandScan;
+import io.github.mzmine.datamodel.impl.OnDemandScan.SpectrumLoader;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLBinaryDataInfo;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLCV;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLMsScan;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLRandomAccessReader;
+import io.github.mzmine.util.DataPointUtils;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Loads the data points of {@link OnDemandScan}s from an mzML file. The recently decoded spectra
+ * are kept in a least recently used cache that is bounded by the total number of data points. The
+ * loader keeps the file open until it is closed, usually together with the raw data file.
+ */
+class MzMLSpectrumLoader implements Closeable {
+
+  // 16 bytes per data point, ~160 MB
+  private static final long MAX_CACHED_DATA_POINTS = 10_000_000L;
+
+  private final MzMLRandomAccessReader reader;
+  // access ordered for LRU
+  private final Map<String, double[][]> cache = new LinkedHashMap<>(256, 0.75f, true);
+  private long cachedDataPoints = 0;
+
+  MzMLSpectrumLoader(@NotNull File file) throws IOException {
+    reader = new MzMLRandomAccessReader(file);
+  }
+
+  /**
+   * @return true if the scan data can be loaded on demand. Requires the positions of the binary
+   * data, which are only recorded when parsing from a file.
+   */
+  static boolean canLoadOnDemand(@NotNull MzMLMsScan scan) {
+    final MzMLBinaryDataInfo mzInfo = scan.getMzBinaryDataInfo();
+    final MzMLBinaryDataInfo intensityInfo = scan.getIntensityBinaryDataInfo();
+    return mzInfo != null && intensityInfo != null && mzInfo.getPosition() > 0
+        && intensityInfo.getPosition() > 0;
+  }
+
+  /**
+   * @return true if the spectrum header contains a valid TIC, m/z range, base peak, and spectrum
+   * type. The data points of such scans do not need to be decoded during import.
+   */
+  static boolean hasSummaryValues(@NotNull MzMLMsScan scan) {
+    if (scan.getNumberOfDataPoints() == 0) {
+      return true;
+    }
+    if (scan.getCVValue(MzMLCV.cvCentroidSpectrum).isEmpty() && scan.getCVValue(
+        MzMLCV.cvProfileSpectrum).isEmpty()) {
+      return false;
+    }
+    try {
+      final double lowestMz = parseCVDouble(scan, MzMLCV.cvLowestMz);
+      final double highestMz = parseCVDouble(scan, MzMLCV.cvHighestMz);
+      parseCVDouble(scan, MzMLCV.cvTIC);
+      parseCVDouble(scan, MzMLCV.cvBasePeakMz);
+      parseCVDouble(scan, MzMLCV.cvBasePeakIntensity);
+      return lowestMz <= highestMz;
+    } catch (NumberFormatException | NoSuchElementException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return the double value of a spectrum cvParam
+   * @throws NoSuchElementException if the cvParam or its value is missing
+   * @throws NumberFormatException  if the value is not a number
+   */
+  static double parseCVDouble(@NotNull MzMLMsScan scan, @NotNull String accession) {
+    return Double.parseDouble(scan.getCVValue(accession).orElseThrow());
+  }
+
+  /**
+   * @return a loader for the data points of this scan, only keeps the binary data positions
+   */
+  @NotNull SpectrumLoader forScan(@NotNull MzMLMsScan scan) {
+    final String id = scan.getId();
+    final MzMLBinaryDataInfo mzInfo = scan.getMzBinaryDataInfo();
+    final MzMLBinaryDataInfo intensityInfo = scan.getIntensityBinaryDataInfo();
+    return onDemandScan -> load(id, mzInfo, intensityInfo);
+  }
+
+  private double[][] load(@NotNull String id, @NotNull MzMLBinaryDataInfo mzInfo,
+      @NotNull MzMLBinaryDataInfo intensityInfo) throws IOException {
+    final double[][] cached = getCached(id);
+    if (cached != null) {
+      return cached;
+    }
+
+    // decode outside of the lock, FileChannel reads are thread safe
+    final double[] mzs = reader.readDoubles(id, mzInfo);
+    // intensities are decoded to float as in the regular import
+    final float[] floatIntensities = reader.readFloats(id, intensityInfo);
+    final double[] intensities = ConversionUtils.convertFloatsToDoubles(floatIntensities);
+    final double[][] data = DataPointUtils.ensureSortingMzAscendingDefault(mzs, intensities);
+    putCached(id, data);
+    return data;
+  }
+
+  private synchronized @Nullable double[][] getCached(@NotNull String id) {
+    return cache.get(id);
+  }
+
+  private synchronized void putCached(@NotNull String id, double[][] data) {
+    final double[][] old = cache.put(id, data);
+    if (old != null) {
+      cachedDataPoints -= old[0].length;
+    }
+    cachedDataPoints += data[0].length;
+
+    final Iterator<double[][]> eldest = cache.values().iterator();
+    while (cachedDataPoints > MAX_CACHED_DATA_POINTS && cache.size() > 1 && eldest.hasNext()) {
+      cachedDataPoints -= eldest.next()[0].length;
+      eldest.remove();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      cache.clear();
+      cachedDataPoints = 0;
+    }
+    reader.close();
+  }
+}
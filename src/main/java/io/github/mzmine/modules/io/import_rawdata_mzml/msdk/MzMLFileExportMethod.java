@@ -25,13 +25,23 @@
 
 package io.github.mzmine.modules.io.import_rawdata_mzml.msdk;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -81,6 +91,8 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
   private static final String CV_REF_MS = "MS";
 
   private static final String PREFIX_XSI = "xsi";
+  // number of scans encoded by one task
+  private static final int ENCODING_CHUNK_SIZE = 32;
 
   private final Logger logger = Logger.getLogger(this.getClass().getName());
 
@@ -88,6 +100,7 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
   private final @NotNull File target;
   private final @NotNull MzMLCompressionType doubleArrayCompression;
   private final @NotNull MzMLCompressionType floatArrayCompression;
+  private final int threads;
 
   private boolean canceled = false;
 
@@ -108,10 +121,30 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
   public MzMLFileExportMethod(@NotNull RawDataFile rawDataFile, @NotNull File target,
       @NotNull MzMLCompressionType doubleArrayCompression,
       MzMLCompressionType floatArrayCompression) {
+    this(rawDataFile, target, doubleArrayCompression, floatArrayCompression, 1);
+  }
+
+  /**
+   * <p>
+   * Constructor for MzMLFileExportMethod.
+   * </p>
+   *
+   * @param rawDataFile the input {@link o.github.msdk.datamodel.rawdata.RawDataFile RawDataFile}
+   *        which contains the data to be exported
+   * @param target the target {@link File File} to write the data, in mzML format
+   * @param doubleArrayCompression compression type for <code>double[]</code> which are encoded
+   * @param floatArrayCompression compression type for <code>float[]</code> which are encoded
+   * @param threads number of threads that encode the binary data arrays of the scans, while the
+   *        spectra are written in order
+   */
+  public MzMLFileExportMethod(@NotNull RawDataFile rawDataFile, @NotNull File target,
+      @NotNull MzMLCompressionType doubleArrayCompression,
+      MzMLCompressionType floatArrayCompression, int threads) {
     this.rawDataFile = rawDataFile;
     this.target = target;
     this.doubleArrayCompression = doubleArrayCompression;
     this.floatArrayCompression = floatArrayCompression;
+    this.threads = Math.max(1, threads);
   }
 
   /**
@@ -136,14 +169,24 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
     List<Long> spectrumIndices = new ArrayList<>();
     List<Long> chromatogramIndices = new ArrayList<>();
 
+    // binary data arrays are encoded ahead of the writer
+    final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+      final Thread thread = new Thread(r, "mzML encoder");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final Deque<CompletableFuture<List<EncodedArrays>>> pendingChunks = new ArrayDeque<>();
+
     try {
 
       FileOutputStream fos = new FileOutputStream(target);
       MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
-      DigestOutputStream dos = new DigestOutputStream(fos, sha1);
+      DigestOutputStream dos = new DigestOutputStream(new BufferedOutputStream(fos, 1 << 16), sha1);
       dos.on(true);
+      // the index requires byte offsets, character offsets differ for multi byte characters
+      ByteCountingOutputStream counter = new ByteCountingOutputStream(dos);
       XMLStreamWriterImpl xmlStreamWriter = new XMLStreamWriterImpl();
-      xmlStreamWriter.setOutput(dos);
+      xmlStreamWriter.setOutput(counter);
 
       // Setting namespace and prefixes
       xmlStreamWriter.setDefaultNamespace(MZML_NAMESPACE);
@@ -210,7 +253,13 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
       byte[] mzBuffer = null;
       byte[] intensityBuffer = null;
 
-      for (MsScan scan : scans) {
+      final int numChunks = (scans.size() + ENCODING_CHUNK_SIZE - 1) / ENCODING_CHUNK_SIZE;
+      final int maxChunksAhead = threads * 2;
+      int nextChunk = 0;
+      List<EncodedArrays> encodedChunk = null;
+
+      for (int scanIndex = 0; scanIndex < scans.size(); scanIndex++) {
+        final MsScan scan = scans.get(scanIndex);
 
         if (canceled) {
           dos.close();
@@ -220,8 +269,20 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
           return null;
         }
 
+        if (scanIndex % ENCODING_CHUNK_SIZE == 0) {
+          // keep the encoders busy
+          while (nextChunk < numChunks && pendingChunks.size() < maxChunksAhead) {
+            final List<MsScan> chunk = scans.subList(nextChunk * ENCODING_CHUNK_SIZE,
+                Math.min(scans.size(), (nextChunk + 1) * ENCODING_CHUNK_SIZE));
+            pendingChunks.add(CompletableFuture.supplyAsync(() -> encodeChunk(chunk), executor));
+            nextChunk++;
+          }
+          encodedChunk = pendingChunks.removeFirst().join();
+        }
+        final EncodedArrays encoded = encodedChunk.get(scanIndex % ENCODING_CHUNK_SIZE);
+
         // <spectrum>
-        spectrumIndices.add(xmlStreamWriter.getLocation().getCharacterOffsetInLong());
+        spectrumIndices.add(getByteOffset(xmlStreamWriter, counter));
         xmlStreamWriter.writeStartElement(MzMLTags.TAG_SPECTRUM);
         xmlStreamWriter.writeAttribute(MzMLTags.ATTR_INDEX, String.valueOf(parsedScans));
         xmlStreamWriter.writeAttribute(MzMLTags.ATTR_ID, "scan=" + scan.getScanNumber());
@@ -430,7 +491,7 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
         xmlStreamWriter.writeAttribute(MzMLTags.ATTR_COUNT, "2");
 
         // <binaryDataArray> (m/z)
-        mzBuffer = MzMLPeaksEncoder.encodeDouble(scan.getMzValues(), doubleArrayCompression);
+        mzBuffer = encoded.mzs();
         xmlStreamWriter.writeStartElement(MzMLTags.TAG_BINARY_DATA_ARRAY);
         xmlStreamWriter.writeAttribute(MzMLTags.ATTR_ENCODED_LENGTH,
             String.valueOf(mzBuffer.length));
@@ -456,8 +517,7 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
         xmlStreamWriter.writeEndElement(); // </binaryDataArray>
 
         // <binaryDataArray> (intensity)
-        intensityBuffer =
-            MzMLPeaksEncoder.encodeFloat(scan.getIntensityValues(), floatArrayCompression);
+        intensityBuffer = encoded.intensities();
         xmlStreamWriter.writeStartElement(MzMLTags.TAG_BINARY_DATA_ARRAY);
         xmlStreamWriter.writeAttribute(MzMLTags.ATTR_ENCODED_LENGTH,
             String.valueOf(intensityBuffer.length));
@@ -511,7 +571,7 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
         }
 
         // <chromatogram>
-        chromatogramIndices.add(xmlStreamWriter.getLocation().getCharacterOffsetInLong());
+        chromatogramIndices.add(getByteOffset(xmlStreamWriter, counter));
         xmlStreamWriter.writeStartElement(MzMLTags.TAG_CHROMATOGRAM);
         xmlStreamWriter.writeAttribute(MzMLTags.ATTR_INDEX, String.valueOf(parsedChromatograms));
         xmlStreamWriter.writeAttribute(MzMLTags.ATTR_ID, chromatogram.getChromatogramType().name());
@@ -670,7 +730,7 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
       xmlStreamWriter.writeEndElement(); // </mzML>
 
       // <indexList>
-      indexListOffset = xmlStreamWriter.getLocation().getCharacterOffsetInLong();
+      indexListOffset = getByteOffset(xmlStreamWriter, counter);
       xmlStreamWriter.writeStartElement(MzMLTags.TAG_INDEX_LIST);
       xmlStreamWriter.writeAttribute(MzMLTags.ATTR_COUNT, "2");
 
@@ -711,9 +771,12 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
       xmlStreamWriter.writeEndElement(); // </indexListOffset>
 
       // <fileChecksum>
+      // the checksum covers everything up to and including <fileChecksum>
+      xmlStreamWriter.writeStartElement(MzMLTags.TAG_FILE_CHECKSUM);
+      xmlStreamWriter.writeCharacters("");
+      xmlStreamWriter.flush();
       dos.on(false);
       String sha1Checksum = DigestUtils.shaHex(sha1.digest());
-      xmlStreamWriter.writeStartElement(MzMLTags.TAG_FILE_CHECKSUM);
       xmlStreamWriter.writeCharacters(sha1Checksum);
       xmlStreamWriter.writeEndElement(); // </fileChecksum>
 
@@ -722,16 +785,52 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
       // Wrapping up
       xmlStreamWriter.writeEndDocument();
       xmlStreamWriter.close();
+      // flushes the buffered output
+      counter.close();
 
+    } catch (CompletionException e) {
+      throw new MSDKException(e.getCause() != null ? e.getCause() : e);
     } catch (
 
     Exception e) {
       throw new MSDKException(e);
+    } finally {
+      pendingChunks.forEach(f -> f.cancel(false));
+      executor.shutdownNow();
     }
 
     return null;
   }
 
+  /**
+   * Encodes the binary data arrays of a chunk of scans. Called in parallel.
+   */
+  private List<EncodedArrays> encodeChunk(List<MsScan> chunk) {
+    final List<EncodedArrays> encoded = new ArrayList<>(chunk.size());
+    try {
+      for (MsScan scan : chunk) {
+        encoded.add(new EncodedArrays(
+            MzMLPeaksEncoder.encodeDouble(scan.getMzValues(), doubleArrayCompression),
+            MzMLPeaksEncoder.encodeFloat(scan.getIntensityValues(), floatArrayCompression)));
+      }
+    } catch (MSDKException e) {
+      throw new CompletionException(e);
+    }
+    return encoded;
+  }
+
+  /**
+   * Flushes the buffered xml and returns the number of bytes written. Writing empty characters
+   * closes the pending start tag of the parent element, otherwise its '>' would be written after
+   * the returned offset.
+   */
+  private long getByteOffset(XMLStreamWriterImpl xmlStreamWriter,
+      ByteCountingOutputStream counter) throws XMLStreamException {
+    xmlStreamWriter.writeCharacters("");
+    xmlStreamWriter.flush();
+    return counter.getCount();
+  }
+
   /** {@inheritDoc} */
   @Override
   public Float getFinishedPercentage() {
@@ -805,4 +904,51 @@ public class MzMLFileExportMethod implements MSDKMethod<Void> {
       writeCVParam(xmlStreamWriter, cvParam);
   }
 
+  /**
+   * Encoded m/z and intensity arrays of a scan
+   */
+  private record EncodedArrays(byte[] mzs, byte[] intensities) {
+
+  }
+
+  /**
+   * Counts the written bytes. Flushes of the xml writer are not passed on to keep the underlying
+   * buffer effective.
+   */
+  private static class ByteCountingOutputStream extends FilterOutputStream {
+
+    private long count = 0;
+
+    private ByteCountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() {
+      // only flush on close
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.flush();
+      out.close();
+    }
+
+    public long getCount() {
+      return count;
+    }
+  }
+
 }
@@ -163,6 +163,16 @@ public class MzMLCV {
    */
   public static final String cvHighestMz = "MS:1000527";
 
+  // Base peak
+  /**
+   * Constant <code>cvBasePeakMz="MS:1000504"</code>
+   */
+  public static final String cvBasePeakMz = "MS:1000504";
+  /**
+   * Constant <code>cvBasePeakIntensity="MS:1000505"</code>
+   */
+  public static final String cvBasePeakIntensity = "MS:1000505";
+
   // Scan window range
 
   /**
@@ -297,6 +297,35 @@ public class MzMLMsScan implements MsScan {
     return array;
   }
 
+  /**
+   * Decodes and caches the m/z and intensity values from the given stream instead of the stream of
+   * this scan. Used to decode multiple scans of the same file in parallel, each thread with its own
+   * stream.
+   *
+   * @param stream a stream over the same data as the stream of this scan
+   */
+  public void decodeValues(@NotNull InputStream stream) {
+    try {
+      if (mzValues == null) {
+        mzValues = MzMLPeaksDecoder.decodeToDouble(stream, getMzBinaryDataInfo(), null);
+      }
+      if (intensityValues == null) {
+        intensityValues = MzMLPeaksDecoder.decodeToFloat(stream, getIntensityBinaryDataInfo(),
+            null);
+      }
+    } catch (Exception e) {
+      throw (new MSDKRuntimeException(e));
+    }
+  }
+
+  /**
+   * Releases the cached m/z and intensity values. They are decoded again on the next access.
+   */
+  public void clearValues() {
+    mzValues = null;
+    intensityValues = null;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data;
+
+import io.github.msdk.MSDKException;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Random access to the binary data arrays of an mzML file. The positions of the arrays are
+ * recorded by the {@link MzMLParser} and the arrays are read through positional {@link FileChannel}
+ * reads, which are safe to be called from multiple threads.
+ * <p>
+ * The parser records character positions, which only equal byte positions for pure ASCII files.
+ * Each read is therefore verified and, if the array was not found at the recorded position, the
+ * spectrum is located by the offset list of indexedmzML files ({@code <indexList>}) and searched
+ * for the array.
+ */
+public class MzMLRandomAccessReader implements Closeable {
+
+  private static final Logger logger = Logger.getLogger(MzMLRandomAccessReader.class.getName());
+
+  private static final Pattern INDEX_LIST_OFFSET_PATTERN = Pattern.compile(
+      "<indexListOffset>\\s*(\\d+)\\s*</indexListOffset>");
+  private static final Pattern SPECTRUM_INDEX_PATTERN = Pattern.compile(
+      "<index\\s+name=\"spectrum\"\\s*>(.*?)</index>", Pattern.DOTALL);
+  private static final Pattern OFFSET_PATTERN = Pattern.compile(
+      "<offset\\s+idRef=\"([^\"]*)\"[^>]*>\\s*(\\d+)\\s*</offset>");
+  private static final byte[] BINARY_TAG = "<binary".getBytes(StandardCharsets.US_ASCII);
+  // the index list is found within the last bytes of the file
+  private static final int TAIL_LENGTH = 4096;
+  // larger index lists are not read, the recorded positions are used without fallback
+  private static final long MAX_INDEX_LIST_LENGTH = 512L * 1024 * 1024;
+
+  private final File file;
+  private final FileChannel channel;
+  // spectrum id to byte offset of the spectrum element, null if the file is not indexed
+  private final @Nullable Map<String, Long> spectrumOffsets;
+  // sorted offsets to find the end of each spectrum
+  private final long[] sortedOffsets;
+  private final long indexListOffset;
+  // difference between byte and recorded character positions, grows with each multi byte char
+  private volatile long positionShift = 0;
+
+  public MzMLRandomAccessReader(@NotNull File file) throws IOException {
+    this.file = file;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+    long listOffset = -1;
+    Map<String, Long> offsets = null;
+    try {
+      listOffset = readIndexListOffset();
+      if (listOffset > 0) {
+        offsets = readSpectrumOffsets(listOffset);
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.fine(() -> "Cannot read the index list of " + file.getName() + ": " + e.getMessage());
+      offsets = null;
+    }
+    indexListOffset = offsets == null ? channel.size() : listOffset;
+    spectrumOffsets = offsets;
+    sortedOffsets = offsets == null ? new long[0]
+        : offsets.values().stream().mapToLong(Long::longValue).sorted().toArray();
+  }
+
+  /**
+   * @return true if the file contains a spectrum offset list
+   */
+  public boolean isIndexed() {
+    return spectrumOffsets != null;
+  }
+
+  /**
+   * @param spectrumId the id attribute of the spectrum element
+   * @return the byte offset of the spectrum element or -1 if unknown
+   */
+  public long getSpectrumOffset(@NotNull String spectrumId) {
+    if (spectrumOffsets == null) {
+      return -1;
+    }
+    return spectrumOffsets.getOrDefault(spectrumId, -1L);
+  }
+
+  /**
+   * Reads and decodes a binary data array.
+   *
+   * @param spectrumId the id of the spectrum that contains the array. Used to locate the spectrum
+   *                   if the recorded position is off.
+   */
+  public double[] readDoubles(@NotNull String spectrumId, @NotNull MzMLBinaryDataInfo info)
+      throws IOException {
+    if (info.getEncodedLength() == 0) {
+      return new double[0];
+    }
+    try {
+      return MzMLPeaksDecoder.decodeToDouble(readEncoded(spectrumId, info), info, null);
+    } catch (DataFormatException | MSDKException e) {
+      throw new IOException("Cannot decode binary data of spectrum " + spectrumId, e);
+    }
+  }
+
+  /**
+   * Reads and decodes a binary data array as float values, the same way as the intensities are
+   * decoded by {@link MzMLMsScan#getIntensityValues()}.
+   *
+   * @param spectrumId the id of the spectrum that contains the array. Used to locate the spectrum
+   *                   if the recorded position is off.
+   */
+  public float[] readFloats(@NotNull String spectrumId, @NotNull MzMLBinaryDataInfo info)
+      throws IOException {
+    if (info.getEncodedLength() == 0) {
+      return new float[0];
+    }
+    try {
+      return MzMLPeaksDecoder.decodeToFloat(readEncoded(spectrumId, info), info, null);
+    } catch (DataFormatException | MSDKException e) {
+      throw new IOException("Cannot decode binary data of spectrum " + spectrumId, e);
+    }
+  }
+
+  /**
+   * @return the base64 encoded content of the binary element
+   */
+  private ByteArrayInputStream readEncoded(@NotNull String spectrumId,
+      @NotNull MzMLBinaryDataInfo info) throws IOException {
+    final int length = info.getEncodedLength();
+    final long shift = positionShift;
+    final long position = info.getPosition() + shift;
+
+    // read one extra byte before and after the encoded data to verify the position
+    // base64 never contains the surrounding '>' and '<'
+    if (position > 0) {
+      final byte[] bytes = read(position - 1, length + 2);
+      if (bytes[0] == '>' && bytes[length + 1] == '<') {
+        return new ByteArrayInputStream(bytes, 1, length);
+      }
+    }
+
+    final long found = locateInSpectrum(spectrumId, position, length);
+    if (found < 0) {
+      throw new IOException(
+          "Cannot locate binary data of spectrum " + spectrumId + " in file " + file.getName()
+              + (isIndexed() ? "" : " (the file is not an indexed mzML)"));
+    }
+    // the shift only grows along the file
+    if (found - info.getPosition() > shift) {
+      positionShift = found - info.getPosition();
+    }
+    return new ByteArrayInputStream(read(found, length));
+  }
+
+  /**
+   * Searches the spectrum for a binary element with the given encoded length, starting close to
+   * the expected position.
+   *
+   * @return the byte position of the encoded data or -1 if not found
+   */
+  private long locateInSpectrum(@NotNull String spectrumId, long expectedPosition, int length)
+      throws IOException {
+    final long start = getSpectrumOffset(spectrumId);
+    if (start < 0) {
+      return -1;
+    }
+    final int next = Arrays.binarySearch(sortedOffsets, start) + 1;
+    final long end = next < sortedOffsets.length ? sortedOffsets[next] : indexListOffset;
+    if (end <= start || end - start > Integer.MAX_VALUE) {
+      return -1;
+    }
+
+    final byte[] spectrum = read(start, (int) (end - start));
+    long best = -1;
+    for (int i = indexOf(spectrum, BINARY_TAG, 0); i >= 0;
+        i = indexOf(spectrum, BINARY_TAG, i + 1)) {
+      int contentStart = i + BINARY_TAG.length;
+      // skip binaryDataArray and binaryDataArrayList elements
+      if (contentStart >= spectrum.length || (spectrum[contentStart] != '>'
+          && !Character.isWhitespace(spectrum[contentStart]))) {
+        continue;
+      }
+      while (contentStart < spectrum.length && spectrum[contentStart - 1] != '>') {
+        contentStart++;
+      }
+      final int contentEnd = contentStart + length;
+      if (contentEnd < spectrum.length && spectrum[contentEnd] == '<'
+          && indexOf(spectrum, new byte[]{'<'}, contentStart) == contentEnd) {
+        final long candidate = start + contentStart;
+        // prefer the first match after the expected position, all positions only shift forward
+        if (best < 0 || (best < expectedPosition && candidate >= expectedPosition)) {
+          best = candidate;
+        }
+      }
+    }
+    return best;
+  }
+
+  private static int indexOf(byte[] data, byte[] pattern, int from) {
+    outer:
+    for (int i = from; i <= data.length - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (data[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private byte[] read(long position, int length) throws IOException {
+    final byte[] bytes = new byte[length];
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException(
+            "Unexpected end of file " + file.getName() + " at position " + position);
+      }
+    }
+    return bytes;
+  }
+
+  private long readIndexListOffset() throws IOException {
+    final long size = channel.size();
+    final int tailLength = (int) Math.min(size, TAIL_LENGTH);
+    final String tail = new String(read(size - tailLength, tailLength),
+        StandardCharsets.ISO_8859_1);
+    final Matcher matcher = INDEX_LIST_OFFSET_PATTERN.matcher(tail);
+    long offset = -1;
+    while (matcher.find()) {
+      offset = Long.parseLong(matcher.group(1));
+    }
+    return offset < size ? offset : -1;
+  }
+
+  private @Nullable Map<String, Long> readSpectrumOffsets(long listOffset) throws IOException {
+    final long length = channel.size() - listOffset;
+    if (length > MAX_INDEX_LIST_LENGTH) {
+      return null;
+    }
+    final String indexList = new String(read(listOffset, (int) length), StandardCharsets.UTF_8);
+    final Matcher spectrumIndex = SPECTRUM_INDEX_PATTERN.matcher(indexList);
+    if (!spectrumIndex.find()) {
+      return null;
+    }
+
+    final Map<String, Long> offsets = new HashMap<>();
+    final Matcher offset = OFFSET_PATTERN.matcher(spectrumIndex.group(1));
+    while (offset.find()) {
+      offsets.put(unescapeXml(offset.group(1)), Long.parseLong(offset.group(2)));
+    }
+    return offsets.isEmpty() ? null : offsets;
+  }
+
+  private static String unescapeXml(String value) {
+    if (value.indexOf('&') < 0) {
+      return value;
+    }
+    return value.replace("&quot;", "\"").replace("&apos;", "'").replace("&lt;", "<")
+        .replace("&gt;", ">").replace("&amp;", "&");
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -26,19 +26,18 @@
 package io.github.mzmine.modules.io.import_rawdata_mzxml;
 
 import com.google.common.base.Strings;
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.impl.DDAMsMsInfoImpl;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleMassSpectrum;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
 import io.github.mzmine.datamodel.msms.ActivationMethod;
 import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
@@ -47,34 +46,49 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.CompressionUtils;
-import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.scans.ScanUtils;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.DataFormatException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.Duration;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.jetbrains.annotations.NotNull;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import org.jetbrains.annotations.Nullable;
 
 /**
- *
+ * Imports mzXML files. The XML is streamed by a StAX reader on the task thread, which only extracts
+ * the scan metadata and the base64 encoded peaks. Chunks of scans are decoded (base64, zlib) and
+ * converted in a pool of worker threads and the scans are added to the raw data file in their
+ * original order. Only a limited number of chunks is decoded ahead to bound memory.
  */
 public class MzXMLImportTask extends AbstractTask {
 
+  private static final int CHUNK_SIZE = 32;
+
   private final ParameterSet parameters;
   private final Class<? extends MZmineModule> module;
   private final Logger logger = Logger.getLogger(this.getClass().getName());
@@ -83,49 +97,14 @@ public class MzXMLImportTask extends AbstractTask {
   private final MZmineProject project;
   private final RawDataFile newMZmineFile;
   private int totalScans = 0, parsedScans;
-  private int peaksCount = 0;
-  private final StringBuilder charBuffer;
-  private boolean compressFlag = false;
-  private final DefaultHandler handler = new MzXMLHandler();
-  private String precision;
-
-  // extracted values
-  private float retentionTime = 0;
-  private int scanNumber = 0;
-  private int msLevel = 1;
-  private PolarityType polarity = PolarityType.UNKNOWN;
-  private String scanId = "";
-  private double precursorMz = 0d;
-  private int precursorCharge = 0;
-
-  // Retention time parser
-  private DatatypeFactory dataTypeFactory;
-
-  /*
-   * This variables are used to set the number of fragments that one single scan can have. The
-   * initial size of array is set to 10, but it depends of fragmentation level.
-   */
-  private final int[] parentTreeValue = new int[10];
-  private int msLevelTree = 0;
-
-  /*
-   * This stack stores the current scan and all his fragments until all the information is recover.
-   * The logic is FIFO at the moment of write into the RawDataFile
-   */
-  private final LinkedList<SimpleScan> parentStack;
-
 
   // advanced processing will apply mass detection directly to the scans
   private final boolean applyMassDetection;
   private MZmineProcessingStep<MassDetector> ms1Detector = null;
   private MZmineProcessingStep<MassDetector> ms2Detector = null;
 
-  /*
-   * This variable hold the present scan or fragment, it is send to the stack when another
-   * scan/fragment appears as a parser.startElement
-   */
-  private SimpleScan buildingScan;
-
+  // Retention time parser
+  private DatatypeFactory dataTypeFactory;
 
   public MzXMLImportTask(MZmineProject project, File fileToOpen, RawDataFile newMZmineFile,
       @NotNull final Class<? extends MZmineModule> module, @NotNull final ParameterSet parameters,
@@ -140,9 +119,6 @@ public class MzXMLImportTask extends AbstractTask {
     super(null, moduleCallDate); // storage in raw data file
     this.parameters = parameters;
     this.module = module;
-    // 256 kilo-chars buffer
-    charBuffer = new StringBuilder(1 << 18);
-    parentStack = new LinkedList<SimpleScan>();
     this.project = project;
     this.file = fileToOpen;
     this.newMZmineFile = newMZmineFile;
@@ -181,28 +157,42 @@ public class MzXMLImportTask extends AbstractTask {
     setStatus(TaskStatus.PROCESSING);
     logger.info("Started parsing file " + file);
 
-    // Use the default (non-validating) parser
-    SAXParserFactory factory = SAXParserFactory.newInstance();
+    // minus this task
+    final int threads = Math.max(1, MZmineCore.getConfiguration().getNumOfThreads() - 1);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+      final Thread thread = new Thread(r, "mzXML decoder");
+      thread.setDaemon(true);
+      return thread;
+    });
 
-    try {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
 
       dataTypeFactory = DatatypeFactory.newInstance();
+      final XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+      parse(reader, executor, threads * 2);
+      reader.close();
 
-      SAXParser saxParser = factory.newSAXParser();
-      saxParser.parse(file, handler);
+      if (isCanceled()) {
+        return;
+      }
 
       newMZmineFile.getAppliedMethods()
           .add(new SimpleFeatureListAppliedMethod(module, parameters, getModuleCallDate()));
       project.addFile(newMZmineFile);
 
     } catch (Throwable e) {
-      e.printStackTrace();
+      if (e instanceof CompletionException && e.getCause() != null) {
+        e = e.getCause();
+      }
+      logger.log(Level.WARNING, "Error while parsing " + file, e);
       /* we may already have set the status to CANCELED */
       if (getStatus() == TaskStatus.PROCESSING) {
         setStatus(TaskStatus.ERROR);
         setErrorMessage(ExceptionUtils.exceptionToString(e));
       }
       return;
+    } finally {
+      executor.shutdownNow();
     }
 
     if (isCanceled()) {
@@ -220,312 +210,269 @@ public class MzXMLImportTask extends AbstractTask {
 
   }
 
-  @Override
-  public String getTaskDescription() {
-    return "Opening file " + file;
-  }
-
-  private class MzXMLHandler extends DefaultHandler {
-
-
-    @Override
-    public void startElement(String namespaceURI, String lName, // local
-        // name
-        String qName, // qualified name
-        Attributes attrs) throws SAXException {
-
-      if (isCanceled()) {
-        throw new SAXException("Parsing Cancelled");
-      }
-
-      // <msRun>
-      if (qName.equals("msRun")) {
-        String s = attrs.getValue("scanCount");
-        if (s != null) {
-          totalScans = Integer.parseInt(s);
-        }
-      }
-
-      // <scan>
-      if (qName.equalsIgnoreCase("scan")) {
-
-        if (buildingScan != null) {
-          parentStack.addFirst(buildingScan);
-          buildingScan = null;
-        }
-
-        /*
-         * Only num, msLevel & peaksCount values are required according with mzxml standard, the
-         * others are optional
-         */
-        scanNumber = Integer.parseInt(attrs.getValue("num"));
-
-        // mzXML files with empty msLevel attribute do exist, so we use
-        // 1 as default
-        msLevel = 1;
-        if (!Strings.isNullOrEmpty(attrs.getValue("msLevel"))) {
-          msLevel = Integer.parseInt(attrs.getValue("msLevel"));
-        }
+  /**
+   * Streams the scans of the file. Scans are collected in document order of their start elements,
+   * which puts fragment scans nested in a parent scan after the parent. The peaks of a scan
+   * precede its nested scans.
+   *
+   * @param maxChunksAhead maximum number of chunks that are decoded ahead of the committed scans
+   */
+  private void parse(XMLStreamReader reader, ExecutorService executor, int maxChunksAhead)
+      throws XMLStreamException, IOException {
+    final Deque<CompletableFuture<List<DecodedScan>>> pending = new ArrayDeque<>(maxChunksAhead);
+    List<EncodedScan> chunk = new ArrayList<>(CHUNK_SIZE);
+    EncodedScan current = null;
 
-        String scanType = attrs.getValue("scanType");
-        String filterLine = attrs.getValue("filterLine");
-        scanId = filterLine;
-        if (Strings.isNullOrEmpty(scanId)) {
-          scanId = scanType;
+    try {
+      while (reader.hasNext()) {
+        if (isCanceled()) {
+          return;
         }
 
-        String polarityAttr = attrs.getValue("polarity");
-        if ((polarityAttr != null) && (polarityAttr.length() == 1)) {
-          polarity = PolarityType.fromSingleChar(polarityAttr);
-        } else {
-          polarity = PolarityType.UNKNOWN;
-        }
-        peaksCount = Integer.parseInt(attrs.getValue("peaksCount"));
-
-        // Parse retention time
-        String retentionTimeStr = attrs.getValue("retentionTime");
-        if (retentionTimeStr != null) {
-          Date currentDate = new Date();
-          Duration dur = dataTypeFactory.newDuration(retentionTimeStr);
-          retentionTime = (float) (dur.getTimeInMillis(currentDate) / 1000d / 60d);
-        } else {
-          setStatus(TaskStatus.ERROR);
-          setErrorMessage("This file does not contain retentionTime for scans");
-          throw new SAXException("Could not read retention time");
+        final int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          final String name = reader.getLocalName();
+          if (name.equals("msRun")) {
+            final String scanCount = reader.getAttributeValue(null, "scanCount");
+            if (scanCount != null) {
+              totalScans = Integer.parseInt(scanCount);
+            }
+          } else if (name.equalsIgnoreCase("scan")) {
+            if (current != null) {
+              // a nested fragment scan starts, the parent is complete
+              chunk.add(current);
+            }
+            current = readScanAttributes(reader);
+          } else if (current != null && name.equalsIgnoreCase("peaks")) {
+            final String compressionType = reader.getAttributeValue(null, "compressionType");
+            current.compressed = compressionType != null && !compressionType.equals("none");
+            current.doublePrecision = "64".equals(reader.getAttributeValue(null, "precision"));
+            current.encodedPeaks = reader.getElementText();
+          } else if (current != null && name.equalsIgnoreCase("precursorMz")) {
+            final String precursorChargeStr = reader.getAttributeValue(null, "precursorCharge");
+            if (precursorChargeStr != null) {
+              current.precursorCharge = Integer.parseInt(precursorChargeStr);
+            }
+            final String textContent = reader.getElementText().trim();
+            if (!textContent.isEmpty()) {
+              current.precursorMz = Double.parseDouble(textContent);
+            }
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT && current != null
+            && reader.getLocalName().equalsIgnoreCase("scan")) {
+          chunk.add(current);
+          current = null;
         }
 
-        int parentScan = -1;
-
-        if (msLevel > 9) {
-          setStatus(TaskStatus.ERROR);
-          setErrorMessage("msLevel value bigger than 10");
-          throw new SAXException("The value of msLevel is bigger than 10");
+        if (chunk.size() >= CHUNK_SIZE) {
+          submit(chunk, executor, pending);
+          chunk = new ArrayList<>(CHUNK_SIZE);
+          if (pending.size() >= maxChunksAhead) {
+            commit(pending.removeFirst().join());
+          }
         }
-
-        /*
-         * if (msLevel > 1) { parentScan = parentTreeValue[msLevel - 1]; for (SimpleScan p :
-         * parentStack) { if (p.getScanNumber() == parentScan) { p.addFragmentScan(scanNumber); } }
-         * }
-         */
-
-        // Setting the level of fragment of scan and parent scan number
-        msLevelTree++;
-        parentTreeValue[msLevel] = scanNumber;
       }
 
-      // <peaks>
-      if (qName.equalsIgnoreCase("peaks")) {
-        // clean the current char buffer for the new element
-        charBuffer.setLength(0);
-        compressFlag = false;
-        String compressionType = attrs.getValue("compressionType");
-        compressFlag = (compressionType != null) && (!compressionType.equals("none"));
-        precision = attrs.getValue("precision");
-
+      if (current != null) {
+        chunk.add(current);
       }
-
-      // <precursorMz>
-      if (qName.equalsIgnoreCase("precursorMz")) {
-        // clean the current char buffer for the new element
-        charBuffer.setLength(0);
-        String precursorChargeStr = attrs.getValue("precursorCharge");
-        if (precursorChargeStr != null) {
-          precursorCharge = Integer.parseInt(precursorChargeStr);
-        }
+      if (!chunk.isEmpty()) {
+        submit(chunk, executor, pending);
       }
-
+      while (!pending.isEmpty() && !isCanceled()) {
+        commit(pending.removeFirst().join());
+      }
+    } finally {
+      pending.forEach(f -> f.cancel(false));
     }
+  }
 
-    /**
-     * endElement()
+  private EncodedScan readScanAttributes(XMLStreamReader reader) {
+    final EncodedScan scan = new EncodedScan();
+    /*
+     * Only num, msLevel & peaksCount values are required according with mzxml standard, the
+     * others are optional
      */
-    @Override
-    public void endElement(String namespaceURI, String sName, // simple name
-        String qName // qualified name
-    ) throws SAXException {
-
-      // </scan>
-      if (qName.equalsIgnoreCase("scan")) {
-
-        msLevelTree--;
-
-        /*
-         * At this point we verify if the scan and his fragments are closed, so we include the
-         * present scan/fragment into the stack and start to take elements from them (FIFO) for the
-         * RawDataFile.
-         */
-
-        if (msLevelTree == 0) {
-          parentStack.addFirst(buildingScan);
-          reset();
-          buildingScan = null;
-          while (!parentStack.isEmpty()) {
-            SimpleScan currentScan = parentStack.removeLast();
-            try {
-              newMZmineFile.addScan(currentScan);
-            } catch (IOException e) {
-              e.printStackTrace();
-              setStatus(TaskStatus.ERROR);
-              setErrorMessage("IO error: " + e);
-              throw new SAXException("Parsing error: " + e);
-            }
-            parsedScans++;
-          }
+    scan.scanNumber = Integer.parseInt(reader.getAttributeValue(null, "num"));
 
-          /*
-           * The scan with all his fragments is in the RawDataFile, now we clean the stack for the
-           * next scan and fragments.
-           */
-          parentStack.clear();
+    // mzXML files with empty msLevel attribute do exist, so we use
+    // 1 as default
+    final String msLevel = reader.getAttributeValue(null, "msLevel");
+    if (!Strings.isNullOrEmpty(msLevel)) {
+      scan.msLevel = Integer.parseInt(msLevel);
+    }
 
-        }
+    scan.scanId = reader.getAttributeValue(null, "filterLine");
+    if (Strings.isNullOrEmpty(scan.scanId)) {
+      scan.scanId = reader.getAttributeValue(null, "scanType");
+    }
 
-        return;
-      }
+    final String polarityAttr = reader.getAttributeValue(null, "polarity");
+    if ((polarityAttr != null) && (polarityAttr.length() == 1)) {
+      scan.polarity = PolarityType.fromSingleChar(polarityAttr);
+    }
+    scan.peaksCount = Integer.parseInt(reader.getAttributeValue(null, "peaksCount"));
 
-      // <precursorMz>
-      if (qName.equalsIgnoreCase("precursorMz")) {
-        final String textContent = charBuffer.toString();
-        precursorMz = 0d;
-        if (!textContent.isEmpty()) {
-          precursorMz = Double.parseDouble(textContent);
-        }
+    // Parse retention time
+    final String retentionTimeStr = reader.getAttributeValue(null, "retentionTime");
+    if (retentionTimeStr == null) {
+      throw new IllegalStateException("This file does not contain retentionTime for scans");
+    }
+    Duration dur = dataTypeFactory.newDuration(retentionTimeStr);
+    scan.retentionTime = (float) (dur.getTimeInMillis(new Date()) / 1000d / 60d);
+    return scan;
+  }
 
-        return;
+  private void submit(List<EncodedScan> chunk, ExecutorService executor,
+      Deque<CompletableFuture<List<DecodedScan>>> pending) {
+    pending.add(CompletableFuture.supplyAsync(() -> {
+      final List<DecodedScan> decoded = new ArrayList<>(chunk.size());
+      for (EncodedScan scan : chunk) {
+        decoded.add(decodeScan(scan));
       }
+      return decoded;
+    }, executor));
+  }
 
-      // <peaks>
-      if (qName.equalsIgnoreCase("peaks")) {
-
-        byte[] peakBytes = Base64.getDecoder().decode(charBuffer.toString());
-
-        if (compressFlag) {
-          try {
-            peakBytes = CompressionUtils.decompress(peakBytes);
-          } catch (DataFormatException e) {
-            setStatus(TaskStatus.ERROR);
-            setErrorMessage("Corrupt compressed peak: " + e);
-            throw new SAXException("Parsing Cancelled");
-          }
-        }
-
-        // make a data input stream
-        DataInputStream peakStream = new DataInputStream(new ByteArrayInputStream(peakBytes));
-
-        DataPoint[] dps = new DataPoint[peaksCount];
-        double[] mzValues = new double[peaksCount];
-        double[] intensityValues = new double[peaksCount];
-
-        try {
-          for (int i = 0; i < peaksCount; i++) {
-
-            // Always respect this order pairOrder="m/z-int"
-            double mz;
-            double intensity;
-            if ("64".equals(precision)) {
-              mz = peakStream.readDouble();
-              intensity = peakStream.readDouble();
-            } else {
-              mz = peakStream.readFloat();
-              intensity = peakStream.readFloat();
-            }
-
-            // Copy m/z and intensity data
-            dps[i] = new SimpleDataPoint(mz, intensity);
-          }
-          // sort because old converters might create unsorted spectral data
-          Arrays.sort(dps, DataPointSorter.DEFAULT_MZ_ASCENDING);
-
-          for (int i = 0; i < dps.length; i++) {
-            mzValues[i] = dps[i].getMZ();
-            intensityValues[i] = dps[i].getIntensity();
-          }
+  /**
+   * Adds the scans in order. Mass lists are added here to notify the raw data file in order.
+   */
+  private void commit(List<DecodedScan> scans) throws IOException {
+    for (DecodedScan decoded : scans) {
+      if (decoded.detectedMasses()) {
+        // create mass list and scan. Override data points and spectrum type
+        decoded.scan().addMassList(new ScanPointerMassList(decoded.scan()));
+      }
+      newMZmineFile.addScan(decoded.scan());
+      parsedScans++;
+    }
+  }
 
-        } catch (IOException eof) {
-          setStatus(TaskStatus.ERROR);
-          setErrorMessage("Corrupt mzXML file");
-          throw new SAXException("Parsing Cancelled");
-        }
+  /**
+   * Decodes the peaks and creates the scan, applies mass detection if selected. Called in
+   * parallel.
+   */
+  private DecodedScan decodeScan(EncodedScan scan) {
+    final double[][] dataPoints = decodePeaks(scan);
+    // sort because old converters might create unsorted spectral data
+    final double[][] sorted = DataPointUtils.ensureSortingMzAscendingDefault(dataPoints[0],
+        dataPoints[1]);
+    final double[] mzValues = sorted[0];
+    final double[] intensityValues = sorted[1];
+
+    final DDAMsMsInfo info =
+        scan.msLevel != 1 && Double.compare(scan.precursorMz, 0d) != 0 ? new DDAMsMsInfoImpl(
+            scan.precursorMz, scan.precursorCharge, null, null, null, scan.msLevel,
+            ActivationMethod.UNKNOWN, null) : null;
+
+    if (applyMassDetection) {
+      double[][] mzIntensities = null;
+
+      // apply mass detection
+      if (ms1Detector != null && scan.msLevel == 1) {
+        mzIntensities = applyMassDetection(ms1Detector, mzValues, intensityValues);
+      } else if (ms2Detector != null && scan.msLevel >= 2) {
+        mzIntensities = applyMassDetection(ms2Detector, mzValues, intensityValues);
+      }
 
-        if (applyMassDetection) {
-          // wrap scan
-          double[][] mzIntensities = null;
+      if (mzIntensities != null) {
+        // Set the centroided / thresholded data points to the scan
+        return new DecodedScan(
+            new SimpleScan(newMZmineFile, scan.scanNumber, scan.msLevel, scan.retentionTime, info,
+                mzIntensities[0], mzIntensities[1], MassSpectrumType.CENTROIDED, scan.polarity,
+                scan.scanId, null), true);
+      }
+    }
 
-          // apply mass detection
-          if (ms1Detector != null && msLevel == 1) {
-            mzIntensities = applyMassDetection(ms1Detector, mzValues, intensityValues);
-          } else if (ms2Detector != null && msLevel >= 2) {
-            mzIntensities = applyMassDetection(ms2Detector, mzValues, intensityValues);
-          }
+    // if no mass dection was applied - just create the scan
+    // Auto-detect whether this scan is centroided
+    MassSpectrumType spectrumType = ScanUtils.detectSpectrumType(mzValues, intensityValues);
 
-          if (mzIntensities != null) {
-            final DDAMsMsInfo info =
-                msLevel != 1 && Double.compare(precursorMz, 0d) != 0 ? new DDAMsMsInfoImpl(
-                    precursorMz, precursorCharge, null, null, null, msLevel,
-                    ActivationMethod.UNKNOWN, null) : null;
-            // Set the centroided / thresholded data points to the scan
-            buildingScan = new SimpleScan(newMZmineFile, scanNumber, msLevel, retentionTime, info,
-                mzIntensities[0], mzIntensities[1], MassSpectrumType.CENTROIDED, polarity, scanId,
-                null);
-
-            // create mass list and scan. Override data points and spectrum type
-            ScanPointerMassList newMassList = new ScanPointerMassList(buildingScan);
-            buildingScan.addMassList(newMassList);
-          }
-        }
+    // Set the final data points to the scan
+    return new DecodedScan(
+        new SimpleScan(newMZmineFile, scan.scanNumber, scan.msLevel, scan.retentionTime, info,
+            mzValues, intensityValues, spectrumType, scan.polarity, scan.scanId, null), false);
+  }
 
-        // if no mass dection was applied - just create the scan
-        if (buildingScan == null) {
-          // Auto-detect whether this scan is centroided
-          MassSpectrumType spectrumType = ScanUtils.detectSpectrumType(mzValues, intensityValues);
+  /**
+   * @return [mzs, intensities] in file order
+   */
+  private double[][] decodePeaks(EncodedScan scan) {
+    final int peaksCount = scan.peaksCount;
+    final double[] mzValues = new double[peaksCount];
+    final double[] intensityValues = new double[peaksCount];
+    if (peaksCount == 0 || scan.encodedPeaks == null) {
+      return new double[][]{mzValues, intensityValues};
+    }
 
-          final DDAMsMsInfo info =
-              msLevel != 1 && precursorMz != 0d ? new DDAMsMsInfoImpl(precursorMz, precursorCharge,
-                  null, null, null, msLevel, ActivationMethod.UNKNOWN, null) : null;
+    byte[] peakBytes = Base64.getDecoder().decode(scan.encodedPeaks);
+    if (scan.compressed) {
+      try {
+        peakBytes = CompressionUtils.decompress(peakBytes);
+      } catch (DataFormatException e) {
+        throw new IllegalStateException("Corrupt compressed peak in scan " + scan.scanNumber, e);
+      }
+    }
 
-          // Set the final data points to the scan
-          buildingScan = new SimpleScan(newMZmineFile, scanNumber, msLevel, retentionTime, info,
-              mzValues, intensityValues, spectrumType, polarity, scanId, null);
+    // network byte order (big endian) is the default of ByteBuffer
+    final ByteBuffer peakBuffer = ByteBuffer.wrap(peakBytes);
+    try {
+      for (int i = 0; i < peaksCount; i++) {
+        // Always respect this order pairOrder="m/z-int"
+        if (scan.doublePrecision) {
+          mzValues[i] = peakBuffer.getDouble();
+          intensityValues[i] = peakBuffer.getDouble();
+        } else {
+          mzValues[i] = peakBuffer.getFloat();
+          intensityValues[i] = peakBuffer.getFloat();
         }
-
       }
+    } catch (BufferUnderflowException e) {
+      throw new IllegalStateException("Corrupt mzXML file, missing peaks in scan " + scan.scanNumber,
+          e);
     }
+    return new double[][]{mzValues, intensityValues};
+  }
 
-    /**
-     * Apply mass detection
-     *
-     * @param msDetector  mass detection module
-     * @param mzs         input values for mass detection
-     * @param intensities input values
-     * @return new mzs: double[0]; new intensities: double[1] arrays
-     */
-    private double[][] applyMassDetection(MZmineProcessingStep<MassDetector> msDetector,
-        double[] mzs, double[] intensities) {
-      // wrap data points in a simple mass spectrum
-      return msDetector.getModule()
-          .getMassValues(new SimpleMassSpectrum(mzs, intensities), msDetector.getParameterSet());
-    }
+  /**
+   * Apply mass detection
+   *
+   * @param msDetector  mass detection module
+   * @param mzs         input values for mass detection
+   * @param intensities input values
+   * @return new mzs: double[0]; new intensities: double[1] arrays
+   */
+  private double[][] applyMassDetection(MZmineProcessingStep<MassDetector> msDetector,
+      double[] mzs, double[] intensities) {
+    // wrap data points in a simple mass spectrum
+    return msDetector.getModule()
+        .getMassValues(new SimpleMassSpectrum(mzs, intensities), msDetector.getParameterSet());
+  }
 
-    private void reset() {
-      buildingScan = null;
-      retentionTime = 0;
-      scanNumber = 0;
-      msLevel = 1;
-      polarity = PolarityType.UNKNOWN;
-      scanId = "";
-      precursorMz = 0d;
-      precursorCharge = 0;
-    }
+  @Override
+  public String getTaskDescription() {
+    return "Opening file " + file;
+  }
 
-    /**
-     * characters()
-     *
-     * @see org.xml.sax.ContentHandler#characters(char[], int, int)
-     */
-    @Override
-    public void characters(char[] buf, int offset, int len) throws SAXException {
-      charBuffer.append(buf, offset, len);
-    }
+  /**
+   * Scan metadata and encoded peaks, filled by the parser and decoded by a worker thread.
+   */
+  private static class EncodedScan {
+
+    private int scanNumber;
+    private int msLevel = 1;
+    private float retentionTime;
+    private PolarityType polarity = PolarityType.UNKNOWN;
+    private String scanId = "";
+    private int peaksCount;
+    private double precursorMz = 0d;
+    private int precursorCharge = 0;
+    private @Nullable String encodedPeaks;
+    private boolean compressed;
+    private boolean doublePrecision;
   }
 
+  private record DecodedScan(SimpleScan scan, boolean detectedMasses) {
+
+  }
 }
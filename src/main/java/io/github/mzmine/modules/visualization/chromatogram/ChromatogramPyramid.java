@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.visualization.chromatogram;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Min/max decimation levels of a chromatogram with ascending x values. Level k combines 2^k
+ * consecutive data points and keeps the indices of their minimum and maximum intensity. The items
+ * to render a domain range at a given pixel width are selected from the level that matches the
+ * resolution, which only visits O(pixels) buckets and keeps the visual envelope of all peaks.
+ */
+class ChromatogramPyramid {
+
+  private final double[] xValues;
+  private final double[] yValues;
+  private final int numValues;
+  // [level-1][bucket], level 0 are the data points themselves
+  private final int[][] minIndices;
+  private final int[][] maxIndices;
+
+  /**
+   * @param xValues   ascending x values
+   * @param yValues   intensities
+   * @param numValues number of values to use
+   */
+  ChromatogramPyramid(double[] xValues, double[] yValues, int numValues) {
+    this.xValues = xValues;
+    this.yValues = yValues;
+    this.numValues = numValues;
+
+    final int levels = Math.max(0, 32 - Integer.numberOfLeadingZeros(numValues - 1));
+    minIndices = new int[levels][];
+    maxIndices = new int[levels][];
+
+    for (int level = 0; level < levels; level++) {
+      final int buckets = (numValues + (1 << (level + 1)) - 1) >> (level + 1);
+      final int[] min = new int[buckets];
+      final int[] max = new int[buckets];
+      for (int b = 0; b < buckets; b++) {
+        // combine two buckets (or data points) of the lower level
+        final int first = 2 * b;
+        final int second = Math.min(first + 1,
+            level == 0 ? numValues - 1 : minIndices[level - 1].length - 1);
+        if (level == 0) {
+          min[b] = yValues[second] < yValues[first] ? second : first;
+          max[b] = yValues[second] > yValues[first] ? second : first;
+        } else {
+          final int[] lowerMin = minIndices[level - 1];
+          final int[] lowerMax = maxIndices[level - 1];
+          min[b] = yValues[lowerMin[second]] < yValues[lowerMin[first]] ? lowerMin[second]
+              : lowerMin[first];
+          max[b] = yValues[lowerMax[second]] > yValues[lowerMax[first]] ? lowerMax[second]
+              : lowerMax[first];
+        }
+      }
+      minIndices[level] = min;
+      maxIndices[level] = max;
+    }
+  }
+
+  /**
+   * @return the number of decimation levels above the data points
+   */
+  int getNumberOfLevels() {
+    return minIndices.length;
+  }
+
+  /**
+   * @param level decimation level from 1 to {@link #getNumberOfLevels()}
+   * @return the index of the minimum intensity of each bucket of 2^level data points
+   */
+  int[] getMinIndices(int level) {
+    return minIndices[level - 1];
+  }
+
+  /**
+   * @param level decimation level from 1 to {@link #getNumberOfLevels()}
+   * @return the index of the maximum intensity of each bucket of 2^level data points
+   */
+  int[] getMaxIndices(int level) {
+    return maxIndices[level - 1];
+  }
+
+  /**
+   * Selects the items to render the domain range.
+   *
+   * @param lower   lower bound of the domain
+   * @param upper   upper bound of the domain
+   * @param pixels  width of the plot in pixels
+   * @return the ascending indices of the items to render or null if all items in range are needed
+   * at this resolution. The first and last item are always included to keep the data bounds.
+   */
+  @Nullable int[] select(double lower, double upper, int pixels) {
+    // one item outside on each side to continue the line to the border
+    int start = Arrays.binarySearch(xValues, 0, numValues, lower);
+    start = Math.max(0, (start < 0 ? -start - 1 : start) - 1);
+    int end = Arrays.binarySearch(xValues, 0, numValues, upper);
+    end = Math.min(numValues - 1, (end < 0 ? -end - 1 : end) + 1);
+
+    final int inRange = end - start + 1;
+    // min and max per pixel
+    if (pixels <= 0 || inRange <= 2 * pixels) {
+      return null;
+    }
+
+    // the lowest level that has at most one bucket per pixel
+    int level = 1;
+    while (level < minIndices.length && (inRange >> level) > pixels) {
+      level++;
+    }
+    final int[] min = minIndices[level - 1];
+    final int[] max = maxIndices[level - 1];
+    final int firstBucket = start >> level;
+    final int lastBucket = end >> level;
+
+    // the items around the range are outside the plot and keep the line direction at the borders
+    final int[] items = new int[2 * (lastBucket - firstBucket + 1) + 4];
+    int n = 0;
+    items[n++] = 0;
+    if (start > 0) {
+      items[n++] = start;
+    }
+    for (int b = firstBucket; b <= lastBucket; b++) {
+      final int bucketStart = b << level;
+      final int bucketEnd = Math.min(((b + 1) << level) - 1, numValues - 1);
+      int minIndex = min[b];
+      int maxIndex = max[b];
+      // the extremes of a bucket on the border may be outside of the range
+      if (bucketStart < start || bucketEnd > end) {
+        minIndex = maxIndex = Math.max(bucketStart, start);
+        for (int i = minIndex + 1; i <= Math.min(bucketEnd, end); i++) {
+          if (yValues[i] < yValues[minIndex]) {
+            minIndex = i;
+          }
+          if (yValues[i] > yValues[maxIndex]) {
+            maxIndex = i;
+          }
+        }
+      }
+      final int a = Math.min(minIndex, maxIndex);
+      final int c = Math.max(minIndex, maxIndex);
+      if (a > items[n - 1] && a < end) {
+        items[n++] = a;
+      }
+      if (c > items[n - 1] && c < end) {
+        items[n++] = c;
+      }
+    }
+    if (end > items[n - 1]) {
+      items[n++] = end;
+    }
+    if (numValues - 1 > items[n - 1]) {
+      items[n++] = numValues - 1;
+    }
+    return Arrays.copyOf(items, n);
+  }
+}
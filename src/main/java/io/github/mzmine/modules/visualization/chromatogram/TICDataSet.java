@@ -61,6 +61,10 @@ public class TICDataSet extends AbstractTaskXYZDataset {
   private static final double EPSILON = 0.0000001;
   // Refresh interval (in milliseconds).
   private static final long REDRAW_INTERVAL = 100L;
+  // decimate larger chromatograms for rendering
+  private static final int MIN_ITEMS_FOR_DECIMATION = 4000;
+  // initial resolution before the plot reports its width
+  private static final int DEFAULT_PIXELS = 2000;
   // Last time the data set was redrawn.
   private static long lastRedrawTime = System.currentTimeMillis();
   // Logger.
@@ -80,6 +84,10 @@ public class TICDataSet extends AbstractTaskXYZDataset {
   private double intensityMax;
   private TICVisualizerTab window;
   private String customSeriesKey = null;
+  // min/max decimation levels, null for small chromatograms
+  private ChromatogramPyramid pyramid;
+  // indices of the items that are rendered at the current zoom level, null for all items
+  private volatile int[] visibleItems;
 
   /**
    * Create the data set.
@@ -182,6 +190,11 @@ public class TICDataSet extends AbstractTaskXYZDataset {
       calculateValues();
 
       if (status != TaskStatus.CANCELED) {
+        if (processedScans >= MIN_ITEMS_FOR_DECIMATION) {
+          pyramid = new ChromatogramPyramid(rtValues, intensityValues, processedScans);
+          visibleItems = pyramid.select(rtValues[0], rtValues[processedScans - 1],
+              DEFAULT_PIXELS);
+        }
 
         // Always redraw when we add last value.
         refresh();
@@ -211,25 +224,77 @@ public class TICDataSet extends AbstractTaskXYZDataset {
   @Override
   public Number getZ(final int series, final int item) {
 
-    return basePeakMZValues[item];
+    return basePeakMZValues[toIndex(item)];
   }
 
   @Override
   public int getItemCount(final int series) {
-
-    return processedScans;
+    final int[] visible = visibleItems;
+    return visible == null ? processedScans : visible.length;
   }
 
   @Override
   public Number getX(final int series, final int item) {
 
-    return rtValues[item];
+    return rtValues[toIndex(item)];
   }
 
   @Override
   public Number getY(final int series, final int item) {
 
-    return intensityValues[item];
+    return intensityValues[toIndex(item)];
+  }
+
+  /**
+   * @param item the rendered item
+   * @return the index of the scan
+   */
+  private int toIndex(final int item) {
+    final int[] visible = visibleItems;
+    return visible == null ? item : visible[item];
+  }
+
+  /**
+   * Selects the items that are rendered for the domain range from the min/max decimation levels.
+   * Only large chromatograms are decimated, all local maxima of the visible range are retained.
+   * Needs to be called on the FX thread.
+   *
+   * @param lower  lower bound of the domain axis
+   * @param upper  upper bound of the domain axis
+   * @param pixels width of the plot in pixels
+   */
+  public void updateVisibleDomain(final double lower, final double upper, final int pixels) {
+    if (pyramid == null || status != TaskStatus.FINISHED) {
+      return;
+    }
+    final int[] items = pyramid.select(lower, upper, pixels);
+    if (!Arrays.equals(items, visibleItems)) {
+      visibleItems = items;
+      fireDatasetChanged();
+    }
+  }
+
+  /**
+   * @return the number of scans, independent of the rendered items
+   */
+  public int getNumberOfScans() {
+    return processedScans;
+  }
+
+  /**
+   * @param index the scan index (not the rendered item)
+   * @return the retention time (or scan number) of the scan
+   */
+  public double getRetentionTime(final int index) {
+    return rtValues[index];
+  }
+
+  /**
+   * @param index the scan index (not the rendered item)
+   * @return the intensity of the scan
+   */
+  public double getIntensity(final int index) {
+    return intensityValues[index];
   }
 
   /**
@@ -242,12 +307,14 @@ public class TICDataSet extends AbstractTaskXYZDataset {
   public int getIndex(final double retentionTime, final double intensity) {
 
     int index = -1;
-    for (int i = 0; index < 0 && i < processedScans; i++) {
+    final int itemCount = getItemCount(0);
+    for (int item = 0; index < 0 && item < itemCount; item++) {
 
+      final int i = toIndex(item);
       if (Math.abs(retentionTime - rtValues[i]) < EPSILON
           && Math.abs(intensity - intensityValues[i]) < EPSILON) {
 
-        index = i;
+        index = item;
       }
     }
 
@@ -255,7 +322,7 @@ public class TICDataSet extends AbstractTaskXYZDataset {
   }
 
   public Scan getScan(final int item) {
-    return scans.get(item);
+    return scans.get(toIndex(item));
   }
 
   public RawDataFile getDataFile() {
@@ -269,17 +336,24 @@ public class TICDataSet extends AbstractTaskXYZDataset {
    * @return true/false if the item is a local maximum.
    */
   public boolean isLocalMaximum(final int item) {
+    return isLocalMaximumAtIndex(toIndex(item));
+  }
+
+  /**
+   * @param index the scan index (not the rendered item)
+   */
+  private boolean isLocalMaximumAtIndex(final int index) {
 
     final boolean isLocalMaximum;
-    if (item <= 0 || item >= processedScans - 1) {
+    if (index <= 0 || index >= processedScans - 1) {
 
       isLocalMaximum = false;
 
     } else {
 
-      final double intensity = intensityValues[item];
+      final double intensity = intensityValues[index];
       isLocalMaximum =
-          intensityValues[item - 1] <= intensity && intensity >= intensityValues[item + 1];
+          intensityValues[index - 1] <= intensity && intensity >= intensityValues[index + 1];
     }
 
     return isLocalMaximum;
@@ -324,7 +398,7 @@ public class TICDataSet extends AbstractTaskXYZDataset {
 
       // Check Y range..
       final double intensity = intensityValues[index];
-      if (yMin <= intensity && intensity <= yMax && isLocalMaximum(index)) {
+      if (yMin <= intensity && intensity <= yMax && isLocalMaximumAtIndex(index)) {
 
         indices.add(index);
       }
@@ -181,6 +181,9 @@ public class TICPlot extends EChartViewer implements LabelColorMatch {
     xAxis.setNumberFormatOverride(MZmineCore.getConfiguration().getRTFormat());
     xAxis.setUpperMargin(AXIS_MARGINS);
     xAxis.setLowerMargin(AXIS_MARGINS);
+    // large chromatograms are rendered from min/max decimation levels that match the zoom
+    xAxis.addChangeListener(e -> MZmineCore.runLater(this::updateVisibleDomain));
+    widthProperty().addListener((observable, oldValue, newValue) -> updateVisibleDomain());
 
     // Set the y-axis (intensity) properties.
     final NumberAxis yAxis = (NumberAxis) plot.getRangeAxis();
@@ -321,6 +324,19 @@ public class TICPlot extends EChartViewer implements LabelColorMatch {
     return -1;
   }
 
+  /**
+   * Updates the rendered items of all {@link TICDataSet}s to the current domain range and width.
+   */
+  private void updateVisibleDomain() {
+    final NumberAxis xAxis = (NumberAxis) plot.getDomainAxis();
+    final int pixels = (int) getWidth();
+    for (int i = 0; i < plot.getDatasetCount(); i++) {
+      if (plot.getDataset(i) instanceof TICDataSet ticDataSet) {
+        ticDataSet.updateVisibleDomain(xAxis.getLowerBound(), xAxis.getUpperBound(), pixels);
+      }
+    }
+  }
+
   public synchronized int addDataSet(XYDataset dataSet, Color color) {
     XYItemRenderer newRenderer = new DefaultXYItemRenderer();
     newRenderer.setDefaultFillPaint(color);
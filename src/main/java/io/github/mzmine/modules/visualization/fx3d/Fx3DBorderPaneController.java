@@ -282,6 +282,29 @@ public class Fx3DBorderPaneController {
     updateLabel();
   }
 
+  /**
+   * Replaces a dataset, e.g., a preview by the full resolution, and keeps its color, opacity and
+   * visibility. Nothing happens if the dataset was removed in the meantime.
+   */
+  public synchronized void replaceDataset(Fx3DAbstractDataset oldDataset,
+      Fx3DAbstractDataset newDataset) {
+    final int index = visualizedMeshPlots.indexOf(oldDataset);
+    if (index < 0) {
+      return;
+    }
+    newDataset.setColor(oldDataset.getColor());
+    newDataset.setOpacity(oldDataset.getOpacity());
+    newDataset.setNodeColor(oldDataset.getColor());
+    newDataset.getNode().setOpacity(oldDataset.getOpacity());
+    newDataset.setVisibility(oldDataset.getVisibility());
+    oldDataset.visibilityProperty().unbindBidirectional(oldDataset.getNode().visibleProperty());
+    visualizedMeshPlots.set(index, newDataset);
+    addColorListener(newDataset);
+    addOpacityListener(newDataset);
+    newDataset.visibilityProperty().bindBidirectional(newDataset.getNode().visibleProperty());
+    updateGraph();
+  }
+
   private void updateGraph() {
     maxOfAllBinnedIntensity = Double.NEGATIVE_INFINITY;
     for (Fx3DAbstractDataset mesh : visualizedMeshPlots) {
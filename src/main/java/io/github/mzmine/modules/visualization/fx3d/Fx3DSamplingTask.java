@@ -26,17 +26,17 @@
 package io.github.mzmine.modules.visualization.fx3d;
 
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.gui.Desktop;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
+import io.github.mzmine.util.scans.IntensityGrid;
+import io.github.mzmine.util.scans.IntensityGridBuilder;
+import io.github.mzmine.util.scans.IntensityGridCache;
 import io.github.mzmine.util.scans.ScanUtils;
-import io.github.mzmine.util.scans.ScanUtils.BinningType;
 import java.time.Instant;
 import java.util.Random;
 import java.util.logging.Logger;
@@ -44,10 +44,18 @@ import javafx.application.Platform;
 import javafx.scene.paint.Color;
 
 /**
- * Sampling task which loads the raw data and feeds them to Fx3DDisplay
+ * Sampling task which loads the raw data and feeds them to Fx3DDisplay. The intensity grid is
+ * shared with other raw data visualizers through the {@link IntensityGridCache}. Without a cached
+ * grid, a coarse preview is shown after the first pass of the {@link IntensityGridBuilder} and
+ * replaced by the full resolution when all scans are binned.
  */
 class Fx3DSamplingTask extends AbstractTask {
 
+  /**
+   * The preview has this fraction of the resolution on both axes
+   */
+  private static final int PREVIEW_FACTOR = 4;
+
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private RawDataFile dataFile;
@@ -58,10 +66,7 @@ class Fx3DSamplingTask extends AbstractTask {
   // Data resolution on m/z and retention time axis
   private int rtResolution, mzResolution;
   private Random random = new Random();
-  private int retrievedScans = 0;
-
-  // maximum value on Z axis
-  private double maxBinnedIntensity;
+  private IntensityGridBuilder builder;
 
   private Fx3DBorderPaneController controller;
   private static final Color[] PEAK_COLORS = {Color.BLUE, Color.GREEN, Color.RED, Color.YELLOW,
@@ -104,7 +109,18 @@ class Fx3DSamplingTask extends AbstractTask {
    */
   @Override
   public double getFinishedPercentage() {
-    return (double) retrievedScans / scans.length;
+    if (builder == null || scans.length == 0) {
+      return 0d;
+    }
+    return (double) builder.getProcessedScans() / scans.length;
+  }
+
+  @Override
+  public void cancel() {
+    if (builder != null) {
+      builder.cancel();
+    }
+    super.cancel();
   }
 
   /**
@@ -119,111 +135,47 @@ class Fx3DSamplingTask extends AbstractTask {
 
     try {
 
-      final double rtStep = (rtRange.upperEndpoint() - rtRange.lowerEndpoint()) / rtResolution;
-
-      // create an array for all data points
-      float[][] intensityValues = new float[1][mzResolution * rtResolution];
-      boolean rtDataSet[] = new boolean[rtResolution];
-
-      // load scans
-      for (int scanIndex = 0; scanIndex < scans.length; scanIndex++) {
-
-        if (isCanceled())
-          return;
-
-        Scan scan = scans[scanIndex];
-        final Desktop desktop = MZmineCore.getDesktop();
-
-        // Check scan numbers.
-        if (scans.length == 0) {
-          desktop.displayErrorMessage("No scans found");
-          return;
-        }
-
-        double[] scanMZValues = new double[scan.getNumberOfDataPoints()];
-        double[] scanIntensityValues = new double[scan.getNumberOfDataPoints()];
-        scan.getMzValues(scanMZValues);
-        scan.getIntensityValues(scanIntensityValues);
-
-        double[] binnedIntensities = ScanUtils.binValues(scanMZValues, scanIntensityValues, mzRange,
-            mzResolution, scan.getSpectrumType() != MassSpectrumType.CENTROIDED, BinningType.MAX);
-
-        int scanBinIndex;
-
-        double rt = scan.getRetentionTime();
-        scanBinIndex = (int) ((rt - rtRange.lowerEndpoint()) / rtStep);
-
-        // last scan falls into last bin
-        if (scanBinIndex == rtResolution) {
-          scanBinIndex--;
-        }
-
-        for (int mzIndex = 0; mzIndex < mzResolution; mzIndex++) {
-
-          int intensityValuesIndex = (rtResolution * mzIndex) + scanBinIndex;
-          if (binnedIntensities[mzIndex] > intensityValues[0][intensityValuesIndex]) {
-            intensityValues[0][intensityValuesIndex] = (float) binnedIntensities[mzIndex];
-          }
-          if (intensityValues[0][intensityValuesIndex] > maxBinnedIntensity)
-            maxBinnedIntensity = binnedIntensities[mzIndex];
-        }
-
-        rtDataSet[scanBinIndex] = true;
-
-        retrievedScans++;
-
+      // Check scan numbers.
+      if (scans.length == 0) {
+        MZmineCore.getDesktop().displayErrorMessage("No scans found");
+        setStatus(TaskStatus.FINISHED);
+        return;
       }
 
-      // Interpolate missing values on the RT-axis
-      for (int rtIndex = 1; rtIndex < rtResolution - 1; rtIndex++) {
-
-        // If the data was set, go to next RT line
-        if (rtDataSet[rtIndex])
-          continue;
-        int prevIndex, nextIndex;
-        for (prevIndex = rtIndex - 1; prevIndex >= 0; prevIndex--) {
-          if (rtDataSet[prevIndex])
-            break;
+      final Color color = PEAK_COLORS[random.nextInt(14)];
+      IntensityGrid grid = IntensityGridCache.findResolving(dataFile, scans, false, rtRange,
+          mzRange, rtResolution, mzResolution);
+
+      if (grid != null) {
+        final Fx3DRawDataFileDataset plotMesh = createDataset(grid, rtResolution, mzResolution,
+            color);
+        Platform.runLater(() -> controller.addDataset(plotMesh));
+      } else {
+        builder = new IntensityGridBuilder(scans, rtRange, mzRange, rtResolution, mzResolution,
+            false);
+
+        // show a coarse preview from a cached grid or the first pass
+        IntensityGrid previewGrid = IntensityGridCache.findCovering(dataFile, scans, rtRange,
+            mzRange);
+        if (previewGrid == null) {
+          builder.addNextPass();
+          previewGrid = builder.toGrid();
         }
-        for (nextIndex = rtIndex + 1; nextIndex < rtResolution; nextIndex++) {
-          if (rtDataSet[nextIndex])
-            break;
-        }
-
-        // If no neighboring data was found, give up
-        if ((prevIndex < 0) || (nextIndex >= rtResolution))
-          continue;
-
-        for (int mzIndex = 0; mzIndex < mzResolution; mzIndex++) {
-
-          int valueIndex = (rtResolution * mzIndex) + rtIndex;
-          int nextValueIndex = (rtResolution * mzIndex) + nextIndex;
-          int prevValueIndex = (rtResolution * mzIndex) + prevIndex;
-
-          double prevValue = intensityValues[0][prevValueIndex];
-          double nextValue = intensityValues[0][nextValueIndex];
-
-          double slope = (nextValue - prevValue) / (nextIndex - prevIndex);
-          intensityValues[0][valueIndex] = (float) (prevValue + (slope * (rtIndex - prevIndex)));
+        final Fx3DRawDataFileDataset preview = createDataset(previewGrid,
+            Math.max(2, rtResolution / PREVIEW_FACTOR), Math.max(2, mzResolution / PREVIEW_FACTOR),
+            color);
+        Platform.runLater(() -> controller.addDataset(preview));
 
+        grid = builder.build();
+        if (grid == null || isCanceled()) {
+          return;
         }
-      }
+        IntensityGridCache.put(dataFile, scans, grid);
 
-      float[][] finalIntensityValues = new float[rtResolution][mzResolution];
-      for (int rtIndex = 0; rtIndex < rtResolution; rtIndex++) {
-        for (int mzIndex = 0; mzIndex < mzResolution; mzIndex++) {
-          int valueIndex = (rtResolution * mzIndex) + rtIndex;
-          finalIntensityValues[rtIndex][mzIndex] =
-              (float) (intensityValues[0][valueIndex] / maxBinnedIntensity);
-        }
+        final Fx3DRawDataFileDataset plotMesh = createDataset(grid, rtResolution, mzResolution,
+            color);
+        Platform.runLater(() -> controller.replaceDataset(preview, plotMesh));
       }
-      Fx3DRawDataFileDataset plotMesh =
-          new Fx3DRawDataFileDataset(dataFile, finalIntensityValues, rtResolution, mzResolution,
-              maxBinnedIntensity, dataFile.toString(), PEAK_COLORS[random.nextInt(14)]);
-
-      Platform.runLater(() -> {
-        controller.addDataset(plotMesh);
-      });
 
     } catch (Throwable e) {
       e.printStackTrace();
@@ -238,4 +190,26 @@ class Fx3DSamplingTask extends AbstractTask {
 
   }
 
+  private Fx3DRawDataFileDataset createDataset(IntensityGrid grid, int rtBins, int mzBins,
+      Color color) {
+    final float[][] intensityValues = grid.sample(rtRange, mzRange, rtBins, mzBins);
+
+    // maximum value on Z axis
+    double maxBinnedIntensity = 0d;
+    for (float[] row : intensityValues) {
+      for (float value : row) {
+        maxBinnedIntensity = Math.max(maxBinnedIntensity, value);
+      }
+    }
+    if (maxBinnedIntensity > 0d) {
+      for (float[] row : intensityValues) {
+        for (int mzIndex = 0; mzIndex < mzBins; mzIndex++) {
+          row[mzIndex] = (float) (row[mzIndex] / maxBinnedIntensity);
+        }
+      }
+    }
+    return new Fx3DRawDataFileDataset(dataFile, intensityValues, rtBins, mzBins,
+        maxBinnedIntensity, dataFile.toString(), color);
+  }
+
 }
@@ -35,6 +35,7 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess.MobilityScanDataType;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
+import io.github.mzmine.datamodel.data_access.ImagingMzIndex;
 import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
 import io.github.mzmine.datamodel.data_access.ScanDataAccess;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
@@ -202,11 +203,43 @@ public class RawImageProvider implements PlotXYZDataProvider {
   private SimpleIonTimeSeries extractIonTimeSeries() {
     if (useMobility && raw instanceof IMSRawDataFile imsRaw) {
       return extractFromMobilityScans(imsRaw);
+    }
+    final ImagingMzIndex index = raw.getMzIndex();
+    if (index != null) {
+      return extractFromIndex(index);
     } else {
       return extractFromScans();
     }
   }
 
+  /**
+   * Only visits the data points within the m/z range
+   */
+  @NotNull
+  private SimpleIonTimeSeries extractFromIndex(@NotNull ImagingMzIndex index) {
+    logger.info("ImageViewer: Start data point extraction from m/z index");
+    final List<Scan> allScans = raw.getScans();
+    final int numScans = index.getNumberOfScans();
+    final double[] sumIntensities = new double[numScans];
+    final double[] bestMzs = new double[numScans];
+    index.extractImage(mzRange, sumIntensities, bestMzs);
+
+    DoubleArrayList mzs = new DoubleArrayList(numScans);
+    DoubleArrayList intensities = new DoubleArrayList(numScans);
+    List<Scan> scans = new ArrayList<>(numScans);
+    for (int i = 0; i < numScans; i++) {
+      Scan scan = allScans.get(i);
+      if (!(scan instanceof ImagingScan) || !scanSelection.matches(scan)) {
+        continue;
+      }
+      mzs.add(bestMzs[i]);
+      intensities.add(sumIntensities[i]);
+      scans.add(scan);
+    }
+    finishedPercentage = 1d;
+    return new SimpleIonTimeSeries(null, mzs.toDoubleArray(), intensities.toDoubleArray(), scans);
+  }
+
   @NotNull
   private SimpleIonTimeSeries extractFromScans() {
     double minMz = mzRange.lowerEndpoint();
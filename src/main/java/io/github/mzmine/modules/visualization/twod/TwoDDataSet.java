@@ -30,29 +30,43 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.gui.chartbasics.simplechart.datasets.AbstractTaskXYDataset;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import java.util.ArrayList;
+import io.github.mzmine.util.scans.IntensityGrid;
+import io.github.mzmine.util.scans.IntensityGridBuilder;
+import io.github.mzmine.util.scans.IntensityGridCache;
+import java.time.Instant;
 import java.util.Arrays;
 import javafx.application.Platform;
+import org.jetbrains.annotations.Nullable;
 
+/**
+ * Intensities of the 2D plot are sampled from {@link IntensityGrid}s, which are shared with the 3D
+ * visualizer by the {@link IntensityGridCache}. The task of this dataset builds a grid of the whole
+ * data file. Zoomed regions, which need finer cells, are first sampled from a coarser grid and
+ * refined by a background task.
+ */
 class TwoDDataSet extends AbstractTaskXYDataset {
 
-  private final RawDataFile rawDataFile;
+  /**
+   * Maximum resolution of the grid of the whole data file
+   */
+  private static final int BASE_RT_BINS = 2048;
+  private static final int BASE_MZ_BINS = 2048;
 
-  private final float[] retentionTimes;
-  private final double[] basePeaks;
-  private final double[][] mzValues;
-  private final double[][] intensityValues;
+  private final RawDataFile rawDataFile;
 
   private final Range<Double> totalMZRange;
   private final Range<Float> totalRTRange;
   private final int totalScans;
   private final Scan[] scans;
-  private int processedScans;
+  private final int baseRtBins;
+  private final IntensityGridBuilder builder;
 
-  public double curMaxIntensity;
-  private ArrayList<Float> rtValuesInUserRange;
+  // grid of the first pass until the whole grid is cached
+  private volatile IntensityGrid previewGrid;
+  private TileTask tileTask;
 
   TwoDDataSet(RawDataFile rawDataFile, Scan[] scans, Range<Float> rtRange, Range<Double> mzRange,
       TwoDVisualizerTab visualizer) {
@@ -66,10 +80,8 @@ class TwoDDataSet extends AbstractTaskXYDataset {
 
     totalScans = scans.length;
 
-    mzValues = new double[totalScans][];
-    intensityValues = new double[totalScans][];
-    retentionTimes = new float[totalScans];
-    basePeaks = new double[totalScans];
+    baseRtBins = Math.max(1, Math.min(totalScans, BASE_RT_BINS));
+    builder = new IntensityGridBuilder(scans, rtRange, mzRange, baseRtBins, BASE_MZ_BINS, false);
 
     MZmineCore.getTaskController().addTask(this, TaskPriority.HIGH);
 
@@ -80,22 +92,19 @@ class TwoDDataSet extends AbstractTaskXYDataset {
 
     setStatus(TaskStatus.PROCESSING);
 
-    for (int index = 0; index < totalScans; index++) {
+    if (IntensityGridCache.findResolving(rawDataFile, scans, false, totalRTRange, totalMZRange,
+        baseRtBins, BASE_MZ_BINS) == null) {
+      // show the first pass while the remaining scans are binned
+      builder.addNextPass();
+      previewGrid = builder.toGrid();
+      Platform.runLater(() -> fireDatasetChanged());
 
-      // Cancel?
-      if (isCanceled()) {
+      final IntensityGrid grid = builder.build();
+      if (grid == null || isCanceled()) {
         return;
       }
-
-      Scan scan = scans[index];
-      Double scanBasePeakInt = scan.getBasePeakIntensity();
-      retentionTimes[index] = scan.getRetentionTime();
-      basePeaks[index] = (scanBasePeakInt == null ? 0 : scanBasePeakInt);
-      mzValues[index] = new double[scan.getNumberOfDataPoints()];
-      scan.getMzValues(mzValues[index]);
-      intensityValues[index] = new double[scan.getNumberOfDataPoints()];
-      scan.getIntensityValues(intensityValues[index]);
-      processedScans++;
+      IntensityGridCache.put(rawDataFile, scans, grid);
+      previewGrid = null;
     }
 
     Platform.runLater(() -> fireDatasetChanged());
@@ -103,6 +112,12 @@ class TwoDDataSet extends AbstractTaskXYDataset {
     setStatus(TaskStatus.FINISHED);
   }
 
+  @Override
+  public void cancel() {
+    builder.cancel();
+    super.cancel();
+  }
+
   /**
    * @see org.jfree.data.general.AbstractSeriesDataset#getSeriesCount()
    */
@@ -151,118 +166,98 @@ class TwoDDataSet extends AbstractTaskXYDataset {
     }
   }
 
-  double upperEndpointIntensity(Range<Float> rtRange, Range<Double> mzRange, PlotMode plotMode) {
-
-    double maxIntensity = 0;
-
-    float[] searchRetentionTimes = retentionTimes;
-    if (processedScans < totalScans) {
-      searchRetentionTimes = new float[processedScans];
-      System.arraycopy(retentionTimes, 0, searchRetentionTimes, 0, searchRetentionTimes.length);
+  /**
+   * Samples the maximum intensities of a region. If no cached grid resolves the region, a coarser
+   * grid is sampled and a finer grid of the region is built in the background.
+   *
+   * @param onRefined called on the JavaFX thread when a finer grid of the region is available
+   * @return intensities[rt][mz], null if no grid is available yet
+   */
+  @Nullable
+  float[][] sampleIntensities(Range<Float> rtRange, Range<Double> mzRange, int rtBins, int mzBins,
+      PlotMode plotMode, Runnable onRefined) {
+    final IntensityGrid preview = previewGrid;
+    if (preview != null) {
+      return preview.sample(rtRange, mzRange, rtBins, mzBins);
     }
-
-    int startScanIndex = Arrays.binarySearch(searchRetentionTimes, rtRange.lowerEndpoint());
-
-    if (startScanIndex < 0) {
-      startScanIndex = (startScanIndex * -1) - 1;
+    if (!totalRTRange.isConnected(rtRange) || !totalMZRange.isConnected(mzRange)) {
+      return new float[rtBins][mzBins];
     }
 
-    if (startScanIndex >= searchRetentionTimes.length) {
-      return 0;
+    // only the part with data needs to be resolved
+    final Range<Float> rtRegion = totalRTRange.intersection(rtRange);
+    final Range<Double> mzRegion = totalMZRange.intersection(mzRange);
+    final int rtRegionBins = regionBins(rtRegion, rtRange, rtBins);
+    final int mzRegionBins = regionBins(mzRegion, mzRange, mzBins);
+    final boolean centroidMode = plotMode == PlotMode.CENTROID;
+
+    final IntensityGrid grid = IntensityGridCache.findResolving(rawDataFile, scans, centroidMode,
+        rtRegion, mzRegion, rtRegionBins, mzRegionBins);
+    if (grid != null) {
+      return grid.sample(rtRange, mzRange, rtBins, mzBins);
     }
 
-    if (searchRetentionTimes[startScanIndex] > rtRange.upperEndpoint()) {
-      if (startScanIndex == 0) {
-        return 0;
-      }
-
-      if (startScanIndex == searchRetentionTimes.length - 1) {
-        return upperEndpointIntensity(startScanIndex - 1, mzRange, plotMode);
-      }
-
-      // find which scan point is closer
-      double diffNext = searchRetentionTimes[startScanIndex] - rtRange.upperEndpoint();
-      double diffPrev = rtRange.lowerEndpoint() - searchRetentionTimes[startScanIndex - 1];
-
-      if (diffPrev < diffNext) {
-        return upperEndpointIntensity(startScanIndex - 1, mzRange, plotMode);
-      } else {
-        return upperEndpointIntensity(startScanIndex, mzRange, plotMode);
-      }
+    final IntensityGrid coarse = IntensityGridCache.findCovering(rawDataFile, scans, rtRegion,
+        mzRegion);
+    if (getStatus() == TaskStatus.FINISHED) {
+      requestTile(rtRegion, mzRegion, rtRegionBins, mzRegionBins, centroidMode, onRefined);
     }
+    return coarse == null ? null : coarse.sample(rtRange, mzRange, rtBins, mzBins);
+  }
 
-    for (int scanIndex = startScanIndex;
-        ((scanIndex < searchRetentionTimes.length) && (searchRetentionTimes[scanIndex]
-            <= rtRange.upperEndpoint())); scanIndex++) {
-
-      // ignore scans where all peaks are smaller than current max
-      if (basePeaks[scanIndex] < maxIntensity) {
-        continue;
-      }
-
-      double scanMax = upperEndpointIntensity(scanIndex, mzRange, plotMode);
-
-      if (scanMax > maxIntensity) {
-        maxIntensity = scanMax;
-      }
-
+  /**
+   * @return true if a cached grid resolves the region at the given resolution
+   */
+  boolean isResolved(Range<Float> rtRange, Range<Double> mzRange, int rtBins, int mzBins,
+      PlotMode plotMode) {
+    if (previewGrid != null) {
+      return false;
     }
-
-    return maxIntensity;
-
+    if (!totalRTRange.isConnected(rtRange) || !totalMZRange.isConnected(mzRange)) {
+      return true;
+    }
+    final Range<Float> rtRegion = totalRTRange.intersection(rtRange);
+    final Range<Double> mzRegion = totalMZRange.intersection(mzRange);
+    return IntensityGridCache.findResolving(rawDataFile, scans, plotMode == PlotMode.CENTROID,
+        rtRegion, mzRegion, regionBins(rtRegion, rtRange, rtBins),
+        regionBins(mzRegion, mzRange, mzBins)) != null;
   }
 
-  public ArrayList getrtValuesInUserRange() {
-    return rtValuesInUserRange;
+  private static int regionBins(Range<? extends Number> region, Range<? extends Number> range,
+      int bins) {
+    final double span = range.upperEndpoint().doubleValue() - range.lowerEndpoint().doubleValue();
+    final double regionSpan =
+        region.upperEndpoint().doubleValue() - region.lowerEndpoint().doubleValue();
+    return span > 0 ? Math.max(1, (int) Math.ceil(bins * regionSpan / span)) : bins;
   }
 
-  private double upperEndpointIntensity(int index, Range<Double> mzRange, PlotMode plotMode) {
-
-    double maxIntensity = 0;
-
-    int startMZIndex = Arrays.binarySearch(mzValues[index], mzRange.lowerEndpoint());
-    if (startMZIndex < 0) {
-      startMZIndex = (startMZIndex * -1) - 1;
+  private synchronized void requestTile(Range<Float> rtRegion, Range<Double> mzRegion,
+      int rtBins, int mzBins, boolean centroidMode, Runnable onRefined) {
+    if (tileTask != null && !tileTask.isFinished() && !tileTask.isCanceled()) {
+      if (tileTask.rtRegion.equals(rtRegion) && tileTask.mzRegion.equals(mzRegion)
+          && tileTask.centroidMode == centroidMode) {
+        return;
+      }
+      // the view changed, only the latest region is refined
+      tileTask.cancel();
     }
 
-    if (startMZIndex >= mzValues[index].length) {
-      return 0;
+    // scans within the region, scans are sorted by retention time
+    int first = 0;
+    while (first < scans.length && scans[first].getRetentionTime() < rtRegion.lowerEndpoint()) {
+      first++;
     }
-
-    if (mzValues[index][startMZIndex] > mzRange.upperEndpoint()) {
-      if (plotMode != PlotMode.CENTROID) {
-        if (startMZIndex == 0) {
-          return 0;
-        }
-        if (startMZIndex == mzValues[index].length - 1) {
-          return intensityValues[index][startMZIndex - 1];
-        }
-
-        // find which data point is closer
-        double diffNext = mzValues[index][startMZIndex] - mzRange.upperEndpoint();
-        double diffPrev = mzRange.lowerEndpoint() - mzValues[index][startMZIndex - 1];
-
-        if (diffPrev < diffNext) {
-          return intensityValues[index][startMZIndex - 1];
-        } else {
-          return intensityValues[index][startMZIndex];
-        }
-      } else {
-        return 0;
-      }
-
+    int last = first;
+    while (last < scans.length && scans[last].getRetentionTime() <= rtRegion.upperEndpoint()) {
+      last++;
     }
-
-    for (int mzIndex = startMZIndex;
-        ((mzIndex < mzValues[index].length) && (mzValues[index][mzIndex]
-            <= mzRange.upperEndpoint())); mzIndex++) {
-      if (intensityValues[index][mzIndex] > maxIntensity) {
-        maxIntensity = intensityValues[index][mzIndex];
-      }
+    if (last == first) {
+      return;
     }
 
-    return maxIntensity;
-
+    tileTask = new TileTask(Arrays.copyOfRange(scans, first, last), rtRegion, mzRegion, rtBins,
+        mzBins, centroidMode, onRefined);
+    MZmineCore.getTaskController().addTask(tileTask, TaskPriority.HIGH);
   }
 
   @Override
@@ -270,7 +265,7 @@ class TwoDDataSet extends AbstractTaskXYDataset {
     if (totalScans == 0) {
       return 0;
     }
-    return (double) processedScans / totalScans;
+    return (double) builder.getProcessedScans() / totalScans;
   }
 
   @Override
@@ -278,4 +273,55 @@ class TwoDDataSet extends AbstractTaskXYDataset {
     return "Updating 2D visualizer of " + rawDataFile;
   }
 
+  /**
+   * Builds the grid of a zoomed region
+   */
+  private class TileTask extends AbstractTask {
+
+    private final Range<Float> rtRegion;
+    private final Range<Double> mzRegion;
+    private final boolean centroidMode;
+    private final IntensityGridBuilder tileBuilder;
+    private final Runnable onRefined;
+
+    private TileTask(Scan[] regionScans, Range<Float> rtRegion, Range<Double> mzRegion,
+        int rtBins, int mzBins, boolean centroidMode, Runnable onRefined) {
+      super(null, Instant.now()); // no new data stored -> null, date is irrelevant
+      this.rtRegion = rtRegion;
+      this.mzRegion = mzRegion;
+      this.centroidMode = centroidMode;
+      this.onRefined = onRefined;
+      tileBuilder = new IntensityGridBuilder(regionScans, rtRegion, mzRegion, rtBins, mzBins,
+          centroidMode);
+    }
+
+    @Override
+    public String getTaskDescription() {
+      return "Refining 2D visualizer of " + rawDataFile;
+    }
+
+    @Override
+    public double getFinishedPercentage() {
+      return (double) tileBuilder.getProcessedScans() / tileBuilder.getTotalScans();
+    }
+
+    @Override
+    public void cancel() {
+      tileBuilder.cancel();
+      super.cancel();
+    }
+
+    @Override
+    public void run() {
+      setStatus(TaskStatus.PROCESSING);
+      final IntensityGrid grid = tileBuilder.build();
+      if (grid == null || isCanceled()) {
+        return;
+      }
+      IntensityGridCache.put(rawDataFile, scans, grid);
+      Platform.runLater(onRefined);
+      setStatus(TaskStatus.FINISHED);
+    }
+  }
+
 }
@@ -25,7 +25,6 @@
 
 package io.github.mzmine.modules.visualization.twod;
 
-import io.github.mzmine.util.RangeUtils;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
@@ -35,6 +34,7 @@ import java.util.Date;
 import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.plot.CrosshairState;
 import org.jfree.chart.plot.PlotRenderingInfo;
+import org.jfree.data.general.DatasetChangeEvent;
 
 import com.google.common.collect.Range;
 
@@ -71,10 +71,8 @@ class TwoDXYPlot extends BaseXYPlot {
 
     final double imageRTMin = (double) getDomainAxis().getRange().getLowerBound();
     final double imageRTMax = (double) getDomainAxis().getRange().getUpperBound();
-    final double imageRTStep = (imageRTMax - imageRTMin) / width;
     final double imageMZMin = (double) getRangeAxis().getRange().getLowerBound();
     final double imageMZMax = (double) getRangeAxis().getRange().getUpperBound();
-    final double imageMZStep = (imageMZMax - imageMZMin) / height;
 
     if ((zoomOutBitmap != null) && (imageRTMin == totalRTRange.lowerEndpoint())
         && (imageRTMax == totalRTRange.upperEndpoint())
@@ -89,27 +87,30 @@ class TwoDXYPlot extends BaseXYPlot {
     // Save current time
     Date renderStartTime = new Date();
 
-    // prepare a double array of summed intensities
+    final Range<Float> imageRTRange = Range.closed((float) imageRTMin, (float) imageRTMax);
+    final Range<Double> imageMZRange = Range.closed(imageMZMin, imageMZMax);
+    final boolean resolved = dataset.isResolved(imageRTRange, imageMZRange, width, height,
+        plotMode);
+    final float[][] intensities = dataset.sampleIntensities(imageRTRange, imageMZRange, width,
+        height, plotMode, () -> datasetChanged(new DatasetChangeEvent(dataset, dataset)));
+    if (intensities == null) {
+      return false;
+    }
+
+    // prepare a double array of maximum intensities
     double values[][] = new double[width][height];
     maxValue = 0; // now this is an instance variable
 
     for (int i = 0; i < width; i++)
       for (int j = 0; j < height; j++) {
 
-        double pointRTMin = imageRTMin + (i * imageRTStep);
-        double pointRTMax = pointRTMin + imageRTStep;
-        double pointMZMin = imageMZMin + (j * imageMZStep);
-        double pointMZMax = pointMZMin + imageMZStep;
-
-        double lv = dataset.upperEndpointIntensity(RangeUtils.toFloatRange(Range.closed(pointRTMin, pointRTMax)),
-            Range.closed(pointMZMin, pointMZMax), plotMode);
+        double lv = intensities[i][j];
 
         if (logScale) {
           lv = Math.log10(lv);
           if (lv < 0 || Double.isInfinite(lv))
             lv = 0;
           values[i][j] = lv;
-          // values[r.nextInt(width)][r.nextInt(height)] = lv;
         } else {
           values[i][j] = lv;
         }
@@ -139,8 +140,8 @@ class TwoDXYPlot extends BaseXYPlot {
         image.setRGB(i, height - j - 1, pointColor.getRGB());
       }
 
-    // if we are zoomed out, save the values
-    if ((imageRTMin == totalRTRange.lowerEndpoint()) && (imageRTMax == totalRTRange.upperEndpoint())
+    // if we are zoomed out, save the values unless they come from a coarser grid
+    if (resolved && (imageRTMin == totalRTRange.lowerEndpoint()) && (imageRTMax == totalRTRange.upperEndpoint())
         && (imageMZMin == totalMZRange.lowerEndpoint())
         && (imageMZMax == totalMZRange.upperEndpoint())) {
       zoomOutBitmap = image;
@@ -28,6 +28,7 @@ package io.github.mzmine.project.impl;
 import io.github.mzmine.datamodel.ImagingRawDataFile;
 import io.github.mzmine.datamodel.ImagingScan;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.ImagingMzIndex;
 import io.github.mzmine.modules.io.import_rawdata_imzml.Coordinates;
 import io.github.mzmine.modules.io.import_rawdata_imzml.ImagingParameters;
 import io.github.mzmine.util.MemoryMapStorage;
@@ -49,6 +50,10 @@ public class ImagingRawDataFileImpl extends RawDataFileImpl implements ImagingRa
   // TODO add ms level - one array for each level
   private Scan[][][] xyzScanNumbers;
 
+  // inverted m/z index, built on demand for the current number of scans
+  private ImagingMzIndex mzIndex;
+  private int mzIndexNumScans = -1;
+
 
   public ImagingRawDataFileImpl(String dataFileName, @Nullable final String absPath,
       MemoryMapStorage storage) throws IOException {
@@ -144,4 +149,13 @@ public class ImagingRawDataFileImpl extends RawDataFileImpl implements ImagingRa
     return xyzScanNumbers;
   }
 
+  @Override
+  public synchronized @Nullable ImagingMzIndex getMzIndex() {
+    // rebuild if scans were added
+    if (mzIndexNumScans != getNumOfScans()) {
+      mzIndexNumScans = getNumOfScans();
+      mzIndex = ImagingMzIndex.build(this);
+    }
+    return mzIndex;
+  }
 }
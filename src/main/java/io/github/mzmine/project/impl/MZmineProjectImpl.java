@@ -30,12 +30,15 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.ImagePreviewCache;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.CachedIMSRawDataFile;
 import io.github.mzmine.modules.visualization.projectmetadata.table.MetadataTable;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.project.impl.ProjectChangeEvent.Type;
 import io.github.mzmine.util.files.FileAndPathUtil;
+import io.github.mzmine.util.scans.FragmentScanIndex;
+import io.github.mzmine.util.scans.IntensityGridCache;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import java.io.File;
 import java.util.ArrayList;
@@ -230,6 +233,11 @@ public class MZmineProjectImpl implements MZmineProject {
         // Remove the file from the metadata table
         projectMetadata.removeFile(f);
 
+        // Release the cached intensity grids, image previews and the fragment scan index
+        IntensityGridCache.remove(f);
+        ImagePreviewCache.remove(f);
+        FragmentScanIndex.remove(f);
+
         // Close the data file, which also removed the temporary data
         f.close();
       }
@@ -278,6 +286,9 @@ public class MZmineProjectImpl implements MZmineProject {
 
       featureLists.removeAll(featureList);
       fireFeatureListsChangeEvent(List.of(featureList), Type.REMOVED);
+      for (FeatureList flist : featureList) {
+        ImagePreviewCache.remove(flist);
+      }
     } finally {
       featureLock.writeLock().unlock();
     }
@@ -329,6 +340,9 @@ public class MZmineProjectImpl implements MZmineProject {
 
       this.featureLists.removeAll(featureLists);
       fireFeatureListsChangeEvent(List.copyOf(featureLists), Type.REMOVED);
+      for (FeatureList flist : featureLists) {
+        ImagePreviewCache.remove(flist);
+      }
     } finally {
       featureLock.writeLock().unlock();
     }
@@ -38,13 +38,17 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.files.FileAndPathUtil;
 import io.github.mzmine.util.javafx.FxColorUtil;
+import io.github.mzmine.util.scans.FragmentScanIndex;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import java.io.Closeable;
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javafx.beans.property.ObjectProperty;
@@ -83,6 +87,11 @@ public class RawDataFileImpl implements RawDataFile {
   // Temporary file for scan data storage
   private final MemoryMapStorage storageMemoryMap;
   private final ObjectProperty<Color> color = new SimpleObjectProperty<>();
+  // resources that are released on close, e.g., readers that load scan data from the source file
+  private final List<Closeable> openResources = new ArrayList<>();
+  // built on first access, see FragmentScanIndex#of
+  @Nullable
+  private volatile FragmentScanIndex fragmentScanIndex;
   // maximum number of data points and centroid data points in all scans
   protected int maxRawDataPoints = -1;
   // Name of this raw data file - may be changed by the user
@@ -363,9 +372,26 @@ public class RawDataFileImpl implements RawDataFile {
     return color;
   }
 
+  /**
+   * Registers a resource that is closed together with this file, e.g., a reader that loads data
+   * points on demand from the source file.
+   *
+   * @param resource closed in {@link #close()}
+   */
+  public synchronized void addOpenResource(@NotNull Closeable resource) {
+    openResources.add(resource);
+  }
+
   @Override
   public synchronized void close() {
-
+    for (Closeable resource : openResources) {
+      try {
+        resource.close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Cannot close resource of raw data file " + getName(), e);
+      }
+    }
+    openResources.clear();
   }
 
   @Override
@@ -437,6 +463,18 @@ public class RawDataFileImpl implements RawDataFile {
     this.startTimeStamp = startTimeStamp;
   }
 
+  /**
+   * @return the fragment scan index or null if it was not built yet
+   */
+  @Nullable
+  public FragmentScanIndex getFragmentScanIndex() {
+    return fragmentScanIndex;
+  }
+
+  public void setFragmentScanIndex(@Nullable FragmentScanIndex fragmentScanIndex) {
+    this.fragmentScanIndex = fragmentScanIndex;
+  }
+
   /**
    * Mass list has changed. reset all precomputed values
    *
@@ -266,6 +266,30 @@ public class FeatureListUtils {
     });
   }
 
+  /**
+   * Adds the alignment scores of newly aligned samples to the existing scores of an aligned list
+   * (incremental alignment). The calculator only needs the new feature lists, so the runtime scales
+   * with the number of new samples.
+   *
+   * @param alignedFeatureList the aligned list with all (old and new) raw data files
+   * @param calculator         holds tolerances and only the new feature lists
+   */
+  public static void addAlignmentScoresIncremental(@NotNull FeatureList alignedFeatureList,
+      RowAlignmentScoreCalculator calculator) {
+    alignedFeatureList.addRowType(DataTypes.get(AlignmentMainType.class));
+    final int totalSamples = alignedFeatureList.getNumberOfRawDataFiles();
+
+    alignedFeatureList.getRows().stream().parallel().forEach(alignedRow -> {
+      AlignmentScores newSamplesScore = calculator.calcScore(alignedRow);
+      AlignmentScores oldScore = alignedRow.get(AlignmentMainType.class);
+      if (oldScore == null) {
+        oldScore = new AlignmentScores();
+      }
+      alignedRow.set(AlignmentMainType.class,
+          oldScore.mergeSamples(newSamplesScore, totalSamples));
+    });
+  }
+
   /**
    * Compare row average values to ranges (during alignment or annotation to other mz, rt, and
    * mobility values based on tolerances -> ranges). General score is SUM((difference
@@ -120,4 +120,49 @@ public class BinarySearch {
     return -(low + 1);  // key not found.
   }
 
+  /**
+   * Finds the start of all values >= value in a sorted array, for example the start of a range
+   * search with {@link #upperBound(double[], double)} as the end.
+   *
+   * @param sortedValues values sorted in ascending order
+   * @param value        search for this value
+   * @return the first index with sortedValues[index] >= value or the array length if all values
+   * are smaller
+   */
+  public static int lowerBound(double[] sortedValues, double value) {
+    int low = 0;
+    int high = sortedValues.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sortedValues[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Finds the end of all values <= value in a sorted array.
+   *
+   * @param sortedValues values sorted in ascending order
+   * @param value        search for this value
+   * @return the first index with sortedValues[index] > value or the array length if no value is
+   * larger
+   */
+  public static int upperBound(double[] sortedValues, double value) {
+    int low = 0;
+    int high = sortedValues.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sortedValues[mid] <= value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
 }
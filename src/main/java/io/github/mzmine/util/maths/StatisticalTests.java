@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.maths;
+
+import java.util.Arrays;
+import org.apache.commons.math3.distribution.FDistribution;
+import org.apache.commons.math3.distribution.TDistribution;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Significance tests on primitive arrays. All tests return {@link Double#NaN} if the p-value is
+ * undefined, e.g., for too few values or zero variance.
+ */
+public class StatisticalTests {
+
+  /**
+   * Two-sided Welch's t-test for the difference of the means of two samples with unequal
+   * variances.
+   *
+   * @return the p-value
+   */
+  public static double welchTTest(@NotNull double[] sample1, @NotNull double[] sample2) {
+    final int n1 = sample1.length;
+    final int n2 = sample2.length;
+    if (n1 < 2 || n2 < 2) {
+      return Double.NaN;
+    }
+    final double mean1 = mean(sample1);
+    final double mean2 = mean(sample2);
+    final double varN1 = variance(sample1, mean1) / n1;
+    final double varN2 = variance(sample2, mean2) / n2;
+    final double standardError = Math.sqrt(varN1 + varN2);
+    if (standardError == 0d || !Double.isFinite(standardError)) {
+      return Double.NaN;
+    }
+
+    final double t = (mean1 - mean2) / standardError;
+    final double degreesOfFreedom = (varN1 + varN2) * (varN1 + varN2) / (
+        varN1 * varN1 / (n1 - 1) + varN2 * varN2 / (n2 - 1));
+    return 2d * new TDistribution(null, degreesOfFreedom).cumulativeProbability(-Math.abs(t));
+  }
+
+  /**
+   * One-way analysis of variance for the equality of the means of all groups. Empty groups are
+   * ignored.
+   *
+   * @param groups the values of each group
+   * @return the p-value
+   */
+  public static double oneWayAnova(@NotNull double[][] groups) {
+    int numGroups = 0;
+    int numValues = 0;
+    double sum = 0d;
+    for (double[] group : groups) {
+      if (group.length > 0) {
+        numGroups++;
+        numValues += group.length;
+        for (double v : group) {
+          sum += v;
+        }
+      }
+    }
+
+    final int degreesOfFreedomOfTreatment = numGroups - 1;
+    final int degreesOfFreedomOfError = numValues - numGroups;
+    if (degreesOfFreedomOfTreatment <= 0 || degreesOfFreedomOfError <= 0) {
+      return Double.NaN;
+    }
+
+    final double overallMean = sum / numValues;
+    double sumOfSquaresOfTreatment = 0d;
+    double sumOfSquaresOfError = 0d;
+    for (double[] group : groups) {
+      if (group.length == 0) {
+        continue;
+      }
+      final double groupMean = mean(group);
+      sumOfSquaresOfTreatment += group.length * (groupMean - overallMean) * (groupMean - overallMean);
+      for (double v : group) {
+        sumOfSquaresOfError += (v - groupMean) * (v - groupMean);
+      }
+    }
+
+    final double meanSquareOfError = sumOfSquaresOfError / degreesOfFreedomOfError;
+    if (meanSquareOfError == 0d || !Double.isFinite(meanSquareOfError)) {
+      return Double.NaN;
+    }
+    final double f = sumOfSquaresOfTreatment / degreesOfFreedomOfTreatment / meanSquareOfError;
+    return 1d - new FDistribution(null, degreesOfFreedomOfTreatment, degreesOfFreedomOfError)
+        .cumulativeProbability(f);
+  }
+
+  /**
+   * Benjamini-Hochberg adjustment of p-values to control the false discovery rate. NaN p-values
+   * are not counted as tests and stay NaN.
+   *
+   * @param pValues the p-values
+   * @return the adjusted p-values (q-values) in the same order
+   */
+  public static double[] benjaminiHochberg(@NotNull double[] pValues) {
+    final double[] qValues = new double[pValues.length];
+    Arrays.fill(qValues, Double.NaN);
+
+    final Integer[] order = new Integer[pValues.length];
+    int numTests = 0;
+    for (int i = 0; i < pValues.length; i++) {
+      if (!Double.isNaN(pValues[i])) {
+        order[numTests++] = i;
+      }
+    }
+    Arrays.sort(order, 0, numTests, (a, b) -> Double.compare(pValues[a], pValues[b]));
+
+    // step-up from the largest p-value keeps the adjusted values monotonic
+    double minQ = 1d;
+    for (int rank = numTests; rank >= 1; rank--) {
+      final int index = order[rank - 1];
+      minQ = Math.min(minQ, pValues[index] * numTests / rank);
+      qValues[index] = minQ;
+    }
+    return qValues;
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0d;
+    for (double v : values) {
+      sum += v;
+    }
+    return sum / values.length;
+  }
+
+  private static double variance(double[] values, double mean) {
+    double sum = 0d;
+    for (double v : values) {
+      sum += (v - mean) * (v - mean);
+    }
+    return sum / (values.length - 1);
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.maths.clustering;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Result of an agglomerative hierarchical clustering of n elements. Nodes 0 to n-1 are the
+ * elements, node n+i is created by merge i. Merges are sorted by increasing height.
+ *
+ * @param left    first node of each merge
+ * @param right   second node of each merge
+ * @param heights distance of the two nodes of each merge
+ * @param sizes   number of elements below each merge
+ */
+public record Dendrogram(@NotNull int[] left, @NotNull int[] right, @NotNull double[] heights,
+                         @NotNull int[] sizes) {
+
+  public int getNumberOfElements() {
+    return left.length + 1;
+  }
+
+  /**
+   * @return the index of the root node
+   */
+  public int getRoot() {
+    return 2 * left.length;
+  }
+
+  /**
+   * The order of the elements as leaves of the tree. If weights are given, the two branches of
+   * each merge are ordered by the mean weight of their elements, lower weights first, like R's
+   * reorder.dendrogram.
+   *
+   * @param weights one weight per element or null to keep the merge order
+   * @return the element indices in leaf order
+   */
+  public int[] getLeafOrder(@Nullable double[] weights) {
+    final int n = getNumberOfElements();
+    final int[] order = new int[n];
+    if (n == 1) {
+      return order;
+    }
+
+    double[] meanWeights = null;
+    if (weights != null) {
+      meanWeights = new double[2 * n - 1];
+      System.arraycopy(weights, 0, meanWeights, 0, n);
+      for (int i = 0; i < left.length; i++) {
+        final int sizeLeft = size(left[i]);
+        final int sizeRight = size(right[i]);
+        meanWeights[n + i] = (meanWeights[left[i]] * sizeLeft + meanWeights[right[i]] * sizeRight)
+            / (sizeLeft + sizeRight);
+      }
+    }
+
+    // depth first traversal, the stack holds at most one pending node per level
+    final int[] stack = new int[n];
+    int stackSize = 0;
+    int leaves = 0;
+    stack[stackSize++] = getRoot();
+    while (stackSize > 0) {
+      final int node = stack[--stackSize];
+      if (node < n) {
+        order[leaves++] = node;
+        continue;
+      }
+      int first = left[node - n];
+      int second = right[node - n];
+      if (meanWeights != null && meanWeights[second] < meanWeights[first]) {
+        final int tmp = first;
+        first = second;
+        second = tmp;
+      }
+      stack[stackSize++] = second;
+      stack[stackSize++] = first;
+    }
+    return order;
+  }
+
+  /**
+   * Cuts the tree into clusters by undoing the highest merges.
+   *
+   * @param numberOfClusters number of clusters, limited to the number of elements
+   * @return the root node of each cluster, ordered by the lowest element index in the cluster
+   */
+  public int[] getClusterRoots(int numberOfClusters) {
+    final int n = getNumberOfElements();
+    final int[] rootOf = rootsOfCut(numberOfClusters);
+    final int[] labels = cut(numberOfClusters);
+    final int[] roots = new int[Math.max(1, Math.min(numberOfClusters, n))];
+    for (int i = 0; i < n; i++) {
+      roots[labels[i]] = rootOf[i];
+    }
+    return roots;
+  }
+
+  /**
+   * Cuts the tree into clusters by undoing the highest merges.
+   *
+   * @param numberOfClusters number of clusters, limited to the number of elements
+   * @return the cluster of each element, numbered in order of their lowest element index
+   */
+  public int[] cut(int numberOfClusters) {
+    final int n = getNumberOfElements();
+    final int[] rootOf = rootsOfCut(numberOfClusters);
+    final int[] labelOfRoot = new int[rootOf.length];
+    Arrays.fill(labelOfRoot, -1);
+    final int[] labels = new int[n];
+    int numLabels = 0;
+    for (int i = 0; i < n; i++) {
+      if (labelOfRoot[rootOf[i]] == -1) {
+        labelOfRoot[rootOf[i]] = numLabels++;
+      }
+      labels[i] = labelOfRoot[rootOf[i]];
+    }
+    return labels;
+  }
+
+  /**
+   * @return the cluster root of each node below the cut
+   */
+  private int[] rootsOfCut(int numberOfClusters) {
+    final int n = getNumberOfElements();
+    final int usedMerges = n - Math.max(1, Math.min(numberOfClusters, n));
+    // parents have higher node indices than their children, so a descending pass passes the root
+    // of each cluster down to all of its nodes
+    final int[] rootOf = new int[n + usedMerges];
+    Arrays.fill(rootOf, -1);
+    for (int node = rootOf.length - 1; node >= 0; node--) {
+      if (rootOf[node] == -1) {
+        rootOf[node] = node;
+      }
+      if (node >= n) {
+        rootOf[left[node - n]] = rootOf[node];
+        rootOf[right[node - n]] = rootOf[node];
+      }
+    }
+    return rootOf;
+  }
+
+  /**
+   * The subtree below a node in Newick format with branch lengths, e.g., ((a:1.0,b:1.0):0.5,c:1.5)
+   *
+   * @param node  the root of the subtree
+   * @param names the element names, must not contain Newick delimiters
+   */
+  public String toNewick(int node, @NotNull String[] names) {
+    final int n = getNumberOfElements();
+    final double[] branchLengths = new double[2 * n - 1];
+    for (int i = 0; i < left.length; i++) {
+      branchLengths[left[i]] = heights[i] - height(left[i]);
+      branchLengths[right[i]] = heights[i] - height(right[i]);
+    }
+
+    // iterative traversal, actions are encoded as node * 3 + type
+    final int visit = 0;
+    final int afterFirst = 1;
+    final int afterSecond = 2;
+    final StringBuilder newick = new StringBuilder();
+    final int[] stack = new int[3 * size(node) + 1];
+    int stackSize = 0;
+    stack[stackSize++] = node * 3 + visit;
+    while (stackSize > 0) {
+      final int action = stack[--stackSize];
+      final int current = action / 3;
+      switch (action % 3) {
+        case visit -> {
+          if (current < n) {
+            newick.append(names[current]);
+          } else {
+            newick.append('(');
+            stack[stackSize++] = right[current - n] * 3 + afterSecond;
+            stack[stackSize++] = right[current - n] * 3 + visit;
+            stack[stackSize++] = left[current - n] * 3 + afterFirst;
+            stack[stackSize++] = left[current - n] * 3 + visit;
+          }
+        }
+        case afterFirst -> newick.append(':').append(branchLengths[current]).append(',');
+        default -> newick.append(':').append(branchLengths[current]).append(')');
+      }
+    }
+    return newick.toString();
+  }
+
+  /**
+   * @return the merge height of a node, zero for elements
+   */
+  public double height(int node) {
+    final int n = getNumberOfElements();
+    return node < n ? 0d : heights[node - n];
+  }
+
+  /**
+   * @return the number of elements below a node
+   */
+  public int size(int node) {
+    final int n = getNumberOfElements();
+    return node < n ? 1 : sizes[node - n];
+  }
+}
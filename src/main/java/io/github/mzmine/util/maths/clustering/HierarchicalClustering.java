@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.maths.clustering;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleBiFunction;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Agglomerative hierarchical clustering on primitive matrices. Distances are kept in a condensed
+ * upper triangle, the distance of i &lt; j is stored at {@link #index(int, int, int)}.
+ */
+public class HierarchicalClustering {
+
+  /**
+   * Euclidean distances of all pairs of vectors, calculated in parallel. Like R's dist, missing
+   * (NaN or infinite) values are excluded and the sum is scaled up proportionally to the number of
+   * excluded coordinates. The distance is NaN if two vectors have no value in common.
+   *
+   * @param vectors the vectors, all of equal length
+   * @return the condensed distance matrix
+   */
+  public static double[] euclideanDistances(@NotNull double[][] vectors) {
+    final int n = vectors.length;
+    final double[] distances = new double[condensedSize(n)];
+
+    IntStream.range(0, n).parallel().forEach(i -> {
+      final double[] a = vectors[i];
+      int index = index(i, i + 1, n);
+      for (int j = i + 1; j < n; j++) {
+        final double[] b = vectors[j];
+        double sum = 0d;
+        int used = 0;
+        for (int k = 0; k < a.length; k++) {
+          final double diff = a[k] - b[k];
+          if (Double.isFinite(diff)) {
+            sum += diff * diff;
+            used++;
+          }
+        }
+        distances[index++] = used == 0 ? Double.NaN : Math.sqrt(sum * a.length / used);
+      }
+    });
+    return distances;
+  }
+
+  /**
+   * Distances of all pairs of vectors, calculated in parallel.
+   *
+   * @param vectors the vectors, all of equal length
+   * @param metric  the distance of two vectors
+   * @return the condensed distance matrix
+   */
+  public static double[] distances(@NotNull double[][] vectors,
+      @NotNull ToDoubleBiFunction<double[], double[]> metric) {
+    final int n = vectors.length;
+    final double[] distances = new double[condensedSize(n)];
+
+    IntStream.range(0, n).parallel().forEach(i -> {
+      int index = index(i, i + 1, n);
+      for (int j = i + 1; j < n; j++) {
+        distances[index++] = metric.applyAsDouble(vectors[i], vectors[j]);
+      }
+    });
+    return distances;
+  }
+
+  private static int condensedSize(int n) {
+    final long size = (long) n * (n - 1) / 2;
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException(
+          "Too many elements for hierarchical clustering: " + n);
+    }
+    return (int) size;
+  }
+
+  /**
+   * Clusters the elements of a condensed distance matrix. Reducible linkages use the
+   * nearest-neighbor chain algorithm in O(n^2) time. The other linkages cache the nearest neighbor
+   * of each cluster, which takes O(n^2) time in most cases and O(n^3) in the worst case, neighbor
+   * joining always takes O(n^3) time. The distance matrix is used as working memory and
+   * overwritten.
+   *
+   * @param distances condensed distances without NaN values, see
+   *                  {@link #euclideanDistances(double[][])}
+   * @param n         number of elements
+   * @param linkage   the linkage criterion
+   * @return the dendrogram
+   */
+  public static Dendrogram cluster(@NotNull double[] distances, int n, @NotNull Linkage linkage) {
+    if (n < 1 || distances.length != (long) n * (n - 1) / 2) {
+      throw new IllegalArgumentException("Distance matrix does not match " + n + " elements");
+    }
+    if (linkage == Linkage.NEIGHBOR_JOINING) {
+      return neighborJoining(distances, n);
+    }
+    if (!linkage.isReducible()) {
+      return clusterNearestNeighbors(distances, n, linkage);
+    }
+    final int numMerges = n - 1;
+    final int[] mergedA = new int[numMerges];
+    final int[] mergedB = new int[numMerges];
+    final double[] mergeHeights = new double[numMerges];
+
+    // slots keep the representative element of each active cluster
+    final boolean[] active = new boolean[n];
+    Arrays.fill(active, true);
+    final int[] slotSizes = new int[n];
+    Arrays.fill(slotSizes, 1);
+    final int[] chain = new int[n];
+    int chainLength = 0;
+
+    if (linkage == Linkage.WARD) {
+      for (int i = 0; i < distances.length; i++) {
+        distances[i] *= distances[i];
+      }
+    }
+
+    for (int merge = 0; merge < numMerges; merge++) {
+      if (chainLength == 0) {
+        for (int i = 0; i < n; i++) {
+          if (active[i]) {
+            chain[chainLength++] = i;
+            break;
+          }
+        }
+      }
+
+      int a;
+      int b;
+      double minDistance;
+      while (true) {
+        a = chain[chainLength - 1];
+        // prefer the previous chain element on ties, otherwise the chain could cycle
+        final int previous = chainLength > 1 ? chain[chainLength - 2] : -1;
+        b = previous;
+        minDistance = previous >= 0 ? distances[index(a, previous, n)] : Double.POSITIVE_INFINITY;
+        for (int k = 0; k < n; k++) {
+          if (k == a || !active[k]) {
+            continue;
+          }
+          final double d = distances[index(a, k, n)];
+          if (d < minDistance || b < 0) {
+            minDistance = d;
+            b = k;
+          }
+        }
+        if (b == previous) {
+          chainLength -= 2;
+          break;
+        }
+        chain[chainLength++] = b;
+      }
+
+      mergedA[merge] = a;
+      mergedB[merge] = b;
+      mergeHeights[merge] = minDistance;
+
+      // the union is kept in slot b
+      final int sizeA = slotSizes[a];
+      final int sizeB = slotSizes[b];
+      active[a] = false;
+      for (int k = 0; k < n; k++) {
+        if (k == b || !active[k]) {
+          continue;
+        }
+        final int indexBK = index(b, k, n);
+        distances[indexBK] = linkage.update(minDistance, distances[index(a, k, n)],
+            distances[indexBK], sizeA, sizeB, slotSizes[k]);
+      }
+      slotSizes[b] = sizeA + sizeB;
+    }
+
+    if (linkage == Linkage.WARD) {
+      for (int i = 0; i < numMerges; i++) {
+        mergeHeights[i] = Math.sqrt(mergeHeights[i]);
+      }
+    }
+
+    return toDendrogram(n, mergedA, mergedB, mergeHeights);
+  }
+
+  /**
+   * Merges the closest pair of clusters in each step. The nearest neighbor of each cluster is
+   * cached and only searched again if its neighbor was merged. Merge heights of non-reducible
+   * linkages may decrease, they are raised to the heights of the merged clusters.
+   */
+  private static Dendrogram clusterNearestNeighbors(@NotNull double[] distances, int n,
+      @NotNull Linkage linkage) {
+    final int numMerges = n - 1;
+    final int[] mergedA = new int[numMerges];
+    final int[] mergedB = new int[numMerges];
+    final double[] mergeHeights = new double[numMerges];
+
+    // slots keep the representative element of each active cluster
+    final boolean[] active = new boolean[n];
+    Arrays.fill(active, true);
+    final int[] slotSizes = new int[n];
+    Arrays.fill(slotSizes, 1);
+    final double[] slotHeights = new double[n];
+    // sum of the distances within each cluster for the mean linkage, the largest distance for the
+    // adjusted complete linkage
+    final double[] within = new double[n];
+
+    if (linkage == Linkage.CENTROID) {
+      for (int i = 0; i < distances.length; i++) {
+        distances[i] *= distances[i];
+      }
+    }
+
+    final int[] neighbors = new int[n];
+    final double[] neighborDistances = new double[n];
+    for (int i = 0; i < n; i++) {
+      findNeighbor(i, distances, n, linkage, active, slotSizes, within, neighbors,
+          neighborDistances);
+    }
+
+    for (int merge = 0; merge < numMerges; merge++) {
+      int a = -1;
+      for (int i = 0; i < n; i++) {
+        if (active[i] && (a < 0 || neighborDistances[i] < neighborDistances[a])) {
+          a = i;
+        }
+      }
+      final int b = neighbors[a];
+      final double minDistance = neighborDistances[a];
+      final double storedAB = distances[index(a, b, n)];
+
+      mergedA[merge] = a;
+      mergedB[merge] = b;
+      final double height = linkage == Linkage.CENTROID ? Math.sqrt(minDistance) : minDistance;
+      mergeHeights[merge] = Math.max(height, Math.max(slotHeights[a], slotHeights[b]));
+
+      // the union is kept in slot b
+      final int sizeA = slotSizes[a];
+      final int sizeB = slotSizes[b];
+      active[a] = false;
+      for (int k = 0; k < n; k++) {
+        if (k == b || !active[k]) {
+          continue;
+        }
+        final int indexBK = index(b, k, n);
+        distances[indexBK] = linkage.update(storedAB, distances[index(a, k, n)],
+            distances[indexBK], sizeA, sizeB, slotSizes[k]);
+      }
+      slotSizes[b] = sizeA + sizeB;
+      slotHeights[b] = mergeHeights[merge];
+      within[b] = linkage == Linkage.MEAN ? within[a] + within[b] + storedAB
+          : Math.max(storedAB, Math.max(within[a], within[b]));
+
+      // only distances to the union changed
+      for (int k = 0; k < n; k++) {
+        if (k == b || !active[k]) {
+          continue;
+        }
+        if (neighbors[k] == a || neighbors[k] == b) {
+          findNeighbor(k, distances, n, linkage, active, slotSizes, within, neighbors,
+              neighborDistances);
+        } else {
+          final double d = linkageDistance(linkage, distances[index(b, k, n)], b, k, slotSizes,
+              within);
+          if (d < neighborDistances[k]) {
+            neighbors[k] = b;
+            neighborDistances[k] = d;
+          }
+        }
+      }
+      findNeighbor(b, distances, n, linkage, active, slotSizes, within, neighbors,
+          neighborDistances);
+    }
+
+    return toDendrogram(n, mergedA, mergedB, mergeHeights);
+  }
+
+  private static void findNeighbor(int i, double[] distances, int n, Linkage linkage,
+      boolean[] active, int[] slotSizes, double[] within, int[] neighbors,
+      double[] neighborDistances) {
+    int neighbor = -1;
+    double minDistance = Double.POSITIVE_INFINITY;
+    for (int k = 0; k < n; k++) {
+      if (k == i || !active[k]) {
+        continue;
+      }
+      final double d = linkageDistance(linkage, distances[index(i, k, n)], i, k, slotSizes,
+          within);
+      if (d < minDistance || neighbor < 0) {
+        minDistance = d;
+        neighbor = k;
+      }
+    }
+    neighbors[i] = neighbor;
+    neighborDistances[i] = minDistance;
+  }
+
+  /**
+   * @param stored the distance of the clusters i and k in the working matrix
+   * @return the linkage distance of the clusters i and k
+   */
+  private static double linkageDistance(Linkage linkage, double stored, int i, int k,
+      int[] slotSizes, double[] within) {
+    return switch (linkage) {
+      case MEAN -> {
+        final double size = slotSizes[i] + slotSizes[k];
+        yield (within[i] + within[k] + stored) / (size * (size - 1) / 2);
+      }
+      case ADJUSTED_COMPLETE -> stored - Math.max(within[i], within[k]);
+      default -> stored;
+    };
+  }
+
+  /**
+   * Neighbor joining of Saitou and Nei, which merges the pair that minimizes
+   * (r - 2) * d(i, j) - R(i) - R(j) for r clusters and the distance sums R. The criterion is the
+   * same for all pairs of three clusters and equal for complementary pairs of four clusters, such
+   * ties are resolved by the smaller distance. Merges are placed at the distance of the merged
+   * clusters, raised to the heights of the merged clusters where needed.
+   */
+  private static Dendrogram neighborJoining(@NotNull double[] distances, int n) {
+    final int numMerges = n - 1;
+    final int[] mergedA = new int[numMerges];
+    final int[] mergedB = new int[numMerges];
+    final double[] mergeHeights = new double[numMerges];
+
+    final boolean[] active = new boolean[n];
+    Arrays.fill(active, true);
+    final double[] slotHeights = new double[n];
+    final double[] sums = new double[n];
+
+    for (int merge = 0; merge < numMerges; merge++) {
+      final int r = n - merge;
+      Arrays.fill(sums, 0d);
+      for (int i = 0; i < n; i++) {
+        if (!active[i]) {
+          continue;
+        }
+        for (int k = i + 1; k < n; k++) {
+          if (active[k]) {
+            final double d = distances[index(i, k, n)];
+            sums[i] += d;
+            sums[k] += d;
+          }
+        }
+      }
+
+      int a = -1;
+      int b = -1;
+      double minCriterion = Double.POSITIVE_INFINITY;
+      double minDistance = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < n; i++) {
+        if (!active[i]) {
+          continue;
+        }
+        for (int k = i + 1; k < n; k++) {
+          if (!active[k]) {
+            continue;
+          }
+          final double d = distances[index(i, k, n)];
+          final double criterion = (r - 2) * d - sums[i] - sums[k];
+          final double tolerance = 1e-10 * (Math.abs(criterion) + Math.abs(minCriterion));
+          if (a < 0 || criterion < minCriterion - tolerance
+              || (criterion <= minCriterion + tolerance && d < minDistance)) {
+            a = i;
+            b = k;
+            minCriterion = criterion;
+            minDistance = d;
+          }
+        }
+      }
+
+      mergedA[merge] = a;
+      mergedB[merge] = b;
+      mergeHeights[merge] = Math.max(minDistance, Math.max(slotHeights[a], slotHeights[b]));
+
+      // the union is kept in slot b
+      active[a] = false;
+      for (int k = 0; k < n; k++) {
+        if (k == b || !active[k]) {
+          continue;
+        }
+        final int indexBK = index(b, k, n);
+        distances[indexBK] = Linkage.NEIGHBOR_JOINING.update(minDistance,
+            distances[index(a, k, n)], distances[indexBK], 1, 1, 1);
+      }
+      slotHeights[b] = mergeHeights[merge];
+    }
+
+    return toDendrogram(n, mergedA, mergedB, mergeHeights);
+  }
+
+  /**
+   * Sorts the merges by height and labels the merged clusters with node indices.
+   */
+  private static Dendrogram toDendrogram(int n, int[] mergedA, int[] mergedB,
+      double[] mergeHeights) {
+    final int numMerges = n - 1;
+    final Integer[] order = new Integer[numMerges];
+    for (int i = 0; i < numMerges; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (i, j) -> Double.compare(mergeHeights[i], mergeHeights[j]));
+
+    // union-find over the element slots, nodeOfRoot holds the current node of each cluster
+    final int[] parent = new int[n];
+    final int[] nodeOfRoot = new int[n];
+    for (int i = 0; i < n; i++) {
+      parent[i] = i;
+      nodeOfRoot[i] = i;
+    }
+
+    final int[] left = new int[numMerges];
+    final int[] right = new int[numMerges];
+    final double[] heights = new double[numMerges];
+    final int[] sizes = new int[numMerges];
+    for (int i = 0; i < numMerges; i++) {
+      final int merge = order[i];
+      final int rootA = find(parent, mergedA[merge]);
+      final int rootB = find(parent, mergedB[merge]);
+      final int nodeA = nodeOfRoot[rootA];
+      final int nodeB = nodeOfRoot[rootB];
+      left[i] = Math.min(nodeA, nodeB);
+      right[i] = Math.max(nodeA, nodeB);
+      heights[i] = mergeHeights[merge];
+      sizes[i] = (nodeA < n ? 1 : sizes[nodeA - n]) + (nodeB < n ? 1 : sizes[nodeB - n]);
+
+      parent[rootA] = rootB;
+      nodeOfRoot[rootB] = n + i;
+    }
+    return new Dendrogram(left, right, heights, sizes);
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  /**
+   * @return the index of the distance of the elements i and j in a condensed distance matrix of n
+   * elements
+   */
+  public static int index(int i, int j, int n) {
+    if (i > j) {
+      final int tmp = i;
+      i = j;
+      j = tmp;
+    }
+    return (int) ((long) n * i - (long) i * (i + 1) / 2 + j - i - 1);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.maths.clustering;
+
+/**
+ * Linkage criteria of agglomerative hierarchical clustering. Single, complete, average and Ward's
+ * criterion are reducible, which allows clustering with the nearest-neighbor chain algorithm.
+ * Ward's and the centroid criterion work on squared distances, like R's ward.D2 and centroid.
+ * <p>
+ * The mean, centroid, adjusted complete and neighbor joining criteria of Weka are not reducible
+ * and use a slower fallback, see {@link HierarchicalClustering#cluster(double[], int, Linkage)}.
+ * The mean linkage is the mean distance of all pairs in the merged cluster. The adjusted complete
+ * linkage is the complete linkage minus the largest distance within either cluster.
+ */
+public enum Linkage {
+
+  SINGLE("Single"), COMPLETE("Complete"), AVERAGE("Average"), WARD("Ward"), MEAN("Mean"), CENTROID(
+      "Centroid"), ADJUSTED_COMPLETE("Adjusted complete"), NEIGHBOR_JOINING("Neighbor joining");
+
+  private final String name;
+
+  Linkage(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return true if merging two clusters never brings the union closer to another cluster than
+   * both of them were, which is required by the nearest-neighbor chain algorithm
+   */
+  public boolean isReducible() {
+    return switch (this) {
+      case SINGLE, COMPLETE, AVERAGE, WARD -> true;
+      case MEAN, CENTROID, ADJUSTED_COMPLETE, NEIGHBOR_JOINING -> false;
+    };
+  }
+
+  /**
+   * Lance-Williams update of the distance between a cluster k and the union of the clusters i and
+   * j. The mean linkage keeps the sum of all distances between two clusters instead, the adjusted
+   * complete linkage keeps the complete linkage.
+   *
+   * @param dij   distance of cluster i to cluster j
+   * @param dik   distance of cluster i to cluster k
+   * @param djk   distance of cluster j to cluster k
+   * @param sizeI number of elements in cluster i
+   * @param sizeJ number of elements in cluster j
+   * @param sizeK number of elements in cluster k
+   */
+  double update(double dij, double dik, double djk, int sizeI, int sizeJ, int sizeK) {
+    return switch (this) {
+      case SINGLE -> Math.min(dik, djk);
+      case COMPLETE, ADJUSTED_COMPLETE -> Math.max(dik, djk);
+      case AVERAGE -> (sizeI * dik + sizeJ * djk) / (sizeI + sizeJ);
+      case WARD -> ((sizeI + sizeK) * dik + (sizeJ + sizeK) * djk - sizeK * dij) / (sizeI + sizeJ
+          + sizeK);
+      case MEAN -> dik + djk;
+      case CENTROID -> {
+        final double sizeIJ = sizeI + sizeJ;
+        yield (sizeI * dik + sizeJ * djk) / sizeIJ - sizeI * sizeJ * dij / (sizeIJ * sizeIJ);
+      }
+      case NEIGHBOR_JOINING -> (dik + djk - dij) / 2;
+    };
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.MSnInfoImpl;
+import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
+import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.collections.BinarySearch;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of the fragment scans (MS level > 1) and PASEF {@link PasefMsMsInfo}s of a raw data file.
+ * Fragment scans are kept in retention time order and are additionally sorted by their MS2
+ * precursor m/z, so that the fragment scans of a feature are found by range queries instead of
+ * iterating all scans of the file. The index is built once per file and shared by all tasks, see
+ * {@link #of(RawDataFile)}.
+ */
+public class FragmentScanIndex {
+
+  private final int numScans;
+
+  // fragment scans in retention time order
+  private final Scan[] scans;
+  private final float[] rts;
+  // positions in scans sorted by precursor m/z, scans without precursor are excluded
+  private final int[] scansByMz;
+  private final double[] sortedScanMzs;
+
+  // PASEF precursors in frame order
+  private final PasefMsMsInfo[] pasefInfos;
+  private final float[] pasefRts;
+  private final int[] pasefByMz;
+  private final double[] sortedPasefMzs;
+
+  private FragmentScanIndex(@NotNull List<Scan> allScans) {
+    numScans = allScans.size();
+
+    final List<Scan> fragmentScans = new ArrayList<>();
+    final float[] scanRts = new float[numScans];
+    final DoubleArrayList scanMzs = new DoubleArrayList();
+    final List<PasefMsMsInfo> infos = new ArrayList<>();
+    final DoubleArrayList infoRts = new DoubleArrayList();
+    final DoubleArrayList infoMzs = new DoubleArrayList();
+
+    for (Scan scan : allScans) {
+      if (scan.getMSLevel() <= 1) {
+        continue;
+      }
+      scanRts[fragmentScans.size()] = scan.getRetentionTime();
+      fragmentScans.add(scan);
+      scanMzs.add(getMs2PrecursorMz(scan));
+
+      if (scan instanceof Frame frame) {
+        for (PasefMsMsInfo info : frame.getImsMsMsInfos()) {
+          infos.add(info);
+          infoRts.add(frame.getRetentionTime());
+          infoMzs.add(info.getIsolationMz());
+        }
+      }
+    }
+
+    scans = fragmentScans.toArray(Scan[]::new);
+    rts = Arrays.copyOf(scanRts, scans.length);
+    scansByMz = sortByMz(scanMzs.elements(), scanMzs.size());
+    sortedScanMzs = sortedValues(scanMzs.elements(), scansByMz);
+
+    pasefInfos = infos.toArray(PasefMsMsInfo[]::new);
+    pasefRts = new float[infoRts.size()];
+    for (int i = 0; i < pasefRts.length; i++) {
+      pasefRts[i] = (float) infoRts.getDouble(i);
+    }
+    pasefByMz = sortByMz(infoMzs.elements(), infoMzs.size());
+    sortedPasefMzs = sortedValues(infoMzs.elements(), pasefByMz);
+  }
+
+  /**
+   * The index of a raw data file is built on first access and rebuilt if the number of scans
+   * changed. The index is stored in the {@link RawDataFileImpl} so that it is released together
+   * with the file. Other implementations get a new index on every call.
+   *
+   * @param file the raw data file
+   * @return the shared fragment scan index of this file
+   */
+  @NotNull
+  public static FragmentScanIndex of(@NotNull RawDataFile file) {
+    if (!(file instanceof RawDataFileImpl impl)) {
+      return new FragmentScanIndex(file.getScans());
+    }
+    FragmentScanIndex index = impl.getFragmentScanIndex();
+    if (index != null && index.numScans == file.getNumOfScans()) {
+      return index;
+    }
+
+    // concurrent first calls may build the index twice, both results are equal
+    index = new FragmentScanIndex(file.getScans());
+    impl.setFragmentScanIndex(index);
+    return index;
+  }
+
+  /**
+   * Releases the index of a file, e.g., when it is removed from the project
+   */
+  public static void remove(@NotNull RawDataFile file) {
+    if (file instanceof RawDataFileImpl impl) {
+      impl.setFragmentScanIndex(null);
+    }
+  }
+
+  /**
+   * The precursor m/z of the MS2 level. For MSn scans, this is the m/z of the first precursor.
+   *
+   * @return the MS2 precursor m/z or 0 if the scan has no precursor
+   */
+  public static double getMs2PrecursorMz(@NotNull Scan scan) {
+    if (scan.getMsMsInfo() instanceof MSnInfoImpl msn) {
+      return msn.getMS2PrecursorMz();
+    } else if (scan.getMsMsInfo() instanceof DDAMsMsInfo info) {
+      return info.getIsolationMz();
+    }
+    return Objects.requireNonNullElse(scan.getPrecursorMz(), 0d);
+  }
+
+  /**
+   * @return all fragment scans in retention time order
+   */
+  @NotNull
+  public List<Scan> getFragmentScans() {
+    return Arrays.asList(scans);
+  }
+
+  /**
+   * @param rtRange retention time range
+   * @return all fragment scans in the retention time range, in retention time order
+   */
+  @NotNull
+  public List<Scan> getFragmentScans(@NotNull Range<Float> rtRange) {
+    return ScanUtils.getScansInRtRange(Arrays.asList(scans), rtRange);
+  }
+
+  /**
+   * @param mzRange MS2 precursor m/z range, see {@link #getMs2PrecursorMz(Scan)}
+   * @param rtRange retention time range or null for all retention times
+   * @param msLevel MS level of the fragment scans or 0 for all MS levels > 1
+   * @return the matching fragment scans in retention time order
+   */
+  @NotNull
+  public List<Scan> getFragmentScans(@NotNull Range<Double> mzRange,
+      @Nullable Range<Float> rtRange, int msLevel) {
+    final int[] matches = findMatches(mzRange, rtRange, scansByMz, sortedScanMzs, rts);
+    final List<Scan> result = new ArrayList<>(matches.length);
+    for (int i : matches) {
+      if (msLevel == 0 || scans[i].getMSLevel() == msLevel) {
+        result.add(scans[i]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param mzRange isolation m/z range
+   * @param rtRange retention time range of the MS/MS frames or null for all retention times
+   * @return the matching PASEF precursors in frame order
+   */
+  @NotNull
+  public List<PasefMsMsInfo> getPasefMsMsInfos(@NotNull Range<Double> mzRange,
+      @Nullable Range<Float> rtRange) {
+    final int[] matches = findMatches(mzRange, rtRange, pasefByMz, sortedPasefMzs, pasefRts);
+    final List<PasefMsMsInfo> result = new ArrayList<>(matches.length);
+    for (int i : matches) {
+      result.add(pasefInfos[i]);
+    }
+    return result;
+  }
+
+  public int getNumberOfFragmentScans() {
+    return scans.length;
+  }
+
+  /**
+   * @return the positions of all entries in the m/z and rt range, in ascending order
+   */
+  private static int[] findMatches(@NotNull Range<Double> mzRange, @Nullable Range<Float> rtRange,
+      int[] byMz, double[] sortedMzs, float[] rts) {
+    final IntArrayList matches = new IntArrayList();
+    int i = mzRange.hasLowerBound() ? BinarySearch.lowerBound(sortedMzs, mzRange.lowerEndpoint())
+        : 0;
+    for (; i < sortedMzs.length; i++) {
+      final double mz = sortedMzs[i];
+      if (mzRange.hasUpperBound() && mz > mzRange.upperEndpoint()) {
+        break;
+      }
+      final int position = byMz[i];
+      if (mzRange.contains(mz) && (rtRange == null || rtRange.contains(rts[position]))) {
+        matches.add(position);
+      }
+    }
+    final int[] result = matches.toIntArray();
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * @return positions of all values > 0 sorted by value
+   */
+  private static int[] sortByMz(double[] mzs, int size) {
+    final IntArrayList positions = new IntArrayList(size);
+    for (int i = 0; i < size; i++) {
+      if (mzs[i] > 0) {
+        positions.add(i);
+      }
+    }
+    final int[] sorted = positions.toIntArray();
+    IntArrays.quickSort(sorted, (a, b) -> Double.compare(mzs[a], mzs[b]));
+    return sorted;
+  }
+
+  private static double[] sortedValues(double[] values, int[] order) {
+    final double[] sorted = new double[order.length];
+    for (int i = 0; i < order.length; i++) {
+      sorted[i] = values[order[i]];
+    }
+    return sorted;
+  }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans;
+
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Maximum intensities of raw data on a regular retention time x m/z grid with a max-pooling
+ * pyramid: level k pools 2^k x 2^k cells of the base grid. Any region can be sampled at any
+ * resolution from the coarsest level that still resolves it, so the cost of sampling only depends
+ * on the output size. Instances are immutable and are built by {@link IntensityGridBuilder}.
+ */
+public class IntensityGrid {
+
+  /**
+   * Pooling stops when both dimensions of a level are at most this size.
+   */
+  private static final int MIN_LEVEL_SIZE = 8;
+
+  private final Range<Float> rtRange;
+  private final Range<Double> mzRange;
+  private final boolean centroidMode;
+  private final boolean interpolated;
+  /**
+   * levels[k][rt][mz]
+   */
+  private final float[][][] levels;
+  private final float maxIntensity;
+
+  /**
+   * @param base         intensities[rt][mz], becomes level 0
+   * @param centroidMode true if profile spectra were not interpolated
+   * @param interpolated true if at least one profile spectrum was interpolated
+   */
+  IntensityGrid(@NotNull Range<Float> rtRange, @NotNull Range<Double> mzRange,
+      @NotNull float[][] base, boolean centroidMode, boolean interpolated) {
+    this.rtRange = rtRange;
+    this.mzRange = mzRange;
+    this.centroidMode = centroidMode;
+    this.interpolated = interpolated;
+
+    final List<float[][]> pyramid = new ArrayList<>();
+    pyramid.add(base);
+    float[][] level = base;
+    while (level.length > MIN_LEVEL_SIZE || level[0].length > MIN_LEVEL_SIZE) {
+      level = pool(level);
+      pyramid.add(level);
+    }
+    levels = pyramid.toArray(float[][][]::new);
+
+    float max = 0f;
+    for (float[] row : levels[levels.length - 1]) {
+      for (float value : row) {
+        max = Math.max(max, value);
+      }
+    }
+    maxIntensity = max;
+  }
+
+  public Range<Float> getRtRange() {
+    return rtRange;
+  }
+
+  public Range<Double> getMzRange() {
+    return mzRange;
+  }
+
+  public int getRtBins() {
+    return levels[0].length;
+  }
+
+  public int getMzBins() {
+    return levels[0][0].length;
+  }
+
+  public boolean isCentroidMode() {
+    return centroidMode;
+  }
+
+  /**
+   * Grids without interpolated spectra, e.g., of centroided data, are the same in both modes.
+   *
+   * @return true if this grid shows the data as it is shown in the given mode
+   */
+  public boolean isValidFor(boolean centroidMode) {
+    return this.centroidMode == centroidMode || !interpolated;
+  }
+
+  public float getMaxIntensity() {
+    return maxIntensity;
+  }
+
+  /**
+   * @return approximate memory of all levels in bytes
+   */
+  public long getMemorySize() {
+    long size = 0;
+    for (float[][] level : levels) {
+      size += (long) level.length * (level[0].length * 4L + 16L);
+    }
+    return size;
+  }
+
+  /**
+   * @return true if the grid contains the whole region
+   */
+  public boolean covers(@NotNull Range<Float> rt, @NotNull Range<Double> mz) {
+    return rtRange.encloses(rt) && mzRange.encloses(mz);
+  }
+
+  /**
+   * @return true if the grid contains the region and its cells are not larger than the cells of
+   * the requested resolution
+   */
+  public boolean resolves(@NotNull Range<Float> rt, @NotNull Range<Double> mz, int rtBins,
+      int mzBins) {
+    return covers(rt, mz) && getRtCellSize() <= span(rt) / rtBins * (1 + 1e-6)
+        && getMzCellSize() <= span(mz) / mzBins * (1 + 1e-6);
+  }
+
+  /**
+   * Samples the maximum intensity of a region. Cells outside of the grid are zero.
+   *
+   * @return intensities[rt][mz]
+   */
+  public float[][] sample(@NotNull Range<Float> rt, @NotNull Range<Double> mz, int rtBins,
+      int mzBins) {
+    final double rtStep = span(rt) / rtBins;
+    final double mzStep = span(mz) / mzBins;
+
+    // the coarsest level with cells not larger than the output cells
+    final double ratio = Math.min(rtStep / getRtCellSize(), mzStep / getMzCellSize());
+    final int k = ratio >= 2d ? Math.min(levels.length - 1,
+        (int) Math.floor(Math.log(ratio) / Math.log(2d))) : 0;
+    final float[][] level = levels[k];
+    final double levelRtCell = getRtCellSize() * (1 << k);
+    final double levelMzCell = getMzCellSize() * (1 << k);
+
+    final float[][] result = new float[rtBins][mzBins];
+    final int[] mzStart = new int[mzBins];
+    final int[] mzEnd = new int[mzBins];
+    for (int j = 0; j < mzBins; j++) {
+      final double start = mz.lowerEndpoint() + j * mzStep - mzRange.lowerEndpoint();
+      mzStart[j] = Math.max(0, (int) Math.floor(start / levelMzCell));
+      mzEnd[j] = Math.min(level[0].length, (int) Math.ceil((start + mzStep) / levelMzCell));
+      // a cell smaller than the level cell still reads the cell it falls into
+      if (mzEnd[j] <= mzStart[j] && mzStart[j] < level[0].length && start >= 0) {
+        mzEnd[j] = mzStart[j] + 1;
+      }
+    }
+
+    IntStream.range(0, rtBins).parallel().forEach(i -> {
+      final double start = rt.lowerEndpoint() + i * rtStep - rtRange.lowerEndpoint();
+      final int rtStart = Math.max(0, (int) Math.floor(start / levelRtCell));
+      int rtEnd = Math.min(level.length, (int) Math.ceil((start + rtStep) / levelRtCell));
+      if (rtEnd <= rtStart && rtStart < level.length && start >= 0) {
+        rtEnd = rtStart + 1;
+      }
+      final float[] row = result[i];
+      for (int r = rtStart; r < rtEnd; r++) {
+        final float[] levelRow = level[r];
+        for (int j = 0; j < mzBins; j++) {
+          for (int m = mzStart[j]; m < mzEnd[j]; m++) {
+            if (levelRow[m] > row[j]) {
+              row[j] = levelRow[m];
+            }
+          }
+        }
+      }
+    });
+    return result;
+  }
+
+  private double getRtCellSize() {
+    return span(rtRange) / getRtBins();
+  }
+
+  private double getMzCellSize() {
+    return span(mzRange) / getMzBins();
+  }
+
+  private static double span(Range<? extends Number> range) {
+    return range.upperEndpoint().doubleValue() - range.lowerEndpoint().doubleValue();
+  }
+
+  /**
+   * Max-pools 2 x 2 cells, odd last rows or columns are pooled alone.
+   */
+  private static float[][] pool(float[][] level) {
+    final int rows = (level.length + 1) / 2;
+    final int cols = (level[0].length + 1) / 2;
+    final float[][] pooled = new float[rows][cols];
+    IntStream.range(0, rows).parallel().forEach(i -> {
+      final float[] a = level[2 * i];
+      final float[] b = 2 * i + 1 < level.length ? level[2 * i + 1] : a;
+      for (int j = 0; j < cols; j++) {
+        final int j2 = Math.min(2 * j + 1, a.length - 1);
+        pooled[i][j] = Math.max(Math.max(a[2 * j], a[j2]), Math.max(b[2 * j], b[j2]));
+      }
+    });
+    return pooled;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.util.scans.ScanUtils.BinningType;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Builds an {@link IntensityGrid} from scans in passes of increasing density: the first pass adds
+ * every 16th scan, each following pass halves the stride. A grid can be taken after every pass, so
+ * a coarse preview of the whole retention time range is available after a fraction of the scans
+ * was read. Missing retention time rows are interpolated linearly. Scans of one pass are binned in
+ * parallel.
+ */
+public class IntensityGridBuilder {
+
+  private static final int FIRST_STRIDE = 16;
+
+  private final Scan[] scans;
+  private final Range<Float> rtRange;
+  private final Range<Double> mzRange;
+  private final int mzBins;
+  private final boolean centroidMode;
+  private final int[] scanBins;
+  private final float[][] intensities;
+  private final boolean[] rowSet;
+  private int stride = FIRST_STRIDE * 2;
+  private final AtomicInteger processedScans = new AtomicInteger();
+  private volatile boolean canceled = false;
+  private volatile boolean interpolated = false;
+
+  /**
+   * @param scans        scans sorted by retention time
+   * @param centroidMode true to never interpolate between data points, otherwise profile spectra
+   *                     are interpolated
+   */
+  public IntensityGridBuilder(@NotNull Scan[] scans, @NotNull Range<Float> rtRange,
+      @NotNull Range<Double> mzRange, int rtBins, int mzBins, boolean centroidMode) {
+    this.scans = scans;
+    this.rtRange = rtRange;
+    this.mzRange = mzRange;
+    this.mzBins = mzBins;
+    this.centroidMode = centroidMode;
+    intensities = new float[rtBins][mzBins];
+    rowSet = new boolean[rtBins];
+
+    final double rtStep = (rtRange.upperEndpoint() - rtRange.lowerEndpoint()) / rtBins;
+    scanBins = new int[scans.length];
+    for (int i = 0; i < scans.length; i++) {
+      final double rt = scans[i].getRetentionTime();
+      int bin = rtStep > 0 ? (int) ((rt - rtRange.lowerEndpoint()) / rtStep) : 0;
+      // last scan falls into last bin
+      scanBins[i] = Math.max(0, Math.min(rtBins - 1, bin));
+    }
+  }
+
+  /**
+   * Adds all scans in passes and returns the final grid.
+   *
+   * @return the grid or null if canceled
+   */
+  public IntensityGrid build() {
+    while (addNextPass()) {
+      if (canceled) {
+        return null;
+      }
+    }
+    return canceled ? null : toGrid();
+  }
+
+  /**
+   * Bins the scans of the next pass.
+   *
+   * @return false if all scans were already added
+   */
+  public boolean addNextPass() {
+    if (stride == 1) {
+      return false;
+    }
+    stride /= 2;
+    final int current = stride;
+    final boolean first = stride == FIRST_STRIDE;
+    final int[] passScans = IntStream.range(0, scans.length)
+        .filter(i -> i % current == 0 && (first || i % (2 * current) != 0)).toArray();
+
+    // scans of one retention time bin are binned by the same thread
+    final int[] groupStarts = IntStream.range(0, passScans.length)
+        .filter(g -> g == 0 || scanBins[passScans[g]] != scanBins[passScans[g - 1]]).toArray();
+    IntStream.range(0, groupStarts.length).parallel().forEach(g -> {
+      final int end = g + 1 < groupStarts.length ? groupStarts[g + 1] : passScans.length;
+      for (int s = groupStarts[g]; s < end && !canceled; s++) {
+        addScan(passScans[s]);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * @return the grid of all scans added so far
+   */
+  public IntensityGrid toGrid() {
+    final int rtBins = intensities.length;
+    final float[][] base = new float[rtBins][];
+    for (int i = 0; i < rtBins; i++) {
+      base[i] = intensities[i].clone();
+    }
+
+    // interpolate missing rows between set rows
+    int previous = -1;
+    for (int i = 0; i < rtBins; i++) {
+      if (!rowSet[i]) {
+        continue;
+      }
+      if (previous >= 0 && i - previous > 1) {
+        for (int r = previous + 1; r < i; r++) {
+          final float weight = (float) (r - previous) / (i - previous);
+          for (int j = 0; j < mzBins; j++) {
+            base[r][j] = base[previous][j] + weight * (base[i][j] - base[previous][j]);
+          }
+        }
+      }
+      previous = i;
+    }
+    return new IntensityGrid(rtRange, mzRange, base, centroidMode, interpolated);
+  }
+
+  public int getProcessedScans() {
+    return processedScans.get();
+  }
+
+  public int getTotalScans() {
+    return scans.length;
+  }
+
+  public void cancel() {
+    canceled = true;
+  }
+
+  private void addScan(int index) {
+    final Scan scan = scans[index];
+    final double[] mzs = new double[scan.getNumberOfDataPoints()];
+    final double[] values = new double[scan.getNumberOfDataPoints()];
+    scan.getMzValues(mzs);
+    scan.getIntensityValues(values);
+    final boolean interpolate =
+        !centroidMode && scan.getSpectrumType() != MassSpectrumType.CENTROIDED;
+    final double[] binned = ScanUtils.binValues(mzs, values, mzRange, mzBins, interpolate,
+        BinningType.MAX);
+    if (interpolate && mzs.length > 0) {
+      interpolated = true;
+    }
+
+    final float[] row = intensities[scanBins[index]];
+    for (int j = 0; j < mzBins; j++) {
+      if (binned[j] > row[j]) {
+        row[j] = (float) binned[j];
+      }
+    }
+    rowSet[scanBins[index]] = true;
+    processedScans.incrementAndGet();
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded least recently used cache of {@link IntensityGrid}s, shared by the 2D and 3D raw data
+ * visualizers. Grids are stored per data file and scan selection, either covering the whole file
+ * or a zoomed region.
+ */
+public class IntensityGridCache {
+
+  private static final long MAX_MEMORY = Math.min(Runtime.getRuntime().maxMemory() / 16,
+      512L << 20);
+
+  private static final LinkedHashMap<GridKey, IntensityGrid> grids = new LinkedHashMap<>(16,
+      0.75f, true);
+  private static long memory = 0L;
+
+  private IntensityGridCache() {
+  }
+
+  public static synchronized void put(@NotNull RawDataFile file, @NotNull Scan[] scans,
+      @NotNull IntensityGrid grid) {
+    final IntensityGrid old = grids.put(new GridKey(file, scans, grid), grid);
+    if (old != null) {
+      memory -= old.getMemorySize();
+    }
+    memory += grid.getMemorySize();
+
+    // never evict the new grid
+    final Iterator<Entry<GridKey, IntensityGrid>> iterator = grids.entrySet().iterator();
+    while (memory > MAX_MEMORY && grids.size() > 1) {
+      final IntensityGrid evicted = iterator.next().getValue();
+      memory -= evicted.getMemorySize();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * @return the smallest cached grid that resolves the region at the given resolution or null
+   */
+  @Nullable
+  public static synchronized IntensityGrid findResolving(@NotNull RawDataFile file,
+      @NotNull Scan[] scans, boolean centroidMode, @NotNull Range<Float> rt,
+      @NotNull Range<Double> mz, int rtBins, int mzBins) {
+    final List<Scan> scanList = List.of(scans);
+    GridKey best = null;
+    long bestMemory = Long.MAX_VALUE;
+    for (var entry : grids.entrySet()) {
+      final GridKey key = entry.getKey();
+      final IntensityGrid grid = entry.getValue();
+      if (key.matches(file, scanList) && grid.isValidFor(centroidMode)
+          && grid.resolves(rt, mz, rtBins, mzBins) && grid.getMemorySize() < bestMemory) {
+        best = key;
+        bestMemory = grid.getMemorySize();
+      }
+    }
+    // get to update the access order
+    return best == null ? null : grids.get(best);
+  }
+
+  /**
+   * @return the cached grid with the finest cells that covers the region in any mode or null
+   */
+  @Nullable
+  public static synchronized IntensityGrid findCovering(@NotNull RawDataFile file,
+      @NotNull Scan[] scans, @NotNull Range<Float> rt, @NotNull Range<Double> mz) {
+    final List<Scan> scanList = List.of(scans);
+    GridKey best = null;
+    double bestCells = 0d;
+    for (var entry : grids.entrySet()) {
+      final GridKey key = entry.getKey();
+      final IntensityGrid grid = entry.getValue();
+      if (!key.matches(file, scanList) || !grid.covers(rt, mz)) {
+        continue;
+      }
+      // number of cells within the region
+      final double cells = grid.getRtBins() * span(rt) / span(grid.getRtRange())
+          * grid.getMzBins() * span(mz) / span(grid.getMzRange());
+      if (best == null || cells > bestCells) {
+        best = key;
+        bestCells = cells;
+      }
+    }
+    return best == null ? null : grids.get(best);
+  }
+
+  /**
+   * Removes all grids of a data file
+   */
+  public static synchronized void remove(@NotNull RawDataFile file) {
+    final Iterator<Entry<GridKey, IntensityGrid>> iterator = grids.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Entry<GridKey, IntensityGrid> entry = iterator.next();
+      if (entry.getKey().file() == file) {
+        memory -= entry.getValue().getMemorySize();
+        iterator.remove();
+      }
+    }
+  }
+
+  private static double span(Range<? extends Number> range) {
+    return range.upperEndpoint().doubleValue() - range.lowerEndpoint().doubleValue();
+  }
+
+  private record GridKey(RawDataFile file, List<Scan> scans, boolean centroidMode,
+                         Range<Float> rtRange, Range<Double> mzRange, int rtBins, int mzBins) {
+
+    GridKey(RawDataFile file, Scan[] scans, IntensityGrid grid) {
+      this(file, List.of(scans), grid.isCentroidMode(), grid.getRtRange(), grid.getMzRange(),
+          grid.getRtBins(), grid.getMzBins());
+    }
+
+    boolean matches(RawDataFile file, List<Scan> scans) {
+      return this.file == file && this.scans.equals(scans);
+    }
+  }
+}
@@ -61,6 +61,7 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceRangeMap
 import io.github.mzmine.util.DataPointSorter;
 import io.github.mzmine.util.SortingDirection;
 import io.github.mzmine.util.SortingProperty;
+import io.github.mzmine.util.collections.BinarySearch;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import io.github.mzmine.util.scans.sorting.ScanSortMode;
 import io.github.mzmine.util.scans.sorting.ScanSorter;
@@ -232,11 +233,9 @@ public class ScanUtils {
     double baseMz = 0d;
     double baseIntensity = 0d;
 
-    for (int i = 0; i < scan.getNumberOfDataPoints(); i++) {
+    for (int i = findFirstMzIndex(scan, lower); i < scan.getNumberOfDataPoints(); i++) {
       double mz = scan.getMzValue(i);
-      if (mz < lower) {
-        continue;
-      } else if (mz > upper) {
+      if (mz > upper) {
         break;
       }
 
@@ -289,12 +288,37 @@ public class ScanUtils {
   public static double calculateTIC(Scan scan, Range<Double> mzRange) {
 
     double tic = 0.0;
-    for (final DataPoint dataPoint : selectDataPointsByMass(extractDataPoints(scan), mzRange)) {
-      tic += dataPoint.getIntensity();
+    for (int i = findFirstMzIndex(scan, mzRange.lowerEndpoint());
+        i < scan.getNumberOfDataPoints(); i++) {
+      final double mz = scan.getMzValue(i);
+      if (mz > mzRange.upperEndpoint()) {
+        break;
+      }
+      if (mzRange.contains(mz)) {
+        tic += scan.getIntensityValue(i);
+      }
     }
     return tic;
   }
 
+  /**
+   * Binary search in the sorted m/z values of a spectrum
+   *
+   * @return the index of the first data point with m/z >= lower, or the number of data points
+   */
+  private static int findFirstMzIndex(MassSpectrum spectrum, double lower) {
+    int index = BinarySearch.binarySearch(lower, false, spectrum.getNumberOfDataPoints(),
+        spectrum::getMzValue);
+    if (index < 0) {
+      return -index - 1;
+    }
+    // duplicate m/z values
+    while (index > 0 && spectrum.getMzValue(index - 1) >= lower) {
+      index--;
+    }
+    return index;
+  }
+
   /**
    * @param numValues The number of values to be scanned.
    * @return the tic summed intensity of all signals within range
@@ -719,8 +743,8 @@ public class ScanUtils {
       @Nullable Range<Float> rtRange, @NotNull Range<Double> mzRange,
       @Nullable Comparator<Scan> sorter) {
 
-    final Stream<Scan> stream = dataFile.getScanNumbers(2).stream()
-        .filter(s -> matchesMS2Scan(s, rtRange, mzRange));
+    final Stream<Scan> stream = FragmentScanIndex.of(dataFile)
+        .getFragmentScans(mzRange, rtRange, 2).stream();
     return sorter == null ? stream : stream.sorted(sorter);
   }
 
@@ -850,6 +874,40 @@ public class ScanUtils {
     return Range.closed(lowMz, highMz);
   }
 
+  /**
+   * Binary search for the scans within a retention time range
+   *
+   * @param rtSortedScans scans sorted by retention time
+   * @param rtRange       retention time range
+   * @return a sub list view of all scans within the range
+   */
+  public static <T extends Scan> @NotNull List<T> getScansInRtRange(
+      @NotNull List<T> rtSortedScans, @NotNull Range<Float> rtRange) {
+    int from = 0;
+    if (rtRange.hasLowerBound()) {
+      int high = rtSortedScans.size();
+      while (from < high) {
+        final int mid = (from + high) >>> 1;
+        if (rtSortedScans.get(mid).getRetentionTime() < rtRange.lowerEndpoint()) {
+          from = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+    }
+    // skip scans on an open lower endpoint
+    while (from < rtSortedScans.size() && rtRange.hasLowerBound()
+        && rtSortedScans.get(from).getRetentionTime() == rtRange.lowerEndpoint()
+        && !rtRange.contains(rtRange.lowerEndpoint())) {
+      from++;
+    }
+    int to = from;
+    while (to < rtSortedScans.size() && rtRange.contains(rtSortedScans.get(to).getRetentionTime())) {
+      to++;
+    }
+    return rtSortedScans.subList(from, to);
+  }
+
   /**
    * Find the RT range of given scans. We assume there is at least one scan.
    */
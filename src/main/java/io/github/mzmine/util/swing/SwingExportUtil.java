@@ -183,7 +183,7 @@ public class SwingExportUtil {
   public static void writeToSVG(JComponent panel, File fileName) throws IOException {
     // print the panel to pdf
     int width = panel.getWidth();
-    int height = panel.getWidth();
+    int height = panel.getHeight();
     logger.info(
         () -> MessageFormat.format("Exporting panel to SVG file (width x height; {0} x {1}): {2}",
             width, height, fileName.getAbsolutePath()));
@@ -33,7 +33,11 @@ import io.github.mzmine.datamodel.features.types.numbers.PrecursorMZType;
 import io.github.mzmine.datamodel.identities.iontype.IonModification;
 import io.github.mzmine.datamodel.identities.iontype.IonType;
 import io.github.mzmine.datamodel.identities.iontype.IonTypeParser;
+import io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking.IonNetworkLibrary;
+import io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking.IonNetworkLibraryIndex;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -135,4 +139,43 @@ public class IINTests {
     Assertions.assertTrue(tol.checkWithinTolerance(mzFromMz, mzFromNeutral));
     Assertions.assertTrue(tol.checkWithinTolerance(mzFromSmiles, mzFromNeutral));
   }
+
+  @Test
+  void testIonNetworkLibraryIndexFindsAllMatches() {
+    final MZTolerance tol = new MZTolerance(0.002, 5);
+    final IonNetworkLibrary library = new IonNetworkLibrary(tol, 2, true, 2,
+        new IonModification[]{IonModification.H, IonModification.NA, IonModification.NH4,
+            IonModification.K}, new IonModification[]{IonModification.H2O});
+    final List<IonType> ions = library.getAllAdducts();
+    final IonNetworkLibraryIndex index = library.getIndex();
+
+    final double neutralMass = 452.2301;
+    for (IonType a : ions) {
+      for (IonType b : ions) {
+        if (a.isUndefinedAdduct() || b.isUndefinedAdduct()) {
+          continue;
+        }
+        final double mz1 = a.getMZ(neutralMass);
+        final double mz2 = b.getMZ(neutralMass);
+        final int[] candidates = index.findCandidatePairs(mz1, mz1, mz2, mz2, tol);
+        // all candidates need to be sorted like a nested loop
+        final int[] sorted = candidates.clone();
+        Arrays.sort(sorted);
+        Assertions.assertArrayEquals(sorted, candidates);
+
+        if (a.equals(b)) {
+          continue;
+        }
+        final int code = ions.indexOf(a) * ions.size() + ions.indexOf(b);
+        // pairs that passed the pair filters need to be found
+        final boolean indexed = Arrays.stream(
+            index.findCandidatePairs(0, 5000, 0, 5000, new MZTolerance(5000, 0))).anyMatch(
+            c -> c == code);
+        if (indexed) {
+          Assertions.assertTrue(Arrays.stream(candidates).anyMatch(c -> c == code),
+              "Missing ion pair %s and %s in index".formatted(a, b));
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataanalysis.clustering;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.mzmine.modules.dataanalysis.clustering.hierarchical.DistanceType;
+import io.github.mzmine.modules.dataanalysis.clustering.hierarchical.LinkType;
+import io.github.mzmine.util.maths.clustering.Dendrogram;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Weka is not part of the build anymore, so the references are derived by hand: merge heights of
+ * five points for every linkage and distance, and well separated clusters that Weka's clusterers
+ * also found regardless of their seeds.
+ */
+class ClusteringEngineTest {
+
+  // A, B, C, D, E
+  private static final double[][] points = {{0, 0}, {1, 0}, {0, 2}, {4, 3}, {5.5, 3}};
+
+  /**
+   * Merge heights of {A, B}, {D, E}, {A, B, C} and all points. Ward heights follow from the
+   * Lance-Williams update of squared distances, e.g., sqrt(2 * 2 / 3) * |C - (A + B) / 2| for the
+   * third merge with euclidean distances.
+   */
+  private static final Map<DistanceType, Map<LinkType, double[]>> heights = Map.of(
+      DistanceType.EUCLIDIAN, Map.of( //
+          LinkType.SINGLE, new double[]{1, 1.5, 2, Math.sqrt(17)}, //
+          LinkType.COMPLETE, new double[]{1, 1.5, Math.sqrt(5), Math.sqrt(39.25)}, //
+          LinkType.AVERAGE, new double[]{1, 1.5, (2 + Math.sqrt(5)) / 2,
+              (5 + Math.sqrt(39.25) + Math.sqrt(18) + Math.sqrt(29.25) + Math.sqrt(17) + Math.sqrt(
+                  31.25)) / 6}, //
+          LinkType.WARD, new double[]{1, 1.5, Math.sqrt(4d / 3d * 4.25), 7.738432227094}),
+      DistanceType.CHEBYSHEV, Map.of( //
+          LinkType.SINGLE, new double[]{1, 1.5, 2, 3}, //
+          LinkType.COMPLETE, new double[]{1, 1.5, 2, 5.5}, //
+          LinkType.AVERAGE, new double[]{1, 1.5, 2, (4 + 5.5 + 3 + 4.5 + 4 + 5.5) / 6}, //
+          LinkType.WARD, new double[]{1, 1.5, Math.sqrt(5), 6.704476116745}),
+      DistanceType.MANHATTAN, Map.of( //
+          LinkType.SINGLE, new double[]{1, 1.5, 2, 5}, //
+          LinkType.COMPLETE, new double[]{1, 1.5, 3, 8.5}, //
+          LinkType.AVERAGE, new double[]{1, 1.5, 2.5, (7 + 8.5 + 6 + 7.5 + 5 + 6.5) / 6}, //
+          LinkType.WARD, new double[]{1, 1.5, Math.sqrt(25d / 3d), 10.354548115039}));
+
+  @Test
+  void testHierarchicalMergeHeights() {
+    for (DistanceType distance : DistanceType.values()) {
+      // Minkowski distances of order 2 are euclidean
+      final DistanceType reference =
+          distance == DistanceType.MINKOWSKI ? DistanceType.EUCLIDIAN : distance;
+      for (LinkType link : heights.get(reference).keySet()) {
+        final Dendrogram dendrogram = new ClusteringEngine().hierarchical(points,
+            distance::distance, link.getLinkage());
+        final String message = distance + " " + link.getName();
+        assertArrayEquals(heights.get(reference).get(link), dendrogram.heights(), 1e-9,
+            message);
+        assertArrayEquals(new int[]{0, 3, 2, 6}, dendrogram.left(), message);
+        assertArrayEquals(new int[]{1, 4, 5, 7}, dendrogram.right(), message);
+        assertArrayEquals(new int[]{0, 0, 0, 1, 1}, dendrogram.cut(2), message);
+      }
+    }
+  }
+
+  /**
+   * Euclidean merge heights of the linkages that are not reducible. The adjusted complete linkage
+   * merges {A, B, C} before {D, E} because sqrt(5) - 1 &lt; 1.5. Neighbor joining merges {D, E}
+   * first, then {A, B} and C, which ties with {D, E} and C in the joining criterion but is closer.
+   */
+  @Test
+  void testNonReducibleMergeHeights() {
+    final double njAD = (5 + Math.sqrt(39.25) - 1.5) / 2;
+    final double njBD = (Math.sqrt(18) + Math.sqrt(29.25) - 1.5) / 2;
+    final double njCD = (Math.sqrt(17) + Math.sqrt(31.25) - 1.5) / 2;
+    final double njABC = (1 + Math.sqrt(5)) / 2;
+    final double njRoot = ((njAD + njBD - 1) / 2 + njCD - njABC) / 2;
+    final Map<LinkType, double[]> expected = Map.of( //
+        LinkType.MEAN, new double[]{1, 1.5, (3 + Math.sqrt(5)) / 3,
+            (9.5 + Math.sqrt(39.25) + Math.sqrt(5) + Math.sqrt(18) + Math.sqrt(29.25) + Math.sqrt(
+                17) + Math.sqrt(31.25)) / 10}, //
+        LinkType.CENTROID, new double[]{1, 1.5, Math.sqrt(4.25), Math.sqrt(3593d / 144d)}, //
+        LinkType.ADJUSTEDCOMPLETE,
+        new double[]{1, Math.sqrt(5) - 1, 1.5, Math.sqrt(39.25) - Math.sqrt(5)}, //
+        LinkType.NEIGHBOT, new double[]{1, 1.5, njABC, njRoot});
+
+    for (var entry : expected.entrySet()) {
+      final LinkType link = entry.getKey();
+      final Dendrogram dendrogram = new ClusteringEngine().hierarchical(points,
+          DistanceType.EUCLIDIAN::distance, link.getLinkage());
+      assertArrayEquals(entry.getValue(), dendrogram.heights(), 1e-9, link.getName());
+      if (link == LinkType.ADJUSTEDCOMPLETE) {
+        assertArrayEquals(new int[]{0, 2, 3, 6}, dendrogram.left(), link.getName());
+        assertArrayEquals(new int[]{1, 5, 4, 7}, dendrogram.right(), link.getName());
+      } else {
+        assertArrayEquals(new int[]{0, 3, 2, 6}, dendrogram.left(), link.getName());
+        assertArrayEquals(new int[]{1, 4, 5, 7}, dendrogram.right(), link.getName());
+      }
+      assertArrayEquals(new int[]{0, 0, 0, 1, 1}, dendrogram.cut(2), link.getName());
+    }
+  }
+
+  @Test
+  void testKMeans() {
+    final double[][] data = blobs(10, 0.3, new Random(1));
+    final int[] expected = blobLabels(10);
+    assertArrayEquals(expected, new ClusteringEngine().kMeans(data, 3, 100));
+    // the seed changes the k-means++ seeding, but not the clusters
+    assertArrayEquals(expected, new ClusteringEngine(7).kMeans(data, 3, 100));
+    assertArrayEquals(expected, new ClusteringEngine().miniBatchKMeans(data, 3, 10, 100));
+    assertArrayEquals(expected, new ClusteringEngine().farthestFirst(data, 3));
+  }
+
+  @Test
+  void testExpectationMaximizationChoosesNumberOfClusters() {
+    final double[][] data = blobs(30, 0.3, new Random(2));
+    final int[] labels = new ClusteringEngine().expectationMaximization(data, 100);
+    assertEquals(3, ClusteringEngine.getNumberOfClusters(labels));
+    assertArrayEquals(blobLabels(30), labels);
+  }
+
+  @Test
+  void testMoreClustersThanRows() {
+    final double[][] data = {{0, 0}, {1, 1}};
+    assertArrayEquals(new int[]{0, 1}, new ClusteringEngine().kMeans(data, 5, 10));
+    assertArrayEquals(new int[]{0, 1}, new ClusteringEngine().farthestFirst(data, 5));
+  }
+
+  @Test
+  void testNormalizeRanges() {
+    final double[][] data = {{1, 5, 2}, {3, 5, 4}, {2, 5, 10}};
+    ClusteringEngine.normalizeRanges(data);
+    assertArrayEquals(new double[]{0, 0, 0}, data[0], 1e-12);
+    assertArrayEquals(new double[]{1, 0, 0.25}, data[1], 1e-12);
+    assertArrayEquals(new double[]{0.5, 0, 1}, data[2], 1e-12);
+  }
+
+  /**
+   * Three gaussian clusters at (0, 0, 0), (10, 0, 0) and (0, 10, 10) in this order.
+   */
+  private static double[][] blobs(int perCluster, double sd, Random random) {
+    final double[][] centers = {{0, 0, 0}, {10, 0, 0}, {0, 10, 10}};
+    final double[][] data = new double[3 * perCluster][3];
+    for (int i = 0; i < data.length; i++) {
+      for (int j = 0; j < 3; j++) {
+        data[i][j] = centers[i / perCluster][j] + random.nextGaussian() * sd;
+      }
+    }
+    return data;
+  }
+
+  private static int[] blobLabels(int perCluster) {
+    final int[] labels = new int[3 * perCluster];
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = i / perCluster;
+    }
+    return labels;
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataanalysis.projectionplots;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The references are matrices with a known decomposition X = U S V^T, built from orthonormal
+ * columns U (centered) and V. Principal component k then has the scores s_k u_k, up to the sign.
+ */
+class ProjectionEngineTest {
+
+  @Test
+  void testPcaOfKnownDecomposition() {
+    final double h = 0.5;
+    // centered orthonormal columns
+    final double[][] u = {{h, h, h}, {-h, h, -h}, {h, -h, -h}, {-h, -h, h}};
+    final double[][] v = {{1d / 3, 2d / 3, 2d / 3}, {2d / 3, 1d / 3, -2d / 3},
+        {2d / 3, -2d / 3, 1d / 3}};
+    final double[] s = {6, 3, 1};
+    final double[][] x = compose(u, s, v);
+
+    final double[][] scores = new ProjectionEngine().pca(x, 3);
+    assertScores(u, s, scores, 3, 1e-10);
+  }
+
+  @Test
+  void testRandomizedPcaOfLowRankMatrix() {
+    final Random random = new Random(1);
+    final double[][] u = randomOrthonormalColumns(40, 4, true, random);
+    final double[][] v = randomOrthonormalColumns(300, 4, false, random);
+    final double[] s = {50, 20, 8, 3};
+    final double[][] x = compose(u, s, v);
+
+    // 2 components and oversampling span the rank, the result is exact
+    assertScores(u, s, new ProjectionEngine().pca(x, 2), 2, 1e-8);
+
+    // noise in all directions
+    for (double[] row : x) {
+      for (int f = 0; f < row.length; f++) {
+        row[f] += random.nextGaussian() * 1e-3;
+      }
+    }
+    ProjectionEngine.scaleToUnityVariance(x);
+    final double[][] scores = new ProjectionEngine().pca(x, 4);
+    // all 39 components of the centered matrix span its rank, the decomposition is exact
+    final double[][] exact = new ProjectionEngine().pca(x, 39);
+    for (int c = 0; c < 4; c++) {
+      final double sign = Math.signum(dot(scores, exact, c));
+      for (int i = 0; i < scores.length; i++) {
+        assertEquals(exact[i][c], sign * scores[i][c], 1e-6 * norm(exact, c));
+      }
+    }
+  }
+
+  @Test
+  void testSammonPreservesPlanarDistances() {
+    // a plane in 10 dimensions can be mapped to 2 dimensions without stress
+    final Random random = new Random(2);
+    final double[][] plane = new double[30][2];
+    for (double[] point : plane) {
+      point[0] = random.nextDouble() * 10;
+      point[1] = random.nextDouble() * 3;
+    }
+    final double[][] x = embed(plane, 10, random);
+
+    final double[][] mapped = new ProjectionEngine().sammon(x, 2, 100);
+    for (int i = 0; i < x.length; i++) {
+      for (int j = i + 1; j < x.length; j++) {
+        assertEquals(distance(x[i], x[j]), distance(mapped[i], mapped[j]), 1e-4);
+      }
+    }
+  }
+
+  @Test
+  void testSammonReducesStressOfPrincipalComponents() {
+    // points on a sphere cap cannot be mapped to 2 dimensions without stress
+    final Random random = new Random(3);
+    final double[][] x = new double[60][3];
+    for (double[] point : x) {
+      final double theta = random.nextDouble() * 1.2;
+      final double phi = random.nextDouble() * 2 * Math.PI;
+      point[0] = Math.sin(theta) * Math.cos(phi);
+      point[1] = Math.sin(theta) * Math.sin(phi);
+      point[2] = Math.cos(theta);
+    }
+    center(x);
+
+    final double[][] pca = new ProjectionEngine().pca(x, 2);
+    final double[][] mapped = new ProjectionEngine().sammon(x, 2, 100);
+    final double pcaStress = sammonStress(x, pca);
+    final double sammonStress = sammonStress(x, mapped);
+    assertTrue(sammonStress < 0.5 * pcaStress,
+        () -> "Sammon stress " + sammonStress + " not below PCA stress " + pcaStress);
+  }
+
+  @Test
+  void testCdaUnrollsArc() {
+    // an arc of 300 degrees is unrolled to a line, which keeps the order of the points
+    final int n = 50;
+    final double[][] arc = new double[n][2];
+    for (int i = 0; i < n; i++) {
+      final double angle = Math.toRadians(300d * i / (n - 1));
+      arc[i][0] = 10 * Math.cos(angle);
+      arc[i][1] = 10 * Math.sin(angle);
+    }
+    final double[][] x = embed(arc, 5, new Random(4));
+
+    final double[][] mapped = new ProjectionEngine().cda(x, 1, 100);
+    final double sign = Math.signum(mapped[n - 1][0] - mapped[0][0]);
+    for (int i = 1; i < n; i++) {
+      assertTrue(sign * (mapped[i][0] - mapped[i - 1][0]) > 0, "order broken at " + i);
+    }
+    // the end points are one arc length apart, much further than their euclidean distance
+    final double arcLength = 10 * Math.toRadians(300);
+    assertEquals(arcLength, Math.abs(mapped[n - 1][0] - mapped[0][0]), 0.1 * arcLength);
+  }
+
+  private static void assertScores(double[][] u, double[] s, double[][] scores, int components,
+      double tolerance) {
+    for (int c = 0; c < components; c++) {
+      double sign = 0d;
+      for (int i = 0; i < u.length; i++) {
+        sign += u[i][c] * scores[i][c];
+      }
+      sign = Math.signum(sign);
+      for (int i = 0; i < u.length; i++) {
+        assertEquals(s[c] * u[i][c], sign * scores[i][c], tolerance * s[0]);
+      }
+    }
+  }
+
+  private static double[][] compose(double[][] u, double[] s, double[][] v) {
+    final double[][] x = new double[u.length][v.length];
+    for (int i = 0; i < u.length; i++) {
+      for (int f = 0; f < v.length; f++) {
+        for (int k = 0; k < s.length; k++) {
+          x[i][f] += u[i][k] * s[k] * v[f][k];
+        }
+      }
+    }
+    return x;
+  }
+
+  /**
+   * Gram-Schmidt on random gaussian columns, optionally orthogonal to the constant vector.
+   */
+  private static double[][] randomOrthonormalColumns(int rows, int cols, boolean centered,
+      Random random) {
+    final double[][] m = new double[rows][cols];
+    for (int c = 0; c < cols; c++) {
+      for (int r = 0; r < rows; r++) {
+        m[r][c] = random.nextGaussian();
+      }
+      if (centered) {
+        double mean = 0d;
+        for (int r = 0; r < rows; r++) {
+          mean += m[r][c] / rows;
+        }
+        for (int r = 0; r < rows; r++) {
+          m[r][c] -= mean;
+        }
+      }
+      for (int prev = 0; prev < c; prev++) {
+        double dot = 0d;
+        for (int r = 0; r < rows; r++) {
+          dot += m[r][c] * m[r][prev];
+        }
+        for (int r = 0; r < rows; r++) {
+          m[r][c] -= dot * m[r][prev];
+        }
+      }
+      final double norm = norm(m, c);
+      for (int r = 0; r < rows; r++) {
+        m[r][c] /= norm;
+      }
+    }
+    return m;
+  }
+
+  /**
+   * Rotates low dimensional points into a higher dimensional space and centers them.
+   */
+  private static double[][] embed(double[][] points, int dimensions, Random random) {
+    final double[][] v = randomOrthonormalColumns(dimensions, points[0].length, false, random);
+    final double[][] x = new double[points.length][dimensions];
+    for (int i = 0; i < points.length; i++) {
+      for (int d = 0; d < dimensions; d++) {
+        for (int k = 0; k < points[i].length; k++) {
+          x[i][d] += points[i][k] * v[d][k];
+        }
+      }
+    }
+    center(x);
+    return x;
+  }
+
+  private static void center(double[][] x) {
+    for (int d = 0; d < x[0].length; d++) {
+      double mean = 0d;
+      for (double[] row : x) {
+        mean += row[d] / x.length;
+      }
+      for (double[] row : x) {
+        row[d] -= mean;
+      }
+    }
+  }
+
+  private static double sammonStress(double[][] original, double[][] mapped) {
+    double stress = 0d;
+    for (int i = 0; i < original.length; i++) {
+      for (int j = i + 1; j < original.length; j++) {
+        final double d = distance(original[i], original[j]);
+        final double diff = d - distance(mapped[i], mapped[j]);
+        stress += diff * diff / d;
+      }
+    }
+    return stress;
+  }
+
+  private static double distance(double[] a, double[] b) {
+    double sum = 0d;
+    for (int i = 0; i < a.length; i++) {
+      sum += (a[i] - b[i]) * (a[i] - b[i]);
+    }
+    return Math.sqrt(sum);
+  }
+
+  private static double dot(double[][] a, double[][] b, int column) {
+    double sum = 0d;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i][column] * b[i][column];
+    }
+    return sum;
+  }
+
+  private static double norm(double[][] m, int column) {
+    return Math.sqrt(dot(m, m, column));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_ransac;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.SplittableRandom;
+import org.apache.commons.math.analysis.polynomials.PolynomialFunction;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the fitter on a synthetic sample whose retention times drift from the reference by a shift
+ * and a slope. Outliers are at least 1 min off the drift and must never be selected as inliers.
+ */
+class RansacRtModelFitterTest {
+
+  private static final double THRESHOLD = 0.2;
+
+  /**
+   * @return the sample retention time of a true pair
+   */
+  private static double drift(double referenceRt) {
+    return 1.02 * referenceRt + 0.3;
+  }
+
+  private static boolean isTruePair(RtPairBuffer pairs, int index) {
+    return Math.abs(pairs.getY(index) - drift(pairs.getX(index))) < 1E-9;
+  }
+
+  private static RtPairBuffer createPairs(int truePairs, int outliers) {
+    final Random random = new Random(42);
+    final RtPairBuffer pairs = new RtPairBuffer();
+    for (int i = 0; i < truePairs; i++) {
+      final double rt = 1 + 29 * random.nextDouble();
+      pairs.add(rt, drift(rt));
+    }
+    for (int i = 0; i < outliers; i++) {
+      final double rt = 1 + 29 * random.nextDouble();
+      final double offset = 1 + 2 * random.nextDouble();
+      pairs.add(rt, drift(rt) + (random.nextBoolean() ? offset : -offset));
+    }
+    return pairs;
+  }
+
+  @Test
+  void testInliersArePairsOnTheDrift() {
+    for (boolean linear : new boolean[]{true, false}) {
+      final RtPairBuffer pairs = createPairs(200, 60);
+      final RansacRtModelFitter fitter = new RansacRtModelFitter(500, 0.5, THRESHOLD, linear);
+      final BitSet inliers = fitter.findInliers(pairs, new SplittableRandom(1));
+
+      // pairs are sorted by x afterwards
+      for (int i = 1; i < pairs.size(); i++) {
+        assertTrue(pairs.getX(i - 1) <= pairs.getX(i));
+      }
+      for (int i = 0; i < pairs.size(); i++) {
+        assertEquals(isTruePair(pairs, i), inliers.get(i), "linear=" + linear + " pair " + i);
+      }
+    }
+  }
+
+  @Test
+  void testCorrectionMapsSampleToReference() {
+    final RtPairBuffer pairs = createPairs(200, 60);
+    final RansacRtModelFitter fitter = new RansacRtModelFitter(500, 0.5, THRESHOLD, false);
+    final BitSet inliers = fitter.findInliers(pairs, new SplittableRandom(1));
+    final PolynomialFunction correction = fitter.fitCorrection(pairs, inliers);
+    assertNotNull(correction);
+
+    for (double rt = 2; rt <= 29; rt += 0.5) {
+      assertEquals(rt, correction.value(drift(rt)), 0.01);
+    }
+  }
+
+  @Test
+  void testNoModelWithoutEnoughPairs() {
+    final RtPairBuffer pairs = createPairs(4, 0);
+    final RansacRtModelFitter fitter = new RansacRtModelFitter(100, 0.5, THRESHOLD, false);
+    final BitSet inliers = fitter.findInliers(pairs, new SplittableRandom(1));
+    assertTrue(inliers.isEmpty());
+    assertNull(fitter.fitCorrection(pairs, inliers));
+    assertNull(fitter.fitCorrection(new RtPairBuffer()));
+  }
+}
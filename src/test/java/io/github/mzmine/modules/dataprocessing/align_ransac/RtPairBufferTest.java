@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_ransac;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RtPairBufferTest {
+
+  @Test
+  void testAddGrowsBeyondCapacity() {
+    final RtPairBuffer pairs = new RtPairBuffer(1);
+    assertTrue(pairs.isEmpty());
+    for (int i = 0; i < 100; i++) {
+      pairs.add(i, 2 * i);
+    }
+    assertEquals(100, pairs.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, pairs.getX(i));
+      assertEquals(2 * i, pairs.getY(i));
+    }
+
+    pairs.clear();
+    assertTrue(pairs.isEmpty());
+    pairs.add(5, 6);
+    assertEquals(1, pairs.size());
+    assertEquals(5, pairs.getX(0));
+    assertEquals(6, pairs.getY(0));
+  }
+
+  @Test
+  void testSortByXKeepsPairsAndOrderOfEqualX() {
+    final RtPairBuffer pairs = new RtPairBuffer();
+    pairs.add(3, 30);
+    pairs.add(1, 10);
+    pairs.add(2, 21);
+    pairs.add(2, 20);
+    pairs.add(2, 22);
+    pairs.add(0, 0);
+    pairs.sortByX();
+
+    final double[] xs = {0, 1, 2, 2, 2, 3};
+    final double[] ys = {0, 10, 21, 20, 22, 30};
+    assertEquals(xs.length, pairs.size());
+    for (int i = 0; i < xs.length; i++) {
+      assertEquals(xs[i], pairs.getX(i));
+      assertEquals(ys[i], pairs.getY(i));
+    }
+  }
+}
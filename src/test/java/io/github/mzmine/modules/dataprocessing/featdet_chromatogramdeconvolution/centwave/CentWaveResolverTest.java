@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PeakIntegrationMethod;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.util.List;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+/**
+ * R is not available in the build. The wavelet coefficients are checked against the closed form
+ * transform of a Gaussian, the noise estimates against hand computed values, and the ridges and
+ * resolved peaks against a separate transcription of the centWave steps.
+ */
+class CentWaveResolverTest {
+
+  private static double gaussian(int i, double center, double sigma) {
+    return Math.exp(-Math.pow((i - center) / sigma, 2) / 2);
+  }
+
+  @Test
+  void testMexicanHat() {
+    final double[] psi = CentWaveResolver.mexicanHat(3);
+    assertEquals(31, psi.length);
+    assertEquals(0.500750362977, psi[15], 1e-12);
+    assertEquals(0.421057375481, psi[14], 1e-12);
+    assertEquals(0.222760858422, psi[13], 1e-12);
+    // zero crossing at the scale
+    assertEquals(0d, psi[12], 1e-15);
+    assertEquals(psi[18], psi[12], 0d);
+  }
+
+  /**
+   * Transform of A * exp(-t^2 / (2 sigma^2)) with the mexican hat of scale a at the center is
+   * norm * A * sqrt(2 pi) * tau * a^2 / (sigma^2 + a^2) with tau^2 = sigma^2 a^2 / (sigma^2 + a^2)
+   */
+  @Test
+  void testTransformOfGaussian() {
+    final double sigma = 4d;
+    final double[] d = new double[101];
+    for (int i = 0; i < d.length; i++) {
+      d[i] = 1000 * gaussian(i, 50, sigma);
+    }
+    for (int a : new int[]{2, 4, 8}) {
+      final double norm = 2d / Math.sqrt(3d) / Math.pow(Math.PI, 0.25) / Math.sqrt(a);
+      final double tau = Math.sqrt(sigma * sigma * a * a / (sigma * sigma + a * a));
+      final double expected =
+          norm * 1000 * Math.sqrt(2 * Math.PI) * tau * a * a / (sigma * sigma + a * a);
+      final double[] coefficients = CentWaveResolver.transform(d,
+          CentWaveResolver.mexicanHat(a));
+      assertEquals(expected, coefficients[50], 1e-4 * expected, "scale " + a);
+      assertEquals(coefficients[49], coefficients[51], 1e-9);
+    }
+  }
+
+  @Test
+  void testRidges() {
+    final double[] d = new double[100];
+    for (int i = 0; i < d.length; i++) {
+      d[i] = 1000 * gaussian(i, 30, 3) + 500 * gaussian(i, 70, 5);
+    }
+    final int[] scales = {2, 4, 6, 8};
+    final double[][] coefficients = new double[scales.length][];
+    for (int s = 0; s < scales.length; s++) {
+      coefficients[s] = CentWaveResolver.transform(d, CentWaveResolver.mexicanHat(scales[s]));
+    }
+    final List<int[]> ridges = CentWaveResolver.getRidges(coefficients, scales);
+    assertEquals(2, ridges.size());
+    assertArrayEquals(new int[]{30, 30, 30, 30}, ridges.get(0));
+    assertArrayEquals(new int[]{70, 70, 70, 70}, ridges.get(1));
+    assertEquals(1905.20434, coefficients[2][30], 1e-5);
+    assertEquals(1171.13173, coefficients[3][70], 1e-5);
+  }
+
+  @Test
+  void testChromNoise() {
+    final double[] y = {0, 0, 5, 1, 2, 3, 4, 100, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18,
+        19, 20, 21, 22, 0};
+    // 23 positive values, the lowest and highest are trimmed
+    assertEquals(12d, CentWaveResolver.estimateChromNoise(y, 0, y.length - 1, 5), 1e-12);
+    // too few positive values, mean of all values
+    assertEquals(353d / 26d, CentWaveResolver.estimateChromNoise(y, 0, y.length - 1, 30), 1e-12);
+  }
+
+  @Test
+  void testLocalNoise() {
+    final double[] y = {10, 12, 9, 11, 10, 0, 50, 200, 400, 200, 50, 10, 11, 9, 10, 12};
+    // the peak is a run of 5 values above 30 and excluded, no values remain inside
+    assertArrayEquals(new double[]{1, 1},
+        CentWaveResolver.getLocalNoiseEstimate(y, y.length, 1, 15, 6, 10, 30, 3), 1e-12);
+    // runs of 6 values are required, the lower statistics are outside of the peak
+    assertArrayEquals(new double[]{9.4, 3.470510689285432},
+        CentWaveResolver.getLocalNoiseEstimate(y, y.length, 1, 15, 6, 10, 30, 6), 1e-12);
+    // the whole trace, no values are trimmed
+    assertEquals(62.75,
+        CentWaveResolver.getLocalNoiseEstimate(y, y.length, 0, 15, 6, 10, 30, 3)[0], 1e-12);
+  }
+
+  /**
+   * Three regions of interest separated by zeros, the first with a single peak, the second with
+   * two overlapping peaks that are resolved as one and the third with noise only
+   */
+  @Test
+  void testResolve() {
+    final double[] x = new double[400];
+    final double[] y = new double[400];
+    for (int i = 0; i < x.length; i++) {
+      x[i] = i * 0.01;
+      if (i < 10 || i > 390 || (i >= 150 && i <= 160) || (i >= 300 && i <= 310)) {
+        continue;
+      }
+      y[i] = 100 + 30 * Math.sin(i * 1.3) * Math.cos(i * 0.7) + 5000 * gaussian(i, 80, 4)
+          + 2000 * gaussian(i, 230, 6) + 800 * gaussian(i, 250, 3);
+    }
+
+    final RawDataFile file = new RawDataFileImpl("testfile", null, null, Color.BLACK);
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, file);
+    final ParameterSet parameters = new CentWaveResolverParameters().cloneParameterSet();
+    parameters.setParameter(CentWaveResolverParameters.SN_THRESHOLD, 10d);
+    parameters.setParameter(CentWaveResolverParameters.PEAK_SCALES, Range.closed(0.06, 0.2));
+    parameters.setParameter(CentWaveResolverParameters.PEAK_DURATION, Range.closed(0d, 1d));
+    parameters.setParameter(CentWaveResolverParameters.MIN_NUMBER_OF_DATAPOINTS, 4);
+
+    parameters.setParameter(CentWaveResolverParameters.INTEGRATION_METHOD,
+        PeakIntegrationMethod.UseSmoothedData);
+    assertEquals(List.of(Range.closed(x[63], x[97]), Range.closed(x[211], x[246])),
+        new CentWaveResolver(parameters, flist).resolve(x, y));
+
+    parameters.setParameter(CentWaveResolverParameters.INTEGRATION_METHOD,
+        PeakIntegrationMethod.UseRawData);
+    assertEquals(List.of(Range.closed(x[65], x[94]), Range.closed(x[213], x[244])),
+        new CentWaveResolver(parameters, flist).resolve(x, y));
+  }
+}
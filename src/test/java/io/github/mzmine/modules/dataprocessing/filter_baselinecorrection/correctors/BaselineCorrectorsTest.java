@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.filter_baselinecorrection.correctors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * R is not available in the build, so the references were computed by a separate transcription of
+ * the R functions with dense linear algebra: ptw::whit2 and ptw::asysm solve (W + lambda * D'D) z =
+ * W y directly, the rubber band is the lowest chord over each point, and the LOESS reference fits
+ * the weighted line of each point with the distance to its q-th nearest neighbour as bandwidth.
+ * Values are compared at every fifth point of the trace.
+ */
+class BaselineCorrectorsTest {
+
+  private static final int STEP = 5;
+
+  /**
+   * Slope, slow oscillation, two peaks and deterministic noise
+   */
+  private static double[] trace() {
+    final double[] y = new double[80];
+    for (int i = 0; i < y.length; i++) {
+      y[i] = 100 + 0.5 * i + 20 * Math.sin(i / 7.0) + 300 * gaussian(i, 25, 3) + 150 * gaussian(i,
+          60, 2) + 5 * Math.sin(i * 1.7) * Math.cos(i * 0.3);
+    }
+    return y;
+  }
+
+  private static double gaussian(int i, double center, double sigma) {
+    return Math.exp(-Math.pow((i - center) / sigma, 2) / 2);
+  }
+
+  private static void assertEveryStep(double[] expected, double[] actual) {
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i * STEP], 1e-5 * Math.abs(expected[i]),
+          "point " + i * STEP);
+    }
+  }
+
+  @Test
+  void testWhittakerReproducesLines() {
+    final double[] y = new double[20];
+    final double[] w = new double[20];
+    for (int i = 0; i < y.length; i++) {
+      y[i] = 3 - 0.25 * i;
+      w[i] = i % 3 == 0 ? 1 : 0.1;
+    }
+    final double[] z = new double[20];
+    WhittakerSmoother.smooth(y, w, 1e4, z);
+    assertArrayEquals(y, z, 1e-9);
+  }
+
+  @Test
+  void testWhittaker() {
+    final double[] y = trace();
+    final double[] w = new double[y.length];
+    Arrays.fill(w, 1d);
+    Arrays.fill(w, 10, 15, 0d);
+    final double[] z = new double[y.length];
+    WhittakerSmoother.smooth(y, w, 50d, z);
+    assertEveryStep(new double[]{104.401257, 112.490032, 110.745362, 128.821593, 229.618567,
+        322.972343, 211.653696, 108.411909, 102.649201, 121.348342, 139.893739, 183.133774,
+        229.239163, 171.0952, 124.346454, 116.528428}, z);
+
+    // in place
+    WhittakerSmoother.smooth(y, w, 50d, y);
+    assertArrayEquals(z, y, 1e-12);
+  }
+
+  @Test
+  void testAsymmetricLeastSquares() {
+    assertEveryStep(new double[]{100.619017, 110.294581, 119.309696, 127.229881, 132.400883,
+            129.249374, 116.360274, 104.383892, 104.576618, 113.928217, 126.397397, 136.603762,
+            140.044588, 134.84298, 124.682607, 114.032252},
+        AsymmetryCorrector.asymmetricLeastSquares(trace(), 100d, 0.01));
+  }
+
+  @Test
+  void testLocalMinimaLoess() {
+    // minima of 8 breaks at 0, 12, 20, 34, 40, 50, 69 and 75
+    assertEveryStep(new double[]{93.1702201, 112.741543, 133.431314, 153.39608, 151.931817,
+            155.423854, 134.409813, 98.5324333, 110.389149, 124.657022, 140.429044, 133.857325,
+            132.896686, 127.584822, 122.36774, 116.932255},
+        LocMinLoessCorrector.localMinimaBaseline(trace(), "loess", 0.5, 8, 0, 0d));
+  }
+
+  @Test
+  void testLocalQuantileApprox() {
+    // 20 % quantiles of 10 breaks at their centers 3.5, 11.5, ..., 75.5
+    assertEveryStep(new double[]{106.122976, 109.017763, 118.667053, 126.26337, 135.961104,
+            172.490196, 162.356765, 105.560812, 108.390374, 119.190815, 133.131507, 161.365615,
+            188.147299, 146.725418, 123.620957, 118.833914},
+        LocMinLoessCorrector.localMinimaBaseline(trace(), "approx", 0d, 10, 0, 0.2));
+    // same breaks from their width
+    assertArrayEquals(LocMinLoessCorrector.localMinimaBaseline(trace(), "approx", 0d, 10, 0, 0.2),
+        LocMinLoessCorrector.localMinimaBaseline(trace(), "approx", 0d, 0, 8, 0.2), 0d);
+  }
+
+  @Test
+  void testLowerHull() {
+    // convex values are their own hull, peaks are cut by the chord of their neighbours
+    final double[] y = {9, 4, 1, 0, 1, 4, 9};
+    assertArrayEquals(y, RubberBandCorrector.lowerHull(y), 0d);
+    assertArrayEquals(new double[]{9, 4, 2.5, 1, 0.5, 0, 6},
+        RubberBandCorrector.lowerHull(new double[]{9, 4, 8, 1, 3, 0, 6}), 1e-12);
+  }
+
+  @Test
+  void testRubberBand() {
+    assertEveryStep(new double[]{100, 100.742737, 101.084897, 101.026481, 100.567488, 99.7079173,
+            98.4477703, 97.8844125, 101.309942, 104.334895, 106.959272, 109.183071, 111.006293,
+            112.428939, 113.451008, 114.0725},
+        RubberBandCorrector.rubberBand(trace(), 0d, false, 0d, false, 50d));
+    assertEveryStep(new double[]{105.057233, 104.496749, 103.716536, 102.881192, 102.169344,
+            101.759621, 101.83065, 102.568223, 104.126119, 106.064429, 108.209808, 110.464755,
+            112.731765, 114.913337, 116.911966, 118.665531},
+        RubberBandCorrector.rubberBand(trace(), 10d, false, 5d, true, 0d));
+    // the lowest intensity as noise
+    assertEveryStep(new double[]{103.527773, 114.950495, 125.603372, 134.738967, 139.839896,
+            136.052933, 126.164895, 116.22732, 115.809435, 125.772922, 140.284781, 152.282277,
+            154.760907, 146.309279, 132.731695, 120.73951},
+        RubberBandCorrector.rubberBand(trace(), 0d, true, 5d, true, 0d));
+  }
+}
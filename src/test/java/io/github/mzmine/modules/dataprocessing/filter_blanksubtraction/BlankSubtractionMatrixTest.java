@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.filter_blanksubtraction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.mzmine.datamodel.AbundanceMeasure;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.modules.dataprocessing.filter_blanksubtraction.FeatureListBlankSubtractionTask.RatioType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the features kept as not background and the background features of each row with the
+ * per row loop that {@link FeatureListBlankSubtractionTask} used before the matrix.
+ */
+class BlankSubtractionMatrixTest {
+
+  private static final int NUM_ROWS = 200;
+  private static final double FOLD_CHANGE = 2d;
+
+  private static List<RawDataFile> blanks;
+  private static List<RawDataFile> samples;
+  private static List<FeatureListRow> rows;
+
+  /**
+   * @param blankDetections     the number of detected blank features
+   * @param notBackground       features of the filtered row
+   * @param background          features of the background row
+   */
+  private record RowResult(int blankDetections, List<Feature> notBackground,
+                           List<Feature> background) {
+
+  }
+
+  @BeforeAll
+  static void init() {
+    final Random random = new Random(42);
+    blanks = new ArrayList<>();
+    samples = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      blanks.add(mock(RawDataFile.class));
+    }
+    for (int i = 0; i < 5; i++) {
+      samples.add(mock(RawDataFile.class));
+    }
+    final List<RawDataFile> all = new ArrayList<>(blanks);
+    all.addAll(samples);
+
+    rows = new ArrayList<>();
+    for (int r = 0; r < NUM_ROWS; r++) {
+      final FeatureListRow row = mock(FeatureListRow.class);
+      for (RawDataFile raw : all) {
+        final double p = random.nextDouble();
+        Feature feature = null;
+        if (p > 0.3) {
+          feature = mock(Feature.class);
+          final FeatureStatus status = p < 0.4 ? FeatureStatus.UNKNOWN
+              : p < 0.8 ? FeatureStatus.DETECTED : FeatureStatus.ESTIMATED;
+          when(feature.getFeatureStatus()).thenReturn(status);
+          when(feature.getHeight()).thenReturn((float) (1 + random.nextInt(1000)));
+          when(feature.getArea()).thenReturn((float) (1 + random.nextInt(10000)));
+          when(feature.getRawDataFile()).thenReturn(raw);
+        }
+        when(row.getFeature(raw)).thenReturn(feature);
+        when(row.hasFeature(raw)).thenReturn(
+            feature != null && feature.getFeatureStatus() != FeatureStatus.UNKNOWN);
+      }
+      rows.add(row);
+    }
+  }
+
+  /**
+   * The previous implementation
+   */
+  private static RowResult filterRow(FeatureListRow row, AbundanceMeasure quantType,
+      RatioType ratioType, boolean checkFoldChange, int minBlankDetections) {
+    final List<Feature> notBackground = new ArrayList<>();
+    final List<Feature> background = new ArrayList<>();
+
+    int foundInNBlanks = 0;
+    for (RawDataFile blankRaw : blanks) {
+      if (row.hasFeature(blankRaw)) {
+        background.add(row.getFeature(blankRaw));
+        ++foundInNBlanks;
+      }
+    }
+
+    if (notBackground.size() < minBlankDetections || checkFoldChange) {
+      double blankAbundance = 1d;
+      if (checkFoldChange) {
+        double intensity = 0d;
+        int numDetections = 0;
+        for (RawDataFile file : blanks) {
+          final Feature f = row.getFeature(file);
+          if (f != null && f.getFeatureStatus() != FeatureStatus.UNKNOWN) {
+            double quant = BlankSubtractionMatrix.getFeatureQuantifier(f, quantType);
+            if (ratioType == RatioType.AVERAGE) {
+              intensity += quant;
+              numDetections++;
+            } else if (ratioType == RatioType.MAXIMUM) {
+              intensity = Math.max(quant, intensity);
+            }
+          }
+        }
+        blankAbundance = ratioType == RatioType.AVERAGE && numDetections != 0 ?
+            intensity / numDetections : intensity;
+      }
+      for (RawDataFile file : samples) {
+        final Feature feature = row.getFeature(file);
+        if (feature != null && feature.getFeatureStatus() != FeatureStatus.UNKNOWN) {
+          double featureAbundance = BlankSubtractionMatrix.getFeatureQuantifier(feature,
+              quantType);
+          if (!checkFoldChange || featureAbundance / blankAbundance >= FOLD_CHANGE) {
+            notBackground.add(feature);
+          } else {
+            background.add(feature);
+          }
+        }
+      }
+    }
+    return new RowResult(foundInNBlanks, notBackground, background);
+  }
+
+  /**
+   * The rows as the task builds them from the matrix
+   */
+  private static List<RowResult> filterRows(AbundanceMeasure quantType, RatioType ratioType,
+      boolean checkFoldChange, int minBlankDetections) {
+    final BlankSubtractionMatrix matrix = new BlankSubtractionMatrix(rows, blanks, samples,
+        quantType);
+    final int[] blankDetections = matrix.getBlankDetections();
+    final double[] blankAbundances = checkFoldChange ? matrix.getBlankAbundances(ratioType) : null;
+    final boolean checkSamples = minBlankDetections > 0 || checkFoldChange;
+    final byte[] sampleClasses =
+        checkSamples ? matrix.classifySamples(blankAbundances, checkFoldChange, FOLD_CHANGE)
+            : null;
+
+    final List<RowResult> results = new ArrayList<>();
+    for (int r = 0; r < rows.size(); r++) {
+      final List<Feature> notBackground = new ArrayList<>();
+      final List<Feature> background = new ArrayList<>();
+      for (int b = 0; b < blanks.size(); b++) {
+        final Feature blankFeature = matrix.getBlankFeature(r, b);
+        if (blankFeature != null) {
+          background.add(blankFeature);
+        }
+      }
+      if (checkSamples) {
+        for (int s = 0; s < samples.size(); s++) {
+          switch (sampleClasses[r * samples.size() + s]) {
+            case BlankSubtractionMatrix.NOT_BACKGROUND ->
+                notBackground.add(matrix.getSampleFeature(r, s));
+            case BlankSubtractionMatrix.BACKGROUND ->
+                background.add(matrix.getSampleFeature(r, s));
+          }
+        }
+      }
+      results.add(new RowResult(blankDetections[r], notBackground, background));
+    }
+    return results;
+  }
+
+  @Test
+  void testSameAsRowLoop() {
+    for (AbundanceMeasure quantType : AbundanceMeasure.values()) {
+      for (RatioType ratioType : RatioType.values()) {
+        for (boolean checkFoldChange : new boolean[]{true, false}) {
+          for (int minBlankDetections : new int[]{0, 1}) {
+            final List<RowResult> expected = new ArrayList<>();
+            for (FeatureListRow row : rows) {
+              expected.add(
+                  filterRow(row, quantType, ratioType, checkFoldChange, minBlankDetections));
+            }
+            assertEquals(expected,
+                filterRows(quantType, ratioType, checkFoldChange, minBlankDetections),
+                quantType + " " + ratioType + " " + checkFoldChange + " " + minBlankDetections);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testTooManyCells() {
+    // 100,000 rows of 60,000 raw data files exceed the maximum array size
+    assertThrows(ArithmeticException.class,
+        () -> new BlankSubtractionMatrix(Collections.nCopies(100_000, null),
+            Collections.nCopies(30_000, null), Collections.nCopies(30_000, null),
+            AbundanceMeasure.Height));
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.filter_duplicatefilter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the surviving rows of all three filter modes with the sequential loops that
+ * {@link DuplicateFilterTask} used before the m/z index. The m/z values lie on a grid with the
+ * step of the tolerance, so that many rows are on the window borders. Rows sorted by m/z are
+ * ordered by m/z plus a retention time fraction and are therefore not strictly ascending in m/z.
+ */
+class RowMzIndexTest {
+
+  private static final double MZ_TOL = 0.005;
+  private static final float RT_TOL = 0.1f;
+
+  /**
+   * Row with the average m/z and retention time and the m/z of its features. Merging changes the
+   * retention time and adds the features of the second row, as consensus rows do.
+   */
+  private static final class Row {
+
+    private final int id;
+    private final double mz;
+    private final double area;
+    private final List<Double> featureMzs = new ArrayList<>();
+    private float rt;
+    private int merged = 1;
+
+    private Row(int id, double mz, float rt, double area) {
+      this.id = id;
+      this.mz = mz;
+      this.rt = rt;
+      this.area = area;
+    }
+
+    private Row copy() {
+      final Row copy = new Row(id, mz, rt, area);
+      copy.featureMzs.addAll(featureMzs);
+      return copy;
+    }
+
+    private void merge(Row other) {
+      rt = (rt * merged + other.rt) / (merged + 1);
+      merged++;
+      featureMzs.addAll(other.featureMzs);
+    }
+
+    private double minFeatureMz() {
+      return featureMzs.stream().mapToDouble(Double::doubleValue).min().orElse(Double.MAX_VALUE);
+    }
+
+    private double maxFeatureMz() {
+      return featureMzs.stream().mapToDouble(Double::doubleValue).max()
+          .orElse(Double.NEGATIVE_INFINITY);
+    }
+
+    @Override
+    public String toString() {
+      return id + ": " + mz + " " + rt + " " + featureMzs;
+    }
+  }
+
+  private static Row[] createRows(long seed) {
+    final Random random = new Random(seed);
+    final Row[] rows = new Row[400];
+    for (int i = 0; i < rows.length; i++) {
+      final double mz = 100 + random.nextInt(40) * MZ_TOL + (random.nextInt(3) - 1) * 1e-7;
+      rows[i] = new Row(i, mz, random.nextInt(60) * 0.05f, random.nextDouble());
+      rows[i].featureMzs.add(mz);
+      rows[i].featureMzs.add(mz + (random.nextInt(3) - 1) * MZ_TOL * 0.6);
+    }
+    return rows;
+  }
+
+  private static boolean withinMz(double mz1, double mz2) {
+    return mz2 >= mz1 - MZ_TOL && mz2 <= mz1 + MZ_TOL;
+  }
+
+  private static boolean withinRt(float rt1, float rt2) {
+    return Math.abs(rt1 - rt2) <= RT_TOL;
+  }
+
+  private static boolean sameFeature(Row a, Row b) {
+    for (double mz1 : a.featureMzs) {
+      for (double mz2 : b.featureMzs) {
+        if (withinMz(mz1, mz2) && withinRt(a.rt, b.rt)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static Row[] sortByMz(Row[] rows) {
+    final Row[] sorted = rows.clone();
+    Arrays.sort(sorted, Comparator.comparingDouble(r -> r.mz + r.rt / 10000000.0));
+    return sorted;
+  }
+
+  private static Row[] copy(Row[] rows) {
+    return Arrays.stream(rows).map(Row::copy).toArray(Row[]::new);
+  }
+
+  private static double[] mzs(Row[] rows) {
+    return Arrays.stream(rows).mapToDouble(r -> r.mz).toArray();
+  }
+
+  private static void assertSameRows(Row[] expected, Row[] actual) {
+    assertEquals(Arrays.stream(expected).map(String::valueOf).toList(),
+        Arrays.stream(actual).map(String::valueOf).toList());
+  }
+
+  @Test
+  void testRowsAreNotAscendingInMz() {
+    final double[] mzs = mzs(sortByMz(createRows(1)));
+    boolean descending = false;
+    for (int i = 1; i < mzs.length; i++) {
+      descending |= mzs[i] < mzs[i - 1];
+    }
+    assertTrue(descending);
+  }
+
+  @Test
+  void testOldAverage() {
+    for (long seed = 0; seed < 20; seed++) {
+      final Row[] rows = createRows(seed);
+      Arrays.sort(rows, Comparator.comparingDouble((Row r) -> r.area).reversed());
+
+      // previous implementation
+      final Row[] expected = copy(rows);
+      for (int first = 0; first < expected.length; first++) {
+        if (expected[first] == null) {
+          continue;
+        }
+        for (int second = first + 1; second < expected.length; second++) {
+          if (expected[second] != null && withinMz(expected[first].mz, expected[second].mz)
+              && withinRt(expected[first].rt, expected[second].rt)) {
+            expected[second] = null;
+          }
+        }
+      }
+
+      final Row[] actual = copy(rows);
+      final RowMzIndex index = new RowMzIndex(mzs(actual));
+      final int[][] duplicates = new int[actual.length][];
+      for (int first = 0; first < actual.length; first++) {
+        final Row row = actual[first];
+        duplicates[first] = index.findInWindow(first, row.mz - MZ_TOL, row.mz + MZ_TOL,
+            second -> withinRt(row.rt, actual[second].rt));
+      }
+      final int removed = RowMzIndex.removeDuplicates(actual, duplicates);
+
+      assertSameRows(expected, actual);
+      assertEquals(Arrays.stream(expected).filter(Objects::isNull).count(), removed);
+    }
+  }
+
+  @Test
+  void testNewAverage() {
+    for (long seed = 0; seed < 20; seed++) {
+      final Row[] rows = sortByMz(createRows(seed));
+
+      // previous implementation
+      final Row[] expected = copy(rows);
+      for (int first = 0; first < expected.length; first++) {
+        final Row firstRow = expected[first];
+        if (firstRow == null) {
+          continue;
+        }
+        final double lowerMz = firstRow.mz - MZ_TOL;
+        final double upperMz = firstRow.mz + MZ_TOL;
+        for (int second = first + 1; second < expected.length; second++) {
+          final Row secondRow = expected[second];
+          if (secondRow != null) {
+            if (secondRow.mz < lowerMz) {
+              continue;
+            }
+            if (secondRow.mz > upperMz) {
+              break;
+            }
+            if (withinRt(firstRow.rt, secondRow.rt)) {
+              firstRow.merge(secondRow);
+              expected[second] = null;
+            }
+          }
+        }
+      }
+
+      final Row[] actual = copy(rows);
+      final double[] lowerMzs = Arrays.stream(actual).mapToDouble(r -> r.mz - MZ_TOL).toArray();
+      final double[] upperMzs = Arrays.stream(actual).mapToDouble(r -> r.mz + MZ_TOL).toArray();
+      final RowMzIndex index = new RowMzIndex(mzs(actual));
+      final int[][] candidates = new int[actual.length][];
+      for (int first = 0; first < actual.length; first++) {
+        final Row row = actual[first];
+        candidates[first] = index.findInWindow(first, lowerMzs[first], upperMzs[first],
+            second -> withinRt(row.rt, actual[second].rt));
+      }
+      index.mergeDuplicates(actual, lowerMzs, upperMzs, candidates,
+          (a, b) -> withinRt(a.rt, b.rt), Row::merge, () -> false);
+
+      assertSameRows(expected, actual);
+    }
+  }
+
+  @Test
+  void testSingleFeature() {
+    for (long seed = 0; seed < 20; seed++) {
+      final Row[] rows = sortByMz(createRows(seed));
+
+      // previous implementation
+      final Row[] expected = copy(rows);
+      for (int first = 0; first < expected.length; first++) {
+        final Row firstRow = expected[first];
+        if (firstRow == null) {
+          continue;
+        }
+        final double lowerMz = firstRow.minFeatureMz() - MZ_TOL;
+        final double upperMz = firstRow.maxFeatureMz() + MZ_TOL;
+        for (int second = first + 1; second < expected.length; second++) {
+          final Row secondRow = expected[second];
+          if (secondRow != null) {
+            if (secondRow.mz < lowerMz) {
+              continue;
+            }
+            if (secondRow.mz > upperMz) {
+              break;
+            }
+            if (sameFeature(firstRow, secondRow)) {
+              firstRow.merge(secondRow);
+              expected[second] = null;
+            }
+          }
+        }
+      }
+
+      final Row[] actual = copy(rows);
+      final double[] lowerMzs = Arrays.stream(actual).mapToDouble(r -> r.minFeatureMz() - MZ_TOL)
+          .toArray();
+      final double[] upperMzs = Arrays.stream(actual).mapToDouble(r -> r.maxFeatureMz() + MZ_TOL)
+          .toArray();
+      final RowMzIndex index = new RowMzIndex(mzs(actual));
+      final int[][] candidates = new int[actual.length][];
+      for (int first = 0; first < actual.length; first++) {
+        final Row row = actual[first];
+        candidates[first] = index.findInWindow(first, lowerMzs[first], upperMzs[first],
+            second -> sameFeature(row, actual[second]));
+      }
+      index.mergeDuplicates(actual, lowerMzs, upperMzs, candidates, RowMzIndexTest::sameFeature,
+          Row::merge, () -> false);
+
+      assertSameRows(expected, actual);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_cliquems.cliquemsimplementation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import io.github.mzmine.modules.dataprocessing.id_cliquems.CliqueMSTask;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import javafx.util.Pair;
+import org.apache.commons.lang3.mutable.MutableDouble;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the cliques found on the sparse similarity lists with the cliques that the previous
+ * implementation found on the dense cosine similarity matrix of the same features. The fixture has
+ * two connected components with two groups of similar features each, linked by weak edges.
+ */
+class NetworkCliqueMSTest {
+
+  private static final int NUM_FEATURES = 12;
+  private static final double TOL = 0.000001;
+
+  /**
+   * The cliques of the dense matrix, recorded with the previous implementation. The node IDs are
+   * the feature indices + 101.
+   */
+  private static final Set<Set<Integer>> DENSE_CLIQUES = Set.of(Set.of(101, 102, 103, 104),
+      Set.of(105, 106, 107), Set.of(108, 109, 110), Set.of(111, 112));
+
+  /**
+   * @return the symmetric cosine similarity matrix of the features
+   */
+  private static double[][] denseSimilarities() {
+    final int[][] groups = {{0, 1, 2, 3}, {4, 5, 6}, {7, 8, 9}, {10, 11}};
+    final double[] groupSimilarities = {0.95, 0.9, 0.97, 0.92};
+    final double[][] weakEdges = {{3, 4, 0.05}, {2, 5, 0.03}, {9, 10, 0.1}};
+
+    final double[][] matrix = new double[NUM_FEATURES][NUM_FEATURES];
+    for (int i = 0; i < NUM_FEATURES; i++) {
+      matrix[i][i] = 1d;
+    }
+    for (int g = 0; g < groups.length; g++) {
+      for (int a : groups[g]) {
+        for (int b : groups[g]) {
+          if (a != b) {
+            matrix[a][b] = groupSimilarities[g];
+          }
+        }
+      }
+    }
+    for (double[] edge : weakEdges) {
+      matrix[(int) edge[0]][(int) edge[1]] = edge[2];
+      matrix[(int) edge[1]][(int) edge[0]] = edge[2];
+    }
+    return matrix;
+  }
+
+  private static List<Integer> nodeIDs() {
+    return IntStream.range(0, NUM_FEATURES).mapToObj(i -> i + 101).toList();
+  }
+
+  /**
+   * Finds the cliques on the sparse lists of the upper triangle of the dense matrix, as
+   * ComputeCliqueModule stores the similarities.
+   */
+  private static NetworkCliqueMS findCliques(double[][] matrix) {
+    final int[][] neighbours = new int[NUM_FEATURES][];
+    final double[][] similarities = new double[NUM_FEATURES][];
+    for (int i = 0; i < NUM_FEATURES; i++) {
+      final int row = i;
+      neighbours[i] = IntStream.range(i + 1, NUM_FEATURES).filter(j -> matrix[row][j] > 0d)
+          .toArray();
+      similarities[i] = IntStream.of(neighbours[i]).mapToDouble(j -> matrix[row][j]).toArray();
+    }
+
+    final NetworkCliqueMS network = new NetworkCliqueMS();
+    network.returnCliques(neighbours, similarities, nodeIDs(), TOL, true, new MutableDouble(0),
+        mock(CliqueMSTask.class));
+    return network;
+  }
+
+  @Test
+  void testEdgesOfUpperTriangle() {
+    final double[][] matrix = denseSimilarities();
+    final List<Integer> ids = nodeIDs();
+    // edges the previous implementation created from the dense matrix
+    final Map<Pair<Integer, Integer>, Double> denseEdges = new HashMap<>();
+    for (int i = 0; i < NUM_FEATURES; i++) {
+      for (int j = i + 1; j < NUM_FEATURES; j++) {
+        if (matrix[i][j] > 0d) {
+          denseEdges.put(new Pair<>(ids.get(i), ids.get(j)), matrix[i][j]);
+        }
+      }
+    }
+
+    assertEquals(denseEdges, findCliques(matrix).getEdges());
+  }
+
+  @Test
+  void testSameCliquesAsDenseMatrix() {
+    // the nodes are visited in random order, the clear cliques of the fixture are found every time
+    for (int run = 0; run < 20; run++) {
+      final Map<Integer, Set<Integer>> cliques = new HashMap<>();
+      for (Pair<Integer, Integer> nodeClique : findCliques(
+          denseSimilarities()).getResultNodeClique()) {
+        cliques.computeIfAbsent(nodeClique.getValue(), k -> new HashSet<>())
+            .add(nodeClique.getKey());
+      }
+
+      assertEquals(NUM_FEATURES, cliques.values().stream().mapToInt(Set::size).sum());
+      assertEquals(DENSE_CLIQUES, new HashSet<>(cliques.values()));
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.export_features_sql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DetectionType;
+import io.github.mzmine.datamodel.features.types.numbers.RTRangeType;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelection;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Exports a small feature list to in-memory SQLite databases with batched inserts. Each export uses
+ * a new named in-memory database with a shared cache, which stays alive while the test keeps a
+ * connection open, so that the records can be read after the task closed its connection.
+ */
+class SQLExportTaskTest {
+
+  private static final int NUM_ROWS = 23;
+  private static final int[] BATCH_SIZES = {1, 2, 7, 1000};
+  private static final String TABLE = "features";
+  private static final String LONG_TABLE = "features_long";
+
+  private static RawDataFile fileA;
+  private static RawDataFile fileB;
+  private static ModularFeatureList flist;
+  private static int numFeatures;
+  private static int database = 0;
+
+  /**
+   * Rows have a feature in file A and every row, except every third, in file B.
+   */
+  @BeforeAll
+  static void createFeatureList() {
+    fileA = new RawDataFileImpl("a.mzML", null, null, Color.BLACK);
+    fileB = new RawDataFileImpl("b.mzML", null, null, Color.BLACK);
+    flist = new ModularFeatureList("flist", null, fileA, fileB);
+    for (int id = 1; id <= NUM_ROWS; id++) {
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, id);
+      row.addFeature(fileA, createFeature(fileA, id, 0));
+      numFeatures++;
+      if (id % 3 != 0) {
+        row.addFeature(fileB, createFeature(fileB, id, 1));
+        numFeatures++;
+      }
+      flist.addRow(row);
+    }
+  }
+
+  private static ModularFeature createFeature(RawDataFile file, int id, int fileIndex) {
+    final ModularFeature feature = new ModularFeature(flist, file, null, null);
+    feature.setMZ(mz(id, fileIndex));
+    feature.setRT(rt(id, fileIndex));
+    feature.setHeight(height(id, fileIndex));
+    feature.setArea(10 * height(id, fileIndex));
+    final float rt = rt(id, fileIndex);
+    feature.set(RTRangeType.class, Range.closed(rt - 0.1f, rt + 0.1f));
+    feature.set(DetectionType.class, status(id));
+    return feature;
+  }
+
+  private static double mz(int id, int fileIndex) {
+    return 100.5 + id * 10.25 + fileIndex * 0.001;
+  }
+
+  private static float rt(int id, int fileIndex) {
+    return 0.5f + id * 0.25f + fileIndex * 0.01f;
+  }
+
+  private static float height(int id, int fileIndex) {
+    return 1000f * id + fileIndex;
+  }
+
+  @Test
+  void testBatchedExport() throws SQLException {
+    for (int batchSize : BATCH_SIZES) {
+      for (boolean longTable : new boolean[]{false, true}) {
+        export(batchSize, longTable);
+      }
+    }
+  }
+
+  private void export(int batchSize, boolean longTable) throws SQLException {
+    final String url = "jdbc:sqlite:file:sqlexport" + (database++) + "?mode=memory&cache=shared";
+    final String message = "batch size " + batchSize + ", long table " + longTable;
+
+    try (Connection connection = DriverManager.getConnection(url)) {
+      try (Statement statement = connection.createStatement()) {
+        statement.executeUpdate("CREATE TABLE " + TABLE
+            + " (id INTEGER, raw_file VARCHAR(255), mz DOUBLE PRECISION, height DOUBLE PRECISION,"
+            + " status VARCHAR(32), note VARCHAR(32))");
+      }
+
+      final SQLExportTask task = new SQLExportTask(createParameters(url, batchSize, longTable),
+          Instant.now());
+      task.run();
+      assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+
+      try (Statement statement = connection.createStatement()) {
+        // one record per feature, because data file elements are exported
+        assertEquals(numFeatures, count(statement, TABLE), message);
+        try (ResultSet result = statement.executeQuery(
+            "SELECT id, raw_file, mz, height, status, note FROM " + TABLE)) {
+          while (result.next()) {
+            final int id = result.getInt(1);
+            final int fileIndex = fileIndex(result.getString(2));
+            assertEquals(mz(id, fileIndex), result.getDouble(3), message);
+            assertEquals(height(id, fileIndex), result.getDouble(4), message);
+            assertEquals(status(id).name(), result.getString(5), message);
+            assertEquals("test", result.getString(6), message);
+          }
+        }
+
+        final boolean longTableExists;
+        try (ResultSet tables = connection.getMetaData()
+            .getTables(null, null, LONG_TABLE, null)) {
+          longTableExists = tables.next();
+        }
+        if (!longTable) {
+          assertFalse(longTableExists, message);
+          return;
+        }
+        assertTrue(longTableExists, message);
+        assertEquals(numFeatures, count(statement, LONG_TABLE), message);
+        try (ResultSet result = statement.executeQuery(
+            "SELECT row_id, raw_data_file, mz, rt, rt_start, rt_end, height, area, status FROM "
+                + LONG_TABLE)) {
+          while (result.next()) {
+            final int id = result.getInt(1);
+            final int fileIndex = fileIndex(result.getString(2));
+            final float rt = rt(id, fileIndex);
+            assertEquals(mz(id, fileIndex), result.getDouble(3), message);
+            assertEquals(rt, result.getDouble(4), message);
+            assertEquals(rt - 0.1f, result.getDouble(5), message);
+            assertEquals(rt + 0.1f, result.getDouble(6), message);
+            assertEquals(height(id, fileIndex), result.getDouble(7), message);
+            assertEquals(10 * height(id, fileIndex), result.getDouble(8), message);
+            assertEquals(status(id).name(), result.getString(9), message);
+          }
+        }
+      }
+    }
+  }
+
+  private static ParameterSet createParameters(String url, int batchSize, boolean longTable) {
+    final SQLColumnSettings columns = new SQLColumnSettings();
+    addColumn(columns, "id", SQLExportDataType.ID, null);
+    addColumn(columns, "raw_file", SQLExportDataType.RAWFILE, null);
+    addColumn(columns, "mz", SQLExportDataType.FEATUREMZ, null);
+    addColumn(columns, "height", SQLExportDataType.FEATUREHEIGHT, null);
+    addColumn(columns, "status", SQLExportDataType.FEATURESTATUS, null);
+    addColumn(columns, "note", SQLExportDataType.CONSTANT, "test");
+
+    final ParameterSet parameters = new SQLExportParameters().cloneParameterSet();
+    parameters.setParameter(SQLExportParameters.featureList, new FeatureListsSelection(flist));
+    parameters.setParameter(SQLExportParameters.connectionString, url);
+    parameters.setParameter(SQLExportParameters.tableName, TABLE);
+    parameters.setParameter(SQLExportParameters.exportColumns, columns);
+    parameters.setParameter(SQLExportParameters.emptyExport, false);
+    parameters.setParameter(SQLExportParameters.batchSize, batchSize);
+    parameters.setParameter(SQLExportParameters.usePostgresCopy, false);
+    parameters.setParameter(SQLExportParameters.longTable, longTable);
+    parameters.getParameter(SQLExportParameters.longTable).getEmbeddedParameter()
+        .setValue(LONG_TABLE);
+    return parameters;
+  }
+
+  private static void addColumn(SQLColumnSettings columns, String name, SQLExportDataType type,
+      String value) {
+    columns.addNewRow();
+    final int row = columns.getRowCount() - 1;
+    columns.setValueAt(name, row, 0);
+    columns.setValueAt(type, row, 1);
+    if (value != null) {
+      columns.setValueAt(value, row, 2);
+    }
+  }
+
+  private static int count(Statement statement, String table) throws SQLException {
+    try (ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+      result.next();
+      return result.getInt(1);
+    }
+  }
+
+  private static int fileIndex(String fileName) {
+    return fileName.equals(fileA.getName()) ? 0 : 1;
+  }
+
+  private static FeatureStatus status(int id) {
+    return id % 2 == 0 ? FeatureStatus.DETECTED : FeatureStatus.ESTIMATED;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_mzml.msdk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.Chromatogram;
+import io.github.msdk.datamodel.ChromatogramType;
+import io.github.msdk.datamodel.FileType;
+import io.github.msdk.datamodel.SimpleRawDataFile;
+import io.github.msdk.io.mzml.data.MzMLCompressionType;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.impl.MZmineToMSDKMsScan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MzMLFileExportMethodTest {
+
+  private static final Pattern OFFSET = Pattern.compile(
+      "<offset idRef=\"([^\"]+)\">(\\d+)</offset>");
+  private static final Pattern INDEX_LIST_OFFSET = Pattern.compile(
+      "<indexListOffset>(\\d+)</indexListOffset>");
+
+  @TempDir
+  File tempDir;
+
+  @Test
+  void testIndexOffsetsPointToElements() throws MSDKException, IOException {
+    final RawDataFile file = new RawDataFileImpl("testfile", null, null, Color.BLACK);
+    final SimpleRawDataFile msdkFile = new SimpleRawDataFile("testfile", Optional.empty(),
+        FileType.MZML);
+    for (int i = 0; i < 70; i++) {
+      // more scans than one encoding chunk, some without data points
+      final int numDataPoints = i % 10 == 0 ? 0 : 5 + i;
+      final double[] mzs = new double[numDataPoints];
+      final double[] intensities = new double[numDataPoints];
+      for (int j = 0; j < numDataPoints; j++) {
+        mzs[j] = 100d + j * 1.5d;
+        intensities[j] = 1000d * (j + 1);
+      }
+      msdkFile.addScan(new MZmineToMSDKMsScan(
+          new SimpleScan(file, i + 1, 1, i * 0.1f, null, mzs, intensities,
+              MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", null)));
+    }
+    msdkFile.addChromatogram(createChromatogram(ChromatogramType.TIC));
+    msdkFile.addChromatogram(createChromatogram(ChromatogramType.BPC));
+
+    final File target = new File(tempDir, "offsets.mzML");
+    new MzMLFileExportMethod(msdkFile, target, MzMLCompressionType.ZLIB,
+        MzMLCompressionType.ZLIB, 4).execute();
+
+    // byte offsets, read as ISO_8859_1 to keep one char per byte
+    final byte[] bytes = Files.readAllBytes(target.toPath());
+    final String content = new String(bytes, StandardCharsets.ISO_8859_1);
+
+    final List<Long> spectrumOffsets = new ArrayList<>();
+    final List<Long> chromatogramOffsets = new ArrayList<>();
+    final Matcher offsets = OFFSET.matcher(content);
+    while (offsets.find()) {
+      final long offset = Long.parseLong(offsets.group(2));
+      if (offsets.group(1).startsWith("scan=")) {
+        spectrumOffsets.add(offset);
+      } else {
+        chromatogramOffsets.add(offset);
+      }
+    }
+    assertEquals(70, spectrumOffsets.size());
+    assertEquals(2, chromatogramOffsets.size());
+
+    for (long offset : spectrumOffsets) {
+      assertStartsWith(content, offset, "<spectrum ");
+    }
+    for (long offset : chromatogramOffsets) {
+      assertStartsWith(content, offset, "<chromatogram ");
+    }
+
+    final Matcher indexListOffset = INDEX_LIST_OFFSET.matcher(content);
+    assertTrue(indexListOffset.find());
+    assertStartsWith(content, Long.parseLong(indexListOffset.group(1)), "<indexList ");
+  }
+
+  private static void assertStartsWith(String content, long offset, String prefix) {
+    assertTrue(content.startsWith(prefix, (int) offset),
+        () -> "Expected " + prefix + " at offset " + offset + " but found " + content.substring(
+            (int) offset, Math.min(content.length(), (int) offset + 20)));
+  }
+
+  private static Chromatogram createChromatogram(ChromatogramType type) {
+    final Chromatogram chromatogram = mock(Chromatogram.class);
+    when(chromatogram.getChromatogramType()).thenReturn(type);
+    when(chromatogram.getNumberOfDataPoints()).thenReturn(3);
+    when(chromatogram.getIsolations()).thenReturn(List.of());
+    when(chromatogram.getRetentionTimes(any())).thenReturn(new float[]{1f, 2f, 3f});
+    when(chromatogram.getIntensityValues()).thenReturn(new float[]{10f, 20f, 15f});
+    return chromatogram;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_mzxml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.File;
+import java.time.Instant;
+import java.util.List;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Imports DOM_b.mzXML with the streaming parser and the parallel peak decoding. The expected values
+ * were read from the file with an independent XML parser.
+ */
+class MzXMLImportTaskTest {
+
+  @Test
+  void testImportScans() {
+    final File mzXml = new File(MzXMLImportTaskTest.class.getClassLoader()
+        .getResource("rawdatafiles/DOM_b.mzXML").getFile());
+    final RawDataFile file = new RawDataFileImpl(mzXml.getName(), null, null, Color.BLACK);
+
+    final MzXMLImportTask task = new MzXMLImportTask(mock(MZmineProject.class), mzXml, file,
+        MzXMLImportModule.class, new MzXMLImportParameters(), Instant.now());
+    task.run();
+    assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+
+    // all scans in file order, the decoding runs in chunks on multiple threads
+    final List<Scan> scans = file.getScans();
+    assertEquals(521, scans.size());
+    int ms1 = 0;
+    int charge1 = 0;
+    int charge2 = 0;
+    for (int i = 0; i < scans.size(); i++) {
+      final Scan scan = scans.get(i);
+      assertEquals(2100 + i, scan.getScanNumber());
+      assertEquals(PolarityType.POSITIVE, scan.getPolarity());
+      if (i > 0) {
+        assertTrue(scan.getRetentionTime() >= scans.get(i - 1).getRetentionTime());
+      }
+      if (scan.getMSLevel() == 1) {
+        ms1++;
+        assertNull(scan.getMsMsInfo());
+      } else {
+        assertEquals(2, scan.getMSLevel());
+        assertNotNull(scan.getPrecursorMz());
+        final Integer charge = scan.getPrecursorCharge();
+        charge1 += charge != null && charge == 1 ? 1 : 0;
+        charge2 += charge != null && charge == 2 ? 1 : 0;
+      }
+    }
+    assertEquals(87, ms1);
+    // the other precursors have no charge attribute
+    assertEquals(331, charge1);
+    assertEquals(2, charge2);
+
+    // MS levels and precursors of the first scans
+    final int[] msLevels = {2, 1, 2, 2, 2, 2, 2, 1};
+    final Double[] precursors = {426.212162243691, null, 363.18014261209, 384.201479210284,
+        246.242697786052, 410.217467251771, 393.190826416016, null};
+    for (int i = 0; i < msLevels.length; i++) {
+      assertEquals(msLevels[i], scans.get(i).getMSLevel());
+      assertEquals(precursors[i], scans.get(i).getPrecursorMz());
+    }
+    assertEquals(434.072f / 60f, scans.get(0).getRetentionTime(), 1E-5f);
+    assertEquals(539.162f / 60f, scans.get(520).getRetentionTime(), 1E-5f);
+
+    // zlib compressed 64 bit peaks of the first MS1 scan
+    final Scan scan = scans.get(1);
+    assertEquals(2039, scan.getNumberOfDataPoints());
+    assertEquals(151.075439453125, scan.getMzValue(0));
+    assertEquals(73735.6875, scan.getIntensityValue(0));
+    assertEquals(152.10693359375, scan.getMzValue(1));
+    assertEquals(51753.9765625, scan.getIntensityValue(1));
+    assertEquals(153.09095764160156, scan.getMzValue(2));
+    assertEquals(127703.2109375, scan.getIntensityValue(2));
+    assertEquals(1433.0494384765625, scan.getMzValue(2038));
+    assertEquals(124375.5234375, scan.getIntensityValue(2038));
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.visualization.chromatogram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the decimation levels against brute-force scans of the buckets and the selected items
+ * against the data of a synthetic chromatogram with narrow peaks on a noisy baseline.
+ */
+class ChromatogramPyramidTest {
+
+  private static final int[] SIZES = {1, 2, 3, 7, 64, 1000, 20_001};
+  private static final int[] PIXELS = {1, 10, 333, 1000};
+
+  /**
+   * @return x values, intensities and the number of values (arrays are longer than the number)
+   */
+  private static double[][] createChromatogram(int numValues, long seed) {
+    final Random random = new Random(seed);
+    final double[] x = new double[numValues + 5];
+    final double[] y = new double[numValues + 5];
+    for (int i = 0; i < numValues; i++) {
+      x[i] = 0.5 + i * 0.01;
+      y[i] = 100 * random.nextDouble();
+    }
+    // narrow gaussian peaks
+    final int peaks = Math.max(1, numValues / 200);
+    for (int p = 0; p < peaks; p++) {
+      final int apex = random.nextInt(numValues);
+      final double height = 1E3 + 1E6 * random.nextDouble();
+      final double sigma = 1 + 10 * random.nextDouble();
+      for (int i = Math.max(0, apex - 50); i < Math.min(numValues, apex + 50); i++) {
+        y[i] += height * Math.exp(-0.5 * Math.pow((i - apex) / sigma, 2));
+      }
+    }
+    // unused trailing values must never be selected
+    Arrays.fill(x, numValues, x.length, 1E9);
+    Arrays.fill(y, numValues, y.length, 1E12);
+    return new double[][]{x, y};
+  }
+
+  @Test
+  void testLevelsMatchBruteForce() {
+    for (int size : SIZES) {
+      final double[][] data = createChromatogram(size, size);
+      final double[] y = data[1];
+      final ChromatogramPyramid pyramid = new ChromatogramPyramid(data[0], y, size);
+
+      for (int level = 1; level <= pyramid.getNumberOfLevels(); level++) {
+        final int bucketSize = 1 << level;
+        final int[] min = pyramid.getMinIndices(level);
+        final int[] max = pyramid.getMaxIndices(level);
+        assertEquals((size + bucketSize - 1) / bucketSize, min.length);
+        assertEquals(min.length, max.length);
+
+        for (int b = 0; b < min.length; b++) {
+          final int from = b * bucketSize;
+          final int to = Math.min(size, from + bucketSize);
+          double minValue = Double.POSITIVE_INFINITY;
+          double maxValue = Double.NEGATIVE_INFINITY;
+          for (int i = from; i < to; i++) {
+            minValue = Math.min(minValue, y[i]);
+            maxValue = Math.max(maxValue, y[i]);
+          }
+          assertTrue(min[b] >= from && min[b] < to);
+          assertTrue(max[b] >= from && max[b] < to);
+          assertEquals(minValue, y[min[b]]);
+          assertEquals(maxValue, y[max[b]]);
+        }
+      }
+      // the highest level combines all data points
+      if (size > 1) {
+        assertEquals(1, pyramid.getMaxIndices(pyramid.getNumberOfLevels()).length);
+      }
+    }
+  }
+
+  @Test
+  void testBoundsAndBordersAreSelected() {
+    for (int size : SIZES) {
+      final double[][] data = createChromatogram(size, size);
+      final double[] x = data[0];
+      final ChromatogramPyramid pyramid = new ChromatogramPyramid(x, data[1], size);
+
+      for (int pixels : PIXELS) {
+        for (double[] range : ranges(x, size)) {
+          final int[] items = pyramid.select(range[0], range[1], pixels);
+          final int start = borderStart(x, size, range[0]);
+          final int end = borderEnd(x, size, range[1]);
+          if (items == null) {
+            assertTrue(end - start + 1 <= 2 * pixels);
+            continue;
+          }
+          for (int i = 1; i < items.length; i++) {
+            assertTrue(items[i - 1] < items[i], "items must be ascending");
+          }
+          assertEquals(0, items[0]);
+          assertEquals(size - 1, items[items.length - 1]);
+          assertTrue(Arrays.binarySearch(items, start) >= 0, "first border item");
+          assertTrue(Arrays.binarySearch(items, end) >= 0, "last border item");
+          // min and max per pixel plus the bounds and borders
+          assertTrue(items.length <= 2 * pixels + 8, "too many items: " + items.length);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testLocalMaximaAreSelected() {
+    for (int size : SIZES) {
+      final double[][] data = createChromatogram(size, 31 * size);
+      final double[] x = data[0];
+      final double[] y = data[1];
+      final ChromatogramPyramid pyramid = new ChromatogramPyramid(x, y, size);
+
+      for (int pixels : PIXELS) {
+        for (double[] range : ranges(x, size)) {
+          final int[] items = pyramid.select(range[0], range[1], pixels);
+          if (items == null) {
+            continue;
+          }
+          final int start = borderStart(x, size, range[0]);
+          final int end = borderEnd(x, size, range[1]);
+          // a bucket is narrower than two pixels, so every local maximum that is the highest
+          // point within two pixels on both sides is the maximum of its bucket
+          final int window = 2 * (end - start + 1) / pixels + 1;
+          double visibleMax = Double.NEGATIVE_INFINITY;
+          double visibleMin = Double.POSITIVE_INFINITY;
+          for (int i = start; i <= end; i++) {
+            visibleMax = Math.max(visibleMax, y[i]);
+            visibleMin = Math.min(visibleMin, y[i]);
+            if (isHighestInWindow(y, size, i, window)) {
+              assertTrue(Arrays.binarySearch(items, i) >= 0,
+                  "local maximum " + i + " of " + size + " at " + pixels + " pixels");
+            }
+          }
+
+          // the envelope of the visible range is kept
+          double selectedMax = Double.NEGATIVE_INFINITY;
+          double selectedMin = Double.POSITIVE_INFINITY;
+          for (int item : items) {
+            if (item >= start && item <= end) {
+              selectedMax = Math.max(selectedMax, y[item]);
+              selectedMin = Math.min(selectedMin, y[item]);
+            }
+          }
+          assertEquals(visibleMax, selectedMax);
+          assertEquals(visibleMin, selectedMin);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testAllItemsAtHighResolution() {
+    final double[][] data = createChromatogram(100, 1);
+    final ChromatogramPyramid pyramid = new ChromatogramPyramid(data[0], data[1], 100);
+    assertNull(pyramid.select(data[0][0], data[0][99], 50));
+    assertNull(pyramid.select(data[0][0], data[0][99], 0));
+    assertNotNull(pyramid.select(data[0][0], data[0][99], 49));
+  }
+
+  /**
+   * @return the whole range, ranges beyond the data, inside the data, between two data points and
+   * at exact data points
+   */
+  private static double[][] ranges(double[] x, int size) {
+    final double first = x[0];
+    final double last = x[size - 1];
+    final double span = last - first;
+    return new double[][]{{first, last}, {first - 1, last + 1},
+        {first + span * 0.1, last - span * 0.3}, {first + span * 0.5 + 0.005, last},
+        {x[size / 3], x[2 * size / 3]}, {first + span * 0.71, first + span * 0.73}};
+  }
+
+  /**
+   * @return the item before the range, as in the removed full scan of the data set
+   */
+  private static int borderStart(double[] x, int size, double lower) {
+    int i = 0;
+    while (i < size && x[i] < lower) {
+      i++;
+    }
+    return Math.max(0, i - 1);
+  }
+
+  /**
+   * @return the item after the range
+   */
+  private static int borderEnd(double[] x, int size, double upper) {
+    int i = 0;
+    while (i < size && x[i] < upper) {
+      i++;
+    }
+    return Math.min(size - 1, i + 1);
+  }
+
+  private static boolean isHighestInWindow(double[] y, int size, int index, int window) {
+    for (int i = Math.max(0, index - window); i <= Math.min(size - 1, index + window); i++) {
+      if (i != index && y[i] >= y[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class BinarySearchTest {
+
+  @Test
+  void testBoundsOfEmptyArray() {
+    assertEquals(0, BinarySearch.lowerBound(new double[0], 1d));
+    assertEquals(0, BinarySearch.upperBound(new double[0], 1d));
+  }
+
+  @Test
+  void testBoundsWithDuplicates() {
+    final double[] values = {1d, 2d, 2d, 2d, 3d};
+    assertEquals(0, BinarySearch.lowerBound(values, 0.5d));
+    assertEquals(1, BinarySearch.lowerBound(values, 2d));
+    assertEquals(4, BinarySearch.upperBound(values, 2d));
+    assertEquals(5, BinarySearch.upperBound(values, 3d));
+    assertEquals(5, BinarySearch.lowerBound(values, 3.5d));
+  }
+
+  @Test
+  void testBoundsSameAsLinearScan() {
+    final Random random = new Random(42);
+    for (int run = 0; run < 100; run++) {
+      // few distinct values to get many duplicates
+      final double[] values = random.ints(random.nextInt(50), 0, 20).sorted()
+          .mapToDouble(v -> v / 2d).toArray();
+      for (int k = -1; k <= 21; k++) {
+        final double key = k / 2d;
+        int lower = 0;
+        while (lower < values.length && values[lower] < key) {
+          lower++;
+        }
+        int upper = lower;
+        while (upper < values.length && values[upper] <= key) {
+          upper++;
+        }
+        assertEquals(lower, BinarySearch.lowerBound(values, key));
+        assertEquals(upper, BinarySearch.upperBound(values, key));
+      }
+    }
+  }
+}
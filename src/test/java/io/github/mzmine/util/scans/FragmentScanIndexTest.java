@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.DDAMsMsInfoImpl;
+import io.github.mzmine.datamodel.impl.MSnInfoImpl;
+import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
+import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import javafx.collections.FXCollections;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the index queries with the linear filters that GroupMS2Task used before the index. The
+ * precursor m/z and retention times lie on coarse grids, so that many scans are on the range
+ * endpoints.
+ */
+class FragmentScanIndexTest {
+
+  private static final List<Scan> scans = new ArrayList<>();
+  private static final List<Float> rts = new ArrayList<>();
+  private static final List<Double> mzs = new ArrayList<>();
+  private static FragmentScanIndex index;
+
+  @BeforeAll
+  static void createScans() {
+    final Random random = new Random(42);
+    float rt = 0.5f;
+    rts.add(rt);
+    for (int i = 0; i < 600; i++) {
+      // several scans share a retention time
+      if (random.nextInt(3) == 0) {
+        rt += 0.05f;
+        rts.add(rt);
+      }
+      final double mz = 100 + 0.25 * random.nextInt(40);
+      mzs.add(mz);
+      switch (random.nextInt(7)) {
+        case 0 -> scans.add(scan(1, rt, null, null));
+        case 1 -> scans.add(scan(2, rt, new DDAMsMsInfoImpl(mz, 1, 2), null));
+        // precursor m/z without MS/MS info
+        case 2 -> scans.add(scan(2, rt, null, mz));
+        // no precursor
+        case 3 -> scans.add(scan(2, rt, null, null));
+        // MSn scans are found by their MS2 precursor m/z
+        case 4 -> scans.add(scan(3, rt, new MSnInfoImpl(
+            List.of(new DDAMsMsInfoImpl(mz, 1, 2), new DDAMsMsInfoImpl(mz / 2, 1, 3))), mz / 2));
+        case 5 -> scans.add(scan(4, rt, new MSnInfoImpl(
+            List.of(new DDAMsMsInfoImpl(mz, 1, 2), new DDAMsMsInfoImpl(mz - 18, 1, 3),
+                new DDAMsMsInfoImpl(mz - 36, 1, 4))), mz - 36));
+        default -> scans.add(frame(rt, random));
+      }
+    }
+
+    final RawDataFile file = mock(RawDataFile.class);
+    when(file.getScans()).thenReturn(FXCollections.observableArrayList(scans));
+    index = FragmentScanIndex.of(file);
+  }
+
+  private static Scan scan(int msLevel, float rt, @Nullable DDAMsMsInfo info,
+      @Nullable Double precursorMz) {
+    final Scan scan = mock(Scan.class);
+    when(scan.getMSLevel()).thenReturn(msLevel);
+    when(scan.getRetentionTime()).thenReturn(rt);
+    when(scan.getMsMsInfo()).thenReturn(info);
+    when(scan.getPrecursorMz()).thenReturn(precursorMz);
+    return scan;
+  }
+
+  private static Frame frame(float rt, Random random) {
+    final Frame frame = mock(Frame.class);
+    when(frame.getMSLevel()).thenReturn(2);
+    when(frame.getRetentionTime()).thenReturn(rt);
+    final Set<PasefMsMsInfo> infos = new LinkedHashSet<>();
+    for (int i = random.nextInt(4); i > 0; i--) {
+      final PasefMsMsInfo info = mock(PasefMsMsInfo.class);
+      when(info.getIsolationMz()).thenReturn(100 + 0.25 * random.nextInt(40));
+      infos.add(info);
+    }
+    when(frame.getImsMsMsInfos()).thenReturn(infos);
+    return frame;
+  }
+
+  /**
+   * The removed linear filter of GroupMS2Task, without the mass list check
+   */
+  private static boolean filterScan(Scan scan, Range<Double> mzRange,
+      @Nullable Range<Float> rtRange, int msLevel) {
+    if (scan.getMSLevel() <= 1 || (msLevel != 0 && scan.getMSLevel() != msLevel)) {
+      return false;
+    }
+    final double precursorMZ;
+    if (scan.getMsMsInfo() instanceof MSnInfoImpl msn) {
+      precursorMZ = msn.getMS2PrecursorMz();
+    } else if (scan.getMsMsInfo() instanceof DDAMsMsInfo info) {
+      precursorMZ = info.getIsolationMz();
+    } else {
+      precursorMZ = Objects.requireNonNullElse(scan.getPrecursorMz(), 0d);
+    }
+    return (rtRange == null || rtRange.contains(scan.getRetentionTime())) && precursorMZ != 0
+           && mzRange.contains(precursorMZ);
+  }
+
+  /**
+   * The removed linear PASEF precursor search of GroupMS2Task
+   */
+  private static List<PasefMsMsInfo> filterPasefInfos(Range<Double> mzRange,
+      @Nullable Range<Float> rtRange) {
+    final List<PasefMsMsInfo> result = new ArrayList<>();
+    for (Scan scan : scans) {
+      if (scan.getMSLevel() != 2 || !(scan instanceof Frame frame)) {
+        continue;
+      }
+      if (rtRange == null || rtRange.contains(frame.getRetentionTime())) {
+        for (PasefMsMsInfo info : frame.getImsMsMsInfos()) {
+          if (mzRange.contains(info.getIsolationMz())) {
+            result.add(info);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static List<Range<Float>> rtRanges(Random random) {
+    final float a = rts.get(random.nextInt(rts.size()));
+    final float b = Math.max(a, rts.get(random.nextInt(rts.size())));
+    final List<Range<Float>> ranges = new ArrayList<>();
+    ranges.add(null);
+    ranges.add(Range.closed(a, b));
+    ranges.add(Range.closedOpen(a, b));
+    ranges.add(Range.atLeast(a));
+    ranges.add(Range.greaterThan(a));
+    ranges.add(Range.atMost(b));
+    ranges.add(Range.lessThan(b));
+    if (a < b) {
+      ranges.add(Range.closed(a + 0.01f, b - 0.01f));
+      ranges.add(Range.open(a, b));
+      ranges.add(Range.openClosed(a, b));
+    }
+    return ranges;
+  }
+
+  private static List<Range<Double>> mzRanges(Random random) {
+    final double a = mzs.get(random.nextInt(mzs.size()));
+    final double b = a + 0.25 * random.nextInt(4);
+    final List<Range<Double>> ranges = new ArrayList<>();
+    ranges.add(Range.closed(a, b));
+    ranges.add(Range.closed(a - 0.005, a + 0.005));
+    ranges.add(Range.atLeast(a));
+    ranges.add(Range.lessThan(b));
+    ranges.add(Range.all());
+    if (a < b) {
+      ranges.add(Range.open(a, b));
+      ranges.add(Range.closedOpen(a, b));
+    }
+    return ranges;
+  }
+
+  @Test
+  void testFragmentScansMatchLinearFilter() {
+    final Random random = new Random(7);
+    int matches = 0;
+    for (int i = 0; i < 200; i++) {
+      for (Range<Double> mzRange : mzRanges(random)) {
+        for (Range<Float> rtRange : rtRanges(random)) {
+          for (int msLevel : new int[]{0, 2, 3, 4, 5}) {
+            final List<Scan> expected = scans.stream()
+                .filter(s -> filterScan(s, mzRange, rtRange, msLevel)).toList();
+            final List<Scan> actual = index.getFragmentScans(mzRange, rtRange, msLevel);
+            assertEquals(expected, actual, mzRange + " " + rtRange + " MS" + msLevel);
+            matches += expected.size();
+          }
+        }
+      }
+    }
+    assertTrue(matches > 0);
+  }
+
+  @Test
+  void testPasefInfosMatchLinearFilter() {
+    final Random random = new Random(11);
+    int matches = 0;
+    for (int i = 0; i < 200; i++) {
+      for (Range<Double> mzRange : mzRanges(random)) {
+        for (Range<Float> rtRange : rtRanges(random)) {
+          final List<PasefMsMsInfo> expected = filterPasefInfos(mzRange, rtRange);
+          assertEquals(expected, index.getPasefMsMsInfos(mzRange, rtRange),
+              mzRange + " " + rtRange);
+          matches += expected.size();
+        }
+      }
+    }
+    assertTrue(matches > 0);
+  }
+
+  @Test
+  void testFragmentScansInRtOrder() {
+    final List<Scan> expected = scans.stream().filter(s -> s.getMSLevel() > 1).toList();
+    assertEquals(expected, index.getFragmentScans());
+    assertEquals(expected.size(), index.getNumberOfFragmentScans());
+
+    final Random random = new Random(3);
+    for (int i = 0; i < 100; i++) {
+      for (Range<Float> rtRange : rtRanges(random)) {
+        if (rtRange == null) {
+          continue;
+        }
+        final List<Scan> inRange = expected.stream()
+            .filter(s -> rtRange.contains(s.getRetentionTime())).toList();
+        assertEquals(inRange, index.getFragmentScans(rtRange), rtRange.toString());
+      }
+    }
+  }
+}
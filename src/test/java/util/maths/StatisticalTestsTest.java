@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package util.maths;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.util.maths.StatisticalTests;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reference values from R: t.test on the sleep data set, anova(lm(weight ~ group)) on the
+ * PlantGrowth data set and p.adjust(method = "BH").
+ */
+class StatisticalTestsTest {
+
+  // sleep data set, extra sleep of group 1 and 2
+  private static final double[] sleep1 = {0.7, -1.6, -0.2, -1.2, -0.1, 3.4, 3.7, 0.8, 0.0, 2.0};
+  private static final double[] sleep2 = {1.9, 0.8, 1.1, 0.1, -0.1, 4.4, 5.5, 1.6, 4.6, 3.4};
+
+  // PlantGrowth data set
+  private static final double[] ctrl = {4.17, 5.58, 5.18, 6.11, 4.50, 4.61, 5.17, 4.53, 5.33,
+      5.14};
+  private static final double[] trt1 = {4.81, 4.17, 4.41, 3.59, 5.87, 3.83, 6.03, 4.89, 4.32,
+      4.69};
+  private static final double[] trt2 = {6.31, 5.12, 5.54, 5.50, 5.37, 5.29, 4.92, 6.15, 5.80,
+      5.26};
+
+  @Test
+  void testWelchTTest() {
+    // t = -1.8608, df = 17.776, p-value = 0.07939
+    assertEquals(0.0793941, StatisticalTests.welchTTest(sleep1, sleep2), 1e-6);
+    assertEquals(0.0793941, StatisticalTests.welchTTest(sleep2, sleep1), 1e-6);
+    // t = -2.134, df = 16.786, p-value = 0.0479
+    assertEquals(0.0478993, StatisticalTests.welchTTest(ctrl, trt2), 1e-6);
+  }
+
+  @Test
+  void testWelchTTestUndefined() {
+    assertTrue(Double.isNaN(StatisticalTests.welchTTest(new double[]{1}, sleep2)));
+    assertTrue(Double.isNaN(StatisticalTests.welchTTest(new double[]{1, 1}, new double[]{2, 2})));
+  }
+
+  @Test
+  void testOneWayAnova() {
+    // F = 4.8461, Pr(>F) = 0.01591
+    assertEquals(0.0159100, StatisticalTests.oneWayAnova(new double[][]{ctrl, trt1, trt2}),
+        1e-6);
+    // empty groups are ignored
+    assertEquals(0.0159100,
+        StatisticalTests.oneWayAnova(new double[][]{ctrl, {}, trt1, trt2}), 1e-6);
+    assertTrue(Double.isNaN(StatisticalTests.oneWayAnova(new double[][]{ctrl, {}})));
+  }
+
+  @Test
+  void testOneWayAnovaOfTwoGroupsEqualsPooledTTest() {
+    // F = t^2 of the pooled two sample t-test: t.test(extra ~ group, sleep, var.equal = TRUE)
+    // t = -1.8608, df = 18, p-value = 0.07919
+    assertEquals(0.0791867, StatisticalTests.oneWayAnova(new double[][]{sleep1, sleep2}), 1e-6);
+  }
+
+  @Test
+  void testBenjaminiHochberg() {
+    final double[] pValues = {0.039, 0.001, 0.205, 0.041, 0.008, Double.NaN, 0.06, 0.042, 0.074};
+    final double[] expected = {0.0672, 0.008, 0.205, 0.0672, 0.032, Double.NaN, 0.08, 0.0672,
+        0.0845714};
+    assertArrayEquals(expected, StatisticalTests.benjaminiHochberg(pValues), 1e-6);
+
+    assertArrayEquals(new double[]{0.05, 0.05, 0.05, 0.05, 0.05},
+        StatisticalTests.benjaminiHochberg(new double[]{0.01, 0.02, 0.03, 0.04, 0.05}), 1e-12);
+    // 0.9 * 2 / 1 is lowered to the q-value of the next rank
+    assertArrayEquals(new double[]{0.95, 0.95},
+        StatisticalTests.benjaminiHochberg(new double[]{0.9, 0.95}), 1e-12);
+    assertArrayEquals(new double[0], StatisticalTests.benjaminiHochberg(new double[0]));
+  }
+}
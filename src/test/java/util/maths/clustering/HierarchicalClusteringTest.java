@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package util.maths.clustering;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.util.maths.clustering.Dendrogram;
+import io.github.mzmine.util.maths.clustering.HierarchicalClustering;
+import io.github.mzmine.util.maths.clustering.Linkage;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The merge heights equal R's hclust(dist(x), method) for x = c(0, 1, 3, 7, 7.5) with the methods
+ * single, complete, average and ward.D2. They can be verified by hand on the one-dimensional
+ * points.
+ */
+class HierarchicalClusteringTest {
+
+  private static final double[][] points = {{0}, {1}, {3}, {7}, {7.5}};
+
+  @Test
+  void testSingleLinkage() {
+    assertMerges(Linkage.SINGLE, new double[]{0.5, 1, 2, 4});
+  }
+
+  @Test
+  void testCompleteLinkage() {
+    assertMerges(Linkage.COMPLETE, new double[]{0.5, 1, 3, 7.5});
+  }
+
+  @Test
+  void testAverageLinkage() {
+    // (7 + 6.5 + 6 + 5.5 + 4 + 4.5) / 6
+    assertMerges(Linkage.AVERAGE, new double[]{0.5, 1, 2.5, 35.5 / 6});
+  }
+
+  @Test
+  void testWardLinkage() {
+    // sqrt(2 * na * nb / (na + nb)) * distance of the centroids
+    assertMerges(Linkage.WARD,
+        new double[]{0.5, 1, Math.sqrt(4d / 3d) * 2.5, Math.sqrt(12d / 5d) * (7.25 - 4d / 3d)});
+  }
+
+  /**
+   * All linkages merge {3, 4}, {0, 1}, then 2 with {0, 1}, then both clusters.
+   */
+  private static void assertMerges(Linkage linkage, double[] expectedHeights) {
+    final double[] distances = HierarchicalClustering.euclideanDistances(points);
+    final Dendrogram dendrogram = HierarchicalClustering.cluster(distances, points.length,
+        linkage);
+
+    assertArrayEquals(expectedHeights, dendrogram.heights(), 1e-10);
+    assertArrayEquals(new int[]{3, 0, 2, 5}, dendrogram.left());
+    assertArrayEquals(new int[]{4, 1, 6, 7}, dendrogram.right());
+    assertArrayEquals(new int[]{2, 2, 3, 5}, dendrogram.sizes());
+    assertEquals(8, dendrogram.getRoot());
+    assertArrayEquals(new int[]{0, 0, 0, 1, 1}, dendrogram.cut(2));
+    assertArrayEquals(new int[]{0, 0, 1, 2, 2}, dendrogram.cut(3));
+  }
+
+  @Test
+  void testEuclideanDistancesWithMissingValues() {
+    // like R's dist, the sum over the present coordinates is scaled by 3 / 2
+    final double[] distances = HierarchicalClustering.euclideanDistances(
+        new double[][]{{1, Double.NaN, 3}, {2, 5, 1}, {Double.NaN, Double.NaN, Double.NaN}});
+    assertEquals(Math.sqrt(5d * 3d / 2d), distances[HierarchicalClustering.index(0, 1, 3)],
+        1e-12);
+    assertTrue(Double.isNaN(distances[HierarchicalClustering.index(0, 2, 3)]));
+    assertTrue(Double.isNaN(distances[HierarchicalClustering.index(1, 2, 3)]));
+  }
+
+  @Test
+  void testIndex() {
+    final int n = 5;
+    int expected = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        assertEquals(expected, HierarchicalClustering.index(i, j, n));
+        assertEquals(expected, HierarchicalClustering.index(j, i, n));
+        expected++;
+      }
+    }
+  }
+}